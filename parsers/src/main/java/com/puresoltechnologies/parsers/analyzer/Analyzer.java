@@ -1,10 +1,20 @@
 package com.puresoltechnologies.parsers.analyzer;
 
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.puresoltechnologies.parsers.grammar.Grammar;
 import com.puresoltechnologies.parsers.grammar.GrammarException;
 import com.puresoltechnologies.parsers.lexer.Lexer;
 import com.puresoltechnologies.parsers.lexer.LexerException;
 import com.puresoltechnologies.parsers.lexer.TokenStream;
+import com.puresoltechnologies.parsers.metrics.Counter;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.metrics.MetricsSource;
+import com.puresoltechnologies.parsers.metrics.Phase;
+import com.puresoltechnologies.parsers.metrics.PhaseMetrics;
 import com.puresoltechnologies.parsers.parser.Parser;
 import com.puresoltechnologies.parsers.parser.ParserException;
 import com.puresoltechnologies.parsers.parser.ParseTreeNode;
@@ -17,16 +27,37 @@ import com.puresoltechnologies.parsers.source.SourceCode;
  * lexer and a parser to a complete analysis flow for easy usage of the parsing
  * functionality,
  * 
+ * Optionally, a {@link ParseTreeCache} is used to skip lexing and parsing of
+ * source codes which were analyzed before. Failures of the cache are logged
+ * and the source code is analyzed as if there was no cache.
+ * 
+ * A {@link MetricsListener} set on the analyzer is also set on the lexer and
+ * the parser, if they are a {@link MetricsSource}. The analyzer itself reports
+ * the preprocessing and the complete analysis.
+ * 
  * @author Rick-Rainer Ludwig
  */
-public class Analyzer {
+public class Analyzer implements MetricsSource {
 
+	private static final Logger logger = LoggerFactory
+			.getLogger(Analyzer.class);
+
+	private final Grammar grammar;
 	private final Preprocessor preprocessor;
 	private final Lexer lexer;
 	private final Parser parser;
+	private final ParseTreeCache cache;
+	private MetricsListener metricsListener = null;
 
 	public Analyzer(Grammar grammar, ClassLoader classLoader)
 			throws GrammarException {
+		this(grammar, classLoader, null);
+	}
+
+	public Analyzer(Grammar grammar, ClassLoader classLoader,
+			ParseTreeCache cache) throws GrammarException {
+		this.grammar = grammar;
+		this.cache = cache;
 		if (grammar.usesPreProcessor()) {
 			preprocessor = grammar.createPreprocessor(classLoader);
 		} else {
@@ -36,16 +67,131 @@ public class Analyzer {
 		parser = grammar.createParser(classLoader);
 	}
 
+	/**
+	 * This constructor creates an analyzer with the given engines, for
+	 * example with clones of a prototype lexer and parser, which share the
+	 * expensive parts like the parser table.
+	 * 
+	 * @param grammar
+	 *            is the {@link Grammar} of the engines.
+	 * @param preprocessor
+	 *            is the {@link Preprocessor} or null, if the grammar does not
+	 *            use one.
+	 * @param lexer
+	 *            is the {@link Lexer} to be used exclusively by this
+	 *            analyzer.
+	 * @param parser
+	 *            is the {@link Parser} to be used exclusively by this
+	 *            analyzer.
+	 * @param cache
+	 *            is an optional {@link ParseTreeCache} or null.
+	 */
+	public Analyzer(Grammar grammar, Preprocessor preprocessor, Lexer lexer,
+			Parser parser, ParseTreeCache cache) {
+		this.grammar = grammar;
+		this.preprocessor = preprocessor;
+		this.lexer = lexer;
+		this.parser = parser;
+		this.cache = cache;
+	}
+
+	@Override
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+		if (lexer instanceof MetricsSource) {
+			((MetricsSource) lexer).setMetricsListener(metricsListener);
+		}
+		if (parser instanceof MetricsSource) {
+			((MetricsSource) parser).setMetricsListener(metricsListener);
+		}
+	}
+
+	@Override
+	public MetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
 	public ParseTreeNode analyze(SourceCode sourceCode) throws LexerException,
 			ParserException, PreprocessorException {
+		MetricsListener listener = metricsListener;
+		if (listener == null) {
+			return analyzeSourceCode(sourceCode);
+		}
+		PhaseMetrics metrics = new PhaseMetrics(Phase.ANALYSIS,
+				grammar.getName());
+		boolean successful = false;
+		try {
+			ParseTreeNode tree = analyzeSourceCode(sourceCode);
+			metrics.set(Counter.TREE_NODES, tree.countNodes());
+			successful = true;
+			return tree;
+		} finally {
+			metrics.finish(successful);
+			listener.phaseFinished(metrics);
+		}
+	}
+
+	private ParseTreeNode analyzeSourceCode(SourceCode sourceCode)
+			throws LexerException, ParserException, PreprocessorException {
 		SourceCode preProcessedSourceCode;
 		if (preprocessor != null) {
-			preProcessedSourceCode = preprocessor.process(sourceCode);
+			preProcessedSourceCode = preprocess(sourceCode);
 		} else {
 			preProcessedSourceCode = sourceCode;
 		}
-		TokenStream tokenStream = lexer.lex(preProcessedSourceCode);
+		if (cache == null) {
+			return parse(preProcessedSourceCode);
+		}
+		/*
+		 * The preprocessed source code is used as key, because it contains
+		 * the included sources, too.
+		 */
+		try {
+			ParseTreeNode cachedTree = cache.get(grammar,
+					preProcessedSourceCode);
+			if (cachedTree != null) {
+				return cachedTree;
+			}
+		} catch (IOException e) {
+			logger.warn("Could not read parse tree from cache.", e);
+		}
+		ParseTreeNode tree = parse(preProcessedSourceCode);
+		try {
+			cache.put(grammar, preProcessedSourceCode, tree);
+		} catch (IOException e) {
+			logger.warn("Could not write parse tree to cache.", e);
+		}
+		return tree;
+	}
+
+	private SourceCode preprocess(SourceCode sourceCode)
+			throws PreprocessorException {
+		MetricsListener listener = metricsListener;
+		if (listener == null) {
+			return preprocessor.process(sourceCode);
+		}
+		PhaseMetrics metrics = new PhaseMetrics(Phase.PREPROCESSING,
+				grammar.getName());
+		boolean successful = false;
+		try {
+			SourceCode preProcessedSourceCode = preprocessor
+					.process(sourceCode);
+			successful = true;
+			return preProcessedSourceCode;
+		} finally {
+			metrics.finish(successful);
+			listener.phaseFinished(metrics);
+		}
+	}
+
+	private ParseTreeNode parse(SourceCode sourceCode) throws LexerException,
+			ParserException {
+		TokenStream tokenStream = lexer.lex(sourceCode);
 		return parser.parse(tokenStream);
 	}
 
+	public ParseTreeCache getCache() {
+		return cache;
+	}
+
 }
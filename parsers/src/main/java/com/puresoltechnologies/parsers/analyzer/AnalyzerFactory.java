@@ -69,4 +69,14 @@ public class AnalyzerFactory {
 	public Analyzer createAnalyzer() throws GrammarException {
 		return new Analyzer(grammar, classLoader);
 	}
+
+	public BatchAnalyzer createBatchAnalyzer(int concurrency) {
+		return new BatchAnalyzer(grammar, classLoader, null, concurrency);
+	}
+
+	public AnalyzerPipeline createPipeline(int preprocessors, int lexers,
+			int parsers, int queueCapacity) {
+		return new AnalyzerPipeline(grammar, classLoader, null, preprocessors,
+				lexers, parsers, queueCapacity);
+	}
 }
@@ -0,0 +1,755 @@
+package com.puresoltechnologies.parsers.analyzer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.puresoltechnologies.parsers.concurrent.ResultChannel;
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarException;
+import com.puresoltechnologies.parsers.lexer.Lexer;
+import com.puresoltechnologies.parsers.lexer.TokenStream;
+import com.puresoltechnologies.parsers.metrics.Counter;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.metrics.MetricsSource;
+import com.puresoltechnologies.parsers.metrics.Phase;
+import com.puresoltechnologies.parsers.metrics.PhaseMetrics;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.Parser;
+import com.puresoltechnologies.parsers.preprocessor.Preprocessor;
+import com.puresoltechnologies.parsers.source.SourceCode;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * <p>
+ * This class analyzes a stream of source codes in a pipeline of three stages:
+ * The first stage reads and preprocesses the source codes, the second lexes
+ * them and the third parses them. Each stage has its own number of workers
+ * and each worker its own {@link Preprocessor}, {@link Lexer} or
+ * {@link Parser}, which are reused by later batches. The stages are connected
+ * by bounded queues, so a slow stage makes the stages before wait.
+ * </p>
+ * <p>
+ * In contrast to {@link BatchAnalyzer}, the work of a lexer heavy or parser
+ * heavy grammar can be balanced by the sizes of the stages. The
+ * {@link #getStatistics()} show the throughput and the queue depth of each
+ * stage to find the right sizes. A stage with a full input queue needs more
+ * workers, a stage with an always empty input queue may need less.
+ * </p>
+ * <p>
+ * Like in {@link Analyzer}, an optional {@link ParseTreeCache} is looked up
+ * after the preprocessing with the preprocessed source code. A cached parse
+ * tree skips the lexing and parsing stages. A {@link MetricsListener} is set
+ * on the lexers and parsers and the pipeline reports the preprocessing and the
+ * complete analysis of each source code. The duration of the analysis includes
+ * the time the source code waited in the queues.
+ * </p>
+ * <p>
+ * All workers of all stages need to run at the same time, because each stage
+ * waits for the next one. So the pipeline starts a thread of its own for each
+ * worker of a batch instead of using a pool with a possibly smaller number of
+ * threads. Only one batch is run at a time.
+ * </p>
+ */
+public class AnalyzerPipeline {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(AnalyzerPipeline.class);
+
+	/**
+	 * This class is a snapshot of the statistics of a single stage. All
+	 * values are counted since the creation of the pipeline, except the
+	 * queue size.
+	 */
+	public static final class StageStatistics {
+
+		private final String name;
+		private final int workers;
+		private final long processed;
+		private final long failed;
+		private final long busyTime;
+		private final int queueSize;
+		private final int queueCapacity;
+
+		private StageStatistics(String name, int workers, long processed,
+				long failed, long busyTime, int queueSize, int queueCapacity) {
+			super();
+			this.name = name;
+			this.workers = workers;
+			this.processed = processed;
+			this.failed = failed;
+			this.busyTime = busyTime;
+			this.queueSize = queueSize;
+			this.queueCapacity = queueCapacity;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getWorkers() {
+			return workers;
+		}
+
+		/**
+		 * @return The number of successfully processed source codes is
+		 *         returned.
+		 */
+		public long getProcessed() {
+			return processed;
+		}
+
+		/**
+		 * @return The number of source codes which failed in this stage is
+		 *         returned.
+		 */
+		public long getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return The time in nanoseconds is returned, which all workers of
+		 *         the stage spent on processing. Waiting for input or for
+		 *         space in the next queue is not included.
+		 */
+		public long getBusyTime() {
+			return busyTime;
+		}
+
+		/**
+		 * @return The number of source codes processed per second of busy
+		 *         time of a single worker is returned. The number of workers a
+		 *         stage needs is the rate of incoming source codes divided by
+		 *         this throughput.
+		 */
+		public double getThroughput() {
+			if (busyTime == 0) {
+				return 0.0;
+			}
+			return (processed + failed) * 1e9 / busyTime;
+		}
+
+		/**
+		 * @return The number of source codes waiting in the input queue of
+		 *         the stage is returned. The first stage has no input queue.
+		 */
+		public int getQueueSize() {
+			return queueSize;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": workers=" + workers + ", processed=" + processed
+					+ ", failed=" + failed + ", throughput="
+					+ String.format("%.1f/s", getThroughput()) + ", queue="
+					+ queueSize + "/" + queueCapacity;
+		}
+	}
+
+	private final Grammar grammar;
+	private final ClassLoader classLoader;
+	private final ParseTreeCache cache;
+	private final ThreadFactory threadFactory;
+	private final int queueCapacity;
+	private final Stage<Preprocessor> preprocessStage;
+	private final Stage<Lexer> lexStage;
+	private final Stage<Parser> parseStage;
+	private volatile MetricsListener metricsListener = null;
+	/**
+	 * The lexers and parsers of the workers are clones of these prototypes,
+	 * so expensive parts like the parser table are only created once. They
+	 * are guarded by their own lock, because the monitor of the pipeline is
+	 * held by the running batch.
+	 */
+	private final Object prototypeLock = new Object();
+	private Lexer prototypeLexer = null;
+	private Parser prototypeParser = null;
+
+	/**
+	 * Creates a pipeline which runs its workers in daemon threads.
+	 *
+	 * @param grammar
+	 *            is the {@link Grammar} to analyze with.
+	 * @param classLoader
+	 *            is the {@link ClassLoader} to load the preprocessor, lexer
+	 *            and parser with.
+	 * @param cache
+	 *            is an optional {@link ParseTreeCache} or null.
+	 * @param preprocessors
+	 *            is the number of workers reading and preprocessing the
+	 *            source codes.
+	 * @param lexers
+	 *            is the number of workers lexing the source codes.
+	 * @param parsers
+	 *            is the number of workers parsing the token streams.
+	 * @param queueCapacity
+	 *            is the capacity of each queue between the stages.
+	 */
+	public AnalyzerPipeline(Grammar grammar, ClassLoader classLoader,
+			ParseTreeCache cache, int preprocessors, int lexers, int parsers,
+			int queueCapacity) {
+		this(grammar, classLoader, cache,
+				new BatchAnalyzer.WorkerThreadFactory("AnalyzerPipeline"),
+				preprocessors, lexers, parsers, queueCapacity);
+	}
+
+	/**
+	 * @param grammar
+	 *            is the {@link Grammar} to analyze with.
+	 * @param classLoader
+	 *            is the {@link ClassLoader} to load the preprocessor, lexer
+	 *            and parser with.
+	 * @param cache
+	 *            is an optional {@link ParseTreeCache} or null.
+	 * @param threadFactory
+	 *            is the {@link ThreadFactory} to create the threads of the
+	 *            workers with.
+	 * @param preprocessors
+	 *            is the number of workers reading and preprocessing the
+	 *            source codes.
+	 * @param lexers
+	 *            is the number of workers lexing the source codes.
+	 * @param parsers
+	 *            is the number of workers parsing the token streams.
+	 * @param queueCapacity
+	 *            is the capacity of each queue between the stages.
+	 */
+	public AnalyzerPipeline(Grammar grammar, ClassLoader classLoader,
+			ParseTreeCache cache, ThreadFactory threadFactory,
+			int preprocessors, int lexers, int parsers, int queueCapacity) {
+		super();
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException(
+					"Queue capacity must be positive, but is " + queueCapacity
+							+ ".");
+		}
+		this.grammar = grammar;
+		this.classLoader = classLoader;
+		this.cache = cache;
+		this.threadFactory = threadFactory;
+		this.queueCapacity = queueCapacity;
+		preprocessStage = new Stage<Preprocessor>("preprocess", preprocessors);
+		lexStage = new Stage<Lexer>("lex", lexers);
+		parseStage = new Stage<Parser>("parse", parsers);
+	}
+
+	public Grammar getGrammar() {
+		return grammar;
+	}
+
+	public ParseTreeCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * This method sets a {@link MetricsListener} on all lexers and parsers of
+	 * later batches. The listener is called by the workers of all stages
+	 * concurrently, so it needs to be thread safe.
+	 * 
+	 * @param metricsListener
+	 *            is the {@link MetricsListener} to be set or null to switch
+	 *            off the metrics.
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	public MetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * @return The number of workers of all stages is returned.
+	 */
+	public int getWorkers() {
+		return preprocessStage.workers + lexStage.workers + parseStage.workers;
+	}
+
+	/**
+	 * @return A {@link List} of {@link StageStatistics} is returned in the
+	 *         order of the stages.
+	 */
+	public List<StageStatistics> getStatistics() {
+		List<StageStatistics> statistics = new ArrayList<StageStatistics>();
+		statistics.add(preprocessStage.getStatistics());
+		statistics.add(lexStage.getStatistics());
+		statistics.add(parseStage.getStatistics());
+		return Collections.unmodifiableList(statistics);
+	}
+
+	/**
+	 * This method analyzes the source codes of all given locations like
+	 * {@link BatchAnalyzer#analyzeAll(Iterable, BatchAnalyzer.Handler)}.
+	 * Failures of single source codes are reported to the handler and do not
+	 * stop the batch.
+	 *
+	 * @param locations
+	 *            is an {@link Iterable} of the {@link SourceCodeLocation}s to
+	 *            be analyzed. It is iterated by the workers of the first
+	 *            stage. A {@link RuntimeException} or an {@link Error} thrown
+	 *            by its iterator stops the batch and is rethrown.
+	 * @param handler
+	 *            is the {@link BatchAnalyzer.Handler} for the results. It is
+	 *            called in the calling thread.
+	 * @throws GrammarException
+	 *             is thrown if a preprocessor, lexer or parser cannot be
+	 *             created for the grammar.
+	 * @throws InterruptedException
+	 *             is thrown if the calling thread was interrupted.
+	 */
+	public synchronized void analyzeAll(Iterable<SourceCodeLocation> locations,
+			BatchAnalyzer.Handler handler) throws GrammarException,
+			InterruptedException {
+		PipelineRun run = new PipelineRun(locations.iterator());
+		try {
+			run.start();
+		} catch (RuntimeException | Error e) {
+			// The workers already started must not wait for the others.
+			run.abort();
+			throw e;
+		}
+		run.handle(handler);
+	}
+
+	private Lexer createLexer() throws GrammarException {
+		synchronized (prototypeLock) {
+			if (prototypeLexer == null) {
+				prototypeLexer = grammar.createLexer(classLoader);
+			}
+			return prototypeLexer.clone();
+		}
+	}
+
+	private Parser createParser() throws GrammarException {
+		synchronized (prototypeLock) {
+			if (prototypeParser == null) {
+				prototypeParser = grammar.createParser(classLoader);
+			}
+			return prototypeParser.clone();
+		}
+	}
+
+	/**
+	 * This class keeps the configuration, the idle engines and the counters
+	 * of a stage.
+	 */
+	private static class Stage<E> {
+
+		private final String name;
+		private final int workers;
+		private final Queue<E> engines = new ConcurrentLinkedQueue<E>();
+		private final AtomicLong processed = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong busyTime = new AtomicLong();
+		/**
+		 * This is the input queue of the current run.
+		 */
+		private volatile ResultChannel<Item> queue = null;
+
+		private Stage(String name, int workers) {
+			super();
+			if (workers < 1) {
+				throw new IllegalArgumentException("Number of " + name
+						+ " workers must be positive, but is " + workers
+						+ ".");
+			}
+			this.name = name;
+			this.workers = workers;
+		}
+
+		private StageStatistics getStatistics() {
+			ResultChannel<Item> currentQueue = queue;
+			return new StageStatistics(name, workers, processed.get(),
+					failed.get(), busyTime.get(),
+					currentQueue == null ? 0 : currentQueue.size(),
+					currentQueue == null ? 0 : currentQueue.getCapacity());
+		}
+	}
+
+	/**
+	 * This is a source code on its way through the pipeline.
+	 */
+	private static class Item {
+
+		private final SourceCodeLocation location;
+		private SourceCode sourceCode;
+		private TokenStream tokenStream;
+		private ParseTreeNode parseTree;
+		private Throwable failure;
+		/**
+		 * These are the metrics of the complete analysis, if a listener is
+		 * set.
+		 */
+		private PhaseMetrics metrics;
+
+		private Item(SourceCodeLocation location) {
+			super();
+			this.location = location;
+		}
+	}
+
+	/**
+	 * This is a single run of {@link AnalyzerPipeline#analyzeAll(Iterable,
+	 * BatchAnalyzer.Handler)}.
+	 */
+	private class PipelineRun {
+
+		private final Iterator<SourceCodeLocation> locations;
+		private final MetricsListener listener = metricsListener;
+		private final ResultChannel<Item> lexQueue = new ResultChannel<Item>(
+				queueCapacity, preprocessStage.workers);
+		private final ResultChannel<Item> parseQueue = new ResultChannel<Item>(
+				queueCapacity, lexStage.workers);
+		/**
+		 * All workers put their failed items into the results, so each of
+		 * them is a producer of the results.
+		 */
+		private final ResultChannel<Item> results = new ResultChannel<Item>(
+				queueCapacity, getWorkers());
+		/**
+		 * This is the failure of the creation of an engine, which aborted the
+		 * run.
+		 */
+		private volatile Throwable creationFailure = null;
+		/**
+		 * This is a failure of a worker outside of the processing of an item,
+		 * like a failure of the iterator, which aborted the run.
+		 */
+		private volatile Throwable workerFailure = null;
+
+		private PipelineRun(Iterator<SourceCodeLocation> locations) {
+			super();
+			this.locations = locations;
+		}
+
+		private void start() {
+			lexStage.queue = lexQueue;
+			parseStage.queue = parseQueue;
+			startStage(preprocessStage, null, lexQueue,
+					new StageFunction<Preprocessor>() {
+						@Override
+						public Preprocessor createEngine()
+								throws GrammarException {
+							return grammar.usesPreProcessor() ? grammar
+									.createPreprocessor(classLoader) : null;
+						}
+
+						@Override
+						public void process(Preprocessor preprocessor,
+								Item item) throws Exception {
+							SourceCode sourceCode = item.location
+									.getSourceCode();
+							item.sourceCode = preprocessor != null ? preprocess(
+									preprocessor, sourceCode) : sourceCode;
+							if (cache != null) {
+								item.parseTree = getCachedTree(item.sourceCode);
+								if (item.parseTree != null) {
+									item.sourceCode = null;
+								}
+							}
+						}
+					});
+			startStage(lexStage, lexQueue, parseQueue,
+					new StageFunction<Lexer>() {
+						@Override
+						public Lexer createEngine() throws GrammarException {
+							return createLexer();
+						}
+
+						@Override
+						public void process(Lexer lexer, Item item)
+								throws Exception {
+							item.tokenStream = lexer.lex(item.sourceCode);
+							if (cache == null) {
+								item.sourceCode = null;
+							}
+						}
+					});
+			startStage(parseStage, parseQueue, results,
+					new StageFunction<Parser>() {
+						@Override
+						public Parser createEngine() throws GrammarException {
+							return createParser();
+						}
+
+						@Override
+						public void process(Parser parser, Item item)
+								throws Exception {
+							item.parseTree = parser.parse(item.tokenStream);
+							item.tokenStream = null;
+							if (cache != null) {
+								putCachedTree(item.sourceCode, item.parseTree);
+								item.sourceCode = null;
+							}
+						}
+					});
+		}
+
+		private <E> void startStage(Stage<E> stage, ResultChannel<Item> input,
+				ResultChannel<Item> output, StageFunction<E> function) {
+			for (int i = 0; i < stage.workers; i++) {
+				Thread thread = threadFactory.newThread(new StageWorker<E>(
+						stage, input, output, function));
+				if (thread == null) {
+					throw new IllegalStateException(
+							"Thread factory did not create a thread for the "
+									+ stage.name + " stage.");
+				}
+				thread.start();
+			}
+		}
+
+		private SourceCode preprocess(Preprocessor preprocessor,
+				SourceCode sourceCode) throws Exception {
+			if (listener == null) {
+				return preprocessor.process(sourceCode);
+			}
+			PhaseMetrics metrics = new PhaseMetrics(Phase.PREPROCESSING,
+					grammar.getName());
+			boolean successful = false;
+			try {
+				SourceCode preProcessedSourceCode = preprocessor
+						.process(sourceCode);
+				successful = true;
+				return preProcessedSourceCode;
+			} finally {
+				metrics.finish(successful);
+				listener.phaseFinished(metrics);
+			}
+		}
+
+		/**
+		 * The preprocessed source code is used as key, because it contains
+		 * the included sources, too.
+		 */
+		private ParseTreeNode getCachedTree(SourceCode sourceCode) {
+			try {
+				return cache.get(grammar, sourceCode);
+			} catch (IOException e) {
+				logger.warn("Could not read parse tree from cache.", e);
+				return null;
+			}
+		}
+
+		private void putCachedTree(SourceCode sourceCode,
+				ParseTreeNode parseTree) {
+			try {
+				cache.put(grammar, sourceCode, parseTree);
+			} catch (IOException e) {
+				logger.warn("Could not write parse tree to cache.", e);
+			}
+		}
+
+		/**
+		 * This method reports the complete analysis of an item, which leaves
+		 * the pipeline.
+		 */
+		private void finish(Item item) {
+			PhaseMetrics metrics = item.metrics;
+			if (metrics == null) {
+				return;
+			}
+			item.metrics = null;
+			boolean successful = item.failure == null;
+			if (successful) {
+				metrics.set(Counter.TREE_NODES, item.parseTree.countNodes());
+			}
+			metrics.finish(successful);
+			listener.phaseFinished(metrics);
+		}
+
+		/**
+		 * @return The next item of the given input is returned or null if
+		 *         there are no more items. The first stage has no input and
+		 *         takes the items out of the locations.
+		 */
+		private Item nextItem(ResultChannel<Item> input)
+				throws InterruptedException {
+			if (input != null) {
+				return input.take();
+			}
+			synchronized (locations) {
+				if (results.isStopped() || !locations.hasNext()) {
+					return null;
+				}
+				Item item = new Item(locations.next());
+				if (listener != null) {
+					item.metrics = new PhaseMetrics(Phase.ANALYSIS,
+							grammar.getName());
+				}
+				return item;
+			}
+		}
+
+		/**
+		 * This method aborts the run. All workers end as soon as possible
+		 * and the items on their way are dropped.
+		 */
+		private void abort() {
+			lexQueue.abandon();
+			parseQueue.abandon();
+			results.abandon();
+		}
+
+		private void handle(BatchAnalyzer.Handler handler)
+				throws GrammarException, InterruptedException {
+			RuntimeException handlerException = null;
+			boolean finished = false;
+			try {
+				Item item;
+				while ((item = results.take()) != null) {
+					if (handlerException != null) {
+						// The run is stopped, the remaining items are dropped.
+					} else {
+						try {
+							if (item.failure == null) {
+								handler.analyzed(item.location, item.parseTree);
+							} else {
+								handler.failed(item.location, item.failure);
+							}
+						} catch (RuntimeException e) {
+							handlerException = e;
+							results.stop();
+						}
+					}
+				}
+				finished = true;
+			} finally {
+				if (!finished) {
+					abort();
+				}
+				lexStage.queue = null;
+				parseStage.queue = null;
+			}
+			if (handlerException != null) {
+				throw handlerException;
+			}
+			if (workerFailure != null) {
+				BatchAnalyzer.throwWorkerFailure(workerFailure);
+			}
+			if (creationFailure != null) {
+				BatchAnalyzer.throwCreationFailure(grammar, creationFailure);
+			}
+		}
+
+		/**
+		 * This is a worker of a stage. It takes the items out of the input,
+		 * processes them and puts them into the output. Failed items are put
+		 * directly into the results.
+		 */
+		private class StageWorker<E> implements Runnable {
+
+			private final Stage<E> stage;
+			private final ResultChannel<Item> input;
+			private final ResultChannel<Item> output;
+			private final StageFunction<E> function;
+
+			private StageWorker(Stage<E> stage, ResultChannel<Item> input,
+					ResultChannel<Item> output, StageFunction<E> function) {
+				super();
+				this.stage = stage;
+				this.input = input;
+				this.output = output;
+				this.function = function;
+			}
+
+			private E createEngine() throws GrammarException {
+				try {
+					return function.createEngine();
+				} catch (RuntimeException e) {
+					throw new GrammarException("Could not create engine for "
+							+ stage.name + " stage.", e);
+				}
+			}
+
+			@Override
+			public void run() {
+				E engine = stage.engines.poll();
+				try {
+					if (engine == null) {
+						engine = createEngine();
+					}
+				} catch (Throwable e) {
+					creationFailure = e;
+					abort();
+					close();
+					return;
+				}
+				try {
+					if (engine instanceof MetricsSource) {
+						((MetricsSource) engine).setMetricsListener(listener);
+					}
+					Item item;
+					while ((item = nextItem(input)) != null) {
+						long start = System.nanoTime();
+						try {
+							function.process(engine, item);
+							stage.busyTime.addAndGet(System.nanoTime() - start);
+							stage.processed.incrementAndGet();
+							if (item.parseTree != null) {
+								// Parsed or taken out of the cache.
+								finish(item);
+								results.put(item);
+							} else {
+								output.put(item);
+							}
+						} catch (Throwable e) {
+							/*
+							 * Errors like a StackOverflowError for a deeply
+							 * nested source code are reported, too.
+							 */
+							stage.busyTime.addAndGet(System.nanoTime() - start);
+							stage.failed.incrementAndGet();
+							item.sourceCode = null;
+							item.tokenStream = null;
+							item.failure = e;
+							finish(item);
+							results.put(item);
+						}
+					}
+				} catch (Throwable e) {
+					workerFailure = e;
+					abort();
+					if (e instanceof InterruptedException) {
+						Thread.currentThread().interrupt();
+					}
+				} finally {
+					if (engine != null) {
+						stage.engines.offer(engine);
+					}
+					close();
+				}
+			}
+
+			private void close() {
+				output.close();
+				if (output != results) {
+					results.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * This interface is implemented for the work of each stage.
+	 */
+	private interface StageFunction<E> {
+
+		public E createEngine() throws GrammarException;
+
+		public void process(E engine, Item item) throws Exception;
+	}
+}
@@ -0,0 +1,414 @@
+package com.puresoltechnologies.parsers.analyzer;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.puresoltechnologies.parsers.concurrent.ResultChannel;
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarException;
+import com.puresoltechnologies.parsers.lexer.Lexer;
+import com.puresoltechnologies.parsers.lexer.LexerException;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.Parser;
+import com.puresoltechnologies.parsers.parser.ParserException;
+import com.puresoltechnologies.parsers.preprocessor.Preprocessor;
+import com.puresoltechnologies.parsers.preprocessor.PreprocessorException;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * <p>
+ * This class analyzes many source codes concurrently. The {@link Analyzer}s
+ * are not thread safe, so each worker uses an {@link Analyzer} of its own.
+ * The analyzers are created once on first demand and are reused by later
+ * batches.
+ * </p>
+ * <p>
+ * Each worker takes the next location, reads the source code and analyzes it.
+ * The results and the failures are handed to a {@link Handler} in the calling
+ * thread in the order of their completion. Only a limited number of results is
+ * buffered, the workers wait if the handler does not keep up.
+ * </p>
+ * <p>
+ * The workers need to run while the calling thread handles the results. An
+ * executor which runs the workers in the calling thread or which is busy with
+ * the caller's own tasks would block forever. So, like {@link AnalyzerPipeline},
+ * a thread of its own is started for each worker of a batch.
+ * </p>
+ */
+public class BatchAnalyzer {
+
+	/**
+	 * This interface is implemented to process the results of a batch. The
+	 * methods are only called by the thread which started the batch. A
+	 * {@link RuntimeException} thrown by the handler aborts the batch.
+	 */
+	public interface Handler {
+
+		/**
+		 * This method is called for each successfully analyzed source code.
+		 *
+		 * @param location
+		 *            is the {@link SourceCodeLocation} of the source code.
+		 * @param parseTree
+		 *            is the resulting {@link ParseTreeNode}.
+		 */
+		public void analyzed(SourceCodeLocation location,
+				ParseTreeNode parseTree);
+
+		/**
+		 * This method is called for each source code which could not be read
+		 * or analyzed.
+		 *
+		 * @param location
+		 *            is the {@link SourceCodeLocation} of the source code.
+		 * @param failure
+		 *            is the {@link Throwable} which was thrown. It is an
+		 *            {@link IOException}, {@link PreprocessorException},
+		 *            {@link LexerException}, {@link ParserException}, a
+		 *            {@link RuntimeException} or an {@link Error}, like a
+		 *            {@link StackOverflowError} for a deeply nested source
+		 *            code.
+		 */
+		public void failed(SourceCodeLocation location, Throwable failure);
+	}
+
+	private final Grammar grammar;
+	private final ClassLoader classLoader;
+	private final ParseTreeCache cache;
+	private final ThreadFactory threadFactory;
+	private final int concurrency;
+	/**
+	 * These are the analyzers which are not used by a worker at the moment.
+	 */
+	private final Queue<Analyzer> analyzers = new ConcurrentLinkedQueue<Analyzer>();
+	/**
+	 * The lexer and the parser of new analyzers are clones of these
+	 * prototypes, so expensive parts like the parser table are only created
+	 * once.
+	 */
+	private Lexer prototypeLexer = null;
+	private Parser prototypeParser = null;
+	private volatile MetricsListener metricsListener = null;
+
+	/**
+	 * Creates a batch analyzer which runs its workers in daemon threads.
+	 *
+	 * @param grammar
+	 *            is the {@link Grammar} to analyze with.
+	 * @param classLoader
+	 *            is the {@link ClassLoader} to load the preprocessor, lexer
+	 *            and parser with.
+	 * @param cache
+	 *            is an optional {@link ParseTreeCache} or null.
+	 * @param concurrency
+	 *            is the maximum number of source codes analyzed concurrently.
+	 */
+	public BatchAnalyzer(Grammar grammar, ClassLoader classLoader,
+			ParseTreeCache cache, int concurrency) {
+		this(grammar, classLoader, cache, new WorkerThreadFactory(
+				"BatchAnalyzer"), concurrency);
+	}
+
+	/**
+	 * @param grammar
+	 *            is the {@link Grammar} to analyze with.
+	 * @param classLoader
+	 *            is the {@link ClassLoader} to load the preprocessor, lexer
+	 *            and parser with.
+	 * @param cache
+	 *            is an optional {@link ParseTreeCache} or null.
+	 * @param threadFactory
+	 *            is the {@link ThreadFactory} to create the threads of the
+	 *            workers with.
+	 * @param concurrency
+	 *            is the maximum number of source codes analyzed concurrently.
+	 */
+	public BatchAnalyzer(Grammar grammar, ClassLoader classLoader,
+			ParseTreeCache cache, ThreadFactory threadFactory, int concurrency) {
+		super();
+		if (concurrency < 1) {
+			throw new IllegalArgumentException(
+					"Concurrency must be positive, but is " + concurrency
+							+ ".");
+		}
+		this.grammar = grammar;
+		this.classLoader = classLoader;
+		this.cache = cache;
+		this.threadFactory = threadFactory;
+		this.concurrency = concurrency;
+	}
+
+	public Grammar getGrammar() {
+		return grammar;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * This method sets a {@link MetricsListener} on all analyzers of later
+	 * batches. The listener is called by the worker threads concurrently, so
+	 * it needs to be thread safe.
+	 * 
+	 * @param metricsListener
+	 *            is the {@link MetricsListener} to be set or null to switch
+	 *            off the metrics.
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	public MetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * This method analyzes the source codes of all given locations. The
+	 * locations are taken one by one out of the {@link Iterable}, so it may
+	 * create them lazily. Failures of single source codes are reported to the
+	 * handler and do not stop the batch. A {@link RuntimeException} or an
+	 * {@link Error} thrown by the iterator of the locations stops the batch
+	 * and is rethrown.
+	 *
+	 * @param locations
+	 *            is an {@link Iterable} of the {@link SourceCodeLocation}s to
+	 *            be analyzed.
+	 * @param handler
+	 *            is the {@link Handler} for the results.
+	 * @throws GrammarException
+	 *             is thrown if an analyzer cannot be created for the grammar.
+	 * @throws InterruptedException
+	 *             is thrown if the calling thread was interrupted.
+	 */
+	public void analyzeAll(Iterable<SourceCodeLocation> locations,
+			Handler handler) throws GrammarException, InterruptedException {
+		BatchRun run = new BatchRun(locations.iterator());
+		try {
+			for (int i = 0; i < concurrency; i++) {
+				Thread thread = threadFactory.newThread(run);
+				if (thread == null) {
+					throw new IllegalStateException(
+							"Thread factory did not create a thread for a "
+									+ "worker.");
+				}
+				thread.start();
+			}
+		} catch (RuntimeException | Error e) {
+			// The workers already started must not wait for the handler.
+			run.results.abandon();
+			throw e;
+		}
+		run.handle(handler);
+	}
+
+	private Analyzer acquireAnalyzer() throws GrammarException {
+		Analyzer analyzer = analyzers.poll();
+		if (analyzer == null) {
+			analyzer = createAnalyzer();
+		}
+		analyzer.setMetricsListener(metricsListener);
+		return analyzer;
+	}
+
+	private synchronized Analyzer createAnalyzer() throws GrammarException {
+		if (prototypeParser == null) {
+			prototypeLexer = grammar.createLexer(classLoader);
+			prototypeParser = grammar.createParser(classLoader);
+		}
+		Preprocessor preprocessor = grammar.usesPreProcessor() ? grammar
+				.createPreprocessor(classLoader) : null;
+		return new Analyzer(grammar, preprocessor, prototypeLexer.clone(),
+				prototypeParser.clone(), cache);
+	}
+
+	/**
+	 * This method throws the failure of the creation of an analyzer or an
+	 * engine as {@link GrammarException}. Errors are thrown as they are.
+	 */
+	static void throwCreationFailure(Grammar grammar, Throwable failure)
+			throws GrammarException {
+		if (failure instanceof GrammarException) {
+			throw (GrammarException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		throw new GrammarException("Could not create analyzer for grammar '"
+				+ grammar.getName() + "'.", failure);
+	}
+
+	/**
+	 * This method throws a failure of a worker, which is not related to a
+	 * single source code, like a failure of the iterator of the locations.
+	 */
+	static void throwWorkerFailure(Throwable failure)
+			throws InterruptedException {
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure instanceof InterruptedException) {
+			throw (InterruptedException) failure;
+		}
+		throw new IllegalStateException("Worker failed.", failure);
+	}
+
+	/**
+	 * This is the default factory for the threads of the workers.
+	 */
+	static class WorkerThreadFactory implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		WorkerThreadFactory(String name) {
+			super();
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-"
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * This is the result of a worker.
+	 */
+	private static class Result {
+
+		private final SourceCodeLocation location;
+		private final ParseTreeNode parseTree;
+		private final Throwable failure;
+
+		private Result(SourceCodeLocation location, ParseTreeNode parseTree,
+				Throwable failure) {
+			super();
+			this.location = location;
+			this.parseTree = parseTree;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * This is a single run of {@link BatchAnalyzer#analyzeAll(Iterable,
+	 * Handler)}.
+	 */
+	private class BatchRun implements Runnable {
+
+		private final Iterator<SourceCodeLocation> locations;
+		private final ResultChannel<Result> results = new ResultChannel<Result>(
+				2 * concurrency, concurrency);
+		/**
+		 * This is the exception of a failed creation of an analyzer, which
+		 * stopped the run.
+		 */
+		private volatile Throwable creationException = null;
+		/**
+		 * This is a failure of a worker outside of the analysis of a source
+		 * code, like a failure of the iterator, which stopped the run.
+		 */
+		private volatile Throwable workerException = null;
+
+		private BatchRun(Iterator<SourceCodeLocation> locations) {
+			super();
+			this.locations = locations;
+		}
+
+		private SourceCodeLocation nextLocation() {
+			synchronized (locations) {
+				if (results.isStopped() || !locations.hasNext()) {
+					return null;
+				}
+				return locations.next();
+			}
+		}
+
+		@Override
+		public void run() {
+			Analyzer analyzer;
+			try {
+				analyzer = acquireAnalyzer();
+			} catch (Throwable e) {
+				creationException = e;
+				results.stop();
+				results.close();
+				return;
+			}
+			try {
+				SourceCodeLocation location;
+				while ((location = nextLocation()) != null) {
+					Result result;
+					try {
+						result = new Result(location,
+								analyzer.analyze(location.getSourceCode()),
+								null);
+					} catch (Throwable e) {
+						result = new Result(location, null, e);
+					}
+					results.put(result);
+				}
+			} catch (Throwable e) {
+				workerException = e;
+				results.stop();
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+			} finally {
+				analyzers.offer(analyzer);
+				results.close();
+			}
+		}
+
+		private void handle(Handler handler) throws GrammarException,
+				InterruptedException {
+			RuntimeException handlerException = null;
+			boolean finished = false;
+			try {
+				Result result;
+				while ((result = results.take()) != null) {
+					if (handlerException != null) {
+						// The run is stopped, the remaining results are
+						// dropped.
+					} else {
+						try {
+							if (result.failure == null) {
+								handler.analyzed(result.location,
+										result.parseTree);
+							} else {
+								handler.failed(result.location,
+										result.failure);
+							}
+						} catch (RuntimeException e) {
+							handlerException = e;
+							results.stop();
+						}
+					}
+				}
+				finished = true;
+			} finally {
+				if (!finished) {
+					// Nobody takes the results anymore.
+					results.abandon();
+				}
+			}
+			if (handlerException != null) {
+				throw handlerException;
+			}
+			if (workerException != null) {
+				throwWorkerFailure(workerException);
+			}
+			if (creationException != null) {
+				throwCreationFailure(grammar, creationException);
+			}
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package com.puresoltechnologies.parsers.analyzer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.io.BinaryTreeReader;
+import com.puresoltechnologies.parsers.parser.io.BinaryTreeWriter;
+import com.puresoltechnologies.parsers.source.Fingerprint;
+import com.puresoltechnologies.parsers.source.SourceCode;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * <p>
+ * This class is an on-disk cache for parse trees. The entries are addressed by
+ * the content: the key consists of the {@link Grammar#getFingerprint()}, the
+ * {@link SourceCode#getHashId()} and a fingerprint of the source code
+ * locations, because the tokens of the tree refer to them. So unchanged
+ * sources are found again in later runs without lexing and parsing.
+ * </p>
+ * <p>
+ * Each tree is kept in its own file in the compact format of
+ * {@link BinaryTreeWriter}. New entries are written to a temporary file first
+ * and moved atomically to their place, so readers in other threads and JVMs
+ * never see incomplete entries. The last modification time is used as last
+ * access time and the least recently used entries are removed if the size of
+ * the cache exceeds its maximum. The eviction is guarded by a file lock, so
+ * only one JVM evicts at a time.
+ * </p>
+ */
+public class ParseTreeCache {
+
+    private static final String ENTRY_SUFFIX = ".tree";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOCK_FILE = "cache.lock";
+
+    private final Path directory;
+    private final long maxSize;
+    /**
+     * This is the size of the entries as known by this instance. Entries
+     * added by other JVMs are only taken into account at the next eviction.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param directory
+     *            is the directory of the cache. It is created if it does not
+     *            exist.
+     * @param maxSize
+     *            is the maximum size of all entries in bytes.
+     * @throws IOException
+     *             is thrown if the directory cannot be created or read.
+     */
+    public ParseTreeCache(File directory, long maxSize) throws IOException {
+	super();
+	if (maxSize < 0) {
+	    throw new IllegalArgumentException(
+		    "Maximum size must not be negative, but is " + maxSize
+			    + ".");
+	}
+	this.directory = directory.toPath();
+	this.maxSize = maxSize;
+	Files.createDirectories(this.directory);
+	long currentSize = 0;
+	for (Entry entry : listEntries()) {
+	    currentSize += entry.size;
+	}
+	size.set(currentSize);
+    }
+
+    public File getDirectory() {
+	return directory.toFile();
+    }
+
+    public long getMaxSize() {
+	return maxSize;
+    }
+
+    /**
+     * @return The size of all entries in bytes is returned as known by this
+     *         instance.
+     */
+    public long getSize() {
+	return size.get();
+    }
+
+    /**
+     * This method looks up the parse tree of a source code.
+     *
+     * @param grammar
+     *            is the {@link Grammar} the source code was parsed with.
+     * @param sourceCode
+     *            is the parsed {@link SourceCode}.
+     * @return The cached {@link ParseTreeNode} is returned or null if there is
+     *         no entry.
+     * @throws IOException
+     *             is thrown if the entry cannot be read.
+     */
+    public ParseTreeNode get(Grammar grammar, SourceCode sourceCode)
+	    throws IOException {
+	Path file = directory.resolve(getKey(grammar, sourceCode)
+		+ ENTRY_SUFFIX);
+	byte[] bytes;
+	try {
+	    bytes = Files.readAllBytes(file);
+	} catch (NoSuchFileException e) {
+	    return null;
+	}
+	ParseTreeNode tree;
+	try {
+	    tree = new BinaryTreeReader(new ByteArrayInputStream(bytes)).read();
+	} catch (IOException | RuntimeException e) {
+	    /*
+	     * A damaged entry is dropped and treated as missing. Damaged data
+	     * may also lead to invalid references or casts in the decoder.
+	     */
+	    delete(file);
+	    return null;
+	}
+	try {
+	    Files.setLastModifiedTime(file,
+		    FileTime.fromMillis(System.currentTimeMillis()));
+	} catch (IOException e) {
+	    // The entry was evicted concurrently, but it was read already.
+	}
+	return tree;
+    }
+
+    /**
+     * This method adds the parse tree of a source code to the cache. An
+     * existing entry is replaced.
+     *
+     * @param grammar
+     *            is the {@link Grammar} the source code was parsed with.
+     * @param sourceCode
+     *            is the parsed {@link SourceCode}.
+     * @param tree
+     *            is the {@link ParseTreeNode} to be cached.
+     * @throws IOException
+     *             is thrown if the entry cannot be written.
+     */
+    public void put(Grammar grammar, SourceCode sourceCode, ParseTreeNode tree)
+	    throws IOException {
+	String key = getKey(grammar, sourceCode);
+	Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+	try {
+	    try (OutputStream out = Files.newOutputStream(temp)) {
+		new BinaryTreeWriter(out).write(tree);
+	    }
+	    long entrySize = Files.size(temp);
+	    Path file = directory.resolve(key + ENTRY_SUFFIX);
+	    long replacedSize;
+	    try {
+		replacedSize = Files.size(file);
+	    } catch (NoSuchFileException e) {
+		replacedSize = 0;
+	    }
+	    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+		    StandardCopyOption.REPLACE_EXISTING);
+	    // A replaced entry is not counted twice.
+	    if (size.addAndGet(entrySize - replacedSize) > maxSize) {
+		evict();
+	    }
+	} finally {
+	    Files.deleteIfExists(temp);
+	}
+    }
+
+    /**
+     * This method removes all entries.
+     *
+     * @throws IOException
+     *             is thrown if the entries cannot be removed.
+     */
+    public void clear() throws IOException {
+	for (Entry entry : listEntries()) {
+	    delete(entry.file);
+	}
+	size.set(0);
+    }
+
+    /**
+     * This method removes the least recently used entries until the cache is
+     * not larger than its maximum size. If another thread or JVM evicts
+     * already, nothing is done.
+     */
+    private void evict() throws IOException {
+	try (FileChannel channel = FileChannel.open(
+		directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+		StandardOpenOption.WRITE)) {
+	    FileLock lock;
+	    try {
+		lock = channel.tryLock();
+	    } catch (OverlappingFileLockException e) {
+		// Another thread of this JVM evicts already.
+		return;
+	    }
+	    if (lock == null) {
+		return;
+	    }
+	    try {
+		List<Entry> entries = listEntries();
+		long currentSize = 0;
+		for (Entry entry : entries) {
+		    currentSize += entry.size;
+		}
+		Collections.sort(entries, new Comparator<Entry>() {
+		    @Override
+		    public int compare(Entry o1, Entry o2) {
+			return Long.compare(o1.lastAccess, o2.lastAccess);
+		    }
+		});
+		for (Entry entry : entries) {
+		    if (currentSize <= maxSize) {
+			break;
+		    }
+		    if (delete(entry.file)) {
+			currentSize -= entry.size;
+		    }
+		}
+		size.set(currentSize);
+	    } finally {
+		lock.release();
+	    }
+	}
+    }
+
+    private List<Entry> listEntries() throws IOException {
+	List<Entry> entries = new ArrayList<Entry>();
+	try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+		directory, "*" + ENTRY_SUFFIX)) {
+	    for (Path file : stream) {
+		try {
+		    BasicFileAttributes attributes = Files.readAttributes(
+			    file, BasicFileAttributes.class);
+		    entries.add(new Entry(file, attributes.size(), attributes
+			    .lastModifiedTime().toMillis()));
+		} catch (NoSuchFileException e) {
+		    // The entry was removed concurrently.
+		}
+	    }
+	}
+	return entries;
+    }
+
+    private static boolean delete(Path file) {
+	try {
+	    return Files.deleteIfExists(file);
+	} catch (IOException e) {
+	    // The entry is still in use on some platforms and is kept.
+	    return false;
+	}
+    }
+
+    /**
+     * This method creates the key of an entry, which is used as file name.
+     */
+    private static String getKey(Grammar grammar, SourceCode sourceCode) {
+	return grammar.getFingerprint().toHexString() + "-"
+		+ sourceCode.getHashId().getHash() + "-"
+		+ getLocationsFingerprint(sourceCode).toHexString();
+    }
+
+    /**
+     * This method calculates a fingerprint of the line index of the source
+     * code, because the tokens and nodes of the tree refer to it: For every
+     * line the line number and the start of the line within the text are
+     * taken and the serialization of the source code location is taken for
+     * every line with another location than the line before.
+     */
+    private static Fingerprint getLocationsFingerprint(SourceCode sourceCode) {
+	Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+	StringBuilder record = new StringBuilder();
+	SourceCodeLocation last = null;
+	for (int i = 0; i < sourceCode.getLineCount(); i++) {
+	    record.setLength(0);
+	    SourceCodeLocation source = sourceCode.getSource(i);
+	    if (source != last) {
+		last = source;
+		if (source == null) {
+		    record.append("-\n");
+		} else {
+		    Properties serialization = source.getSerialization();
+		    List<String> keys = new ArrayList<String>(
+			    serialization.stringPropertyNames());
+		    Collections.sort(keys);
+		    for (String key : keys) {
+			record.append(key).append('=')
+				.append(serialization.getProperty(key))
+				.append('\n');
+		    }
+		    record.append('\n');
+		}
+	    }
+	    record.append(sourceCode.getLineNumber(i)).append(':')
+		    .append(sourceCode.getLineStart(i)).append('\n');
+	    hasher.update(record, 0, record.length());
+	}
+	return hasher.finish();
+    }
+
+    private static class Entry {
+
+	private final Path file;
+	private final long size;
+	private final long lastAccess;
+
+	private Entry(Path file, long size, long lastAccess) {
+	    super();
+	    this.file = file;
+	    this.size = size;
+	    this.lastAccess = lastAccess;
+	}
+    }
+}
@@ -0,0 +1,197 @@
+package com.puresoltechnologies.parsers.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * This class is a bounded channel which hands results from a fixed number of
+ * producer threads to one or more consumer threads. A producer waits in
+ * {@link #put(Object)} while the channel is full, so the memory needed is
+ * limited by the capacity. Each producer calls {@link #close()} exactly once
+ * after its last result, usually in a finally block. After all producers
+ * closed the channel, {@link #take()} returns null.
+ * </p>
+ * <p>
+ * A consumer which does not want further results calls {@link #stop()}. The
+ * producers check {@link #isStopped()} before they start new work, but the
+ * results of work in progress are still put, because the consumer waits for
+ * the producers to close the channel. If the consumer does not take results
+ * anymore at all, it calls {@link #abandon()} and the producers drop their
+ * results instead of waiting for space forever.
+ * </p>
+ *
+ * <b>This class is thread safe.</b>
+ *
+ * @param <T>
+ *            is the type of the results.
+ */
+public class ResultChannel<T> {
+
+    /**
+     * This is the marker put into the queue after the last producer closed
+     * the channel.
+     */
+    private static final Object END = new Object();
+
+    /**
+     * This is the time in milliseconds waited for space or for a result
+     * before the abandonment is checked again.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private final BlockingQueue<Object> queue;
+    private final int capacity;
+    private final AtomicInteger producers;
+    private volatile boolean stopped = false;
+    private volatile boolean abandoned = false;
+
+    /**
+     * @param capacity
+     *            is the maximum number of results which were put, but not
+     *            taken, yet.
+     * @param producers
+     *            is the number of producers, which close the channel.
+     */
+    public ResultChannel(int capacity, int producers) {
+	super();
+	if (capacity < 1) {
+	    throw new IllegalArgumentException(
+		    "Capacity must be positive, but is " + capacity + ".");
+	}
+	if (producers < 1) {
+	    throw new IllegalArgumentException(
+		    "Number of producers must be positive, but is " + producers
+			    + ".");
+	}
+	this.queue = new ArrayBlockingQueue<Object>(capacity);
+	this.capacity = capacity;
+	this.producers = new AtomicInteger(producers);
+    }
+
+    public int getCapacity() {
+	return capacity;
+    }
+
+    /**
+     * @return The number of results put, but not taken, yet, is returned.
+     */
+    public int size() {
+	int size = queue.size();
+	return producers.get() > 0 ? size : Math.max(0, size - 1);
+    }
+
+    /**
+     * @return true is returned if the producers are not to start new work.
+     */
+    public boolean isStopped() {
+	return stopped;
+    }
+
+    /**
+     * This method signals the producers not to start new work. The results
+     * of work in progress are still put.
+     */
+    public void stop() {
+	stopped = true;
+    }
+
+    /**
+     * @return true is returned if the results are not taken anymore.
+     */
+    public boolean isAbandoned() {
+	return abandoned;
+    }
+
+    /**
+     * This method signals that the results are not taken anymore. The
+     * channel is stopped, the producers drop their results and
+     * {@link #take()} returns null.
+     */
+    public void abandon() {
+	stopped = true;
+	abandoned = true;
+    }
+
+    /**
+     * This method puts a result into the channel and waits while it is full.
+     * An interrupt of the producer stops the channel, but the result is still
+     * put, because the consumer waits for it. Only if the channel was
+     * abandoned, the result is dropped.
+     *
+     * @param result
+     *            is the result to be put.
+     */
+    public void put(T result) {
+	if (result == null) {
+	    throw new IllegalArgumentException("Result must not be null.");
+	}
+	offer(result);
+    }
+
+    /**
+     * This method is called by each producer after its last result. The end
+     * of the results is signaled to the consumers after the last producer
+     * closed the channel.
+     */
+    public void close() {
+	if (producers.decrementAndGet() == 0) {
+	    offer(END);
+	}
+    }
+
+    private void offer(Object element) {
+	boolean interrupted = false;
+	try {
+	    while (!abandoned) {
+		try {
+		    if (queue.offer(element, POLL_INTERVAL,
+			    TimeUnit.MILLISECONDS)) {
+			return;
+		    }
+		} catch (InterruptedException e) {
+		    interrupted = true;
+		    stopped = true;
+		}
+	    }
+	} finally {
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * This method takes the next result out of the channel and waits while it
+     * is empty.
+     *
+     * @return The next result is returned or null if all producers closed the
+     *         channel or the channel was abandoned.
+     * @throws InterruptedException
+     *             is thrown if the consumer was interrupted. The channel is
+     *             abandoned in this case.
+     */
+    public T take() throws InterruptedException {
+	try {
+	    while (!abandoned) {
+		Object element = queue.poll(POLL_INTERVAL,
+			TimeUnit.MILLISECONDS);
+		if (element == END) {
+		    // The other consumers need to see the end, too.
+		    offer(END);
+		    return null;
+		} else if (element != null) {
+		    @SuppressWarnings("unchecked")
+		    T result = (T) element;
+		    return result;
+		}
+	    }
+	    return null;
+	} catch (InterruptedException e) {
+	    abandon();
+	    throw e;
+	}
+    }
+}
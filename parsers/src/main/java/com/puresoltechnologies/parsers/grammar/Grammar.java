@@ -2,6 +2,8 @@ package com.puresoltechnologies.parsers.grammar;
 
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -14,6 +16,7 @@ import com.puresoltechnologies.parsers.grammar.token.TokenDefinitionSet;
 import com.puresoltechnologies.parsers.lexer.Lexer;
 import com.puresoltechnologies.parsers.parser.Parser;
 import com.puresoltechnologies.parsers.preprocessor.Preprocessor;
+import com.puresoltechnologies.parsers.source.Fingerprint;
 
 /**
  * This class keeps the complete information about a single grammar including
@@ -35,6 +38,10 @@ public class Grammar implements Serializable {
     private final String parserClassName;
     private final boolean usesPreProcessor;
     private final boolean ignoreCase;
+    /**
+     * The fingerprint is calculated on first demand.
+     */
+    private transient volatile Fingerprint fingerprint = null;
 
     public Grammar(Properties options, TokenDefinitionSet tokenDefinitions,
 	    ProductionSet productions) throws GrammarException {
@@ -135,6 +142,61 @@ public class Grammar implements Serializable {
 	return ignoreCase;
     }
 
+    /**
+     * This method returns a fingerprint of the options, the token definitions
+     * and the productions of the grammar. In contrast to {@link #hashCode()},
+     * the fingerprint is the same in different JVMs and can be used for
+     * persistent keys of results which depend on the grammar, like cached
+     * parse trees. The grammar must not be changed after the first call.
+     * 
+     * @return The {@link Fingerprint} of the grammar is returned.
+     */
+    public final Fingerprint getFingerprint() {
+	Fingerprint result = fingerprint;
+	if (result == null) {
+	    result = Fingerprint.of(toFingerprintString());
+	    fingerprint = result;
+	}
+	return result;
+    }
+
+    /**
+     * This method creates a text with all properties of the grammar which
+     * influence the parse trees. The options are sorted, because the order
+     * of {@link Properties} is not defined.
+     */
+    private String toFingerprintString() {
+	StringBuilder buffer = new StringBuilder();
+	List<String> keys = new ArrayList<String>(
+		options.stringPropertyNames());
+	Collections.sort(keys);
+	for (String key : keys) {
+	    buffer.append("option\t").append(key).append('\t')
+		    .append(options.getProperty(key)).append('\n');
+	}
+	for (TokenDefinition definition : tokenDefinitions.getDefinitions()) {
+	    buffer.append("token\t").append(definition.getName()).append('\t')
+		    .append(definition.getPattern().pattern()).append('\t')
+		    .append(definition.getPattern().flags()).append('\t')
+		    .append(definition.getText()).append('\t')
+		    .append(definition.getVisibility()).append('\n');
+	}
+	for (Production production : productions.getList()) {
+	    buffer.append("production\t").append(production.getId())
+		    .append('\t').append(production.getName()).append('\t')
+		    .append(production.getAlternativeName()).append('\t')
+		    .append(production.isNode()).append('\t')
+		    .append(production.isStackingAllowed()).append('\t')
+		    .append(production.isCut()).append('\n');
+	    for (Construction construction : production.getConstructions()) {
+		buffer.append("construction\t")
+			.append(construction.getClass().getName()).append('\t')
+			.append(construction.toShortString()).append('\n');
+	    }
+	}
+	return buffer.toString();
+    }
+
     public Preprocessor createPreprocessor(ClassLoader classLoader)
 	    throws GrammarException {
 	try {
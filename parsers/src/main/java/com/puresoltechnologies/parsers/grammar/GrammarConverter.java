@@ -576,15 +576,22 @@ public class GrammarConverter {
 	ParseTreeNode options = productionConstruction
 		.getChild("ProductionOptions");
 	if (options != null) {
-	    for (ParseTreeNode option : options
+	    for (ParseTreeNode optionList : options
 		    .getChildren("ProductionOptionList")) {
-		if (option.hasChild("NODE")) {
-		    production.setNode(Boolean.valueOf(option.getChild(
-			    "BOOLEAN_LITERAL").getText()));
-		}
-		if (option.hasChild("STACK")) {
-		    production.setStackingAllowed(Boolean.valueOf(option
-			    .getChild("BOOLEAN_LITERAL").getText()));
+		for (ParseTreeNode option : optionList
+			.getChildren("ProductionOption")) {
+		    if (option.hasChild("NODE")) {
+			production.setNode(Boolean.valueOf(option.getChild(
+				"BOOLEAN_LITERAL").getText()));
+		    }
+		    if (option.hasChild("STACK")) {
+			production.setStackingAllowed(Boolean.valueOf(option
+				.getChild("BOOLEAN_LITERAL").getText()));
+		    }
+		    if (option.hasChild("CUT")) {
+			production.setCut(Boolean.valueOf(option.getChild(
+				"BOOLEAN_LITERAL").getText()));
+		    }
 		}
 	    }
 	}
@@ -12,4 +12,8 @@ public class GrammarException extends Exception {
 	super(message, exception);
     }
 
+    public GrammarException(String message, Throwable cause) {
+	super(message, cause);
+    }
+
 }
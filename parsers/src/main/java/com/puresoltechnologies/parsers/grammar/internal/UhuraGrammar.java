@@ -31,6 +31,11 @@ public class UhuraGrammar {
 	public static final String UHURA_GRAMMAR_KEYWORD_IGNORE = "ignore";
 	public static final String UHURA_GRAMMAR_KEYWORD_NODE = "node";
 	public static final String UHURA_GRAMMAR_KEYWORD_STACK = "stack";
+	/**
+	 * Like the other keywords, "cut" is a reserved word in grammar files, so
+	 * it cannot be used as the name of a token or a production anymore.
+	 */
+	public static final String UHURA_GRAMMAR_KEYWORD_CUT = "cut";
 
 	public static Grammar getGrammar() {
 		try {
@@ -108,6 +113,8 @@ public class UhuraGrammar {
 				UHURA_GRAMMAR_KEYWORD_NODE));
 		tokenDefinitions.addDefinition(new TokenDefinition("STACK",
 				UHURA_GRAMMAR_KEYWORD_STACK));
+		tokenDefinitions.addDefinition(new TokenDefinition("CUT",
+				UHURA_GRAMMAR_KEYWORD_CUT));
 	}
 
 	private static void addLiteralsAndIdentifier(
@@ -456,6 +463,12 @@ public class UhuraGrammar {
 		production.addConstruction(new Terminal("EQUALS", null));
 		production.addConstruction(new Terminal("BOOLEAN_LITERAL", null));
 		productions.add(production);
+
+		production = new Production("ProductionOption");
+		production.addConstruction(new Terminal("CUT", null));
+		production.addConstruction(new Terminal("EQUALS", null));
+		production.addConstruction(new Terminal("BOOLEAN_LITERAL", null));
+		productions.add(production);
 	}
 
 	private static void addQuantifiers(ProductionSet productions)
@@ -38,6 +38,17 @@ public class Production implements Serializable {
 	 */
 	private boolean stackingAllowed = true;
 
+	/**
+	 * This flag marks a cut after the first construction of this production.
+	 * Once the first construction was parsed, the parser commits to this
+	 * alternative: Other alternatives of the same production name are not
+	 * tried anymore and the result of this alternative is the result of the
+	 * production, even if it fails.
+	 * 
+	 * The default behavior is false.
+	 */
+	private boolean cut = false;
+
 	private boolean changed = true;
 	private int hashCode = 0;
 
@@ -134,6 +145,22 @@ public class Production implements Serializable {
 		changed = true;
 	}
 
+	/**
+	 * @return the cut
+	 */
+	public boolean isCut() {
+		return cut;
+	}
+
+	/**
+	 * @param cut
+	 *            the cut to set
+	 */
+	public void setCut(boolean cut) {
+		this.cut = cut;
+		changed = true;
+	}
+
 	@Override
 	public String toString() {
 		return toString(-1);
@@ -1,5 +1,6 @@
 package com.puresoltechnologies.parsers.lexer;
 
+import java.util.List;
 import java.util.regex.Matcher;
 
 import org.slf4j.Logger;
@@ -9,6 +10,11 @@ import com.puresoltechnologies.commons.types.StringUtils;
 import com.puresoltechnologies.parsers.grammar.Grammar;
 import com.puresoltechnologies.parsers.grammar.token.TokenDefinition;
 import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.metrics.Counter;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.metrics.MetricsSource;
+import com.puresoltechnologies.parsers.metrics.Phase;
+import com.puresoltechnologies.parsers.metrics.PhaseMetrics;
 import com.puresoltechnologies.parsers.source.SourceCode;
 import com.puresoltechnologies.parsers.source.SourceCodeLine;
 import com.puresoltechnologies.parsers.source.StringWithLocation;
@@ -19,7 +25,7 @@ import com.puresoltechnologies.parsers.source.StringWithLocation;
  * @author Rick-Rainer Ludwig
  * 
  */
-public class RegExpLexer implements Lexer {
+public class RegExpLexer implements Lexer, MetricsSource {
 
     private static final long serialVersionUID = -6858518460147748314L;
 
@@ -30,6 +36,7 @@ public class RegExpLexer implements Lexer {
 
     private TokenStream tokenStream = null;
     private SourceCode sourceCode = null;
+    private transient MetricsListener metricsListener = null;
 
     public RegExpLexer(Grammar grammar) {
 	this.grammar = grammar;
@@ -42,25 +49,65 @@ public class RegExpLexer implements Lexer {
 	return grammar;
     }
 
+    @Override
+    public void setMetricsListener(MetricsListener metricsListener) {
+	this.metricsListener = metricsListener;
+    }
+
+    @Override
+    public MetricsListener getMetricsListener() {
+	return metricsListener;
+    }
+
     @Override
     public TokenStream lex(SourceCode sourceCode) throws LexerException {
 	this.sourceCode = sourceCode;
-	return scan();
+	MetricsListener listener = metricsListener;
+	if (listener == null) {
+	    return scan(null);
+	}
+	PhaseMetrics metrics = new PhaseMetrics(Phase.LEXING, grammar.getName());
+	metrics.set(Counter.HIDDEN_TOKENS, 0);
+	boolean successful = false;
+	try {
+	    TokenStream result = scan(metrics);
+	    metrics.set(Counter.TOKENS, result.size());
+	    successful = true;
+	    return result;
+	} finally {
+	    metrics.finish(successful);
+	    listener.phaseFinished(metrics);
+	}
     }
 
-    private TokenStream scan() throws LexerException {
+    /**
+     * @param metrics
+     *            is the {@link PhaseMetrics} to count into or null.
+     */
+    private TokenStream scan(PhaseMetrics metrics) throws LexerException {
 	tokenStream = new TokenStream();
 	StringWithLocation fullText = new StringWithLocation(sourceCode);
-	StringBuffer text = new StringBuffer(fullText.getText());
+	String text = fullText.getText();
+	if (metrics != null) {
+	    metrics.set(Counter.CHARACTERS, text.length());
+	}
+	List<TokenDefinition> definitions = grammar.getTokenDefinitions()
+		.getDefinitions();
+	Matcher[] matchers = new Matcher[definitions.size()];
+	for (int i = 0; i < matchers.length; i++) {
+	    matchers[i] = definitions.get(i).getPattern().matcher(text);
+	}
 	int position = 0;
-	while (text.length() > 0) {
-	    Token token = findNextToken(text, fullText, position);
+	while (position < text.length()) {
+	    Token token = findNextToken(text, fullText, position, definitions,
+		    matchers);
 	    if ((token == null) || (token.getText().length() == 0)) {
 		String exceptionText;
-		if (text.length() <= 12) {
-		    exceptionText = text.toString();
+		if (text.length() - position <= 12) {
+		    exceptionText = text.substring(position);
 		} else {
-		    exceptionText = text.substring(0, 12) + "...";
+		    exceptionText = text.substring(position, position + 12)
+			    + "...";
 
 		}
 		SourceCodeLine sourceCodeLine = fullText.getSource(position);
@@ -77,21 +124,31 @@ public class RegExpLexer implements Lexer {
 	    }
 	    if (token.getVisibility() != Visibility.HIDDEN) {
 		tokenStream.add(token);
+	    } else if (metrics != null) {
+		metrics.increment(Counter.HIDDEN_TOKENS);
 	    }
-	    int length = token.getText().length();
-	    text = text.delete(0, length);
-	    position += length;
+	    position += token.getText().length();
 	}
 	return tokenStream;
     }
 
-    private Token findNextToken(StringBuffer text, StringWithLocation fullText,
-	    int position) {
+    /**
+     * This method looks for the longest token at the given position. The
+     * matchers work on a region of the complete text, so the text does not
+     * need to be copied. As the regions use anchoring, but no transparent
+     * bounds, the patterns see the same text as if the text before the
+     * position was removed. The matchers are only tried at the start of the
+     * region with {@link Matcher#lookingAt()} and they are reused for all
+     * positions, one for each token definition.
+     */
+    private Token findNextToken(String text, StringWithLocation fullText,
+	    int position, List<TokenDefinition> definitions, Matcher[] matchers) {
 	Token nextToken = null;
-	for (TokenDefinition definition : grammar.getTokenDefinitions()
-		.getDefinitions()) {
-	    Matcher matcher = definition.getPattern().matcher(text);
-	    if (!matcher.find()) {
+	for (int i = 0; i < matchers.length; i++) {
+	    TokenDefinition definition = definitions.get(i);
+	    Matcher matcher = matchers[i];
+	    matcher.region(position, text.length());
+	    if (!matcher.lookingAt()) {
 		continue;
 	    }
 	    String tokenText = matcher.group(0);
@@ -125,6 +182,7 @@ public class RegExpLexer implements Lexer {
 	} else {
 	    cloned.sourceCode = null;
 	}
+	cloned.metricsListener = metricsListener;
 	return cloned;
     }
 }
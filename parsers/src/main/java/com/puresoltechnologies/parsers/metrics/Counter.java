@@ -0,0 +1,45 @@
+package com.puresoltechnologies.parsers.metrics;
+
+/**
+ * This enum contains the counters which are reported in {@link PhaseMetrics}.
+ * Not every phase and not every implementation provides all counters.
+ */
+public enum Counter {
+
+    /**
+     * This is the number of characters of the processed text.
+     */
+    CHARACTERS,
+    /**
+     * This is the number of tokens in the token stream.
+     */
+    TOKENS,
+    /**
+     * This is the number of hidden tokens, which were found, but which are
+     * not put into the token stream.
+     */
+    HIDDEN_TOKENS,
+    /**
+     * This is the number of steps of an LR parser.
+     */
+    STEPS,
+    /**
+     * This is the number of backtracks of an LR parser or the number of failed
+     * alternatives of a packrat parser.
+     */
+    BACKTRACKS,
+    /**
+     * This is the number of results a packrat parser took out of its memo.
+     */
+    MEMO_HITS,
+    /**
+     * This is the number of nodes of the resulting parse tree.
+     */
+    TREE_NODES,
+    /**
+     * This is the maximum depth of the state stack of an LR parser or of the
+     * frame stack of a packrat parser.
+     */
+    MAX_STACK_DEPTH;
+
+}
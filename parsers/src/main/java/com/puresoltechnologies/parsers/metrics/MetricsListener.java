@@ -0,0 +1,20 @@
+package com.puresoltechnologies.parsers.metrics;
+
+/**
+ * This interface is implemented to receive the {@link PhaseMetrics} of
+ * analyses, for example to export throughput and latency histograms. The
+ * listener is called in the thread which ran the phase, so a listener which is
+ * registered at components used by several threads needs to be thread safe.
+ */
+public interface MetricsListener {
+
+    /**
+     * This method is called after a phase was finished, successfully or not.
+     * 
+     * @param metrics
+     *            are the {@link PhaseMetrics} of the phase. The object is not
+     *            changed afterwards and may be kept.
+     */
+    public void phaseFinished(PhaseMetrics metrics);
+
+}
@@ -0,0 +1,24 @@
+package com.puresoltechnologies.parsers.metrics;
+
+/**
+ * This interface is implemented by components which report
+ * {@link PhaseMetrics} to a {@link MetricsListener}. Without a listener, no
+ * metrics are collected at all.
+ */
+public interface MetricsSource {
+
+    /**
+     * This method sets the listener for the metrics.
+     * 
+     * @param metricsListener
+     *            is the {@link MetricsListener} to be called or null to stop
+     *            collecting metrics.
+     */
+    public void setMetricsListener(MetricsListener metricsListener);
+
+    /**
+     * @return The current {@link MetricsListener} is returned or null.
+     */
+    public MetricsListener getMetricsListener();
+
+}
@@ -0,0 +1,27 @@
+package com.puresoltechnologies.parsers.metrics;
+
+/**
+ * This enum contains the phases of an analysis which are reported to a
+ * {@link MetricsListener}.
+ */
+public enum Phase {
+
+    /**
+     * The source code is preprocessed.
+     */
+    PREPROCESSING,
+    /**
+     * The source code is split into tokens.
+     */
+    LEXING,
+    /**
+     * The tokens or the text are parsed into a parse tree.
+     */
+    PARSING,
+    /**
+     * This is the complete analysis of a source code including all other
+     * phases.
+     */
+    ANALYSIS;
+
+}
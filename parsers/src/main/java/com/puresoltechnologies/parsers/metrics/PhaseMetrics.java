@@ -0,0 +1,129 @@
+package com.puresoltechnologies.parsers.metrics;
+
+import java.util.Arrays;
+
+/**
+ * This class contains the duration and the counters of a single phase of an
+ * analysis. It is created at the start of the phase by the component which
+ * runs it, filled during the phase and handed to the {@link MetricsListener}
+ * after {@link #finish(boolean)}. Counters which were not counted by the
+ * component are returned as -1.
+ * 
+ * <b>This class is not thread safe!</b>
+ */
+public class PhaseMetrics {
+
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final Phase phase;
+    private final String grammarName;
+    private final long startTime;
+    private final long[] counters = new long[COUNTERS.length];
+    private long duration = -1;
+    private boolean successful = false;
+
+    /**
+     * Creates the metrics and starts the time measurement.
+     * 
+     * @param phase
+     *            is the {@link Phase} to be measured.
+     * @param grammarName
+     *            is the name of the grammar the phase runs with.
+     */
+    public PhaseMetrics(Phase phase, String grammarName) {
+	super();
+	this.phase = phase;
+	this.grammarName = grammarName;
+	Arrays.fill(counters, -1);
+	startTime = System.nanoTime();
+    }
+
+    public Phase getPhase() {
+	return phase;
+    }
+
+    public String getGrammarName() {
+	return grammarName;
+    }
+
+    /**
+     * @return The duration of the phase in nanoseconds is returned or -1 if
+     *         the phase is not finished, yet.
+     */
+    public long getDuration() {
+	return duration;
+    }
+
+    /**
+     * @return true is returned if the phase finished without exception.
+     */
+    public boolean isSuccessful() {
+	return successful;
+    }
+
+    /**
+     * @param counter
+     *            is the {@link Counter} to be returned.
+     * @return The value of the counter is returned or -1 if it was not
+     *         counted.
+     */
+    public long get(Counter counter) {
+	return counters[counter.ordinal()];
+    }
+
+    /**
+     * @param counter
+     *            is the {@link Counter} to be checked.
+     * @return true is returned if the counter was counted.
+     */
+    public boolean isCounted(Counter counter) {
+	return counters[counter.ordinal()] >= 0;
+    }
+
+    public void set(Counter counter, long value) {
+	counters[counter.ordinal()] = value;
+    }
+
+    public void increment(Counter counter) {
+	int index = counter.ordinal();
+	counters[index] = counters[index] < 0 ? 1 : counters[index] + 1;
+    }
+
+    /**
+     * This method sets the counter to the given value, if the value is larger
+     * than the current one.
+     */
+    public void max(Counter counter, long value) {
+	int index = counter.ordinal();
+	if (value > counters[index]) {
+	    counters[index] = value;
+	}
+    }
+
+    /**
+     * This method stops the time measurement.
+     * 
+     * @param successful
+     *            is to be set to true if the phase finished without
+     *            exception.
+     */
+    public void finish(boolean successful) {
+	duration = System.nanoTime() - startTime;
+	this.successful = successful;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder builder = new StringBuilder();
+	builder.append(phase).append(" (").append(grammarName).append("): ")
+		.append(duration).append("ns");
+	builder.append(successful ? "" : " failed");
+	for (Counter counter : COUNTERS) {
+	    if (isCounted(counter)) {
+		builder.append(", ").append(counter).append("=")
+			.append(get(counter));
+	    }
+	}
+	return builder.toString();
+    }
+}
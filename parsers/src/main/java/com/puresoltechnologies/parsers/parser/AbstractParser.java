@@ -4,13 +4,16 @@ import java.lang.reflect.Field;
 
 import com.puresoltechnologies.parsers.grammar.Grammar;
 import com.puresoltechnologies.parsers.lexer.TokenStream;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.metrics.MetricsSource;
 
-public abstract class AbstractParser implements Parser {
+public abstract class AbstractParser implements Parser, MetricsSource {
 
     private static final long serialVersionUID = 6779683403706893973L;
 
     private final Grammar grammar;
     private TokenStream tokenStream = null;
+    private transient MetricsListener metricsListener = null;
 
     public AbstractParser(Grammar grammar) {
 	super();
@@ -35,6 +38,16 @@ public abstract class AbstractParser implements Parser {
 	this.tokenStream = tokenStream;
     }
 
+    @Override
+    public void setMetricsListener(MetricsListener metricsListener) {
+	this.metricsListener = metricsListener;
+    }
+
+    @Override
+    public MetricsListener getMetricsListener() {
+	return metricsListener;
+    }
+
     @Override
     public Parser clone() {
 	try {
@@ -0,0 +1,43 @@
+package com.puresoltechnologies.parsers.parser;
+
+/**
+ * This is the base class of the {@link TreeCursor}s. It implements the
+ * depth-first walk of {@link #next()} with the primitive moves of the
+ * implementations.
+ */
+public abstract class AbstractTreeCursor implements TreeCursor {
+
+    private Event lastEvent = null;
+
+    @Override
+    public void reset() {
+	lastEvent = null;
+	moveToRoot();
+    }
+
+    /**
+     * This method moves the cursor to its root without changing the state of
+     * the walk.
+     */
+    protected abstract void moveToRoot();
+
+    @Override
+    public final Event next() {
+	if (lastEvent == null) {
+	    moveToRoot();
+	    lastEvent = Event.ENTER;
+	} else if (lastEvent == Event.ENTER) {
+	    lastEvent = firstChild() ? Event.ENTER : Event.EXIT;
+	} else if (lastEvent == Event.EXIT) {
+	    if (getDepth() == 0) {
+		lastEvent = Event.END;
+	    } else if (nextSibling()) {
+		lastEvent = Event.ENTER;
+	    } else {
+		parent();
+		lastEvent = Event.EXIT;
+	    }
+	}
+	return lastEvent;
+    }
+}
@@ -0,0 +1,495 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.lexer.TokenMetaData;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+import com.puresoltechnologies.trees.TreeException;
+
+/**
+ * This class is a compact, read-only representation of a parse tree. Instead
+ * of one {@link ParseTreeNode} object per node with its own children list and
+ * meta data object, all nodes are stored in parallel int arrays (structure of
+ * arrays). The nodes are numbered in pre-order, so the root has index 0 and
+ * the nodes of a sub tree follow their root directly.
+ *
+ * Node names, token names and source locations are stored once in tables and
+ * are referenced by index. A node with a token index of -1 does not have a
+ * token, a node with a source index of -1 does not have meta data.
+ *
+ * The tokens are numbered in pre-order, too, and are not kept as objects. Their
+ * texts are joined into one string, so the text of a sub tree is a substring of
+ * it, and the other fields are stored in parallel arrays. {@link Token}s are
+ * only created on demand by {@link #getToken(int)}.
+ *
+ * {@link CompactParseTreeNode}s are flyweight views to a single node which are
+ * created on demand and which provide the read methods of
+ * {@link ParseTreeNode}.
+ */
+public class CompactParseTree implements Serializable {
+
+    private static final long serialVersionUID = -2925301648215394032L;
+
+    private static final byte NODE_FLAG = 0x01;
+    private static final byte STACKING_ALLOWED_FLAG = 0x02;
+
+    /**
+     * Creates a compact parse tree out of a {@link ParseTreeNode} tree. The
+     * original tree is not changed and can be dropped afterwards.
+     *
+     * @param root
+     *            is the root node of the tree to be converted.
+     * @return A {@link CompactParseTree} is returned.
+     */
+    public static CompactParseTree create(ParseTreeNode root) {
+	int size = 0;
+	Deque<ParseTreeNode> stack = new ArrayDeque<ParseTreeNode>();
+	stack.push(root);
+	while (!stack.isEmpty()) {
+	    ParseTreeNode node = stack.pop();
+	    size++;
+	    for (ParseTreeNode child : node.getChildren()) {
+		stack.push(child);
+	    }
+	}
+	return new CompactParseTree(root, size);
+    }
+
+    private static final Visibility[] VISIBILITIES = Visibility.values();
+
+    private final String[] typeNames;
+    private final String[] tokenNames;
+    private final SourceCodeLocation[] sources;
+    private final String tokenText;
+
+    private final int[] types;
+    private final byte[] flags;
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] tokenIndices;
+    private final int[] sourceIndices;
+    private final int[] lines;
+    private final int[] lineNums;
+
+    private final int[] tokenNameIds;
+    private final int[] tokenTextStarts;
+    private final byte[] tokenVisibilities;
+    private final int[] tokenSourceIndices;
+    private final int[] tokenLines;
+    private final int[] tokenLineNums;
+    private final int[] tokenColumns;
+
+    private CompactParseTree(ParseTreeNode root, int size) {
+	super();
+	types = new int[size];
+	flags = new byte[size];
+	parents = new int[size];
+	firstChildren = new int[size];
+	nextSiblings = new int[size];
+	tokenIndices = new int[size];
+	sourceIndices = new int[size];
+	lines = new int[size];
+	lineNums = new int[size];
+	Arrays.fill(firstChildren, -1);
+	Arrays.fill(nextSiblings, -1);
+
+	Map<String, Integer> typeIds = new HashMap<String, Integer>();
+	List<String> typeNameList = new ArrayList<String>();
+	Map<String, Integer> tokenNameIdMap = new HashMap<String, Integer>();
+	List<String> tokenNameList = new ArrayList<String>();
+	StringBuilder tokenTextBuilder = new StringBuilder();
+	int tokenCount = 0;
+	/*
+	 * There are not more tokens than nodes, so the token arrays are
+	 * allocated with the number of nodes and are trimmed afterwards.
+	 */
+	int[] tokenNameIdArray = new int[size];
+	int[] tokenTextStartArray = new int[size + 1];
+	byte[] tokenVisibilityArray = new byte[size];
+	int[] tokenSourceIndexArray = new int[size];
+	int[] tokenLineArray = new int[size];
+	int[] tokenLineNumArray = new int[size];
+	int[] tokenColumnArray = new int[size];
+	Map<SourceCodeLocation, Integer> sourceIds = new HashMap<SourceCodeLocation, Integer>();
+	List<SourceCodeLocation> sourceList = new ArrayList<SourceCodeLocation>();
+
+	/*
+	 * The last child of each node is kept during construction to append the
+	 * next sibling. The children are pushed in reverse order so that the
+	 * nodes are popped (and numbered) in pre-order.
+	 */
+	int[] lastChildren = new int[size];
+	Deque<ParseTreeNode> nodeStack = new ArrayDeque<ParseTreeNode>();
+	Deque<Integer> parentStack = new ArrayDeque<Integer>();
+	nodeStack.push(root);
+	parentStack.push(-1);
+	int index = 0;
+	while (!nodeStack.isEmpty()) {
+	    ParseTreeNode node = nodeStack.pop();
+	    int parent = parentStack.pop();
+
+	    Integer typeId = typeIds.get(node.getName());
+	    if (typeId == null) {
+		typeId = typeNameList.size();
+		typeIds.put(node.getName(), typeId);
+		typeNameList.add(node.getName());
+	    }
+	    types[index] = typeId;
+	    flags[index] = (byte) ((node.isNode() ? NODE_FLAG : 0) | (node
+		    .isStackingAllowed() ? STACKING_ALLOWED_FLAG : 0));
+	    Token token = node.getToken();
+	    if (token != null) {
+		Integer tokenNameId = tokenNameIdMap.get(token.getName());
+		if (tokenNameId == null) {
+		    tokenNameId = tokenNameList.size();
+		    tokenNameIdMap.put(token.getName(), tokenNameId);
+		    tokenNameList.add(token.getName());
+		}
+		tokenNameIdArray[tokenCount] = tokenNameId;
+		tokenTextStartArray[tokenCount] = tokenTextBuilder.length();
+		tokenTextBuilder.append(token.getText());
+		Visibility visibility = token.getVisibility();
+		tokenVisibilityArray[tokenCount] = (byte) (visibility == null ? -1
+			: visibility.ordinal());
+		TokenMetaData tokenMetaData = token.getMetaData();
+		if (tokenMetaData != null) {
+		    tokenSourceIndexArray[tokenCount] = getSourceId(
+			    tokenMetaData.getSource(), sourceIds, sourceList);
+		    tokenLineArray[tokenCount] = tokenMetaData.getLine();
+		    tokenLineNumArray[tokenCount] = tokenMetaData.getLineNum();
+		    tokenColumnArray[tokenCount] = tokenMetaData.getColumn();
+		} else {
+		    tokenSourceIndexArray[tokenCount] = -1;
+		}
+		tokenIndices[index] = tokenCount;
+		tokenCount++;
+	    } else {
+		tokenIndices[index] = -1;
+	    }
+	    ParserTreeMetaData metaData = node.getMetaData();
+	    if (metaData != null) {
+		sourceIndices[index] = getSourceId(metaData.getSource(),
+			sourceIds, sourceList);
+		lines[index] = metaData.getLine();
+		lineNums[index] = metaData.getLineNum();
+	    } else {
+		sourceIndices[index] = -1;
+	    }
+
+	    parents[index] = parent;
+	    lastChildren[index] = -1;
+	    if (parent >= 0) {
+		if (lastChildren[parent] < 0) {
+		    firstChildren[parent] = index;
+		} else {
+		    nextSiblings[lastChildren[parent]] = index;
+		}
+		lastChildren[parent] = index;
+	    }
+
+	    List<ParseTreeNode> children = node.getChildren();
+	    for (int i = children.size() - 1; i >= 0; i--) {
+		nodeStack.push(children.get(i));
+		parentStack.push(index);
+	    }
+	    index++;
+	}
+	typeNames = typeNameList.toArray(new String[typeNameList.size()]);
+	tokenNames = tokenNameList.toArray(new String[tokenNameList.size()]);
+	sources = sourceList.toArray(new SourceCodeLocation[sourceList.size()]);
+	tokenText = tokenTextBuilder.toString();
+	tokenTextStartArray[tokenCount] = tokenText.length();
+	tokenNameIds = Arrays.copyOf(tokenNameIdArray, tokenCount);
+	tokenTextStarts = Arrays.copyOf(tokenTextStartArray, tokenCount + 1);
+	tokenVisibilities = Arrays.copyOf(tokenVisibilityArray, tokenCount);
+	tokenSourceIndices = Arrays.copyOf(tokenSourceIndexArray, tokenCount);
+	tokenLines = Arrays.copyOf(tokenLineArray, tokenCount);
+	tokenLineNums = Arrays.copyOf(tokenLineNumArray, tokenCount);
+	tokenColumns = Arrays.copyOf(tokenColumnArray, tokenCount);
+    }
+
+    /**
+     * @return The index of the source within the source table is returned.
+     *         The source is added to the table, if it is not in there, yet.
+     */
+    private static int getSourceId(SourceCodeLocation source,
+	    Map<SourceCodeLocation, Integer> sourceIds,
+	    List<SourceCodeLocation> sourceList) {
+	Integer sourceId = sourceIds.get(source);
+	if (sourceId == null) {
+	    sourceId = sourceList.size();
+	    sourceIds.put(source, sourceId);
+	    sourceList.add(source);
+	}
+	return sourceId;
+    }
+
+    /**
+     * @return The number of nodes within the tree is returned.
+     */
+    public int size() {
+	return types.length;
+    }
+
+    /**
+     * @return The view for the root node is returned.
+     */
+    public CompactParseTreeNode getRoot() {
+	return new CompactParseTreeNode(this, 0);
+    }
+
+    /**
+     * @param index
+     *            is the pre-order index of the node.
+     * @return A view for the node with the given index is returned.
+     */
+    public CompactParseTreeNode getNode(int index) {
+	if ((index < 0) || (index >= types.length)) {
+	    throw new IndexOutOfBoundsException("Node index " + index
+		    + " is out of range [0, " + types.length + ").");
+	}
+	return new CompactParseTreeNode(this, index);
+    }
+
+    /**
+     * @return The number of different node names within the tree is returned.
+     */
+    public int getTypeCount() {
+	return typeNames.length;
+    }
+
+    /**
+     * @param typeId
+     *            is the type id to look up.
+     * @return The node name for the given type id is returned.
+     */
+    public String getTypeName(int typeId) {
+	return typeNames[typeId];
+    }
+
+    /**
+     * @param name
+     *            is the node name to look up.
+     * @return The type id for the given node name is returned. If no node of
+     *         this name is in the tree, -1 is returned.
+     */
+    public int getTypeId(String name) {
+	for (int typeId = 0; typeId < typeNames.length; typeId++) {
+	    if (typeNames[typeId].equals(name)) {
+		return typeId;
+	    }
+	}
+	return -1;
+    }
+
+    public int getType(int index) {
+	return types[index];
+    }
+
+    public String getName(int index) {
+	return typeNames[types[index]];
+    }
+
+    public boolean isNode(int index) {
+	return (flags[index] & NODE_FLAG) != 0;
+    }
+
+    public boolean isStackingAllowed(int index) {
+	return (flags[index] & STACKING_ALLOWED_FLAG) != 0;
+    }
+
+    /**
+     * @return The index of the parent node is returned or -1 for the root.
+     */
+    public int getParent(int index) {
+	return parents[index];
+    }
+
+    /**
+     * @return The index of the first child is returned or -1 if there are no
+     *         children.
+     */
+    public int getFirstChild(int index) {
+	return firstChildren[index];
+    }
+
+    /**
+     * @return The index of the next sibling is returned or -1 if the node is
+     *         the last child of its parent.
+     */
+    public int getNextSibling(int index) {
+	return nextSiblings[index];
+    }
+
+    /**
+     * This method returns the index behind the sub tree of the given node. Due
+     * to the pre-order numbering the sub tree of a node consists of all nodes
+     * from the node's index (inclusive) to the returned index (exclusive).
+     *
+     * @param index
+     *            is the index of the node.
+     * @return The index behind the sub tree is returned.
+     */
+    public int getSubTreeEnd(int index) {
+	int current = index;
+	while (current >= 0) {
+	    if (nextSiblings[current] >= 0) {
+		return nextSiblings[current];
+	    }
+	    current = parents[current];
+	}
+	return types.length;
+    }
+
+    /**
+     * This method creates the token of the given node out of the token
+     * arrays. Each call returns a new, but equal {@link Token}.
+     *
+     * @return The token of the node is returned or null if the node has no
+     *         token.
+     */
+    public Token getToken(int index) {
+	int tokenIndex = tokenIndices[index];
+	if (tokenIndex < 0) {
+	    return null;
+	}
+	int visibility = tokenVisibilities[tokenIndex];
+	int sourceIndex = tokenSourceIndices[tokenIndex];
+	TokenMetaData metaData = sourceIndex < 0 ? null : new TokenMetaData(
+		sources[sourceIndex], tokenLines[tokenIndex],
+		tokenLineNums[tokenIndex], tokenColumns[tokenIndex]);
+	return new Token(tokenNames[tokenNameIds[tokenIndex]], getTokenText(
+		tokenIndex, tokenIndex + 1), visibility < 0 ? null
+		: VISIBILITIES[visibility], metaData);
+    }
+
+    /**
+     * @return The joined text of the tokens from the first token index
+     *         (inclusive) to the last token index (exclusive) is returned.
+     */
+    private String getTokenText(int firstToken, int lastToken) {
+	return tokenText.substring(tokenTextStarts[firstToken],
+		tokenTextStarts[lastToken]);
+    }
+
+    public ParserTreeMetaData getMetaData(int index) {
+	int sourceIndex = sourceIndices[index];
+	if (sourceIndex < 0) {
+	    return null;
+	}
+	return new ParserTreeMetaData(sources[sourceIndex], lines[index],
+		lineNums[index]);
+    }
+
+    /**
+     * @return The first line of the node is returned or 0 if the node has no
+     *         meta data.
+     */
+    public int getLine(int index) {
+	return lines[index];
+    }
+
+    /**
+     * @return The number of lines of the node is returned or 0 if the node has
+     *         no meta data.
+     */
+    public int getLineNum(int index) {
+	return lineNums[index];
+    }
+
+    /**
+     * @return The text of the sub tree of the given node is returned.
+     */
+    public String getText(int index) {
+	// The tokens of a sub tree are numbered consecutively.
+	int end = getSubTreeEnd(index);
+	int firstToken = -1;
+	int lastToken = -1;
+	for (int i = index; i < end; i++) {
+	    int tokenIndex = tokenIndices[i];
+	    if (tokenIndex >= 0) {
+		if (firstToken < 0) {
+		    firstToken = tokenIndex;
+		}
+		lastToken = tokenIndex;
+	    }
+	}
+	return firstToken < 0 ? "" : getTokenText(firstToken, lastToken + 1);
+    }
+
+    /**
+     * This method returns the only child with the given name.
+     *
+     * @return The index of the child is returned or -1 if there is no child
+     *         with this name.
+     * @throws TreeException
+     *             is thrown if there is more than one child with the given
+     *             name.
+     */
+    public int getChild(int index, String name) throws TreeException {
+	int result = -1;
+	for (int child = firstChildren[index]; child >= 0; child = nextSiblings[child]) {
+	    if (typeNames[types[child]].equals(name)) {
+		if (result >= 0) {
+		    throw new TreeException("Child '" + name
+			    + "'is multiply defined!");
+		}
+		result = child;
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * @return A new {@link TreeCursor} for the complete tree is returned.
+     */
+    public CompactParseTreeCursor cursor() {
+	return new CompactParseTreeCursor(this);
+    }
+
+    /**
+     * Converts this tree back into a tree of {@link ParseTreeNode}s.
+     *
+     * @return The root {@link ParseTreeNode} is returned.
+     */
+    public ParseTreeNode toParseTreeNode() {
+	return toParseTreeNode(0);
+    }
+
+    /**
+     * Converts the sub tree of the given node into a tree of
+     * {@link ParseTreeNode}s.
+     *
+     * @param index
+     *            is the index of the root of the sub tree.
+     * @return The root {@link ParseTreeNode} is returned.
+     */
+    public ParseTreeNode toParseTreeNode(int index) {
+	int end = getSubTreeEnd(index);
+	ParseTreeNode[] nodes = new ParseTreeNode[end - index];
+	try {
+	    for (int i = index; i < end; i++) {
+		ParseTreeNode node = new ParseTreeNode(getName(i), getToken(i),
+			isNode(i), isStackingAllowed(i));
+		node.setMetaData(getMetaData(i));
+		nodes[i - index] = node;
+		if (i > index) {
+		    nodes[parents[i] - index].addChild(node);
+		}
+	    }
+	} catch (TreeException e) {
+	    throw new RuntimeException("Could not create parse tree.", e);
+	}
+	return nodes[0];
+    }
+}
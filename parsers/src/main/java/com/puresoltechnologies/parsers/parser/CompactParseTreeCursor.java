@@ -0,0 +1,121 @@
+package com.puresoltechnologies.parsers.parser;
+
+import com.puresoltechnologies.parsers.lexer.Token;
+
+/**
+ * This is the {@link TreeCursor} for {@link CompactParseTree}s. The cursor only
+ * keeps the index of the current node and moves along the parent, first child
+ * and next sibling arrays of the tree, so no state besides the depth is
+ * needed.
+ */
+public class CompactParseTreeCursor extends AbstractTreeCursor {
+
+    private final CompactParseTree tree;
+    private final int root;
+    private final int[] typeIds;
+    private int current;
+    private int depth = 0;
+
+    /**
+     * Creates a cursor for the complete tree.
+     */
+    public CompactParseTreeCursor(CompactParseTree tree) {
+	this(tree, 0);
+    }
+
+    /**
+     * Creates a cursor for the sub tree of the node with the given index.
+     */
+    public CompactParseTreeCursor(CompactParseTree tree, int root) {
+	super();
+	if ((root < 0) || (root >= tree.size())) {
+	    throw new IndexOutOfBoundsException("Node index " + root
+		    + " is out of range [0, " + tree.size() + ").");
+	}
+	this.tree = tree;
+	this.root = root;
+	this.current = root;
+	/*
+	 * The type ids of the compact tree are local to the tree, so they are
+	 * mapped to the global type ids once.
+	 */
+	typeIds = new int[tree.getTypeCount()];
+	for (int typeId = 0; typeId < typeIds.length; typeId++) {
+	    typeIds[typeId] = ParseTreeNodeTypes.getTypeId(tree
+		    .getTypeName(typeId));
+	}
+    }
+
+    @Override
+    protected void moveToRoot() {
+	current = root;
+	depth = 0;
+    }
+
+    /**
+     * @return The pre-order index of the node the cursor points to is
+     *         returned.
+     */
+    public int getIndex() {
+	return current;
+    }
+
+    @Override
+    public boolean firstChild() {
+	int child = tree.getFirstChild(current);
+	if (child < 0) {
+	    return false;
+	}
+	current = child;
+	depth++;
+	return true;
+    }
+
+    @Override
+    public boolean nextSibling() {
+	if (depth == 0) {
+	    return false;
+	}
+	int sibling = tree.getNextSibling(current);
+	if (sibling < 0) {
+	    return false;
+	}
+	current = sibling;
+	return true;
+    }
+
+    @Override
+    public boolean parent() {
+	if (depth == 0) {
+	    return false;
+	}
+	current = tree.getParent(current);
+	depth--;
+	return true;
+    }
+
+    @Override
+    public int getDepth() {
+	return depth;
+    }
+
+    @Override
+    public String getName() {
+	return tree.getName(current);
+    }
+
+    @Override
+    public int getTypeId() {
+	return typeIds[tree.getType(current)];
+    }
+
+    @Override
+    public Token getToken() {
+	return tree.getToken(current);
+    }
+
+    @Override
+    public boolean hasChildren() {
+	return tree.getFirstChild(current) >= 0;
+    }
+}
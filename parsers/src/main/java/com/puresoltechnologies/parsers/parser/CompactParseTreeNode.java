@@ -0,0 +1,197 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.trees.TreeException;
+import com.puresoltechnologies.trees.TreeLink;
+import com.puresoltechnologies.trees.TreeNode;
+
+/**
+ * This is a flyweight view to a single node of a {@link CompactParseTree}. It
+ * only keeps a reference to the tree and the index of the node, so views can
+ * be created on demand and dropped right after use. Two views are equal if
+ * they point to the same node of the same tree.
+ *
+ * The read methods are the same as for {@link ParseTreeNode}, so code which
+ * only navigates parse trees can work on views as well.
+ */
+public class CompactParseTreeNode implements TreeNode<CompactParseTreeNode> {
+
+    private final CompactParseTree tree;
+    private final int index;
+
+    CompactParseTreeNode(CompactParseTree tree, int index) {
+	super();
+	this.tree = tree;
+	this.index = index;
+    }
+
+    /**
+     * @return The {@link CompactParseTree} this view belongs to is returned.
+     */
+    public CompactParseTree getTree() {
+	return tree;
+    }
+
+    /**
+     * @return The pre-order index of the node within its tree is returned.
+     */
+    public int getIndex() {
+	return index;
+    }
+
+    @Override
+    public String getName() {
+	return tree.getName(index);
+    }
+
+    public Token getToken() {
+	return tree.getToken(index);
+    }
+
+    @Override
+    public CompactParseTreeNode getParent() {
+	int parent = tree.getParent(index);
+	return parent < 0 ? null : new CompactParseTreeNode(tree, parent);
+    }
+
+    public CompactParseTreeNode getRoot() {
+	return new CompactParseTreeNode(tree, 0);
+    }
+
+    @Override
+    public boolean hasChildren() {
+	return tree.getFirstChild(index) >= 0;
+    }
+
+    @Override
+    public List<CompactParseTreeNode> getChildren() {
+	List<CompactParseTreeNode> children = new ArrayList<CompactParseTreeNode>();
+	for (int child = tree.getFirstChild(index); child >= 0; child = tree
+		.getNextSibling(child)) {
+	    children.add(new CompactParseTreeNode(tree, child));
+	}
+	return children;
+    }
+
+    @Override
+    public Set<TreeLink<CompactParseTreeNode>> getEdges() {
+	Set<TreeLink<CompactParseTreeNode>> edges = new HashSet<>();
+	edges.add(new TreeLink<>(getParent(), this));
+	for (CompactParseTreeNode child : getChildren()) {
+	    edges.add(new TreeLink<CompactParseTreeNode>(this, child));
+	}
+	return edges;
+    }
+
+    /**
+     * This method returns the child with the given name from this node.
+     *
+     * @param name
+     *            is the name of the child.
+     * @return The child is returned if found. Otherwise null is returned.
+     * @throws TreeException
+     *             is thrown if there is more than one child with the given
+     *             name.
+     */
+    public CompactParseTreeNode getChild(String name) throws TreeException {
+	int child = tree.getChild(index, name);
+	return child < 0 ? null : new CompactParseTreeNode(tree, child);
+    }
+
+    /**
+     * @param name
+     *            is the name of the children.
+     * @return the children
+     */
+    public List<CompactParseTreeNode> getChildren(String name) {
+	List<CompactParseTreeNode> result = new ArrayList<CompactParseTreeNode>();
+	for (int child = tree.getFirstChild(index); child >= 0; child = tree
+		.getNextSibling(child)) {
+	    if (tree.getName(child).equals(name)) {
+		result.add(new CompactParseTreeNode(tree, child));
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * This method look for a child with a given name.
+     *
+     * @param name
+     *            is the name to look for.
+     * @return true is returned in case a child with the specified name exists.
+     */
+    public boolean hasChild(String name) {
+	for (int child = tree.getFirstChild(index); child >= 0; child = tree
+		.getNextSibling(child)) {
+	    if (tree.getName(child).equals(name)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    public boolean isNode() {
+	return tree.isNode(index);
+    }
+
+    public boolean isStackingAllowed() {
+	return tree.isStackingAllowed(index);
+    }
+
+    public List<CompactParseTreeNode> getSubTrees(String name) {
+	List<CompactParseTreeNode> subTrees = new ArrayList<CompactParseTreeNode>();
+	int end = tree.getSubTreeEnd(index);
+	for (int i = index; i < end; i++) {
+	    if (tree.getName(i).equals(name)) {
+		subTrees.add(new CompactParseTreeNode(tree, i));
+	    }
+	}
+	return subTrees;
+    }
+
+    public String getText() {
+	return tree.getText(index);
+    }
+
+    public ParserTreeMetaData getMetaData() {
+	return tree.getMetaData(index);
+    }
+
+    /**
+     * Converts the sub tree of this node into a tree of {@link ParseTreeNode}
+     * s.
+     *
+     * @return The root {@link ParseTreeNode} is returned.
+     */
+    public ParseTreeNode toParseTreeNode() {
+	return tree.toParseTreeNode(index);
+    }
+
+    @Override
+    public int hashCode() {
+	return System.identityHashCode(tree) * 31 + index;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (this == obj)
+	    return true;
+	if (obj == null)
+	    return false;
+	if (getClass() != obj.getClass())
+	    return false;
+	CompactParseTreeNode other = (CompactParseTreeNode) obj;
+	return (tree == other.tree) && (index == other.index);
+    }
+
+    @Override
+    public String toString() {
+	return getName() + " \"" + getText() + "\"";
+    }
+}
@@ -0,0 +1,177 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * This class walks a {@link ParseTreeNode} tree in parallel on a
+ * {@link ForkJoinPool}. A visitor function is applied to each node and the
+ * results are merged with a combiner. This is meant for analysis passes like
+ * metrics or dependency extraction over the large trees of huge files.
+ * </p>
+ * <p>
+ * Each task walks its sub tree with a {@link ParseTreeNodeCursor} and forks
+ * the sub trees which have at least the threshold size, but which are at most
+ * half the size of the task's own sub tree. So long chains of single children
+ * are walked within one task and the nesting of tasks stays logarithmic.
+ * Trees smaller than the threshold are walked in the calling thread.
+ * </p>
+ * <p>
+ * The results are combined in pre-order, so the combiner only needs to be
+ * associative, not commutative. Results which are null are skipped. The
+ * visitor and the combiner are called concurrently and must be thread safe.
+ * The tree must not be changed during the walk.
+ * </p>
+ */
+public class ParallelTreeWalker {
+
+    /**
+     * This is the default minimum size of a sub tree to be forked.
+     */
+    public static final int DEFAULT_THRESHOLD = 4096;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Creates a walker on the common pool with the default threshold.
+     */
+    public ParallelTreeWalker() {
+	this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param pool
+     *            is the {@link ForkJoinPool} to run the tasks on.
+     * @param threshold
+     *            is the minimum number of nodes of a sub tree to be walked in
+     *            a task of its own.
+     */
+    public ParallelTreeWalker(ForkJoinPool pool, int threshold) {
+	super();
+	if (threshold < 1) {
+	    throw new IllegalArgumentException("Threshold must be positive, but is "
+		    + threshold + ".");
+	}
+	this.pool = pool;
+	this.threshold = threshold;
+    }
+
+    public int getThreshold() {
+	return threshold;
+    }
+
+    /**
+     * This method walks the sub tree of the given node.
+     *
+     * @param root
+     *            is the root of the sub tree to be walked.
+     * @param visitor
+     *            is called for each node and returns the result for the node
+     *            or null.
+     * @param combiner
+     *            merges the results of two parts of the tree. It is called
+     *            with the result of the part which comes first in pre-order as
+     *            first argument.
+     * @return The combined result of all nodes is returned or null if all
+     *         nodes returned null.
+     */
+    public <T> T walk(ParseTreeNode root,
+	    Function<ParseTreeNode, T> visitor, BinaryOperator<T> combiner) {
+	/*
+	 * The sizes of the sub trees are looked up in the tree index, which is
+	 * created here once before the tasks start.
+	 */
+	int size = root.getSubTreeSize();
+	SubTreeTask<T> task = new SubTreeTask<T>(root, size, visitor, combiner);
+	if (size < threshold) {
+	    return task.compute();
+	}
+	return pool.invoke(task);
+    }
+
+    /**
+     * This task walks one sub tree and forks the large sub trees within.
+     */
+    private class SubTreeTask<T> extends RecursiveTask<T> {
+
+	private static final long serialVersionUID = 5236930838464716421L;
+
+	private final ParseTreeNode root;
+	private final int size;
+	private final Function<ParseTreeNode, T> visitor;
+	private final BinaryOperator<T> combiner;
+
+	private SubTreeTask(ParseTreeNode root, int size,
+		Function<ParseTreeNode, T> visitor, BinaryOperator<T> combiner) {
+	    super();
+	    this.root = root;
+	    this.size = size;
+	    this.visitor = visitor;
+	    this.combiner = combiner;
+	}
+
+	@Override
+	protected T compute() {
+	    /*
+	     * The results of the nodes walked here are combined into segments.
+	     * segments.get(i) is the result before the forked task i.
+	     */
+	    List<T> segments = new ArrayList<T>();
+	    List<SubTreeTask<T>> tasks = new ArrayList<SubTreeTask<T>>();
+	    T result = visitor.apply(root);
+	    ParseTreeNodeCursor cursor = root.cursor();
+	    boolean descend = true;
+	    while (true) {
+		if (!descend || !cursor.firstChild()) {
+		    while (!cursor.nextSibling()) {
+			if (!cursor.parent()) {
+			    break;
+			}
+		    }
+		    if (cursor.getDepth() == 0) {
+			break;
+		    }
+		}
+		ParseTreeNode node = cursor.getNode();
+		int nodeSize = node.getSubTreeSize();
+		if ((nodeSize >= threshold) && (nodeSize <= size / 2)) {
+		    SubTreeTask<T> task = new SubTreeTask<T>(node, nodeSize,
+			    visitor, combiner);
+		    task.fork();
+		    segments.add(result);
+		    tasks.add(task);
+		    result = null;
+		    descend = false;
+		} else {
+		    result = combine(result, visitor.apply(node));
+		    descend = true;
+		}
+	    }
+	    if (tasks.isEmpty()) {
+		return result;
+	    }
+	    T combined = null;
+	    for (int i = 0; i < tasks.size(); i++) {
+		combined = combine(combined, segments.get(i));
+		combined = combine(combined, tasks.get(i).join());
+	    }
+	    return combine(combined, result);
+	}
+
+	private T combine(T first, T second) {
+	    if (first == null) {
+		return second;
+	    }
+	    if (second == null) {
+		return first;
+	    }
+	    return combiner.apply(first, second);
+	}
+    }
+}
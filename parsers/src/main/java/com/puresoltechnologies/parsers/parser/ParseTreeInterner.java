@@ -0,0 +1,129 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+
+/**
+ * <p>
+ * This class hash-conses parse trees: Identical sub trees are replaced by a
+ * single, immutable {@link SharedParseTreeNode} instance. Generated or
+ * templated sources contain many identical sub trees like repeated constant
+ * expressions or boilerplate declarations, which are stored only once this
+ * way. Trees are shared with {@link #share(ParseTreeNode)}, which also keeps
+ * the positions of the nodes in the overlay of the returned
+ * {@link SharedParseTree}.
+ * </p>
+ * <p>
+ * An interner can be used for many trees, so that identical sub trees are also
+ * shared between different files. The interned nodes are only weakly
+ * referenced and are dropped as soon as no {@link SharedParseTree} uses them
+ * anymore. This class is thread safe.
+ * </p>
+ */
+public class ParseTreeInterner {
+
+    private final Map<SharedParseTreeNode, WeakReference<SharedParseTreeNode>> nodes = new WeakHashMap<SharedParseTreeNode, WeakReference<SharedParseTreeNode>>();
+
+    /**
+     * This method converts the tree with the given root into a
+     * {@link SharedParseTree}. The original tree is not changed.
+     *
+     * @param root
+     *            is the root of the tree to be shared.
+     * @return A {@link SharedParseTree} is returned.
+     */
+    public SharedParseTree share(ParseTreeNode root) {
+	SharedParseTree.Builder overlay = new SharedParseTree.Builder(
+		root.getSourceText());
+	/*
+	 * The nodes are numbered in pre-order for the overlay, but they are
+	 * interned in post-order, because a node can only be interned after
+	 * all its children.
+	 */
+	List<ParseTreeNode> nodeStack = new ArrayList<ParseTreeNode>();
+	List<Integer> childIndices = new ArrayList<Integer>();
+	List<List<SharedParseTreeNode>> childrenStack = new ArrayList<List<SharedParseTreeNode>>();
+	SharedParseTreeNode sharedRoot = null;
+	ParseTreeNode node = root;
+	while (node != null) {
+	    overlay.add(node);
+	    nodeStack.add(node);
+	    childIndices.add(0);
+	    childrenStack.add(new ArrayList<SharedParseTreeNode>(node
+		    .getChildren().size()));
+	    node = null;
+	    while (!nodeStack.isEmpty()) {
+		int last = nodeStack.size() - 1;
+		ParseTreeNode current = nodeStack.get(last);
+		List<ParseTreeNode> children = current.getChildren();
+		int childIndex = childIndices.get(last);
+		if (childIndex < children.size()) {
+		    childIndices.set(last, childIndex + 1);
+		    node = children.get(childIndex);
+		    break;
+		}
+		SharedParseTreeNode shared = intern(current,
+			childrenStack.get(last));
+		nodeStack.remove(last);
+		childIndices.remove(last);
+		childrenStack.remove(last);
+		if (last > 0) {
+		    childrenStack.get(last - 1).add(shared);
+		} else {
+		    sharedRoot = shared;
+		}
+	    }
+	}
+	return overlay.build(sharedRoot);
+    }
+
+    private SharedParseTreeNode intern(ParseTreeNode node,
+	    List<SharedParseTreeNode> children) {
+	Token token = node.getToken();
+	String tokenName = null;
+	String tokenText = null;
+	Visibility visibility = null;
+	if (token != null) {
+	    tokenName = token.getName();
+	    tokenText = token.getText();
+	    visibility = token.getVisibility();
+	}
+	return intern(new SharedParseTreeNode(node.getName(), tokenName,
+		tokenText, visibility, node.isNode(),
+		node.isStackingAllowed(), children));
+    }
+
+    private synchronized SharedParseTreeNode intern(SharedParseTreeNode node) {
+	WeakReference<SharedParseTreeNode> reference = nodes.get(node);
+	if (reference != null) {
+	    SharedParseTreeNode interned = reference.get();
+	    if (interned != null) {
+		return interned;
+	    }
+	}
+	nodes.put(node, new WeakReference<SharedParseTreeNode>(node));
+	return node;
+    }
+
+    /**
+     * @return The number of distinct sub trees currently held by this
+     *         interner is returned.
+     */
+    public synchronized int size() {
+	return nodes.size();
+    }
+
+    /**
+     * This method removes all interned nodes. Trees which were shared before
+     * keep their nodes, but new trees do not share nodes with them anymore.
+     */
+    public synchronized void clear() {
+	nodes.clear();
+    }
+}
@@ -1,9 +1,16 @@
 package com.puresoltechnologies.parsers.parser;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.puresoltechnologies.parsers.grammar.production.Production;
@@ -29,10 +36,22 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
 
     private static final long serialVersionUID = -651453440127029204L;
 
+    /**
+     * This is the number of children from which on a child index is created
+     * for the lookup of children by name. For less children a linear scan
+     * over the type ids is faster.
+     */
+    private static final int CHILD_INDEX_THRESHOLD = 8;
+
     /**
      * This is the name of the token.
      */
     private final String name;
+    /**
+     * This is the interned type id of {@link #name}. See
+     * {@link ParseTreeNodeTypes}.
+     */
+    private transient int typeId;
     /**
      * Is the token which is assigned to this node.
      */
@@ -62,11 +81,39 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
      * This field contains the meta information of the node.
      */
     private ParserTreeMetaData metaData = null;
+    /**
+     * This field contains the source text the node was parsed from, if the
+     * text range of the node is known. The text of the node is then the
+     * range from {@link #startOffset} (inclusive) to {@link #endOffset}
+     * (exclusive) of this text. All nodes of a tree share the same source
+     * text instance, so the complete source text is kept alive as long as a
+     * single node of the tree is referenced, even a small sub tree. See
+     * {@link #clearTextRanges()} to drop it.
+     */
+    private String sourceText = null;
+    private int startOffset = -1;
+    private int endOffset = -1;
+    /**
+     * This is the lazily created index of the children by type id. It is only
+     * created for nodes with at least {@link #CHILD_INDEX_THRESHOLD}
+     * children.
+     */
+    private transient volatile Map<Integer, List<ParseTreeNode>> childIndex = null;
+    /**
+     * This is the index of the tree this node belongs to. It is created on
+     * demand by the root node for {@link #getSubTrees(String)} and it is
+     * shared by all nodes of the tree together with their pre-order number
+     * and the end of their sub tree.
+     */
+    private transient volatile TreeIndex treeIndex = null;
+    private transient int preOrderIndex;
+    private transient int subTreeEnd;
 
     public ParseTreeNode(Token token) {
 	super();
 	this.name = token.getName();
 	this.token = token;
+	this.typeId = typeIdOf(name);
 	this.node = true;
 	this.stackingAllowed = true;
     }
@@ -74,6 +121,7 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
     public ParseTreeNode(Production production) {
 	this.name = production.getAlternativeName();
 	this.token = null;
+	this.typeId = typeIdOf(name);
 	this.node = production.isNode();
 	this.stackingAllowed = production.isStackingAllowed();
     }
@@ -81,6 +129,7 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
     public ParseTreeNode(String name) {
 	this.name = name;
 	this.token = null;
+	this.typeId = typeIdOf(name);
 	this.node = true;
 	this.stackingAllowed = true;
     }
@@ -89,10 +138,21 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
 	    boolean stackingAllowed) {
 	this.name = name;
 	this.token = token;
+	this.typeId = typeIdOf(name);
 	this.node = node;
 	this.stackingAllowed = stackingAllowed;
     }
 
+    private static int typeIdOf(String name) {
+	return name != null ? ParseTreeNodeTypes.getTypeId(name) : -1;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+	    ClassNotFoundException {
+	in.defaultReadObject();
+	typeId = typeIdOf(name);
+    }
+
     /**
      * @return the name
      */
@@ -108,11 +168,20 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
 	return token;
     }
 
+    /**
+     * @return The interned type id of the name of this node is returned. See
+     *         {@link ParseTreeNodeTypes}.
+     */
+    public int getTypeId() {
+	return typeId;
+    }
+
     /**
      * @param parent
      *            the parent to set
      */
     public void setParent(ParseTreeNode parent) {
+	invalidateTreeIndex();
 	this.parent = parent;
     }
 
@@ -156,11 +225,13 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
     }
 
     public void addChild(ParseTreeNode child) throws TreeException {
+	childrenChanged();
 	children.add(child);
 	child.setParent(this);
     }
 
     public void addChildren(List<ParseTreeNode> children) throws TreeException {
+	childrenChanged();
 	this.children.addAll(children);
 	for (ParseTreeNode child : children) {
 	    child.setParent(this);
@@ -168,12 +239,14 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
     }
 
     public void addChildInFront(ParseTreeNode child) throws TreeException {
+	childrenChanged();
 	children.add(0, child);
 	child.setParent(this);
     }
 
     public void addChildrenInFront(List<ParseTreeNode> children)
 	    throws TreeException {
+	childrenChanged();
 	this.children.addAll(0, children);
 	for (ParseTreeNode child : children) {
 	    child.setParent(this);
@@ -194,9 +267,25 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
      *             name.
      */
     public ParseTreeNode getChild(String name) throws TreeException {
+	int typeId = ParseTreeNodeTypes.findTypeId(name);
+	if (typeId < 0) {
+	    return null;
+	}
+	Map<Integer, List<ParseTreeNode>> childIndex = getChildIndex();
+	if (childIndex != null) {
+	    List<ParseTreeNode> result = childIndex.get(typeId);
+	    if (result == null) {
+		return null;
+	    }
+	    if (result.size() > 1) {
+		throw new TreeException("Child '" + name
+			+ "'is multiply defined!");
+	    }
+	    return result.get(0);
+	}
 	ParseTreeNode result = null;
 	for (ParseTreeNode child : children) {
-	    if (child.getName().equals(name)) {
+	    if (child.typeId == typeId) {
 		if (result != null) {
 		    throw new TreeException("Child '" + name
 			    + "'is multiply defined!");
@@ -216,8 +305,20 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
      */
     public List<ParseTreeNode> getChildren(String name) throws TreeException {
 	List<ParseTreeNode> result = new ArrayList<ParseTreeNode>();
+	int typeId = ParseTreeNodeTypes.findTypeId(name);
+	if (typeId < 0) {
+	    return result;
+	}
+	Map<Integer, List<ParseTreeNode>> childIndex = getChildIndex();
+	if (childIndex != null) {
+	    List<ParseTreeNode> indexed = childIndex.get(typeId);
+	    if (indexed != null) {
+		result.addAll(indexed);
+	    }
+	    return result;
+	}
 	for (ParseTreeNode child : children) {
-	    if (child.getName().equals(name)) {
+	    if (child.typeId == typeId) {
 		result.add(child);
 	    }
 	}
@@ -232,14 +333,60 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
      * @return true is returned in case a child with the specified name exists.
      */
     public boolean hasChild(String name) {
+	return hasChild(ParseTreeNodeTypes.findTypeId(name));
+    }
+
+    /**
+     * This method look for a child with a given type id.
+     * 
+     * @param typeId
+     *            is the type id to look for. See {@link ParseTreeNodeTypes}.
+     * @return true is returned in case a child with the specified type id
+     *         exists.
+     */
+    public boolean hasChild(int typeId) {
+	if (typeId < 0) {
+	    return false;
+	}
+	Map<Integer, List<ParseTreeNode>> childIndex = getChildIndex();
+	if (childIndex != null) {
+	    return childIndex.containsKey(typeId);
+	}
 	for (ParseTreeNode child : children) {
-	    if (child.getName().equals(name)) {
+	    if (child.typeId == typeId) {
 		return true;
 	    }
 	}
 	return false;
     }
 
+    /**
+     * This method returns the index of the children by type id. The index is
+     * created on first use for wide nodes only.
+     * 
+     * @return The index is returned or null if this node has less than
+     *         {@link #CHILD_INDEX_THRESHOLD} children.
+     */
+    private Map<Integer, List<ParseTreeNode>> getChildIndex() {
+	if (children.size() < CHILD_INDEX_THRESHOLD) {
+	    return null;
+	}
+	Map<Integer, List<ParseTreeNode>> index = childIndex;
+	if (index == null) {
+	    index = new HashMap<Integer, List<ParseTreeNode>>();
+	    for (ParseTreeNode child : children) {
+		List<ParseTreeNode> list = index.get(child.typeId);
+		if (list == null) {
+		    list = new ArrayList<ParseTreeNode>(1);
+		    index.put(child.typeId, list);
+		}
+		list.add(child);
+	    }
+	    childIndex = index;
+	}
+	return index;
+    }
+
     /**
      * Returns whether this node is allowed to stay as node during tree
      * normalization or not. Have a look to {@link #node} for more details on
@@ -261,33 +408,230 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
 	return stackingAllowed;
     }
 
+    /**
+     * @return A new {@link TreeCursor} for the sub tree of this node is
+     *         returned.
+     */
+    public ParseTreeNodeCursor cursor() {
+	return new ParseTreeNodeCursor(this);
+    }
+
+    /**
+     * This method counts the nodes of the sub tree of this node including the
+     * node itself with a {@link ParseTreeNodeCursor}. In contrast to
+     * {@link #getSubTreeSize()}, no index is created and kept, so this method
+     * is meant for trees which are only counted once like in the metrics.
+     *
+     * @return The number of nodes is returned.
+     */
+    public int countNodes() {
+	ParseTreeNodeCursor cursor = cursor();
+	int count = 0;
+	TreeCursor.Event event;
+	while ((event = cursor.next()) != TreeCursor.Event.END) {
+	    if (event == TreeCursor.Event.ENTER) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * This method returns all nodes with the given name within the sub tree of
+     * this node including the node itself in pre-order. The nodes are looked
+     * up in an index of the whole tree which is created on first use and
+     * which is dropped again as soon as the tree is changed.
+     * 
+     * @param name
+     *            is the name of the nodes to look for.
+     * @return A {@link List} of nodes is returned.
+     */
     public List<ParseTreeNode> getSubTrees(String name) {
 	List<ParseTreeNode> subTrees = new ArrayList<ParseTreeNode>();
-	getSubTrees(this, subTrees, name);
+	int typeId = ParseTreeNodeTypes.findTypeId(name);
+	if (typeId < 0) {
+	    return subTrees;
+	}
+	List<ParseTreeNode> nodes = getValidTreeIndex().nodesByType.get(typeId);
+	if (nodes == null) {
+	    return subTrees;
+	}
+	for (int i = findFirstInSubTree(nodes); i < nodes.size(); i++) {
+	    ParseTreeNode node = nodes.get(i);
+	    if (node.preOrderIndex >= subTreeEnd) {
+		break;
+	    }
+	    subTrees.add(node);
+	}
 	return subTrees;
     }
 
-    private void getSubTrees(ParseTreeNode branch, List<ParseTreeNode> subTrees,
-	    String name) {
-	if (branch.getName().equals(name)) {
-	    subTrees.add(branch);
+    /**
+     * This method checks whether the sub tree of this node including the node
+     * itself contains a node of the given type. The check uses the same index
+     * as {@link #getSubTrees(String)} and is logarithmic in the number of
+     * nodes of this type.
+     * 
+     * @param typeId
+     *            is the type id to look for. See {@link ParseTreeNodeTypes}.
+     * @return true is returned if a node of the given type is found.
+     */
+    public boolean containsType(int typeId) {
+	if (typeId < 0) {
+	    return false;
+	}
+	List<ParseTreeNode> nodes = getValidTreeIndex().nodesByType.get(typeId);
+	if (nodes == null) {
+	    return false;
+	}
+	int first = findFirstInSubTree(nodes);
+	return (first < nodes.size())
+		&& (nodes.get(first).preOrderIndex < subTreeEnd);
+    }
+
+    /**
+     * This method returns the number of nodes of the sub tree of this node
+     * including the node itself. The size is taken from the same index as
+     * {@link #getSubTrees(String)}.
+     * 
+     * @return The size of the sub tree is returned.
+     */
+    public int getSubTreeSize() {
+	getValidTreeIndex();
+	return subTreeEnd - preOrderIndex;
+    }
+
+    /**
+     * This method looks for the first node of the given pre-order list which
+     * is not before this node.
+     */
+    private int findFirstInSubTree(List<ParseTreeNode> nodes) {
+	int low = 0;
+	int high = nodes.size();
+	while (low < high) {
+	    int middle = (low + high) >>> 1;
+	    if (nodes.get(middle).preOrderIndex < preOrderIndex) {
+		low = middle + 1;
+	    } else {
+		high = middle;
+	    }
+	}
+	return low;
+    }
+
+    /**
+     * This method returns the index of the tree this node belongs to. The
+     * root only needs to be looked up, if there is no valid index, yet.
+     */
+    private TreeIndex getValidTreeIndex() {
+	TreeIndex index = treeIndex;
+	if ((index != null) && index.valid) {
+	    return index;
+	}
+	return getRoot().getTreeIndex();
+    }
+
+    /**
+     * This method returns the index of the tree with this node as root. If
+     * there is no valid index, it is created.
+     */
+    private synchronized TreeIndex getTreeIndex() {
+	if ((treeIndex != null) && treeIndex.valid && (treeIndex.root == this)) {
+	    return treeIndex;
+	}
+	TreeIndex index = new TreeIndex(this);
+	List<ParseTreeNode> nodeStack = new ArrayList<ParseTreeNode>();
+	List<Integer> childIndices = new ArrayList<Integer>();
+	int counter = 0;
+	ParseTreeNode node = this;
+	while (node != null) {
+	    node.preOrderIndex = counter++;
+	    List<ParseTreeNode> nodes = index.nodesByType.get(node.typeId);
+	    if (nodes == null) {
+		nodes = new ArrayList<ParseTreeNode>();
+		index.nodesByType.put(node.typeId, nodes);
+	    }
+	    nodes.add(node);
+	    nodeStack.add(node);
+	    childIndices.add(0);
+	    node = null;
+	    while (!nodeStack.isEmpty()) {
+		int last = nodeStack.size() - 1;
+		ParseTreeNode current = nodeStack.get(last);
+		int childIndex = childIndices.get(last);
+		if (childIndex < current.children.size()) {
+		    childIndices.set(last, childIndex + 1);
+		    node = current.children.get(childIndex);
+		    break;
+		}
+		current.subTreeEnd = counter;
+		nodeStack.remove(last);
+		childIndices.remove(last);
+	    }
+	}
+	/*
+	 * The index is assigned to the nodes after it is complete, so other
+	 * threads which see the index at a node also see the complete index.
+	 */
+	for (List<ParseTreeNode> nodes : index.nodesByType.values()) {
+	    for (ParseTreeNode indexed : nodes) {
+		indexed.treeIndex = index;
+	    }
+	}
+	return index;
+    }
+
+    /**
+     * This class keeps the nodes of a tree by type id in pre-order. It is
+     * shared by all nodes of the tree, so a change of any node can invalidate
+     * it in constant time.
+     */
+    private static class TreeIndex {
+
+	private final ParseTreeNode root;
+	private final Map<Integer, List<ParseTreeNode>> nodesByType = new HashMap<Integer, List<ParseTreeNode>>();
+	private volatile boolean valid = true;
+
+	private TreeIndex(ParseTreeNode root) {
+	    super();
+	    this.root = root;
 	}
-	for (ParseTreeNode subBranch : branch.getChildren()) {
-	    getSubTrees(subBranch, subTrees, name);
+    }
+
+    /**
+     * This method is called before the children of this node are changed to
+     * drop all information derived from them.
+     */
+    private void childrenChanged() {
+	invalidateTextRange();
+	invalidateTreeIndex();
+	childIndex = null;
+    }
+
+    private void invalidateTreeIndex() {
+	TreeIndex index = treeIndex;
+	if (index != null) {
+	    index.valid = false;
+	    treeIndex = null;
 	}
     }
 
     private static class TextWalkerClient implements TreeVisitor<ParseTreeNode> {
 
-	private final StringBuffer text = new StringBuffer();
+	private final StringBuilder text = new StringBuilder();
 
 	@Override
 	public WalkingAction visit(ParseTreeNode syntaxTree) {
+	    if (syntaxTree.sourceText != null) {
+		text.append(syntaxTree.sourceText, syntaxTree.startOffset,
+			syntaxTree.endOffset);
+		return WalkingAction.LEAVE_BRANCH;
+	    }
 	    Token token = syntaxTree.getToken();
 	    if (token != null) {
 		text.append(token.getText());
 	    }
-	    return null;
+	    return WalkingAction.PROCEED;
 	}
 
 	public String getText() {
@@ -296,13 +640,174 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
 
     }
 
+    /**
+     * This method returns the text of the sub tree of this node. If the text
+     * range of the node is known, the text is taken from the source text
+     * directly. Otherwise the texts of all tokens within the sub tree are
+     * collected.
+     * 
+     * @return The text is returned.
+     */
     public String getText() {
+	if (sourceText != null) {
+	    return sourceText.substring(startOffset, endOffset);
+	}
 	TreeWalker<ParseTreeNode> treeWalker = new TreeWalker<ParseTreeNode>(this);
 	TextWalkerClient textClient = new TextWalkerClient();
 	treeWalker.walk(textClient);
 	return textClient.getText();
     }
 
+    /**
+     * This method returns the text of the sub tree of this node as a read-only
+     * view to the source text without copying it, if the text range of the
+     * node is known. Otherwise the text is collected like in
+     * {@link #getText()}.
+     * 
+     * @return A {@link CharSequence} is returned containing the text.
+     */
+    public CharSequence getTextSequence() {
+	if (sourceText != null) {
+	    return CharBuffer.wrap(sourceText, startOffset, endOffset)
+		    .asReadOnlyBuffer();
+	}
+	return getText();
+    }
+
+    /**
+     * This method sets the text range of this node. The parsers set the text
+     * ranges for all nodes during tree construction. The node keeps a
+     * reference to the complete source text afterwards.
+     * 
+     * @param sourceText
+     *            is the complete source text the tree was parsed from.
+     * @param startOffset
+     *            is the offset of the first character of the node within the
+     *            source text.
+     * @param endOffset
+     *            is the offset behind the last character of the node within
+     *            the source text.
+     */
+    public void setTextRange(String sourceText, int startOffset, int endOffset) {
+	if ((startOffset < 0) || (endOffset < startOffset)
+		|| (endOffset > sourceText.length())) {
+	    throw new IllegalArgumentException("Text range [" + startOffset
+		    + ", " + endOffset + ") is not within source text of length "
+		    + sourceText.length() + ".");
+	}
+	this.sourceText = sourceText;
+	this.startOffset = startOffset;
+	this.endOffset = endOffset;
+    }
+
+    /**
+     * @return true is returned if the text range of this node is known.
+     */
+    public boolean hasTextRange() {
+	return sourceText != null;
+    }
+
+    /**
+     * @return The source text the text range of this node refers to is
+     *         returned or null if the text range is not known.
+     */
+    public String getSourceText() {
+	return sourceText;
+    }
+
+    /**
+     * @return The start offset of the node within the source text is
+     *         returned or -1 if the text range is not known.
+     */
+    public int getStartOffset() {
+	return sourceText != null ? startOffset : -1;
+    }
+
+    /**
+     * @return The end offset (exclusive) of the node within the source text is
+     *         returned or -1 if the text range is not known.
+     */
+    public int getEndOffset() {
+	return sourceText != null ? endOffset : -1;
+    }
+
+    /**
+     * This method assigns text ranges to all nodes of the sub tree of this
+     * node. The source text is created once out of the token texts. This is
+     * used for trees which were not created out of a single source text like
+     * the trees of the LR parsers.
+     */
+    public void createTextRanges() {
+	StringBuilder buffer = new StringBuilder();
+	List<ParseTreeNode> visited = new ArrayList<ParseTreeNode>();
+	Deque<ParseTreeNode> nodes = new ArrayDeque<ParseTreeNode>();
+	Deque<Integer> childIndices = new ArrayDeque<Integer>();
+	ParseTreeNode node = this;
+	while (node != null) {
+	    /*
+	     * The token text of a node comes before the texts of its children
+	     * like in getText().
+	     */
+	    node.startOffset = buffer.length();
+	    if (node.token != null) {
+		buffer.append(node.token.getText());
+	    }
+	    visited.add(node);
+	    nodes.push(node);
+	    childIndices.push(0);
+	    node = null;
+	    while (!nodes.isEmpty()) {
+		ParseTreeNode current = nodes.peek();
+		int childIndex = childIndices.pop();
+		if (childIndex < current.children.size()) {
+		    childIndices.push(childIndex + 1);
+		    node = current.children.get(childIndex);
+		    break;
+		}
+		current.endOffset = buffer.length();
+		nodes.pop();
+	    }
+	}
+	String text = buffer.toString();
+	for (ParseTreeNode current : visited) {
+	    current.sourceText = text;
+	}
+    }
+
+    /**
+     * This method removes the text ranges of all nodes of the sub tree of
+     * this node, so that the source text is not referenced by them anymore.
+     * This is useful to keep small parts of a large tree without the complete
+     * source text. The texts are collected out of the tokens afterwards.
+     */
+    public void clearTextRanges() {
+	ParseTreeNodeCursor cursor = cursor();
+	TreeCursor.Event event;
+	while ((event = cursor.next()) != TreeCursor.Event.END) {
+	    if (event == TreeCursor.Event.ENTER) {
+		ParseTreeNode current = cursor.getNode();
+		current.sourceText = null;
+		current.startOffset = -1;
+		current.endOffset = -1;
+	    }
+	}
+    }
+
+    /**
+     * This method removes the text ranges of this node and its parents,
+     * because the text of the tree changes if children are added. The parents
+     * are only visited as long as they have a text range.
+     */
+    private void invalidateTextRange() {
+	ParseTreeNode current = this;
+	while ((current != null) && (current.sourceText != null)) {
+	    current.sourceText = null;
+	    current.startOffset = -1;
+	    current.endOffset = -1;
+	    current = current.parent;
+	}
+    }
+
     public ParserTreeMetaData getMetaData() {
 	return metaData;
     }
@@ -343,6 +848,9 @@ public class ParseTreeNode implements TreeNode<ParseTreeNode>, Serializable,
 	else
 	    cloned = new ParseTreeNode(name, null, node, stackingAllowed);
 	cloned.parent = parent;
+	cloned.sourceText = sourceText;
+	cloned.startOffset = startOffset;
+	cloned.endOffset = endOffset;
 	if (metaData != null)
 	    cloned.metaData = metaData.clone();
 	cloned.children.addAll((ArrayList<ParseTreeNode>) children.clone());
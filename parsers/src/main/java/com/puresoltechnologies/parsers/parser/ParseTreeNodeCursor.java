@@ -0,0 +1,104 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.puresoltechnologies.parsers.lexer.Token;
+
+/**
+ * This is the {@link TreeCursor} for {@link ParseTreeNode} trees. The position
+ * of each node on the path from the root within its parent's children is kept
+ * in an int array, which only grows when a deeper level is reached for the
+ * first time. The tree must not be changed while a cursor is used.
+ */
+public class ParseTreeNodeCursor extends AbstractTreeCursor {
+
+    private final ParseTreeNode root;
+    private ParseTreeNode current;
+    private int[] childIndices = new int[16];
+    private int depth = 0;
+
+    public ParseTreeNodeCursor(ParseTreeNode root) {
+	super();
+	this.root = root;
+	this.current = root;
+    }
+
+    @Override
+    protected void moveToRoot() {
+	current = root;
+	depth = 0;
+    }
+
+    /**
+     * @return The node the cursor points to is returned.
+     */
+    public ParseTreeNode getNode() {
+	return current;
+    }
+
+    @Override
+    public boolean firstChild() {
+	List<ParseTreeNode> children = current.getChildren();
+	if (children.isEmpty()) {
+	    return false;
+	}
+	if (depth == childIndices.length) {
+	    childIndices = Arrays.copyOf(childIndices, depth * 2);
+	}
+	childIndices[depth] = 0;
+	depth++;
+	current = children.get(0);
+	return true;
+    }
+
+    @Override
+    public boolean nextSibling() {
+	if (depth == 0) {
+	    return false;
+	}
+	List<ParseTreeNode> siblings = current.getParent().getChildren();
+	int index = childIndices[depth - 1] + 1;
+	if (index >= siblings.size()) {
+	    return false;
+	}
+	childIndices[depth - 1] = index;
+	current = siblings.get(index);
+	return true;
+    }
+
+    @Override
+    public boolean parent() {
+	if (depth == 0) {
+	    return false;
+	}
+	depth--;
+	current = current.getParent();
+	return true;
+    }
+
+    @Override
+    public int getDepth() {
+	return depth;
+    }
+
+    @Override
+    public String getName() {
+	return current.getName();
+    }
+
+    @Override
+    public int getTypeId() {
+	return current.getTypeId();
+    }
+
+    @Override
+    public Token getToken() {
+	return current.getToken();
+    }
+
+    @Override
+    public boolean hasChildren() {
+	return current.hasChildren();
+    }
+}
@@ -0,0 +1,79 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class interns the names of {@link ParseTreeNode}s into int type ids.
+ * Comparing type ids is cheaper than comparing names and the ids can be used
+ * as keys for the child and sub tree indices of the nodes.
+ *
+ * The ids are only valid within the running JVM, so they must not be
+ * persisted. Only the names of created nodes are registered and their number
+ * is limited by the grammars in use, so the registry does not need to be
+ * cleaned up. Code which only looks for nodes, like the compiled queries, uses
+ * {@link #findTypeId(String)} so that arbitrary names do not grow the
+ * registry.
+ */
+public final class ParseTreeNodeTypes {
+
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static final List<String> names = new ArrayList<String>();
+
+    /**
+     * This method returns the type id for the given node name. If the name was
+     * not seen before, a new id is assigned.
+     *
+     * @param name
+     *            is the name of the node.
+     * @return The type id is returned.
+     */
+    public static int getTypeId(String name) {
+	Integer id = ids.get(name);
+	if (id != null) {
+	    return id;
+	}
+	synchronized (names) {
+	    id = ids.get(name);
+	    if (id == null) {
+		id = names.size();
+		names.add(name);
+		ids.put(name, id);
+	    }
+	    return id;
+	}
+    }
+
+    /**
+     * This method looks up the type id for the given node name without
+     * assigning a new one.
+     *
+     * @param name
+     *            is the name of the node.
+     * @return The type id is returned or -1 if no node with this name was
+     *         created so far.
+     */
+    public static int findTypeId(String name) {
+	Integer id = ids.get(name);
+	return id != null ? id : -1;
+    }
+
+    /**
+     * @param typeId
+     *            is the type id to look up.
+     * @return The node name for the given type id is returned.
+     */
+    public static String getTypeName(int typeId) {
+	synchronized (names) {
+	    return names.get(typeId);
+	}
+    }
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private ParseTreeNodeTypes() {
+    }
+}
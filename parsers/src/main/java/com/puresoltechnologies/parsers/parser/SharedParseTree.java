@@ -0,0 +1,299 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.lexer.TokenMetaData;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+import com.puresoltechnologies.trees.TreeException;
+
+/**
+ * <p>
+ * This class is an immutable parse tree whose structure consists of
+ * {@link SharedParseTreeNode}s which are shared with all identical sub trees,
+ * also of other trees created by the same {@link ParseTreeInterner}.
+ * </p>
+ * <p>
+ * As a shared node has many occurrences, the data of an occurrence like the
+ * text range, the lines and the source location is kept in a separate overlay
+ * of this tree. The overlay consists of parallel int arrays with one entry per
+ * occurrence in pre-order, so the root has index 0 and the nodes of a sub tree
+ * follow their root directly. A line, offset or source index of -1 means that
+ * the information is not available.
+ * </p>
+ */
+public class SharedParseTree {
+
+    private final SharedParseTreeNode root;
+    private final String sourceText;
+    private final SourceCodeLocation[] sources;
+
+    private final int[] startOffsets;
+    private final int[] endOffsets;
+    private final int[] sourceIndices;
+    private final int[] lines;
+    private final int[] lineNums;
+    private final int[] tokenSourceIndices;
+    private final int[] tokenLines;
+    private final int[] tokenLineNums;
+    private final int[] tokenColumns;
+
+    private SharedParseTree(SharedParseTreeNode root, Builder builder) {
+	super();
+	int size = builder.size;
+	this.root = root;
+	this.sourceText = builder.sourceText;
+	this.sources = builder.sourceList
+		.toArray(new SourceCodeLocation[builder.sourceList.size()]);
+	this.startOffsets = Arrays.copyOf(builder.startOffsets, size);
+	this.endOffsets = Arrays.copyOf(builder.endOffsets, size);
+	this.sourceIndices = Arrays.copyOf(builder.sourceIndices, size);
+	this.lines = Arrays.copyOf(builder.lines, size);
+	this.lineNums = Arrays.copyOf(builder.lineNums, size);
+	this.tokenSourceIndices = Arrays.copyOf(builder.tokenSourceIndices,
+		size);
+	this.tokenLines = Arrays.copyOf(builder.tokenLines, size);
+	this.tokenLineNums = Arrays.copyOf(builder.tokenLineNums, size);
+	this.tokenColumns = Arrays.copyOf(builder.tokenColumns, size);
+    }
+
+    /**
+     * @return The shared root node is returned.
+     */
+    public SharedParseTreeNode getRoot() {
+	return root;
+    }
+
+    /**
+     * @return The number of nodes (occurrences) of the tree is returned.
+     */
+    public int size() {
+	return startOffsets.length;
+    }
+
+    /**
+     * This method looks up the shared node for the given pre-order index. The
+     * sizes of the sub trees are used to skip siblings, so only the nodes on
+     * the path and their siblings are visited.
+     *
+     * @param index
+     *            is the pre-order index of the node.
+     * @return The {@link SharedParseTreeNode} is returned.
+     */
+    public SharedParseTreeNode getNode(int index) {
+	if ((index < 0) || (index >= size())) {
+	    throw new IndexOutOfBoundsException("Node index " + index
+		    + " is not within tree of size " + size() + ".");
+	}
+	SharedParseTreeNode node = root;
+	int current = 0;
+	while (current < index) {
+	    current++;
+	    int childIndex = 0;
+	    SharedParseTreeNode child = node.getChild(childIndex);
+	    while (current + child.getSize() <= index) {
+		current += child.getSize();
+		childIndex++;
+		child = node.getChild(childIndex);
+	    }
+	    node = child;
+	}
+	return node;
+    }
+
+    /**
+     * @return The source text the text ranges refer to is returned or null if
+     *         the tree does not have text ranges.
+     */
+    public String getSourceText() {
+	return sourceText;
+    }
+
+    public int getStartOffset(int index) {
+	return startOffsets[index];
+    }
+
+    public int getEndOffset(int index) {
+	return endOffsets[index];
+    }
+
+    /**
+     * @return The {@link SourceCodeLocation} of the node meta data is returned
+     *         or null if the node does not have meta data.
+     */
+    public SourceCodeLocation getSource(int index) {
+	return sourceIndices[index] >= 0 ? sources[sourceIndices[index]] : null;
+    }
+
+    public int getLine(int index) {
+	return lines[index];
+    }
+
+    public int getLineNum(int index) {
+	return lineNums[index];
+    }
+
+    /**
+     * This method converts this tree back into a mutable {@link ParseTreeNode}
+     * tree with one node per occurrence and the meta data and text ranges of
+     * the overlay.
+     *
+     * @return The root of the new {@link ParseTreeNode} tree is returned.
+     */
+    public ParseTreeNode toParseTreeNode() {
+	ParseTreeNode[] nodes = new ParseTreeNode[size()];
+	List<SharedParseTreeNode> nodeStack = new ArrayList<SharedParseTreeNode>();
+	List<Integer> parentStack = new ArrayList<Integer>();
+	nodeStack.add(root);
+	parentStack.add(-1);
+	int index = 0;
+	try {
+	    while (!nodeStack.isEmpty()) {
+		SharedParseTreeNode shared = nodeStack
+			.remove(nodeStack.size() - 1);
+		int parent = parentStack.remove(parentStack.size() - 1);
+		ParseTreeNode node = createNode(shared, index);
+		if (parent >= 0) {
+		    nodes[parent].addChild(node);
+		}
+		nodes[index] = node;
+		for (int i = shared.getChildCount() - 1; i >= 0; i--) {
+		    nodeStack.add(shared.getChild(i));
+		    parentStack.add(index);
+		}
+		index++;
+	    }
+	} catch (TreeException e) {
+	    throw new RuntimeException("Could not create parse tree.", e);
+	}
+	/*
+	 * The text ranges are set after all children were added, because
+	 * adding children removes the text ranges.
+	 */
+	if (sourceText != null) {
+	    for (int i = 0; i < nodes.length; i++) {
+		if (startOffsets[i] >= 0) {
+		    nodes[i].setTextRange(sourceText, startOffsets[i],
+			    endOffsets[i]);
+		}
+	    }
+	}
+	return nodes[0];
+    }
+
+    private ParseTreeNode createNode(SharedParseTreeNode shared, int index) {
+	Token token = null;
+	if (shared.hasToken()) {
+	    TokenMetaData tokenMetaData = null;
+	    if (tokenSourceIndices[index] >= 0) {
+		tokenMetaData = new TokenMetaData(
+			sources[tokenSourceIndices[index]], tokenLines[index],
+			tokenLineNums[index], tokenColumns[index]);
+	    }
+	    token = new Token(shared.getTokenName(), shared.getTokenText(),
+		    shared.getVisibility(), tokenMetaData);
+	}
+	ParseTreeNode node = new ParseTreeNode(shared.getName(), token,
+		shared.isNode(), shared.isStackingAllowed());
+	if (sourceIndices[index] >= 0) {
+	    node.setMetaData(new ParserTreeMetaData(
+		    sources[sourceIndices[index]], lines[index],
+		    lineNums[index]));
+	}
+	return node;
+    }
+
+    /**
+     * This class collects the overlay of a tree while its nodes are added in
+     * pre-order.
+     */
+    static class Builder {
+
+	private final String sourceText;
+	private final Map<SourceCodeLocation, Integer> sourceIds = new HashMap<SourceCodeLocation, Integer>();
+	private final List<SourceCodeLocation> sourceList = new ArrayList<SourceCodeLocation>();
+
+	private int size = 0;
+	private int[] startOffsets = new int[64];
+	private int[] endOffsets = new int[64];
+	private int[] sourceIndices = new int[64];
+	private int[] lines = new int[64];
+	private int[] lineNums = new int[64];
+	private int[] tokenSourceIndices = new int[64];
+	private int[] tokenLines = new int[64];
+	private int[] tokenLineNums = new int[64];
+	private int[] tokenColumns = new int[64];
+
+	Builder(String sourceText) {
+	    super();
+	    this.sourceText = sourceText;
+	}
+
+	void add(ParseTreeNode node) {
+	    if (size == startOffsets.length) {
+		int capacity = size * 2;
+		startOffsets = Arrays.copyOf(startOffsets, capacity);
+		endOffsets = Arrays.copyOf(endOffsets, capacity);
+		sourceIndices = Arrays.copyOf(sourceIndices, capacity);
+		lines = Arrays.copyOf(lines, capacity);
+		lineNums = Arrays.copyOf(lineNums, capacity);
+		tokenSourceIndices = Arrays.copyOf(tokenSourceIndices,
+			capacity);
+		tokenLines = Arrays.copyOf(tokenLines, capacity);
+		tokenLineNums = Arrays.copyOf(tokenLineNums, capacity);
+		tokenColumns = Arrays.copyOf(tokenColumns, capacity);
+	    }
+	    if ((sourceText != null) && (node.getSourceText() == sourceText)) {
+		startOffsets[size] = node.getStartOffset();
+		endOffsets[size] = node.getEndOffset();
+	    } else {
+		startOffsets[size] = -1;
+		endOffsets[size] = -1;
+	    }
+	    ParserTreeMetaData metaData = node.getMetaData();
+	    if (metaData != null) {
+		sourceIndices[size] = getSourceId(metaData.getSource());
+		lines[size] = metaData.getLine();
+		lineNums[size] = metaData.getLineNum();
+	    } else {
+		sourceIndices[size] = -1;
+		lines[size] = -1;
+		lineNums[size] = -1;
+	    }
+	    Token token = node.getToken();
+	    TokenMetaData tokenMetaData = token != null ? token.getMetaData()
+		    : null;
+	    if (tokenMetaData != null) {
+		tokenSourceIndices[size] = getSourceId(tokenMetaData
+			.getSource());
+		tokenLines[size] = tokenMetaData.getLine();
+		tokenLineNums[size] = tokenMetaData.getLineNum();
+		tokenColumns[size] = tokenMetaData.getColumn();
+	    } else {
+		tokenSourceIndices[size] = -1;
+		tokenLines[size] = -1;
+		tokenLineNums[size] = -1;
+		tokenColumns[size] = -1;
+	    }
+	    size++;
+	}
+
+	private int getSourceId(SourceCodeLocation source) {
+	    Integer sourceId = sourceIds.get(source);
+	    if (sourceId == null) {
+		sourceId = sourceList.size();
+		sourceIds.put(source, sourceId);
+		sourceList.add(source);
+	    }
+	    return sourceId;
+	}
+
+	SharedParseTree build(SharedParseTreeNode root) {
+	    return new SharedParseTree(root, this);
+	}
+    }
+}
@@ -0,0 +1,218 @@
+package com.puresoltechnologies.parsers.parser;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+
+/**
+ * <p>
+ * This class is an immutable parse tree node which is shared between all
+ * occurrences of an identical sub tree. Two sub trees are identical if they
+ * have the same node names, flags and tokens (name, text and visibility). The
+ * position of an occurrence like lines, text ranges and source locations is
+ * not part of the node and is kept in the overlay of {@link SharedParseTree}.
+ * </p>
+ * <p>
+ * Shared nodes are only created by a {@link ParseTreeInterner}. As all
+ * children are interned before their parent, two sub trees which were
+ * interned with the same interner are identical if and only if they are the
+ * same instance, so sub trees can be compared with ==.
+ * </p>
+ */
+public final class SharedParseTreeNode {
+
+    private static final SharedParseTreeNode[] NO_CHILDREN = new SharedParseTreeNode[0];
+
+    private final String name;
+    private final int typeId;
+    private final String tokenName;
+    private final String tokenText;
+    private final Visibility visibility;
+    private final boolean node;
+    private final boolean stackingAllowed;
+    private final SharedParseTreeNode[] children;
+    private final int size;
+    private final int hashCode;
+
+    SharedParseTreeNode(String name, String tokenName, String tokenText,
+	    Visibility visibility, boolean node, boolean stackingAllowed,
+	    List<SharedParseTreeNode> children) {
+	super();
+	this.name = name;
+	this.typeId = name != null ? ParseTreeNodeTypes.getTypeId(name) : -1;
+	this.tokenName = tokenName;
+	this.tokenText = tokenText;
+	this.visibility = visibility;
+	this.node = node;
+	this.stackingAllowed = stackingAllowed;
+	this.children = children.isEmpty() ? NO_CHILDREN : children
+		.toArray(new SharedParseTreeNode[children.size()]);
+	int size = 1;
+	int hashCode = 1;
+	hashCode = 31 * hashCode + (name != null ? name.hashCode() : 0);
+	hashCode = 31 * hashCode + (tokenName != null ? tokenName.hashCode() : 0);
+	hashCode = 31 * hashCode + (tokenText != null ? tokenText.hashCode() : 0);
+	hashCode = 31 * hashCode
+		+ (visibility != null ? visibility.ordinal() + 1 : 0);
+	hashCode = 31 * hashCode + (node ? 1231 : 1237);
+	hashCode = 31 * hashCode + (stackingAllowed ? 1231 : 1237);
+	for (SharedParseTreeNode child : this.children) {
+	    size += child.size;
+	    hashCode = 31 * hashCode + child.hashCode;
+	}
+	this.size = size;
+	this.hashCode = hashCode;
+    }
+
+    public String getName() {
+	return name;
+    }
+
+    public int getTypeId() {
+	return typeId;
+    }
+
+    /**
+     * @return true is returned if this node was created out of a token.
+     */
+    public boolean hasToken() {
+	return tokenName != null;
+    }
+
+    /**
+     * @return The name of the token is returned or null if the node does not
+     *         have a token.
+     */
+    public String getTokenName() {
+	return tokenName;
+    }
+
+    /**
+     * @return The text of the token is returned or null if the node does not
+     *         have a token.
+     */
+    public String getTokenText() {
+	return tokenText;
+    }
+
+    public Visibility getVisibility() {
+	return visibility;
+    }
+
+    public boolean isNode() {
+	return node;
+    }
+
+    public boolean isStackingAllowed() {
+	return stackingAllowed;
+    }
+
+    public boolean hasChildren() {
+	return children.length > 0;
+    }
+
+    public int getChildCount() {
+	return children.length;
+    }
+
+    public SharedParseTreeNode getChild(int index) {
+	return children[index];
+    }
+
+    /**
+     * @return An unmodifiable list of the children is returned.
+     */
+    public List<SharedParseTreeNode> getChildren() {
+	return Collections.unmodifiableList(Arrays.asList(children));
+    }
+
+    /**
+     * @return The number of nodes of the sub tree of this node including this
+     *         node is returned. Shared sub trees are counted for each
+     *         occurrence.
+     */
+    public int getSize() {
+	return size;
+    }
+
+    /**
+     * This method returns the text of the sub tree of this node. Like
+     * {@link ParseTreeNode#getText()}, the token text of a node comes before
+     * the texts of its children.
+     *
+     * @return A {@link String} is returned containing the text.
+     */
+    public String getText() {
+	StringBuilder text = new StringBuilder();
+	Deque<SharedParseTreeNode> stack = new ArrayDeque<SharedParseTreeNode>();
+	stack.push(this);
+	while (!stack.isEmpty()) {
+	    SharedParseTreeNode current = stack.pop();
+	    if (current.tokenText != null) {
+		text.append(current.tokenText);
+	    }
+	    for (int i = current.children.length - 1; i >= 0; i--) {
+		stack.push(current.children[i]);
+	    }
+	}
+	return text.toString();
+    }
+
+    @Override
+    public int hashCode() {
+	return hashCode;
+    }
+
+    /**
+     * Two nodes are equal if their own attributes are equal and if they have
+     * the same child instances. This is only used by {@link ParseTreeInterner}
+     * for the look up of a node whose children are already interned. For
+     * interned nodes, equality is the same as identity.
+     */
+    @Override
+    public boolean equals(Object obj) {
+	if (this == obj) {
+	    return true;
+	}
+	if (obj == null) {
+	    return false;
+	}
+	if (getClass() != obj.getClass()) {
+	    return false;
+	}
+	SharedParseTreeNode other = (SharedParseTreeNode) obj;
+	if (hashCode != other.hashCode) {
+	    return false;
+	}
+	if ((node != other.node) || (stackingAllowed != other.stackingAllowed)
+		|| (visibility != other.visibility)) {
+	    return false;
+	}
+	if (!equal(name, other.name) || !equal(tokenName, other.tokenName)
+		|| !equal(tokenText, other.tokenText)) {
+	    return false;
+	}
+	if (children.length != other.children.length) {
+	    return false;
+	}
+	for (int i = 0; i < children.length; i++) {
+	    if (children[i] != other.children[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static boolean equal(String a, String b) {
+	return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+	return name + " \"" + getText() + "\"";
+    }
+}
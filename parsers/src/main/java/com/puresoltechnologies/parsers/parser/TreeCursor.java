@@ -0,0 +1,114 @@
+package com.puresoltechnologies.parsers.parser;
+
+import com.puresoltechnologies.parsers.lexer.Token;
+
+/**
+ * <p>
+ * A tree cursor points to a single node of a parse tree and is moved through
+ * the tree with {@link #firstChild()}, {@link #nextSibling()} and
+ * {@link #parent()} or with {@link #next()} for a complete depth-first walk.
+ * A cursor does not allocate objects per step and does not use recursion, so
+ * it is cheap to use in hot loops and it can walk trees of any depth.
+ * </p>
+ * <p>
+ * A cursor is restricted to the sub tree it was created for: Its root is
+ * never left. Cursors are not thread safe, but they can be reused with
+ * {@link #reset()}.
+ * </p>
+ * <p>
+ * A typical walk looks like this:
+ * </p>
+ *
+ * <pre>
+ * TreeCursor cursor = root.cursor();
+ * TreeCursor.Event event;
+ * while ((event = cursor.next()) != TreeCursor.Event.END) {
+ *     if (event == TreeCursor.Event.ENTER) {
+ * 	...
+ *     }
+ * }
+ * </pre>
+ */
+public interface TreeCursor {
+
+    /**
+     * These are the events of a depth-first walk with {@link TreeCursor#next()}.
+     */
+    public enum Event {
+	/**
+	 * The cursor was moved to a node which was not visited before. Its
+	 * children are visited next.
+	 */
+	ENTER,
+	/**
+	 * All children of the node the cursor points to were visited.
+	 */
+	EXIT,
+	/**
+	 * The walk is finished. The cursor points to the root again.
+	 */
+	END;
+    }
+
+    /**
+     * This method moves the cursor back to its root and restarts the walk of
+     * {@link #next()}.
+     */
+    public void reset();
+
+    /**
+     * This method moves the cursor to the first child of the current node.
+     *
+     * @return true is returned if the cursor was moved. If the node does not
+     *         have children, false is returned and the cursor is not moved.
+     */
+    public boolean firstChild();
+
+    /**
+     * This method moves the cursor to the next sibling of the current node.
+     *
+     * @return true is returned if the cursor was moved. If the node is the
+     *         last child or the root of the cursor, false is returned and the
+     *         cursor is not moved.
+     */
+    public boolean nextSibling();
+
+    /**
+     * This method moves the cursor to the parent of the current node.
+     *
+     * @return true is returned if the cursor was moved. If the cursor points
+     *         to its root, false is returned and the cursor is not moved.
+     */
+    public boolean parent();
+
+    /**
+     * This method performs the next step of a depth-first walk through the
+     * sub tree of the cursor. Each node is entered before its children and
+     * exited after its children. The first call enters the root.
+     *
+     * @return The {@link Event} of the step is returned.
+     */
+    public Event next();
+
+    /**
+     * @return The depth of the current node relative to the root of the
+     *         cursor is returned. The root has depth 0.
+     */
+    public int getDepth();
+
+    public String getName();
+
+    /**
+     * @return The type id of the current node as assigned by
+     *         {@link ParseTreeNodeTypes} is returned.
+     */
+    public int getTypeId();
+
+    /**
+     * @return The token of the current node is returned or null if the node
+     *         was not created out of a token.
+     */
+    public Token getToken();
+
+    public boolean hasChildren();
+}
@@ -0,0 +1,196 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.META_DATA;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.NODE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.STACKING_ALLOWED;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TEXT_RANGE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN_META_DATA;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN_NAME_IS_NODE_NAME;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN_TEXT_FROM_SOURCE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readByte;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readLocation;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readString;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readVarInt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.lexer.TokenMetaData;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParserTreeMetaData;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+import com.puresoltechnologies.trees.TreeException;
+
+/**
+ * This class decodes the nodes of the binary parse tree format. It is used by
+ * {@link BinaryTreeReader} for streaming reads, where the name and location
+ * tables are filled while reading, and by {@link RandomAccessBinaryTree},
+ * where the tables are read from the index up front.
+ */
+class BinaryTreeDecoder {
+
+    private static final Visibility[] VISIBILITIES = Visibility.values();
+
+    private final String source;
+    private final List<String> names;
+    private final List<SourceCodeLocation> locations;
+    private final boolean tablesComplete;
+
+    /**
+     * @param source
+     *            is the source text of the tree or null if the tree was
+     *            written without source text.
+     * @param names
+     *            is the name table.
+     * @param locations
+     *            is the location table.
+     * @param tablesComplete
+     *            specifies whether the tables were read from the index. If not,
+     *            all inline definitions are added to the tables.
+     */
+    BinaryTreeDecoder(String source, List<String> names,
+	    List<SourceCodeLocation> locations, boolean tablesComplete) {
+	super();
+	this.source = source;
+	this.names = names;
+	this.locations = locations;
+	this.tablesComplete = tablesComplete;
+    }
+
+    /**
+     * This method reads the node at the current position of the stream
+     * together with its complete sub tree.
+     */
+    ParseTreeNode readTree(InputStream in) throws IOException {
+	try {
+	    List<PendingNode> stack = new ArrayList<PendingNode>();
+	    PendingNode root = readNode(in);
+	    stack.add(root);
+	    while (!stack.isEmpty()) {
+		PendingNode top = stack.get(stack.size() - 1);
+		if (top.remainingChildren == 0) {
+		    /*
+		     * The text range is set after the children were added,
+		     * because adding children removes the text range.
+		     */
+		    if (top.startOffset >= 0) {
+			top.node.setTextRange(source, top.startOffset,
+				top.endOffset);
+		    }
+		    stack.remove(stack.size() - 1);
+		    continue;
+		}
+		top.remainingChildren--;
+		PendingNode child = readNode(in);
+		top.node.addChild(child.node);
+		stack.add(child);
+	    }
+	    return root.node;
+	} catch (TreeException e) {
+	    throw new IOException("Could not create parse tree.", e);
+	}
+    }
+
+    private PendingNode readNode(InputStream in) throws IOException {
+	String name = readName(in);
+	int flags = readByte(in);
+	int startOffset = -1;
+	int endOffset = -1;
+	if ((flags & TEXT_RANGE) != 0) {
+	    if (source == null) {
+		throw new IOException(
+			"Invalid binary tree: text range without source text.");
+	    }
+	    startOffset = readVarInt(in);
+	    endOffset = startOffset + readVarInt(in);
+	}
+	Token token = null;
+	if ((flags & TOKEN) != 0) {
+	    String tokenName = (flags & TOKEN_NAME_IS_NODE_NAME) != 0 ? name
+		    : readName(in);
+	    int visibility = readByte(in);
+	    String text = (flags & TOKEN_TEXT_FROM_SOURCE) != 0 ? source
+		    .substring(startOffset, endOffset) : readString(in);
+	    TokenMetaData tokenMetaData = null;
+	    if ((flags & TOKEN_META_DATA) != 0) {
+		SourceCodeLocation location = readLocationReference(in);
+		int line = readVarInt(in);
+		int lineNum = readVarInt(in);
+		int column = readVarInt(in);
+		tokenMetaData = new TokenMetaData(location, line, lineNum,
+			column);
+	    }
+	    token = new Token(tokenName, text,
+		    visibility > 0 ? VISIBILITIES[visibility - 1] : null,
+		    tokenMetaData);
+	}
+	ParseTreeNode node = new ParseTreeNode(name, token,
+		(flags & NODE) != 0, (flags & STACKING_ALLOWED) != 0);
+	if ((flags & META_DATA) != 0) {
+	    SourceCodeLocation location = readLocationReference(in);
+	    int line = readVarInt(in);
+	    int lineNum = readVarInt(in);
+	    node.setMetaData(new ParserTreeMetaData(location, line, lineNum));
+	}
+	return new PendingNode(node, readVarInt(in), startOffset, endOffset);
+    }
+
+    private String readName(InputStream in) throws IOException {
+	int reference = readVarInt(in);
+	if (reference == 0) {
+	    String name = readString(in);
+	    if (!tablesComplete) {
+		names.add(name);
+	    }
+	    return name;
+	}
+	if (reference > names.size()) {
+	    throw new IOException("Invalid binary tree: name reference "
+		    + reference + " is unknown.");
+	}
+	return names.get(reference - 1);
+    }
+
+    private SourceCodeLocation readLocationReference(InputStream in)
+	    throws IOException {
+	int reference = readVarInt(in);
+	if (reference == 0) {
+	    SourceCodeLocation location = readLocation(in);
+	    if (!tablesComplete) {
+		locations.add(location);
+	    }
+	    return location;
+	}
+	if (reference > locations.size()) {
+	    throw new IOException("Invalid binary tree: location reference "
+		    + reference + " is unknown.");
+	}
+	return locations.get(reference - 1);
+    }
+
+    /**
+     * This class keeps a node during reading until all its children were
+     * read.
+     */
+    private static class PendingNode {
+
+	private final ParseTreeNode node;
+	private final int startOffset;
+	private final int endOffset;
+	private int remainingChildren;
+
+	private PendingNode(ParseTreeNode node, int remainingChildren,
+		int startOffset, int endOffset) {
+	    super();
+	    this.node = node;
+	    this.remainingChildren = remainingChildren;
+	    this.startOffset = startOffset;
+	    this.endOffset = endOffset;
+	}
+    }
+}
@@ -0,0 +1,149 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * <p>
+ * This class contains the constants and the primitive encodings of the binary
+ * parse tree format written by {@link BinaryTreeWriter}:
+ * </p>
+ *
+ * <pre>
+ * file      := MAGIC version flags [source] node* [index trailer]
+ * node      := nameRef nodeFlags [start length] [token] [metaData] childCount
+ * token     := [nameRef] visibility [text] [location line lineNum column]
+ * metaData  := location line lineNum
+ * index     := nodeCount offset* stringCount string* locationCount location*
+ * trailer   := indexPosition(8 bytes) INDEX_MAGIC
+ * </pre>
+ * <p>
+ * The nodes are written in pre-order. All numbers are unsigned varints.
+ * Strings and locations are referenced by number: 0 means that the value
+ * follows directly and is added to the table, n means table entry n-1. Token
+ * texts are not written if they can be taken from the source text.
+ * </p>
+ */
+final class BinaryTreeFormat {
+
+    static final byte[] MAGIC = { 'P', 'T', 'R', 'B' };
+    static final byte[] INDEX_MAGIC = { 'P', 'T', 'R', 'I' };
+    static final int VERSION = 1;
+    static final int TRAILER_LENGTH = 12;
+
+    static final int HAS_SOURCE = 0x01;
+    static final int HAS_INDEX = 0x02;
+
+    static final int NODE = 0x01;
+    static final int STACKING_ALLOWED = 0x02;
+    static final int TOKEN = 0x04;
+    static final int META_DATA = 0x08;
+    static final int TEXT_RANGE = 0x10;
+    static final int TOKEN_TEXT_FROM_SOURCE = 0x20;
+    static final int TOKEN_META_DATA = 0x40;
+    static final int TOKEN_NAME_IS_NODE_NAME = 0x80;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+	while ((value & ~0x7F) != 0) {
+	    out.write((value & 0x7F) | 0x80);
+	    value >>>= 7;
+	}
+	out.write(value);
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+	int value = 0;
+	for (int shift = 0; shift < 35; shift += 7) {
+	    int b = readByte(in);
+	    value |= (b & 0x7F) << shift;
+	    if ((b & 0x80) == 0) {
+		return value;
+	    }
+	}
+	throw new IOException("Invalid binary tree: varint is too long.");
+    }
+
+    static int readByte(InputStream in) throws IOException {
+	int b = in.read();
+	if (b < 0) {
+	    throw new EOFException("Unexpected end of binary tree.");
+	}
+	return b;
+    }
+
+    static void writeString(OutputStream out, String string)
+	    throws IOException {
+	writeBytes(out, string.getBytes(UTF8));
+    }
+
+    static String readString(InputStream in) throws IOException {
+	return new String(readBytes(in), UTF8);
+    }
+
+    static void writeBytes(OutputStream out, byte[] bytes) throws IOException {
+	writeVarInt(out, bytes.length);
+	out.write(bytes);
+    }
+
+    static byte[] readBytes(InputStream in) throws IOException {
+	int length = readVarInt(in);
+	if (length < 0) {
+	    throw new IOException("Invalid binary tree: negative length.");
+	}
+	byte[] bytes = new byte[length];
+	int read = 0;
+	while (read < length) {
+	    int count = in.read(bytes, read, length - read);
+	    if (count < 0) {
+		throw new EOFException("Unexpected end of binary tree.");
+	    }
+	    read += count;
+	}
+	return bytes;
+    }
+
+    /**
+     * Source code locations have different implementations, so they are
+     * written with Java serialization. There are only a few of them per tree.
+     */
+    static void writeLocation(OutputStream out, SourceCodeLocation location)
+	    throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	ObjectOutputStream objectStream = new ObjectOutputStream(bytes);
+	try {
+	    objectStream.writeObject(location);
+	} finally {
+	    objectStream.close();
+	}
+	writeBytes(out, bytes.toByteArray());
+    }
+
+    static SourceCodeLocation readLocation(InputStream in) throws IOException {
+	ObjectInputStream objectStream = new ObjectInputStream(
+		new ByteArrayInputStream(readBytes(in)));
+	try {
+	    return (SourceCodeLocation) objectStream.readObject();
+	} catch (ClassNotFoundException e) {
+	    throw new IOException("Could not read source code location.", e);
+	} finally {
+	    objectStream.close();
+	}
+    }
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private BinaryTreeFormat() {
+    }
+}
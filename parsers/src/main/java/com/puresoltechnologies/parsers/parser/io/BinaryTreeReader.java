@@ -0,0 +1,73 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.HAS_SOURCE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.MAGIC;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.VERSION;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readByte;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readString;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * This class reads a {@link ParseTreeNode} tree which was written by
+ * {@link BinaryTreeWriter}. The tree is read in a single pass from the stream.
+ * An index, if present, is not needed and not read.
+ */
+public class BinaryTreeReader {
+
+    private final InputStream inputStream;
+
+    /**
+     * @param inputStream
+     *            is the stream to read from. It is read with an internal
+     *            buffer, so it should not be used for anything else
+     *            afterwards. It is not closed.
+     */
+    public BinaryTreeReader(InputStream inputStream) {
+	super();
+	this.inputStream = inputStream;
+    }
+
+    /**
+     * This method reads the tree.
+     *
+     * @return The root of the tree is returned.
+     * @throws IOException
+     *             is thrown in case the tree cannot be read or the data is not
+     *             a valid binary tree.
+     */
+    public ParseTreeNode read() throws IOException {
+	InputStream in = new BufferedInputStream(inputStream);
+	int flags = readHeader(in);
+	String source = (flags & HAS_SOURCE) != 0 ? readString(in) : null;
+	BinaryTreeDecoder decoder = new BinaryTreeDecoder(source,
+		new ArrayList<String>(), new ArrayList<SourceCodeLocation>(),
+		false);
+	return decoder.readTree(in);
+    }
+
+    /**
+     * This method checks the magic bytes and the version.
+     *
+     * @return The flags of the header are returned.
+     */
+    static int readHeader(InputStream in) throws IOException {
+	for (byte magic : MAGIC) {
+	    if (readByte(in) != magic) {
+		throw new IOException("Data is not a binary parse tree.");
+	    }
+	}
+	int version = readByte(in);
+	if (version != VERSION) {
+	    throw new IOException("Binary parse tree version " + version
+		    + " is not supported.");
+	}
+	return readByte(in);
+    }
+}
@@ -0,0 +1,289 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.HAS_INDEX;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.HAS_SOURCE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.INDEX_MAGIC;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.MAGIC;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.META_DATA;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.NODE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.STACKING_ALLOWED;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TEXT_RANGE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN_META_DATA;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN_NAME_IS_NODE_NAME;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TOKEN_TEXT_FROM_SOURCE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.VERSION;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.writeLocation;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.writeString;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.writeVarInt;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.lexer.TokenMetaData;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParserTreeMetaData;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * <p>
+ * This class writes {@link ParseTreeNode} trees in a compact binary format
+ * which is read again by {@link BinaryTreeReader}. The format is described in
+ * {@link BinaryTreeFormat}.
+ * </p>
+ * <p>
+ * Names and source code locations are written once and referenced by number
+ * afterwards. If the root has a text range, the source text is written once
+ * and the token texts are replaced by the text ranges of the nodes. The tree
+ * is written node by node without recursion.
+ * </p>
+ * <p>
+ * Optionally, an index with the byte offset of each node and the complete
+ * name and location tables is appended, which is used by
+ * {@link RandomAccessBinaryTree} to read single sub trees.
+ * </p>
+ */
+public class BinaryTreeWriter {
+
+    private final OutputStream outputStream;
+    private final boolean indexed;
+
+    private final Map<String, Integer> names = new HashMap<String, Integer>();
+    private final List<String> nameTable = new ArrayList<String>();
+    private final Map<SourceCodeLocation, Integer> locations = new HashMap<SourceCodeLocation, Integer>();
+    private final List<SourceCodeLocation> locationTable = new ArrayList<SourceCodeLocation>();
+
+    private CountingOutputStream out;
+    private String source;
+    private int sourceOffset;
+    private int sourceEnd;
+
+    /**
+     * Creates a writer without index.
+     *
+     * @param outputStream
+     *            is the stream to write to. It is flushed, but not closed.
+     */
+    public BinaryTreeWriter(OutputStream outputStream) {
+	this(outputStream, false);
+    }
+
+    /**
+     * @param outputStream
+     *            is the stream to write to. It is flushed, but not closed.
+     * @param indexed
+     *            specifies whether an index for random access is appended.
+     */
+    public BinaryTreeWriter(OutputStream outputStream, boolean indexed) {
+	super();
+	this.outputStream = outputStream;
+	this.indexed = indexed;
+    }
+
+    /**
+     * This method writes the tree with the given root.
+     *
+     * @param root
+     *            is the root of the tree to be written.
+     * @throws IOException
+     *             is thrown in case the tree cannot be written.
+     */
+    public void write(ParseTreeNode root) throws IOException {
+	names.clear();
+	nameTable.clear();
+	locations.clear();
+	locationTable.clear();
+	out = new CountingOutputStream(new BufferedOutputStream(outputStream));
+	source = root.getSourceText();
+	sourceOffset = root.getStartOffset();
+	sourceEnd = root.getEndOffset();
+
+	out.write(MAGIC);
+	out.write(VERSION);
+	out.write((source != null ? HAS_SOURCE : 0) | (indexed ? HAS_INDEX : 0));
+	if (source != null) {
+	    writeString(out, source.substring(sourceOffset, sourceEnd));
+	}
+
+	ByteArrayOutputStream offsets = indexed ? new ByteArrayOutputStream()
+		: null;
+	int nodeCount = 0;
+	long lastOffset = 0;
+	List<ParseTreeNode> nodeStack = new ArrayList<ParseTreeNode>();
+	List<Integer> childIndices = new ArrayList<Integer>();
+	ParseTreeNode node = root;
+	while (node != null) {
+	    if (indexed) {
+		writeVarInt(offsets, (int) (out.getCount() - lastOffset));
+		lastOffset = out.getCount();
+	    }
+	    nodeCount++;
+	    writeNode(node);
+	    nodeStack.add(node);
+	    childIndices.add(0);
+	    node = null;
+	    while (!nodeStack.isEmpty()) {
+		int last = nodeStack.size() - 1;
+		List<ParseTreeNode> children = nodeStack.get(last)
+			.getChildren();
+		int childIndex = childIndices.get(last);
+		if (childIndex < children.size()) {
+		    childIndices.set(last, childIndex + 1);
+		    node = children.get(childIndex);
+		    break;
+		}
+		nodeStack.remove(last);
+		childIndices.remove(last);
+	    }
+	}
+
+	if (indexed) {
+	    long indexPosition = out.getCount();
+	    writeVarInt(out, nodeCount);
+	    offsets.writeTo(out);
+	    writeVarInt(out, nameTable.size());
+	    for (String name : nameTable) {
+		writeString(out, name);
+	    }
+	    writeVarInt(out, locationTable.size());
+	    for (SourceCodeLocation location : locationTable) {
+		writeLocation(out, location);
+	    }
+	    for (int shift = 56; shift >= 0; shift -= 8) {
+		out.write((int) (indexPosition >>> shift));
+	    }
+	    out.write(INDEX_MAGIC);
+	}
+	out.flush();
+    }
+
+    private void writeNode(ParseTreeNode node) throws IOException {
+	Token token = node.getToken();
+	ParserTreeMetaData metaData = node.getMetaData();
+	boolean textRange = (source != null)
+		&& (node.getSourceText() == source)
+		&& (node.getStartOffset() >= sourceOffset)
+		&& (node.getEndOffset() <= sourceEnd);
+	int flags = 0;
+	if (node.isNode()) {
+	    flags |= NODE;
+	}
+	if (node.isStackingAllowed()) {
+	    flags |= STACKING_ALLOWED;
+	}
+	if (metaData != null) {
+	    flags |= META_DATA;
+	}
+	if (textRange) {
+	    flags |= TEXT_RANGE;
+	}
+	if (token != null) {
+	    flags |= TOKEN;
+	    String text = token.getText();
+	    if (textRange
+		    && (text.length() == node.getEndOffset()
+			    - node.getStartOffset())
+		    && source.regionMatches(node.getStartOffset(), text, 0,
+			    text.length())) {
+		flags |= TOKEN_TEXT_FROM_SOURCE;
+	    }
+	    if (token.getMetaData() != null) {
+		flags |= TOKEN_META_DATA;
+	    }
+	    if (token.getName().equals(node.getName())) {
+		flags |= TOKEN_NAME_IS_NODE_NAME;
+	    }
+	}
+
+	writeName(node.getName());
+	out.write(flags);
+	if (textRange) {
+	    writeVarInt(out, node.getStartOffset() - sourceOffset);
+	    writeVarInt(out, node.getEndOffset() - node.getStartOffset());
+	}
+	if (token != null) {
+	    if ((flags & TOKEN_NAME_IS_NODE_NAME) == 0) {
+		writeName(token.getName());
+	    }
+	    out.write(token.getVisibility() != null ? token.getVisibility()
+		    .ordinal() + 1 : 0);
+	    if ((flags & TOKEN_TEXT_FROM_SOURCE) == 0) {
+		writeString(out, token.getText());
+	    }
+	    TokenMetaData tokenMetaData = token.getMetaData();
+	    if (tokenMetaData != null) {
+		writeLocationReference(tokenMetaData.getSource());
+		writeVarInt(out, tokenMetaData.getLine());
+		writeVarInt(out, tokenMetaData.getLineNum());
+		writeVarInt(out, tokenMetaData.getColumn());
+	    }
+	}
+	if (metaData != null) {
+	    writeLocationReference(metaData.getSource());
+	    writeVarInt(out, metaData.getLine());
+	    writeVarInt(out, metaData.getLineNum());
+	}
+	writeVarInt(out, node.getChildren().size());
+    }
+
+    private void writeName(String name) throws IOException {
+	Integer id = names.get(name);
+	if (id != null) {
+	    writeVarInt(out, id + 1);
+	} else {
+	    names.put(name, nameTable.size());
+	    nameTable.add(name);
+	    writeVarInt(out, 0);
+	    writeString(out, name);
+	}
+    }
+
+    private void writeLocationReference(SourceCodeLocation location)
+	    throws IOException {
+	Integer id = locations.get(location);
+	if (id != null) {
+	    writeVarInt(out, id + 1);
+	} else {
+	    locations.put(location, locationTable.size());
+	    locationTable.add(location);
+	    writeVarInt(out, 0);
+	    writeLocation(out, location);
+	}
+    }
+
+    /**
+     * This stream counts the written bytes for the node offsets of the index.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+	private long count = 0;
+
+	private CountingOutputStream(OutputStream out) {
+	    super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    out.write(b);
+	    count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+	    out.write(b, off, len);
+	    count += len;
+	}
+
+	private long getCount() {
+	    return count;
+	}
+    }
+}
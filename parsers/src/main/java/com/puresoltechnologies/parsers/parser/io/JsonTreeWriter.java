@@ -0,0 +1,186 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.lexer.TokenMetaData;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParserTreeMetaData;
+
+/**
+ * <p>
+ * This class writes {@link ParseTreeNode} trees as JSON with the streaming
+ * {@link JsonGenerator} of Jackson. No intermediate object model is created
+ * and the tree is walked without recursion, so also very large and deep trees
+ * can be written. Each node is written as object:
+ * </p>
+ *
+ * <pre>
+ * {"name":"...", "text":"...", "visibility":"...", "line":1, "lineNum":1,
+ *  "column":1, "start":0, "end":1, "children":[...]}
+ * </pre>
+ * <p>
+ * "text" is only written for token nodes and "children" only for nodes with
+ * children. The meta data fields and "visibility" are written on request, see
+ * {@link #setIncludeMetaData(boolean)} and {@link #setIncludeTrivia(boolean)}.
+ * </p>
+ */
+public class JsonTreeWriter implements Closeable {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final JsonGenerator generator;
+    private boolean includeMetaData = false;
+    private boolean includeTrivia = true;
+
+    public JsonTreeWriter(JsonGenerator generator) {
+	super();
+	this.generator = generator;
+    }
+
+    public JsonTreeWriter(OutputStream outputStream) throws IOException {
+	this(jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8));
+    }
+
+    public JsonTreeWriter(Writer writer) throws IOException {
+	this(jsonFactory.createGenerator(writer));
+    }
+
+    /**
+     * @param includeMetaData
+     *            specifies whether the lines, columns and text ranges of the
+     *            nodes are written. The default is false.
+     */
+    public void setIncludeMetaData(boolean includeMetaData) {
+	this.includeMetaData = includeMetaData;
+    }
+
+    public boolean isIncludeMetaData() {
+	return includeMetaData;
+    }
+
+    /**
+     * @param includeTrivia
+     *            specifies whether hidden and ignored tokens like white spaces
+     *            and comments are written. If they are written, their
+     *            visibility is added. The default is true.
+     */
+    public void setIncludeTrivia(boolean includeTrivia) {
+	this.includeTrivia = includeTrivia;
+    }
+
+    public boolean isIncludeTrivia() {
+	return includeTrivia;
+    }
+
+    /**
+     * This method writes the tree with the given root as a single JSON object
+     * and flushes the generator.
+     *
+     * @param root
+     *            is the root of the tree to be written.
+     * @throws IOException
+     *             is thrown in case the tree cannot be written.
+     */
+    public void write(ParseTreeNode root) throws IOException {
+	List<ParseTreeNode> nodeStack = new ArrayList<ParseTreeNode>();
+	List<Integer> childIndices = new ArrayList<Integer>();
+	List<Boolean> childrenStarted = new ArrayList<Boolean>();
+	ParseTreeNode node = root;
+	while (node != null) {
+	    writeNodeStart(node);
+	    nodeStack.add(node);
+	    childIndices.add(0);
+	    childrenStarted.add(false);
+	    node = null;
+	    while (!nodeStack.isEmpty()) {
+		int last = nodeStack.size() - 1;
+		List<ParseTreeNode> children = nodeStack.get(last)
+			.getChildren();
+		int childIndex = childIndices.get(last);
+		while ((childIndex < children.size())
+			&& isTrivia(children.get(childIndex))) {
+		    childIndex++;
+		}
+		if (childIndex < children.size()) {
+		    if (!childrenStarted.get(last)) {
+			generator.writeArrayFieldStart("children");
+			childrenStarted.set(last, true);
+		    }
+		    childIndices.set(last, childIndex + 1);
+		    node = children.get(childIndex);
+		    break;
+		}
+		if (childrenStarted.get(last)) {
+		    generator.writeEndArray();
+		}
+		generator.writeEndObject();
+		nodeStack.remove(last);
+		childIndices.remove(last);
+		childrenStarted.remove(last);
+	    }
+	}
+	generator.flush();
+    }
+
+    private boolean isTrivia(ParseTreeNode node) {
+	if (includeTrivia) {
+	    return false;
+	}
+	Token token = node.getToken();
+	return (token != null) && (token.getVisibility() != null)
+		&& (token.getVisibility() != Visibility.VISIBLE);
+    }
+
+    private void writeNodeStart(ParseTreeNode node) throws IOException {
+	generator.writeStartObject();
+	generator.writeStringField("name", node.getName());
+	Token token = node.getToken();
+	if (token != null) {
+	    generator.writeStringField("text", token.getText());
+	    if (includeTrivia && (token.getVisibility() != null)
+		    && (token.getVisibility() != Visibility.VISIBLE)) {
+		generator.writeStringField("visibility", token.getVisibility()
+			.name());
+	    }
+	}
+	if (includeMetaData) {
+	    ParserTreeMetaData metaData = node.getMetaData();
+	    if (metaData != null) {
+		generator.writeNumberField("line", metaData.getLine());
+		generator.writeNumberField("lineNum", metaData.getLineNum());
+	    }
+	    TokenMetaData tokenMetaData = token != null ? token.getMetaData()
+		    : null;
+	    if (tokenMetaData != null) {
+		if (metaData == null) {
+		    generator.writeNumberField("line", tokenMetaData.getLine());
+		    generator.writeNumberField("lineNum",
+			    tokenMetaData.getLineNum());
+		}
+		generator.writeNumberField("column", tokenMetaData.getColumn());
+	    }
+	    if (node.hasTextRange()) {
+		generator.writeNumberField("start", node.getStartOffset());
+		generator.writeNumberField("end", node.getEndOffset());
+	    }
+	}
+    }
+
+    /**
+     * This method closes the underlying {@link JsonGenerator}.
+     */
+    @Override
+    public void close() throws IOException {
+	generator.close();
+    }
+}
@@ -0,0 +1,155 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.HAS_INDEX;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.HAS_SOURCE;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.INDEX_MAGIC;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.TRAILER_LENGTH;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readLocation;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readString;
+import static com.puresoltechnologies.parsers.parser.io.BinaryTreeFormat.readVarInt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * This class provides random access to the sub trees of a binary parse tree
+ * which was written by {@link BinaryTreeWriter} with index. The nodes are
+ * addressed by their pre-order number and only the requested sub tree is
+ * decoded. The buffer may be a memory mapped file.
+ *
+ * Instances are thread-safe, because each read works on its own view of the
+ * buffer.
+ */
+public class RandomAccessBinaryTree {
+
+    private final ByteBuffer buffer;
+    private final int[] nodeOffsets;
+    private final BinaryTreeDecoder decoder;
+
+    /**
+     * @param buffer
+     *            contains the complete binary tree from position 0 to its
+     *            limit.
+     * @throws IOException
+     *             is thrown in case the buffer does not contain a valid binary
+     *             tree with index.
+     */
+    public RandomAccessBinaryTree(ByteBuffer buffer) throws IOException {
+	super();
+	this.buffer = buffer.duplicate();
+	this.buffer.position(0);
+	InputStream in = openStream(0);
+	int flags = BinaryTreeReader.readHeader(in);
+	if ((flags & HAS_INDEX) == 0) {
+	    throw new IOException("Binary parse tree was written without index.");
+	}
+	String source = (flags & HAS_SOURCE) != 0 ? readString(in) : null;
+
+	int trailer = this.buffer.limit() - TRAILER_LENGTH;
+	if (trailer < 0) {
+	    throw new IOException("Binary parse tree is truncated.");
+	}
+	long indexPosition = this.buffer.getLong(trailer);
+	for (int i = 0; i < INDEX_MAGIC.length; i++) {
+	    if (this.buffer.get(trailer + 8 + i) != INDEX_MAGIC[i]) {
+		throw new IOException("Binary parse tree index is invalid.");
+	    }
+	}
+	if ((indexPosition < 0) || (indexPosition > trailer)) {
+	    throw new IOException("Binary parse tree index is invalid.");
+	}
+	in = openStream((int) indexPosition);
+	nodeOffsets = new int[readVarInt(in)];
+	int offset = 0;
+	for (int i = 0; i < nodeOffsets.length; i++) {
+	    offset += readVarInt(in);
+	    nodeOffsets[i] = offset;
+	}
+	int nameNum = readVarInt(in);
+	List<String> names = new ArrayList<String>(nameNum);
+	for (int i = 0; i < nameNum; i++) {
+	    names.add(readString(in));
+	}
+	int locationNum = readVarInt(in);
+	List<SourceCodeLocation> locations = new ArrayList<SourceCodeLocation>(
+		locationNum);
+	for (int i = 0; i < locationNum; i++) {
+	    locations.add(readLocation(in));
+	}
+	decoder = new BinaryTreeDecoder(source, names, locations, true);
+    }
+
+    /**
+     * @return The number of nodes of the tree is returned.
+     */
+    public int getNodeCount() {
+	return nodeOffsets.length;
+    }
+
+    /**
+     * @return The complete tree is read and its root is returned.
+     * @throws IOException
+     *             is thrown in case the tree cannot be read.
+     */
+    public ParseTreeNode readTree() throws IOException {
+	return readSubTree(0);
+    }
+
+    /**
+     * This method reads the sub tree of a single node.
+     *
+     * @param preOrderIndex
+     *            is the pre-order number of the node, where the root has
+     *            number 0.
+     * @return The node is returned with its sub tree, but without parent.
+     * @throws IOException
+     *             is thrown in case the sub tree cannot be read.
+     */
+    public ParseTreeNode readSubTree(int preOrderIndex) throws IOException {
+	if ((preOrderIndex < 0) || (preOrderIndex >= nodeOffsets.length)) {
+	    throw new IndexOutOfBoundsException("Node index " + preOrderIndex
+		    + " is out of range [0, " + nodeOffsets.length + ").");
+	}
+	return decoder.readTree(openStream(nodeOffsets[preOrderIndex]));
+    }
+
+    private InputStream openStream(int position) {
+	ByteBuffer view = buffer.duplicate();
+	view.position(position);
+	return new ByteBufferInputStream(view);
+    }
+
+    /**
+     * This stream reads from a {@link ByteBuffer}.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	private ByteBufferInputStream(ByteBuffer buffer) {
+	    super();
+	    this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+	    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+	    if (!buffer.hasRemaining()) {
+		return -1;
+	    }
+	    int count = Math.min(len, buffer.remaining());
+	    buffer.get(b, off, count);
+	    return count;
+	}
+    }
+}
@@ -17,6 +17,10 @@ import com.puresoltechnologies.parsers.grammar.production.Terminal;
 import com.puresoltechnologies.parsers.grammar.token.Visibility;
 import com.puresoltechnologies.parsers.lexer.Token;
 import com.puresoltechnologies.parsers.lexer.TokenStream;
+import com.puresoltechnologies.parsers.metrics.Counter;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.metrics.Phase;
+import com.puresoltechnologies.parsers.metrics.PhaseMetrics;
 import com.puresoltechnologies.parsers.parser.AbstractParser;
 import com.puresoltechnologies.parsers.parser.Parser;
 import com.puresoltechnologies.parsers.parser.ParserException;
@@ -119,6 +123,13 @@ public abstract class AbstractLRParser extends AbstractParser {
      */
     private int stepCounter = 0;
 
+    /**
+     * These are the metrics of the current parser run. They are only
+     * collected if a {@link MetricsListener} is set, otherwise this field is
+     * null.
+     */
+    private transient PhaseMetrics metrics = null;
+
     public AbstractLRParser(Grammar grammar) throws GrammarException {
 	super(grammar);
 	parserTable = calculateParserTable();
@@ -163,8 +174,28 @@ public abstract class AbstractLRParser extends AbstractParser {
 	    throws ParserException {
 	startTime = System.currentTimeMillis();
 	setTokenStream(tokenStream);
-	reset();
-	return parse();
+	MetricsListener listener = getMetricsListener();
+	if (listener == null) {
+	    reset();
+	    return parse();
+	}
+	metrics = new PhaseMetrics(Phase.PARSING, getGrammar().getName());
+	metrics.set(Counter.TOKENS, tokenStream.size());
+	metrics.set(Counter.BACKTRACKS, 0);
+	boolean successful = false;
+	try {
+	    reset();
+	    ParseTreeNode parseTree = parse();
+	    metrics.set(Counter.TREE_NODES, parseTree.countNodes());
+	    successful = true;
+	    return parseTree;
+	} finally {
+	    PhaseMetrics finished = metrics;
+	    metrics = null;
+	    finished.set(Counter.STEPS, stepCounter);
+	    finished.finish(successful);
+	    listener.phaseFinished(finished);
+	}
     }
 
     /**
@@ -231,6 +262,9 @@ public abstract class AbstractLRParser extends AbstractParser {
 	do {
 	    checkTimeout();
 	    stepCounter++;
+	    if (metrics != null) {
+		metrics.max(Counter.MAX_STACK_DEPTH, stateStack.size());
+	    }
 	    if (logger.isTraceEnabled()) {
 		logger.trace(toString());
 	    }
@@ -466,6 +500,9 @@ public abstract class AbstractLRParser extends AbstractParser {
      */
     private final void trackBack() {
 	logger.trace("No valid action available. Perform back tracking...");
+	if (metrics != null) {
+	    metrics.increment(Counter.BACKTRACKS);
+	}
 	BacktrackLocation backtrackLocation = backtrackStack.peek();
 	streamPosition = backtrackLocation.getStreamPosition();
 	stepCounter = backtrackLocation.getStepCounter();
@@ -558,6 +595,7 @@ public abstract class AbstractLRParser extends AbstractParser {
 	    cloned.maxPosition = 0;
 	    cloned.streamPosition = 0;
 	    cloned.stepCounter = 0;
+	    cloned.metrics = null;
 
 	    return cloned;
 	} catch (SecurityException e) {
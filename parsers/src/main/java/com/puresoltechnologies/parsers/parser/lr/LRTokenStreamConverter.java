@@ -58,6 +58,7 @@ public class LRTokenStreamConverter {
     private ParseTreeNode getParserTree() throws ParserException {
 	ParseTreeNode tree = convert();
 	tree = addMetaData(tree);
+	tree.createTextRanges();
 	return tree;
     }
 
@@ -0,0 +1,104 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+/**
+ * This frame keeps the state of a single rule application. It contains the
+ * memo entry of the rule and the head in case of a seed growing process.
+ * 
+ * <b>This class is not thread-safe!</b>
+ */
+class ApplyRuleFrame extends Frame {
+
+    private static final long serialVersionUID = 8129426452624510117L;
+
+    /**
+     * These are the states of a rule application. The state tells for which
+     * result the frame is waiting for.
+     */
+    enum State {
+	/**
+	 * The rule application was not started, yet.
+	 */
+	START,
+	/**
+	 * The rule is evaluated once during a seed growing iteration.
+	 */
+	RECALLED,
+	/**
+	 * The rule is evaluated for the first time at the position.
+	 */
+	EVALUATED,
+	/**
+	 * The seed of a left recursion is grown.
+	 */
+	GROWING;
+    }
+
+    private final String rule;
+    private State state = State.START;
+    private MemoEntry memoEntry = null;
+    private Head head = null;
+    private int savedExaminedEnd = 0;
+    private long startTime = 0;
+
+    ApplyRuleFrame(String rule, int position, int line) {
+	super(position, line);
+	this.rule = rule;
+    }
+
+    String getRule() {
+	return rule;
+    }
+
+    State getState() {
+	return state;
+    }
+
+    void setState(State state) {
+	this.state = state;
+    }
+
+    MemoEntry getMemoEntry() {
+	return memoEntry;
+    }
+
+    void setMemoEntry(MemoEntry memoEntry) {
+	this.memoEntry = memoEntry;
+    }
+
+    Head getHead() {
+	return head;
+    }
+
+    void setHead(Head head) {
+	this.head = head;
+    }
+
+    /**
+     * @return The examined end of the calling frame is returned, which was
+     *         saved at the start of the rule application.
+     */
+    int getSavedExaminedEnd() {
+	return savedExaminedEnd;
+    }
+
+    void setSavedExaminedEnd(int savedExaminedEnd) {
+	this.savedExaminedEnd = savedExaminedEnd;
+    }
+
+    /**
+     * @return The start time of the rule application in nanoseconds is
+     *         returned. It is only set if profiling is switched on.
+     */
+    long getStartTime() {
+	return startTime;
+    }
+
+    void setStartTime(long startTime) {
+	this.startTime = startTime;
+    }
+
+    @Override
+    public String toString() {
+	return "apply " + rule + " at " + getPosition() + " (" + state + ")";
+    }
+}
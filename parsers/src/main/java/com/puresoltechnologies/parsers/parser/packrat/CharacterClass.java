@@ -0,0 +1,134 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.puresoltechnologies.parsers.grammar.token.TokenDefinition;
+
+/**
+ * This class is an approximation of the set of characters a token can start
+ * with. The approximation is exact for ASCII characters. All other characters
+ * are always assumed to be possible, so the class can be used to safely sort
+ * out alternatives which cannot match, but never to prove a match.
+ * 
+ * <b>This class is not thread safe!</b>
+ */
+class CharacterClass implements Serializable {
+
+    private static final long serialVersionUID = 4419460725153917683L;
+
+    /**
+     * This is the number of characters which are checked exactly.
+     */
+    private static final int ASCII_SIZE = 128;
+
+    /**
+     * Creates a character class which contains all characters. This is used
+     * for unknown tokens and tokens which may match an empty string.
+     * 
+     * @return
+     */
+    static CharacterClass all() {
+	CharacterClass characterClass = new CharacterClass();
+	characterClass.all = true;
+	return characterClass;
+    }
+
+    /**
+     * Creates an empty character class.
+     * 
+     * @return
+     */
+    static CharacterClass none() {
+	return new CharacterClass();
+    }
+
+    /**
+     * This method calculates the character class for the first character of
+     * the given token definition. Each ASCII character is presented to the
+     * pattern alone. If the pattern matches or the regular expression engine
+     * hits the end of the input, the character is a valid start for the token.
+     * 
+     * @param tokenDefinition
+     *            is the token definition to be analyzed.
+     * @return A {@link CharacterClass} is returned.
+     */
+    static CharacterClass of(TokenDefinition tokenDefinition) {
+	if (tokenDefinition == null) {
+	    return all();
+	}
+	Pattern pattern = tokenDefinition.getPattern();
+	if (pattern.matcher("").lookingAt()) {
+	    /*
+	     * The token may be empty, so we cannot say anything about the next
+	     * character.
+	     */
+	    return all();
+	}
+	CharacterClass characterClass = new CharacterClass();
+	for (int c = 0; c < ASCII_SIZE; c++) {
+	    Matcher matcher = pattern.matcher(String.valueOf((char) c));
+	    if (matcher.lookingAt() || matcher.hitEnd()) {
+		characterClass.ascii.set(c);
+	    }
+	}
+	return characterClass;
+    }
+
+    private final BitSet ascii = new BitSet(ASCII_SIZE);
+    private boolean all = false;
+
+    private CharacterClass() {
+	super();
+    }
+
+    /**
+     * Adds all characters of another class to this one.
+     * 
+     * @param characterClass
+     *            is the class to be added.
+     */
+    void addAll(CharacterClass characterClass) {
+	all |= characterClass.all;
+	ascii.or(characterClass.ascii);
+    }
+
+    /**
+     * Checks whether the given character may be contained in this class.
+     * 
+     * @param c
+     *            is the character to be checked.
+     * @return <code>false</code> is returned if the character is definitely
+     *         not part of the class. <code>true</code> is returned otherwise.
+     */
+    boolean contains(char c) {
+	if (all || (c >= ASCII_SIZE)) {
+	    return true;
+	}
+	return ascii.get(c);
+    }
+
+    boolean isAll() {
+	return all;
+    }
+
+    @Override
+    public String toString() {
+	if (all) {
+	    return "[*]";
+	}
+	StringBuilder builder = new StringBuilder("[");
+	for (int c = ascii.nextSetBit(0); c >= 0; c = ascii.nextSetBit(c + 1)) {
+	    if (Character.isISOControl(c) || Character.isWhitespace(c)) {
+		builder.append("\\u");
+		builder.append(String.format("%04x", c));
+	    } else {
+		builder.append((char) c);
+	    }
+	}
+	builder.append("]");
+	return builder.toString();
+    }
+}
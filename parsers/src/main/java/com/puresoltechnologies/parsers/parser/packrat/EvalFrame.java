@@ -0,0 +1,70 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.util.List;
+
+import com.puresoltechnologies.parsers.grammar.production.Production;
+
+/**
+ * This frame keeps the state of the evaluation of all alternatives of a rule.
+ * It contains the index of the next alternative to be tried and the maximum
+ * progress found so far.
+ * 
+ * <b>This class is not thread-safe!</b>
+ */
+class EvalFrame extends Frame {
+
+    private static final long serialVersionUID = -4417585416916180163L;
+
+    private final List<Production> alternatives;
+    private final int predictionPosition;
+    private int index = 0;
+    private MemoEntry maxProgress = MemoEntry.failed();
+    private boolean committed = false;
+
+    EvalFrame(List<Production> alternatives, int position, int line,
+	    int predictionPosition) {
+	super(position, line);
+	this.alternatives = alternatives;
+	this.predictionPosition = predictionPosition;
+    }
+
+    int getPredictionPosition() {
+	return predictionPosition;
+    }
+
+    boolean hasNextAlternative() {
+	return index < alternatives.size();
+    }
+
+    Production nextAlternative() {
+	Production alternative = alternatives.get(index);
+	index++;
+	return alternative;
+    }
+
+    MemoEntry getMaxProgress() {
+	return maxProgress;
+    }
+
+    void setMaxProgress(MemoEntry maxProgress) {
+	this.maxProgress = maxProgress;
+    }
+
+    /**
+     * @return true is returned if the current alternative passed a cut. No
+     *         other alternatives are to be tried afterwards.
+     */
+    boolean isCommitted() {
+	return committed;
+    }
+
+    void setCommitted(boolean committed) {
+	this.committed = committed;
+    }
+
+    @Override
+    public String toString() {
+	return "eval alternative " + index + "/" + alternatives.size() + " at "
+		+ getPosition();
+    }
+}
@@ -0,0 +1,122 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.production.Construction;
+import com.puresoltechnologies.parsers.grammar.production.EmptyTerminal;
+import com.puresoltechnologies.parsers.grammar.production.Production;
+import com.puresoltechnologies.parsers.grammar.production.Terminal;
+import com.puresoltechnologies.parsers.grammar.token.TokenDefinition;
+import com.puresoltechnologies.parsers.grammar.token.TokenDefinitionSet;
+import com.puresoltechnologies.parsers.parser.functions.First;
+
+/**
+ * This class calculates for each production of a grammar the characters the
+ * production may start with. The calculation is based on the FIRST sets from
+ * {@link First} and on {@link CharacterClass} approximations for the
+ * terminals.
+ * 
+ * The packrat parser uses this information to skip alternatives which cannot
+ * match at the current position without running into them.
+ */
+class FirstCharacters implements Serializable {
+
+    private static final long serialVersionUID = -3296418939150328765L;
+
+    /**
+     * This field contains the character class for all productions which
+     * cannot be derived to an empty string. Productions with empty derivation
+     * are not contained and need to be tried always.
+     */
+    private final Map<Production, CharacterClass> productionClasses = new HashMap<Production, CharacterClass>();
+
+    FirstCharacters(Grammar grammar) {
+	super();
+	calculate(grammar);
+    }
+
+    private void calculate(Grammar grammar) {
+	TokenDefinitionSet tokenDefinitions = grammar.getTokenDefinitions();
+	Map<String, CharacterClass> terminalClasses = new HashMap<String, CharacterClass>();
+	First first = new First(grammar);
+	for (Production production : grammar.getProductions().getList()) {
+	    CharacterClass characterClass = CharacterClass.none();
+	    boolean emptyDerivation = true;
+	    for (Construction construction : production.getConstructions()) {
+		Set<Terminal> terminals = first.get(construction);
+		if (terminals == null) {
+		    /*
+		     * Unknown construction. We cannot predict anything.
+		     */
+		    break;
+		}
+		for (Terminal terminal : terminals) {
+		    if (terminal.equals(EmptyTerminal.getInstance())) {
+			continue;
+		    }
+		    CharacterClass terminalClass = terminalClasses.get(terminal
+			    .getName());
+		    if (terminalClass == null) {
+			TokenDefinition tokenDefinition = tokenDefinitions
+				.getDefinition(terminal.getName());
+			terminalClass = CharacterClass.of(tokenDefinition);
+			terminalClasses.put(terminal.getName(), terminalClass);
+		    }
+		    characterClass.addAll(terminalClass);
+		}
+		if (!terminals.contains(EmptyTerminal.getInstance())) {
+		    emptyDerivation = false;
+		    break;
+		}
+	    }
+	    if ((!emptyDerivation) && (!characterClass.isAll())) {
+		productionClasses.put(production, characterClass);
+	    }
+	}
+    }
+
+    /**
+     * This method checks whether a production can be successfully applied at
+     * the given position.
+     * 
+     * @param production
+     *            is the production to be checked.
+     * @param text
+     *            is the text to be parsed.
+     * @param position
+     *            is the position of the next significant character. Leading
+     *            hidden and ignored tokens need to be skipped already.
+     * @return <code>false</code> is returned if the production cannot match
+     *         at the given position. <code>true</code> is returned otherwise.
+     */
+    boolean isPossible(Production production, String text, int position) {
+	CharacterClass characterClass = productionClasses.get(production);
+	if (characterClass == null) {
+	    return true;
+	}
+	if (position >= text.length()) {
+	    return false;
+	}
+	return characterClass.contains(text.charAt(position));
+    }
+
+    /**
+     * Returns the character class of the given production.
+     * 
+     * @param production
+     *            is the production to be looked up.
+     * @return A {@link CharacterClass} is returned. For productions with an
+     *         empty derivation a class containing all characters is returned.
+     */
+    CharacterClass get(Production production) {
+	CharacterClass characterClass = productionClasses.get(production);
+	if (characterClass == null) {
+	    return CharacterClass.all();
+	}
+	return characterClass;
+    }
+}
@@ -0,0 +1,49 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.io.Serializable;
+
+/**
+ * This is the base class for all frames on the explicit stack of the
+ * {@link PackratParser}. A frame keeps the state of a single step of the
+ * packrat algorithm (rule application, rule evaluation or production parsing)
+ * which would otherwise be kept on the Java call stack. So the nesting depth
+ * of the parsed text is only limited by the heap.
+ * 
+ * <b>This class is not thread-safe!</b>
+ */
+abstract class Frame implements Serializable {
+
+    private static final long serialVersionUID = -2707305591569616409L;
+
+    private final int position;
+    private final int line;
+    private MemoEntry result = null;
+
+    Frame(int position, int line) {
+	super();
+	this.position = position;
+	this.line = line;
+    }
+
+    int getPosition() {
+	return position;
+    }
+
+    int getLine() {
+	return line;
+    }
+
+    /**
+     * This method returns the result of the frame after it was finished.
+     * 
+     * @return A {@link MemoEntry} is returned or null if the frame is not
+     *         finished, yet.
+     */
+    MemoEntry getResult() {
+	return result;
+    }
+
+    void setResult(MemoEntry result) {
+	this.result = result;
+    }
+}
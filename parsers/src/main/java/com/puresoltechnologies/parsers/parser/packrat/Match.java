@@ -0,0 +1,112 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.io.Serializable;
+
+import com.puresoltechnologies.parsers.grammar.production.Production;
+import com.puresoltechnologies.parsers.grammar.token.TokenDefinition;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+
+/**
+ * This class represents a successful match of the packrat parser. A match is
+ * either a token match or a production match with its child matches. Only the
+ * length of the text covered is recorded, the actual {@link ParseTreeNode}s
+ * are created after parsing for the successful derivation only.
+ *
+ * The children of a production match cover the text of the production without
+ * gaps, because hidden and ignored tokens are part of the children, too. So
+ * the position of a child is the position of the parent plus the lengths of
+ * all previous children. Matches do not store absolute positions and lines,
+ * which allows to reuse them at shifted positions after text edits.
+ *
+ * Matches are immutable and can therefore be shared between different parents
+ * via the memo.
+ */
+class Match implements Serializable {
+
+    private static final long serialVersionUID = 5326624402869571622L;
+
+    private static final Match[] NO_CHILDREN = new Match[0];
+
+    /**
+     * Creates a new match for a single token.
+     *
+     * @param tokenDefinition
+     *            is the token definition which matched.
+     * @param length
+     *            is the length of the token.
+     * @param lineBreaks
+     *            is the number of line breaks within the token.
+     * @return A {@link Match} is returned.
+     */
+    static Match token(TokenDefinition tokenDefinition, int length,
+	    int lineBreaks) {
+	return new Match(null, tokenDefinition, length, lineBreaks, NO_CHILDREN);
+    }
+
+    /**
+     * Creates a new match for a production.
+     *
+     * @param production
+     *            is the production which matched.
+     * @param length
+     *            is the length of the text covered by the production.
+     * @param lineBreaks
+     *            is the number of line breaks within the text covered by the
+     *            production.
+     * @param children
+     *            are the matches of the constructions including hidden and
+     *            ignored tokens.
+     * @return A {@link Match} is returned.
+     */
+    static Match production(Production production, int length,
+	    int lineBreaks, Match[] children) {
+	return new Match(production, null, length, lineBreaks, children);
+    }
+
+    private final Production production;
+    private final TokenDefinition tokenDefinition;
+    private final int length;
+    private final int lineBreaks;
+    private final Match[] children;
+
+    private Match(Production production, TokenDefinition tokenDefinition,
+	    int length, int lineBreaks, Match[] children) {
+	super();
+	this.production = production;
+	this.tokenDefinition = tokenDefinition;
+	this.length = length;
+	this.lineBreaks = lineBreaks;
+	this.children = children;
+    }
+
+    boolean isToken() {
+	return tokenDefinition != null;
+    }
+
+    Production getProduction() {
+	return production;
+    }
+
+    TokenDefinition getTokenDefinition() {
+	return tokenDefinition;
+    }
+
+    int getLength() {
+	return length;
+    }
+
+    int getLineBreaks() {
+	return lineBreaks;
+    }
+
+    Match[] getChildren() {
+	return children;
+    }
+
+    @Override
+    public String toString() {
+	String name = isToken() ? tokenDefinition.getName() : production
+		.getAlternativeName();
+	return name + " (length: " + length + ")";
+    }
+}
@@ -3,7 +3,6 @@ package com.puresoltechnologies.parsers.parser.packrat;
 import java.io.Serializable;
 
 import com.puresoltechnologies.parsers.parser.ParserException;
-import com.puresoltechnologies.parsers.parser.ParseTreeNode;
 
 /**
  * This is a memo entry for packrat parsing. The memoization process keeps all
@@ -22,11 +21,11 @@ class MemoEntry implements Serializable, Comparable<MemoEntry> {
      * @param deltaPosition
      * @param deltaId
      * @param deltaLine
-     * @param tree
+     * @param match
      * @return
      */
-    static MemoEntry success(int deltaPosition, int deltaLine, ParseTreeNode tree) {
-	return new MemoEntry(deltaPosition, deltaLine, tree);
+    static MemoEntry success(int deltaPosition, int deltaLine, Match match) {
+	return new MemoEntry(deltaPosition, deltaLine, match);
     }
 
     /**
@@ -51,6 +50,12 @@ class MemoEntry implements Serializable, Comparable<MemoEntry> {
     private int deltaPosition;
     private int deltaLine;
     private Object answer;
+    /**
+     * This is the number of characters starting at the position of the entry
+     * which were examined to find the answer. It is used to decide whether
+     * the entry is still valid after a text edit.
+     */
+    private int examinedLength = 0;
 
     private MemoEntry(int deltaPosition, int deltaLine, Object answer) {
 	super();
@@ -83,6 +88,14 @@ class MemoEntry implements Serializable, Comparable<MemoEntry> {
 	return answer;
     }
 
+    int getExaminedLength() {
+	return examinedLength;
+    }
+
+    void setExaminedLength(int examinedLength) {
+	this.examinedLength = examinedLength;
+    }
+
     void add(MemoEntry progress) throws ParserException {
 	if ((deltaPosition < 0) || (deltaLine < 0)) {
 	    throw new ParserException("Negative progress is not supported!");
@@ -132,6 +145,7 @@ class MemoEntry implements Serializable, Comparable<MemoEntry> {
 	this.deltaPosition = ans.deltaPosition;
 	this.deltaLine = ans.deltaLine;
 	this.answer = ans.answer;
+	this.examinedLength = ans.examinedLength;
     }
 
     @Override
@@ -1,7 +1,12 @@
 package com.puresoltechnologies.parsers.parser.packrat;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * This class is a packrat parser memo for result memoization.
@@ -15,13 +20,30 @@ public class PackratMemo {
      * This is the memoization buffer to put all memoized data in. The buffer
      * stores a MemoEntry for each production on a given position.
      */
-    private final Map<Integer, Map<String, MemoEntry>> memo = new HashMap<Integer, Map<String, MemoEntry>>();
+    private Map<Integer, Map<String, MemoEntry>> memo = new HashMap<Integer, Map<String, MemoEntry>>();
+
+    /**
+     * This set contains all positions where a left recursion was found. The
+     * entries on such a position depend on each other due to the seed growing
+     * and are only kept or dropped together.
+     */
+    private Set<Integer> leftRecursions = new HashSet<Integer>();
 
     PackratMemo() {
     }
 
     void clear() {
 	memo.clear();
+	leftRecursions.clear();
+    }
+
+    /**
+     * This method marks the given position as position of a left recursion.
+     * 
+     * @param position
+     */
+    void setLeftRecursion(int position) {
+	leftRecursions.add(position);
     }
 
     /**
@@ -68,4 +90,134 @@ public class PackratMemo {
 	}
     }
 
+    /**
+     * <p>
+     * This method adapts the memo to a list of text edits. All entries are
+     * removed which examined characters within the replaced range of an edit
+     * or which are not finished. The positions of all entries after an edit
+     * are shifted by the difference of the inserted and removed length.
+     * </p>
+     * <p>
+     * The memo is processed in a single pass: Every entry is taken through
+     * all edits once and the memo is rebuilt only one time, so the effort is
+     * proportional to the size of the memo times the number of edits.
+     * </p>
+     * <p>
+     * If a single entry on a position of a left recursion is removed, all
+     * entries on this position are removed.
+     * </p>
+     * 
+     * @param edits
+     *            are the edits to be applied in the given order, so the
+     *            offset of an edit refers to the text with all previous edits
+     *            applied.
+     */
+    void applyEdits(List<TextEdit> edits) {
+	if (edits.isEmpty()) {
+	    return;
+	}
+	Map<Integer, Map<String, MemoEntry>> newMemo = new HashMap<Integer, Map<String, MemoEntry>>();
+	Set<Integer> newLeftRecursions = new HashSet<Integer>();
+	for (Entry<Integer, Map<String, MemoEntry>> entry : memo.entrySet()) {
+	    int position = entry.getKey();
+	    Map<String, MemoEntry> map = entry.getValue();
+	    boolean removed = false;
+	    Iterator<MemoEntry> iterator = map.values().iterator();
+	    while (iterator.hasNext()) {
+		MemoEntry memoEntry = iterator.next();
+		if ((memoEntry.getAnswer() instanceof LR)
+			|| (isTouched(position, memoEntry.getExaminedLength(),
+				edits))) {
+		    iterator.remove();
+		    removed = true;
+		}
+	    }
+	    boolean leftRecursion = leftRecursions.contains(position);
+	    if ((map.isEmpty()) || (removed && leftRecursion)) {
+		continue;
+	    }
+	    int newPosition = shift(position, edits);
+	    newMemo.put(newPosition, map);
+	    if (leftRecursion) {
+		newLeftRecursions.add(newPosition);
+	    }
+	}
+	memo = newMemo;
+	leftRecursions = newLeftRecursions;
+    }
+
+    /**
+     * This method checks whether one of the edits changes the text examined
+     * by an entry.
+     * 
+     * @param position
+     *            is the position of the entry before the edits.
+     * @param examinedLength
+     *            is the number of characters examined by the entry.
+     * @param edits
+     *            are the edits to be checked in the given order.
+     * @return <code>true</code> is returned if the examined text was changed.
+     */
+    private static boolean isTouched(int position, int examinedLength,
+	    List<TextEdit> edits) {
+	for (TextEdit edit : edits) {
+	    int offset = edit.getOffset();
+	    int removedLength = edit.getRemovedLength();
+	    if (position >= offset + removedLength) {
+		position += edit.getInsertedText().length() - removedLength;
+	    } else if (position + examinedLength > offset) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * This method calculates the position of an untouched entry after the
+     * edits.
+     * 
+     * @param position
+     *            is the position of the entry before the edits.
+     * @param edits
+     *            are the edits to be applied in the given order.
+     * @return The new position is returned.
+     */
+    private static int shift(int position, List<TextEdit> edits) {
+	for (TextEdit edit : edits) {
+	    int removedLength = edit.getRemovedLength();
+	    if (position >= edit.getOffset() + removedLength) {
+		position += edit.getInsertedText().length() - removedLength;
+	    }
+	}
+	return position;
+    }
+
+    /**
+     * This method removes all entries on positions before the given position.
+     * It is called after a cut, when the parser can not go back anymore.
+     * 
+     * @param position
+     *            is the first position to keep.
+     */
+    void release(int position) {
+	Iterator<Integer> iterator = memo.keySet().iterator();
+	while (iterator.hasNext()) {
+	    int entryPosition = iterator.next();
+	    if (entryPosition < position) {
+		iterator.remove();
+		leftRecursions.remove(entryPosition);
+	    }
+	}
+    }
+
+    /**
+     * @return The number of memoized entries is returned.
+     */
+    int size() {
+	int size = 0;
+	for (Map<String, MemoEntry> map : memo.values()) {
+	    size += map.size();
+	}
+	return size;
+    }
 }
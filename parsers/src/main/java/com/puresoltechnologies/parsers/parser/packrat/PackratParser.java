@@ -1,9 +1,10 @@
 package com.puresoltechnologies.parsers.parser.packrat;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -22,16 +23,20 @@ import com.puresoltechnologies.parsers.grammar.token.TokenDefinitionSet;
 import com.puresoltechnologies.parsers.grammar.token.Visibility;
 import com.puresoltechnologies.parsers.lexer.Token;
 import com.puresoltechnologies.parsers.lexer.TokenMetaData;
+import com.puresoltechnologies.parsers.metrics.Counter;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.metrics.MetricsSource;
+import com.puresoltechnologies.parsers.metrics.Phase;
+import com.puresoltechnologies.parsers.metrics.PhaseMetrics;
 import com.puresoltechnologies.parsers.parser.ParserException;
 import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParserTreeMetaData;
 import com.puresoltechnologies.parsers.source.SourceCode;
 import com.puresoltechnologies.parsers.source.SourceCodeLine;
 import com.puresoltechnologies.parsers.source.SourceCodeLocation;
 import com.puresoltechnologies.parsers.source.StringWithLocation;
+import com.puresoltechnologies.parsers.source.UnspecifiedSourceCodeLocation;
 import com.puresoltechnologies.trees.TreeException;
-import com.puresoltechnologies.trees.TreeVisitor;
-import com.puresoltechnologies.trees.TreeWalker;
-import com.puresoltechnologies.trees.WalkingAction;
 
 /**
  * This is a complete implementation of a packrat parser.
@@ -41,13 +46,19 @@ import com.puresoltechnologies.trees.WalkingAction;
  * @author Rick-Rainer Ludwig
  * 
  */
-public class PackratParser implements Serializable {
+public class PackratParser implements Serializable, MetricsSource {
 
     private static final long serialVersionUID = -2004344389320369178L;
 
     private static final Logger logger = LoggerFactory
 	    .getLogger(PackratParser.class);
 
+    /**
+     * This is the initial size of the text window token definitions are
+     * matched against. See {@link #matchTokenDefinition(TokenDefinition, int)}.
+     */
+    private static final int MATCH_WINDOW = 32;
+
     /**
      * This is the memo for this parser.
      */
@@ -86,16 +97,21 @@ public class PackratParser implements Serializable {
      */
     private final Grammar grammar;
 
+    /**
+     * This field contains the first characters of all productions. It is used
+     * to skip alternatives which cannot match at the current position.
+     */
+    private final FirstCharacters firstCharacters;
+
     /**
      * This is the text to be parsed.
      */
     private String text = "";
 
     /**
-     * This array contains after initialization an array of
-     * {@link SourceCodeLine} references. This array is used to map each
-     * position in the input text to original {@link SourceCodeLine} to get the
-     * correct meta information for creating the tokens.
+     * This field is used to map each position in the input text to the
+     * original {@link SourceCodeLine} to get the correct meta information for
+     * creating the tokens.
      */
     private StringWithLocation textWithSource = null;
 
@@ -112,16 +128,113 @@ public class PackratParser implements Serializable {
      */
     private int maxPosition = 0;
 
+    /**
+     * This stack keeps the matches of all constructions of the productions
+     * which are currently processed. Each production takes its matches from
+     * the top of the stack after it succeeded.
+     */
+    private final List<Match> matchStack = new ArrayList<Match>();
+
+    /**
+     * This is the explicit stack of the frames which are currently processed.
+     * It replaces the recursion of the packrat algorithm. See
+     * {@link #run(Frame)}.
+     */
+    private final List<Frame> frameStack = new ArrayList<Frame>();
+
+    /**
+     * This is the number of {@link EvalFrame}s on the {@link #frameStack}
+     * which did not pass a cut and have alternatives left to be tried. It is
+     * kept up to date while the frames are processed, so that
+     * {@link #isBacktrackingPossible()} does not need to search the stack.
+     */
+    private int openEvaluations = 0;
+
+    /**
+     * This is the number of left recursions which were found, but which seed
+     * growing did not start, yet. The seed growing itself is tracked by
+     * {@link #heads}.
+     */
+    private int pendingLeftRecursions = 0;
+
+    /**
+     * This is the end of the text range examined by the rule application
+     * which is currently processed. It is stored within the memo entries to
+     * find the entries which are invalidated by text edits. See
+     * {@link #reparse(SourceCode, String, List)}.
+     */
+    private int examinedEnd = 0;
+
+    /**
+     * This flag switches the profiling of the rules on or off.
+     */
+    private boolean profiling = false;
+
+    /**
+     * This is the profile of the last parser run. It is null, if profiling is
+     * switched off.
+     */
+    private PackratProfile profile = null;
+
+    private transient MetricsListener metricsListener = null;
+
+    /**
+     * These are the metrics of the current parser run. They are only
+     * collected if a {@link MetricsListener} is set, otherwise this field is
+     * null.
+     */
+    private transient PhaseMetrics metrics = null;
+
     public PackratParser(Grammar grammar) {
 	super();
 	this.grammar = grammar;
 	hiddenAndIgnoredTokens = extractHiddenAndIgnoredTokensFromGrammar();
+	firstCharacters = new FirstCharacters(grammar);
 	Properties options = grammar.getOptions();
 	ignoredLeading = Boolean.valueOf(options.getProperty(
 		"grammar.ignored-leading", "true"));
 
     }
 
+    /**
+     * This method switches the profiling of the rules on or off. The profile
+     * of a parser run is available afterwards via {@link #getProfile()}.
+     * Profiling slows down the parser a little.
+     * 
+     * @param profiling
+     *            is to be set to true to switch profiling on.
+     */
+    public void setProfiling(boolean profiling) {
+	this.profiling = profiling;
+    }
+
+    /**
+     * @return true is returned if profiling is switched on.
+     */
+    public boolean isProfiling() {
+	return profiling;
+    }
+
+    /**
+     * This method returns the profile of the last parser run.
+     * 
+     * @return A {@link PackratProfile} is returned or null if profiling was
+     *         switched off.
+     */
+    public PackratProfile getProfile() {
+	return profile;
+    }
+
+    @Override
+    public void setMetricsListener(MetricsListener metricsListener) {
+	this.metricsListener = metricsListener;
+    }
+
+    @Override
+    public MetricsListener getMetricsListener() {
+	return metricsListener;
+    }
+
     /**
      * This method extracts all token definitions which are to be ignored or
      * hidden to process them separately and to put them into special locations
@@ -165,13 +278,31 @@ public class PackratParser implements Serializable {
      * @param name
      */
     private void initialize(SourceCode sourceCode) {
+	setSourceCode(sourceCode);
+	memo.clear();
+    }
+
+    /**
+     * This method sets the new source code and resets the state of the last
+     * parser run, but keeps the memo.
+     * 
+     * @param sourceCode
+     *            is the source code to be parsed next.
+     */
+    private void setSourceCode(SourceCode sourceCode) {
 	this.sourceCode = sourceCode;
 	textWithSource = new StringWithLocation(sourceCode);
 	text = textWithSource.getText();
 
-	memo.clear();
+	matchStack.clear();
+	frameStack.clear();
+	openEvaluations = 0;
+	pendingLeftRecursions = 0;
+	heads.clear();
 	ruleInvocationStack = null;
 	maxPosition = 0;
+	examinedEnd = 0;
+	profile = profiling ? new PackratProfile() : null;
     }
 
     /**
@@ -190,9 +321,159 @@ public class PackratParser implements Serializable {
      */
     public ParseTreeNode parse(SourceCode sourceCode, String production)
 	    throws ParserException {
+	initialize(sourceCode);
+	return parse(production);
+    }
+
+    /**
+     * This method parses the source code again after it was changed by the
+     * given edits. The memo of the last parser run is kept: Only the entries
+     * are removed which examined text touched by an edit. All other entries
+     * are moved to their new positions and reused. Adapting the memo takes a
+     * single pass over the memo and the text is not copied. The edits are
+     * only checked cheaply against the changed text: If the lengths or the
+     * inserted texts do not match, the memo is dropped. Edits which pass this
+     * check but do not describe the change lead to a wrong parser result.
+     * 
+     * @param sourceCode
+     *            is the changed source code.
+     * @param edits
+     *            are the edits which changed the source code of the last
+     *            parser run into the given source code. The edits are applied
+     *            in the given order, so the offset of an edit refers to the
+     *            text with all previous edits applied.
+     * @return A {@link ParseTreeNode} with the parser result is returned.
+     * @throws ParserException
+     *             is thrown in case the parser could not parse the source.
+     */
+    public ParseTreeNode reparse(SourceCode sourceCode, List<TextEdit> edits)
+	    throws ParserException {
+	return reparse(sourceCode, "_START_", edits);
+    }
+
+    /**
+     * This method parses the source code again after it was changed by the
+     * given edits. See {@link #reparse(SourceCode, List)} for details.
+     * 
+     * @param sourceCode
+     *            is the changed source code.
+     * @param production
+     *            is the name of the production to be used as root production
+     *            for the parse process. It has to be the same as in the last
+     *            parser run.
+     * @param edits
+     *            are the edits which changed the source code of the last
+     *            parser run into the given source code.
+     * @return A {@link ParseTreeNode} with the parser result is returned.
+     * @throws ParserException
+     *             is thrown in case the parser could not parse the source.
+     */
+    public ParseTreeNode reparse(SourceCode sourceCode, String production,
+	    List<TextEdit> edits) throws ParserException {
+	int previousLength = text.length();
+	setSourceCode(sourceCode);
+	if (matchesText(previousLength, edits)) {
+	    memo.applyEdits(edits);
+	} else {
+	    logger.warn("Edits do not match the source code. The memo is dropped.");
+	    memo.clear();
+	}
+	return parse(production);
+    }
+
+    /**
+     * This method checks cheaply whether the edits can describe the change of
+     * the text without copying it. The ranges of all edits need to be within
+     * the text they are applied to, the resulting length needs to be the
+     * length of the current text and the inserted texts which are not changed
+     * by later edits need to be found at their positions in the current text.
+     * 
+     * @param previousLength
+     *            is the length of the text of the last parser run.
+     * @param edits
+     *            are the edits to be checked.
+     * @return <code>true</code> is returned if the edits fit the text.
+     */
+    private boolean matchesText(int previousLength, List<TextEdit> edits) {
+	int currentLength = previousLength;
+	for (TextEdit edit : edits) {
+	    int offset = edit.getOffset();
+	    int removedLength = edit.getRemovedLength();
+	    if ((offset < 0) || (removedLength < 0)
+		    || (offset + removedLength > currentLength)) {
+		return false;
+	    }
+	    currentLength += edit.getInsertedText().length() - removedLength;
+	}
+	if (currentLength != text.length()) {
+	    return false;
+	}
+	for (int i = 0; i < edits.size(); i++) {
+	    String insertedText = edits.get(i).getInsertedText();
+	    int start = edits.get(i).getOffset();
+	    int end = start + insertedText.length();
+	    for (int j = i + 1; (j < edits.size()) && (start >= 0); j++) {
+		TextEdit edit = edits.get(j);
+		int removedEnd = edit.getOffset() + edit.getRemovedLength();
+		if (removedEnd <= start) {
+		    int shift = edit.getInsertedText().length()
+			    - edit.getRemovedLength();
+		    start += shift;
+		    end += shift;
+		} else if (edit.getOffset() < end) {
+		    // changed by a later edit, so it can not be checked
+		    start = -1;
+		}
+	    }
+	    if ((start >= 0)
+		    && (!text.regionMatches(start, insertedText, 0,
+			    insertedText.length()))) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * This method runs the parser on the current text with the current memo.
+     * 
+     * @param production
+     *            is the name of the production to be used as root production
+     *            for the parse process.
+     * @return A {@link ParseTreeNode} is returned with the parser result.
+     * @throws ParserException
+     *             is thrown in case the parser could not parse the source.
+     */
+    private ParseTreeNode parse(String production) throws ParserException {
+	MetricsListener listener = metricsListener;
+	if (listener == null) {
+	    return parseText(production);
+	}
+	metrics = new PhaseMetrics(Phase.PARSING, grammar.getName());
+	metrics.set(Counter.CHARACTERS, text.length());
+	metrics.set(Counter.BACKTRACKS, 0);
+	metrics.set(Counter.MEMO_HITS, 0);
+	boolean successful = false;
+	try {
+	    ParseTreeNode parseTree = parseText(production);
+	    metrics.set(Counter.TREE_NODES, parseTree.countNodes());
+	    successful = true;
+	    return parseTree;
+	} finally {
+	    PhaseMetrics finished = metrics;
+	    metrics = null;
+	    finished.finish(successful);
+	    listener.phaseFinished(finished);
+	}
+    }
+
+    /**
+     * This method does the actual parsing for
+     * {@link #parse(String)}.
+     */
+    private ParseTreeNode parseText(String production) throws ParserException {
 	try {
-	    initialize(sourceCode);
-	    MemoEntry progress = applyRule(production, 0, 1);
+	    MemoEntry progress = run(new ApplyRuleFrame(production, 0, 1));
 	    if (progress.getDeltaPosition() != text.length()) {
 		throw new ParserException(getParserErrorMessage());
 	    }
@@ -209,9 +490,7 @@ public class PackratParser implements Serializable {
 		}
 
 	    }
-	    ParseTreeNode parserTree = (ParseTreeNode) answer;
-	    normalizeParents(parserTree);
-	    return parserTree;
+	    return createParseTree((Match) answer);
 	} catch (TreeException e) {
 	    throw new ParserException(e);
 	}
@@ -245,6 +524,15 @@ public class PackratParser implements Serializable {
 	return builder;
     }
 
+    /**
+     * This method prints a trace message indented by the depth of the rule
+     * invocation stack. The callers check {@link Logger#isTraceEnabled()}
+     * before, so that the message is only built if it is really logged.
+     * 
+     * @param text
+     * @param position
+     * @param line
+     */
     private void printMessage(String text, int position, int line) {
 	if (logger.isTraceEnabled()) {
 	    StringBuilder builder = indentLine();
@@ -257,21 +545,190 @@ public class PackratParser implements Serializable {
 	}
     }
 
+    /**
+     * <p>
+     * This method runs the packrat algorithm for the given root frame. The
+     * algorithm is not implemented recursively, but with an explicit stack of
+     * {@link Frame}s. Each frame is resumed with the result of the last
+     * finished child frame until it is finished itself. So the nesting depth
+     * of the parsed text is limited by the heap and not by the size of the
+     * Java call stack.
+     * </p>
+     * <p>
+     * The frames correspond to the recursive procedures of the original
+     * algorithm: {@link ApplyRuleFrame} to APPLY-RULE including RECALL and the
+     * seed growing of left recursions, {@link EvalFrame} to EVAL and
+     * {@link ProductionFrame} to the parsing of a single production.
+     * </p>
+     * 
+     * @param root
+     *            is the frame to be processed.
+     * @return The result of the root frame is returned.
+     * @throws TreeException
+     * @throws ParserException
+     */
+    private MemoEntry run(Frame root) throws TreeException, ParserException {
+	int bottom = frameStack.size();
+	frameStack.add(root);
+	MemoEntry returned = null;
+	while (true) {
+	    Frame frame = frameStack.get(frameStack.size() - 1);
+	    Frame child = resume(frame, returned);
+	    if (child != null) {
+		frameStack.add(child);
+		if (metrics != null) {
+		    metrics.max(Counter.MAX_STACK_DEPTH, frameStack.size());
+		}
+		returned = null;
+	    } else {
+		frameStack.remove(frameStack.size() - 1);
+		returned = frame.getResult();
+		if (frameStack.size() == bottom) {
+		    return returned;
+		}
+	    }
+	}
+    }
+
+    /**
+     * This method resumes a frame.
+     * 
+     * @param frame
+     *            is the frame to be resumed.
+     * @param returned
+     *            is the result of the last child frame of the frame or null if
+     *            the frame is started.
+     * @return A new child frame is returned which needs to be processed
+     *         before the frame can be resumed again. If null is returned, the
+     *         frame is finished and its result is set.
+     * @throws TreeException
+     * @throws ParserException
+     */
+    private Frame resume(Frame frame, MemoEntry returned)
+	    throws TreeException, ParserException {
+	if (frame instanceof ProductionFrame) {
+	    return resumeProduction((ProductionFrame) frame, returned);
+	} else if (frame instanceof ApplyRuleFrame) {
+	    return resumeApplyRule((ApplyRuleFrame) frame, returned);
+	} else if (frame instanceof EvalFrame) {
+	    return resumeEval((EvalFrame) frame, returned);
+	}
+	throw new RuntimeException("Frame '" + frame.getClass().getName()
+		+ "' is not supported.");
+    }
+
     /**
      * This method tries to apply a production at a given position. The
      * production is given as a name and not as a concrete rule to process all
      * choices afterwards.
      * 
-     * @param rule
-     * @param position
-     * @return
-     * @throws TreeException
+     * @param frame
+     *            is the frame of the rule application.
+     * @param returned
+     *            is the result of the last evaluation of the rule.
+     * @return The next frame to be processed is returned or null if the rule
+     *         application is finished.
      * @throws ParserException
      */
-    private MemoEntry applyRule(String rule, int position, int line)
-	    throws TreeException, ParserException {
-	printMessage("applyRule: " + rule, position, line);
-	MemoEntry m = recall(rule, position, line);
+    private Frame resumeApplyRule(ApplyRuleFrame frame, MemoEntry returned)
+	    throws ParserException {
+	switch (frame.getState()) {
+	case START:
+	    if (logger.isTraceEnabled()) {
+		printMessage("applyRule: " + frame.getRule(), frame.getPosition(),
+			frame.getLine());
+	    }
+	    if (profile != null) {
+		profile.get(frame.getRule()).addInvocation();
+		frame.setStartTime(System.nanoTime());
+	    }
+	    frame.setSavedExaminedEnd(examinedEnd);
+	    examinedEnd = frame.getPosition();
+	    return recall(frame);
+	case RECALLED:
+	    frame.getMemoEntry().set(returned);
+	    setExaminedLength(frame.getMemoEntry(), frame.getPosition());
+	    return applyRecalled(frame);
+	case EVALUATED:
+	    return applyEvaluated(frame, returned);
+	case GROWING:
+	    return growLR(frame, returned);
+	default:
+	    throw new RuntimeException("State '" + frame.getState()
+		    + "' is not supported.");
+	}
+    }
+
+    /**
+     * This method is an extended getMemo function which also takes into account
+     * the seed growing processes which might be underway.
+     * 
+     * @param frame
+     *            is the frame of the rule application.
+     * @return The next frame to be processed is returned or null if the rule
+     *         application is finished.
+     * @throws ParserException
+     */
+    private Frame recall(ApplyRuleFrame frame) throws ParserException {
+	String production = frame.getRule();
+	int position = frame.getPosition();
+	/*
+	 * Retrieve the current memoized item for the production and the head on
+	 * the current position.
+	 */
+	final MemoEntry m = memo.getMemo(production, position);
+	final Head h = heads.get(position);
+	frame.setMemoEntry(m);
+	/*
+	 * "If not growing a seed parse, just return what is stored in the memo
+	 * table."
+	 */
+	if (h == null) {
+	    return applyRecalled(frame);
+	}
+	/*
+	 * "Do not evaluate any rule that is not involved in this left recursion."
+	 * 
+	 * If we have never been at this position (NONE) and the head rule
+	 * (production) is not the current production and the involved rules in
+	 * the heads also do not fit, then we are on a wrong pass here. We need
+	 * to return a failure.
+	 */
+	if ((m == null) && (!h.getProduction().equals(production))
+		&& (!h.getInvolvedSet().contains(production))) {
+	    frame.setMemoEntry(MemoEntry.failed());
+	    return applyRecalled(frame);
+	}
+	/*
+	 * "Allow involved rules to be evaluated, but only once, during a
+	 * seed-growing iteration."
+	 * 
+	 * If we have been here already, we check the eval set for the
+	 * containing rule and evaluate it necessary. If the rule is within the
+	 * eval set, we need to parse it once.
+	 */
+	if (h.getEvalSet().contains(production)) {
+	    h.getEvalSet().remove(production);
+	    frame.setState(ApplyRuleFrame.State.RECALLED);
+	    return createEvalFrame(production, position, frame.getLine());
+	}
+	return applyRecalled(frame);
+    }
+
+    /**
+     * This method continues the rule application after the memo was recalled.
+     * 
+     * @param frame
+     *            is the frame of the rule application.
+     * @return The next frame to be processed is returned or null if the rule
+     *         application is finished.
+     * @throws ParserException
+     */
+    private Frame applyRecalled(ApplyRuleFrame frame) throws ParserException {
+	String rule = frame.getRule();
+	int position = frame.getPosition();
+	int line = frame.getLine();
+	MemoEntry m = frame.getMemoEntry();
 	if (m == null) {
 	    /*
 	     * "Create a new LR and push it onto the rule invocation stack."
@@ -279,6 +736,9 @@ public class PackratParser implements Serializable {
 	     * At this point we found a rule which was never processed at this
 	     * position. We start completely virgin here...
 	     */
+	    if (profile != null) {
+		profile.get(rule).addMemoMiss();
+	    }
 	    LR lr = new LR(MemoEntry.failed(), rule, null);
 	    ruleInvocationStack = new RuleInvocation(MemoEntry.failed(), rule,
 		    null, ruleInvocationStack);
@@ -290,67 +750,136 @@ public class PackratParser implements Serializable {
 	     */
 	    m = MemoEntry.create(lr);
 	    memo.setMemo(rule, position, line, m);
-	    final MemoEntry ans = eval(rule, position, line);
+	    frame.setMemoEntry(m);
+	    frame.setState(ApplyRuleFrame.State.EVALUATED);
+	    return createEvalFrame(rule, position, line);
+	}
+	/*
+	 * We were here already and with the same production. We either have a
+	 * real answer or we found a recursion with or without currently seed
+	 * growing...
+	 */
+	if (profile != null) {
+	    profile.get(rule).addMemoHit();
+	}
+	if (metrics != null) {
+	    metrics.increment(Counter.MEMO_HITS);
+	}
+	if ((m.getAnswer() instanceof LR)) {
 	    /*
-	     * "Pop lr off the rule invocation stack."
-	     * 
-	     * The evaluation of this lr is finished now and we can remove it
-	     * from stack. This was needed in cases a left recursion whould be
-	     * found within the rule.
+	     * There is still a LR object in the memo, so we found a recursion
+	     * or an in-progress seed grow. We setup the LR seed grow and return
+	     * the current seed.
 	     */
-	    ruleInvocationStack = ruleInvocationStack.getNext();
-
-	    if ((m.getAnswer() instanceof LR)
-		    && (((LR) m.getAnswer()).getHead() != null)) {
-		/*
-		 * If a head was added to lr, we found a recursion during
-		 * evaluation. We need to set the seed and process with left
-		 * recursion evaluation. For that purpose we grow m with ans as
-		 * seed.
-		 */
-		lr = (LR) m.getAnswer();
-		lr.setSeed(ans);
-		MemoEntry lrAnswer = lrAnswer(rule, position, line, m);
-		printMessage("grow LR for '" + rule + "' (" + lrAnswer + ").",
-			position, line);
-		return lrAnswer;
-	    } else {
-		/*
-		 * We finished an evaluation and did not find a recursion. So
-		 * the result (independent of the the state) is stored in memo
-		 * and returned.
-		 */
-		m.set(ans);
-		printMessage("applied '" + rule + "' (" + ans.getAnswer()
-			+ ").", position, line);
-		return ans;
+	    setupLR(rule, (LR) m.getAnswer());
+	    MemoEntry seed = ((LR) m.getAnswer()).getSeed();
+	    if (logger.isTraceEnabled()) {
+		printMessage("Found recursion or grow in process for '" + rule
+			+ "' (" + seed + ").", position, line);
 	    }
+	    return finishApplyRule(frame, seed);
 	} else {
 	    /*
-	     * We were here already and with the same production. We either have
-	     * a real answer or we found a recursion with or without currently
-	     * seed growing...
+	     * We were already here and we have a real result. So we can just
+	     * return the answer.
 	     */
-	    if ((m.getAnswer() instanceof LR)) {
-		/*
-		 * There is still a LR object in the memo, so we found a
-		 * recursion or an in-progress seed grow. We setup the LR seed
-		 * grow and return the current seed.
-		 */
-		setupLR(rule, (LR) m.getAnswer());
-		MemoEntry seed = ((LR) m.getAnswer()).getSeed();
-		printMessage("Found recursion or grow in process for '" + rule
-			+ "' (" + seed + ").", position, line);
-		return seed;
-	    } else {
-		/*
-		 * We were already here and we have a real result. So we can
-		 * just return the answer.
-		 */
+	    if (logger.isTraceEnabled()) {
 		printMessage("already processed '" + rule + "' (" + m + ").",
 			position, line);
-		return m;
 	    }
+	    return finishApplyRule(frame, m);
+	}
+    }
+
+    /**
+     * This method finishes a rule application. The examined range of the
+     * calling rule application is extended by the examined range of the
+     * result.
+     * 
+     * @param frame
+     *            is the frame of the rule application.
+     * @param result
+     *            is the result of the rule application.
+     * @return null is returned to signal the end of the frame.
+     */
+    private Frame finishApplyRule(ApplyRuleFrame frame, MemoEntry result) {
+	if (profile != null) {
+	    profile.get(frame.getRule()).addTime(
+		    System.nanoTime() - frame.getStartTime());
+	}
+	int resultEnd = frame.getPosition() + result.getExaminedLength();
+	if (examinedEnd < resultEnd) {
+	    examinedEnd = resultEnd;
+	}
+	if (examinedEnd < frame.getSavedExaminedEnd()) {
+	    examinedEnd = frame.getSavedExaminedEnd();
+	}
+	frame.setResult(result);
+	return null;
+    }
+
+    /**
+     * This method stores the range examined by the current rule application
+     * in the given memo entry.
+     * 
+     * @param m
+     *            is the memo entry of the rule application.
+     * @param position
+     *            is the position of the rule application.
+     */
+    private void setExaminedLength(MemoEntry m, int position) {
+	m.setExaminedLength(examinedEnd - position);
+    }
+
+    /**
+     * This method continues the rule application after the first evaluation
+     * of the rule at the current position.
+     * 
+     * @param frame
+     *            is the frame of the rule application.
+     * @param ans
+     *            is the result of the evaluation.
+     * @return The next frame to be processed is returned or null if the rule
+     *         application is finished.
+     */
+    private Frame applyEvaluated(ApplyRuleFrame frame, MemoEntry ans) {
+	String rule = frame.getRule();
+	MemoEntry m = frame.getMemoEntry();
+	/*
+	 * "Pop lr off the rule invocation stack."
+	 * 
+	 * The evaluation of this lr is finished now and we can remove it from
+	 * stack. This was needed in cases a left recursion whould be found
+	 * within the rule.
+	 */
+	ruleInvocationStack = ruleInvocationStack.getNext();
+
+	if ((m.getAnswer() instanceof LR)
+		&& (((LR) m.getAnswer()).getHead() != null)) {
+	    /*
+	     * If a head was added to lr, we found a recursion during
+	     * evaluation. We need to set the seed and process with left
+	     * recursion evaluation. For that purpose we grow m with ans as
+	     * seed.
+	     */
+	    pendingLeftRecursions--;
+	    LR lr = (LR) m.getAnswer();
+	    lr.setSeed(ans);
+	    memo.setLeftRecursion(frame.getPosition());
+	    return lrAnswer(frame);
+	} else {
+	    /*
+	     * We finished an evaluation and did not find a recursion. So the
+	     * result (independent of the the state) is stored in memo and
+	     * returned.
+	     */
+	    m.set(ans);
+	    setExaminedLength(m, frame.getPosition());
+	    if (logger.isTraceEnabled()) {
+		printMessage("applied '" + rule + "' (" + ans.getAnswer() + ").",
+			frame.getPosition(), frame.getLine());
+	    }
+	    return finishApplyRule(frame, m);
 	}
     }
 
@@ -370,8 +899,10 @@ public class PackratParser implements Serializable {
 	 * production. Otherwise we already know the production, but we found
 	 * another production which is involved in the recursion.
 	 */
-	if (l.getHead() == null)
+	if (l.getHead() == null) {
 	    l.setHead(new Head(production));
+	    pendingLeftRecursions++;
+	}
 	/*
 	 * Go over all heads and...!?
 	 */
@@ -387,109 +918,111 @@ public class PackratParser implements Serializable {
 	}
     }
 
+    private Frame lrAnswer(ApplyRuleFrame frame) {
+	String production = frame.getRule();
+	final MemoEntry m = frame.getMemoEntry();
+	final LR lr = (LR) m.getAnswer();
+	final Head h = lr.getHead();
+	MemoEntry seed = lr.getSeed();
+	if (!h.getProduction().equals(production)) {
+	    return finishLR(frame, seed);
+	} else {
+	    m.set(seed);
+	    setExaminedLength(m, frame.getPosition());
+	    if (m.getAnswer().equals(Status.FAILED)) {
+		return finishLR(frame, MemoEntry.failed());
+	    } else {
+		if (logger.isTraceEnabled()) {
+		    printMessage("Growing: " + production, frame.getPosition(),
+			    frame.getLine());
+		}
+		/*
+		 * We need to mark that at position a seed growing takes place
+		 * with the head rule.
+		 */
+		heads.put(frame.getPosition(), h);
+		frame.setHead(h);
+		return growLR(frame, null);
+	    }
+	}
+    }
+
     /**
-     * This method is an extended getMemo function which also takes into account
-     * the seed growing processes which might be underway.
+     * This method performs a single iteration of the seed growing.
      * 
-     * @param production
-     *            is the currently processes production.
-     * @param position
-     *            is the current parser position.
-     * @return A new memo entry is returned containing the result of the
-     *         memoization buffer and seed growing status lookup.
-     * @throws TreeException
-     * @throws ParserException
+     * @param frame
+     *            is the frame of the rule application.
+     * @param ans
+     *            is the result of the last evaluation of the rule or null if
+     *            the growing starts.
+     * @return The next frame to be processed is returned or null if the rule
+     *         application is finished.
      */
-    private MemoEntry recall(String production, int position, int line)
-	    throws TreeException, ParserException {
-	/*
-	 * Retrieve the current memoized item for the production and the head on
-	 * the current position.
-	 */
-	final MemoEntry m = memo.getMemo(production, position);
-	final Head h = heads.get(position);
-	/*
-	 * "If not growing a seed parse, just return what is stored in the memo
-	 * table."
-	 */
-	if (h == null) {
-	    return m;
+    private Frame growLR(ApplyRuleFrame frame, MemoEntry ans) {
+	final MemoEntry m = frame.getMemoEntry();
+	if (ans != null) {
+	    if (ans.getAnswer().equals(Status.FAILED)
+		    || (ans.getDeltaPosition() <= m.getDeltaPosition())) {
+		/*
+		 * Delete head from head buffer to signal end of seed growing.
+		 */
+		heads.remove(frame.getPosition());
+		if (logger.isTraceEnabled()) {
+		    printMessage("End of growing: " + frame.getRule(),
+			    frame.getPosition(), frame.getLine());
+		}
+		setExaminedLength(m, frame.getPosition());
+		return finishLR(frame, m);
+	    }
+	    m.set(ans);
+	    setExaminedLength(m, frame.getPosition());
 	}
 	/*
-	 * "Do not evaluate any rule that is not involved in this left recursion."
-	 * 
-	 * If we have never been at this position (NONE) and the head rule
-	 * (production) is not the current production and the involved rules in
-	 * the heads also do not fit, then we are on a wrong pass here. We need
-	 * to return a failure.
+	 * Set all involved production into evaluation status.
 	 */
-	if ((m == null) && (!h.getProduction().equals(production))
-		&& (!h.getInvolvedSet().contains(production))) {
-	    return MemoEntry.failed();
-	}
+	Head head = frame.getHead();
+	head.setEvalSet(head.getInvolvedSet());
 	/*
-	 * "Allow involved rules to be evaluated, but only once, during a
-	 * seed-growing iteration."
-	 * 
-	 * If we have been here already, we check the eval set for the
-	 * containing rule and evaluate it necessary. If the rule is within the
-	 * eval set, we need to parse it once.
+	 * Evaluate production.
 	 */
-	if (h.getEvalSet().contains(production)) {
-	    h.getEvalSet().remove(production);
-	    final MemoEntry ans = eval(production, position, line);
-	    m.set(ans);
+	if (profile != null) {
+	    profile.get(frame.getRule()).addGrowIteration();
 	}
-	return m;
+	frame.setState(ApplyRuleFrame.State.GROWING);
+	return createEvalFrame(frame.getRule(), frame.getPosition(),
+		frame.getLine());
     }
 
-    private MemoEntry growLR(String production, int position, int line,
-	    final MemoEntry m, final Head head) throws TreeException,
-	    ParserException {
-	printMessage("Growing: " + production, position, line);
-	/*
-	 * We need to mark that at position a seed growing takes place with the
-	 * head rule.
-	 */
-	heads.put(position, head);
-	while (true) {
-	    /*
-	     * Set all involved production into evaluation status.
-	     */
-	    head.setEvalSet(head.getInvolvedSet());
-	    /*
-	     * Evaluate production.
-	     */
-	    final MemoEntry ans = eval(production, position, line);
-	    if (ans.getAnswer().equals(Status.FAILED)
-		    || (ans.getDeltaPosition() <= m.getDeltaPosition())) {
-		break;
-	    }
-	    m.set(ans);
+    private Frame finishLR(ApplyRuleFrame frame, MemoEntry lrAnswer) {
+	if (logger.isTraceEnabled()) {
+	    printMessage("grow LR for '" + frame.getRule() + "' (" + lrAnswer
+		    + ").", frame.getPosition(), frame.getLine());
 	}
-	/*
-	 * Delete head from head buffer to signal end of seed growing.
-	 */
-	heads.remove(position);
-	printMessage("End of growing: " + production, position, line);
-	return m;
+	return finishApplyRule(frame, lrAnswer);
     }
 
-    private MemoEntry lrAnswer(String production, int position, int line,
-	    final MemoEntry m) throws TreeException, ParserException {
-	final LR lr = (LR) m.getAnswer();
-	final Head h = lr.getHead();
-	MemoEntry seed = lr.getSeed();
-	if (!h.getProduction().equals(production)) {
-	    return seed;
-	} else {
-	    m.set(seed);
-	    if (m.getAnswer().equals(Status.FAILED)) {
-		return MemoEntry.failed();
-	    } else {
-		return growLR(production, position, line, m, h);
-	    }
+    /**
+     * This method creates the frame for the evaluation of the production given
+     * by it's name.
+     * 
+     * @param productionName
+     *            is the name of the production to be evaluated.
+     * @param position
+     *            is the position within the stream to evaluate the production
+     *            at.
+     * @param line
+     *            is the line of the position.
+     * @return A new {@link EvalFrame} is returned.
+     */
+    private EvalFrame createEvalFrame(String productionName, int position,
+	    int line) {
+	EvalFrame frame = new EvalFrame(grammar.getProductions().get(
+		productionName), position, line,
+		getPredictionPosition(position));
+	if (frame.hasNextAlternative()) {
+	    openEvaluations++;
 	}
+	return frame;
     }
 
     /**
@@ -503,109 +1036,286 @@ public class PackratParser implements Serializable {
      * are changed on the way. By trying another alternative, the parser gets
      * confused by some inconsistent information.
      * 
-     * @param productionName
-     *            is the name of the production to be evaluated.
+     * Alternatives which cannot start with the next significant character are
+     * not tried at all. See {@link FirstCharacters} for details.
+     * 
+     * @param frame
+     *            is the frame of the evaluation.
+     * @param progress
+     *            is the result of the last alternative tried or null if the
+     *            evaluation starts.
+     * @return The frame of the next alternative is returned or null if the
+     *         evaluation is finished.
+     */
+    private Frame resumeEval(EvalFrame frame, MemoEntry progress) {
+	if (frame.isCommitted()) {
+	    /*
+	     * The alternative passed a cut, so its result is the result of the
+	     * evaluation.
+	     */
+	    frame.setResult(progress);
+	    return null;
+	}
+	if ((progress != null) && (progress.getAnswer() instanceof Match)) {
+	    MemoEntry maxProgress = frame.getMaxProgress();
+	    if ((maxProgress.getAnswer() == Status.FAILED)
+		    || (maxProgress.getDeltaPosition() < progress
+			    .getDeltaPosition())) {
+		frame.setMaxProgress(progress);
+	    }
+	}
+	while (frame.hasNextAlternative()) {
+	    Production production = frame.nextAlternative();
+	    if (!frame.hasNextAlternative()) {
+		openEvaluations--;
+	    }
+	    if (examinedEnd <= frame.getPredictionPosition()) {
+		examinedEnd = frame.getPredictionPosition() + 1;
+	    }
+	    if (firstCharacters.isPossible(production, text,
+		    frame.getPredictionPosition())) {
+		return new ProductionFrame(production, frame.getPosition(),
+			frame.getLine(), matchStack.size());
+	    }
+	}
+	frame.setResult(frame.getMaxProgress());
+	return null;
+    }
+
+    /**
+     * This method is called after the first construction of a production with
+     * a cut was parsed. The evaluation of the production name is committed to
+     * the production. If the parser can never go back before the given
+     * position, the memo entries before are released.
+     * 
+     * @param frame
+     *            is the frame of the production passing the cut.
      * @param position
-     *            is the position within the stream to evaluate the production
-     *            at.
-     * @return A MemoEntry object is returned containing the result.
-     * @throws ParserException
-     * @throws TreeException
+     *            is the position after the first construction.
      */
-    private MemoEntry eval(String productionName, int position, int line)
-	    throws ParserException, TreeException {
-	MemoEntry maxProgress = MemoEntry.failed();
-	for (Production production : grammar.getProductions().get(
-		productionName)) {
-	    MemoEntry progress = parseProduction(production, position, line);
-	    if (progress.getAnswer() instanceof ParseTreeNode) {
-		if ((maxProgress.getAnswer() == Status.FAILED)
-			|| (maxProgress.getDeltaPosition() < progress
-				.getDeltaPosition())) {
-		    maxProgress = progress;
+    private void cut(ProductionFrame frame, int position) {
+	EvalFrame evalFrame = (EvalFrame) frameStack
+		.get(frameStack.size() - 2);
+	if ((!evalFrame.isCommitted()) && (evalFrame.hasNextAlternative())) {
+	    openEvaluations--;
+	}
+	evalFrame.setCommitted(true);
+	if (logger.isTraceEnabled()) {
+	    printMessage("cut '" + frame.getProduction() + "'", position,
+		    frame.getLine());
+	}
+	if (isBacktrackingPossible()) {
+	    return;
+	}
+	memo.release(position);
+    }
+
+    /**
+     * This method checks whether the parser may go back to an earlier
+     * position. This is the case if an evaluation on the frame stack has
+     * alternatives left and did not pass a cut, or if a left recursion was
+     * found which seed is grown later on.
+     * 
+     * @return true is returned if the parser may go back.
+     */
+    private boolean isBacktrackingPossible() {
+	return (openEvaluations > 0) || (pendingLeftRecursions > 0)
+		|| (!heads.isEmpty());
+    }
+
+    /**
+     * This method returns the position of the character which is used to
+     * predict the alternatives to be tried. If ignored and hidden tokens are
+     * leading, they are skipped here the same way as in
+     * {@link #processIgnoredLeadingTokens(int, int, MemoEntry)}.
+     * 
+     * @param position
+     *            is the position where the production is to be applied.
+     * @return The position of the next significant character is returned.
+     */
+    private int getPredictionPosition(int position) {
+	if (!ignoredLeading) {
+	    return position;
+	}
+	boolean found;
+	do {
+	    found = false;
+	    for (TokenDefinition tokenDefinition : hiddenAndIgnoredTokens) {
+		int length = matchTokenDefinition(tokenDefinition, position);
+		if (length >= 0) {
+		    position += length;
+		    found = length > 0;
+		    break;
 		}
 	    }
+	} while (found);
+	return position;
+    }
+
+    /**
+     * <p>
+     * This method checks whether a token definition matches at the given
+     * position without creating a token.
+     * </p>
+     * <p>
+     * The matcher is applied to a small window of the text first. Only if the
+     * matcher hit the end of the window, the window is enlarged. This way
+     * {@link #examinedEnd} gets to know which part of the text was needed to
+     * decide about the match.
+     * </p>
+     * 
+     * @param tokenDefinition
+     *            is the token definition to be matched.
+     * @param position
+     *            is the position within the text.
+     * @return The length of the match is returned or -1 if the token
+     *         definition does not match.
+     */
+    private int matchTokenDefinition(TokenDefinition tokenDefinition,
+	    int position) {
+	Matcher matcher = tokenDefinition.getPattern().matcher(text);
+	int window = MATCH_WINDOW;
+	while (true) {
+	    int end = text.length() - position <= window ? text.length()
+		    : position + window;
+	    matcher.region(position, end);
+	    boolean found = matcher.lookingAt();
+	    if ((!matcher.hitEnd()) || (end == text.length())) {
+		int examined = matcher.hitEnd() ? end + 1 : end;
+		if (examinedEnd < examined) {
+		    examinedEnd = examined;
+		}
+		return found ? matcher.end() - position : -1;
+	    }
+	    window *= 2;
 	}
-	return maxProgress;
     }
 
     /**
      * This method performs the actual parsing by reading the production and
      * applying token definitions and starting other non terminal parsings.
      * 
-     * @param production
-     *            is the production to be applied.
-     * @param position
-     *            is the position within the stream to evaluate the production
-     *            at.
-     * @return A MemoEntry object is returned containing the result.
-     * @throws TreeException
+     * The matches of the constructions are collected on {@link #matchStack}.
+     * In case the production fails, the stack is reset to its former size, so
+     * no garbage is left from the failed alternative.
+     * 
+     * @param frame
+     *            is the frame of the production to be applied.
+     * @param newProgress
+     *            is the result of the last non terminal applied or null if
+     *            the production starts.
+     * @return The frame of the next non terminal to be applied is returned or
+     *         null if the production is finished.
      * @throws ParserException
      */
-    private MemoEntry parseProduction(Production production, int position,
-	    int line) throws TreeException, ParserException {
-	ParseTreeNode node = new ParseTreeNode(production);
-	MemoEntry progress = MemoEntry.success(0, 0, node);
-	for (Construction construction : production.getConstructions()) {
-	    processIgnoredLeadingTokens(node, position, line, progress);
+    private Frame resumeProduction(ProductionFrame frame, MemoEntry newProgress)
+	    throws ParserException {
+	int position = frame.getPosition();
+	int line = frame.getLine();
+	MemoEntry progress = frame.getProgress();
+	if (newProgress != null) {
+	    if (newProgress.getAnswer() instanceof Match) {
+		matchStack.add((Match) newProgress.getAnswer());
+		progress.add(newProgress);
+	    } else if (newProgress.getAnswer().equals(Status.FAILED)) {
+		return failProduction(frame);
+	    }
+	    processIgnoredTrailingTokens(position, line, progress);
+	    checkCut(frame);
+	}
+	while (frame.hasNextConstruction()) {
+	    Construction construction = frame.nextConstruction();
+	    processIgnoredLeadingTokens(position, line, progress);
 	    if (construction.isNonTerminal()) {
-		MemoEntry newProgress = applyRule(construction.getName(),
-			position + progress.getDeltaPosition(),
-			line + progress.getDeltaLine());
-		if (newProgress.getAnswer() instanceof ParseTreeNode) {
-		    ParseTreeNode child = (ParseTreeNode) newProgress.getAnswer();
-		    if (child.isNode()) {
-			if (child.isStackingAllowed()) {
-			    node.addChild(child);
-			} else {
-			    if (node.getName().equals(child.getName())) {
-				node.addChildren(child.getChildren());
-			    } else {
-				node.addChild(child);
-			    }
-			}
-		    } else {
-			node.addChildren(child.getChildren());
-		    }
-		    progress.add(newProgress);
-		} else if (newProgress.getAnswer().equals(Status.FAILED))
-		    return MemoEntry.failed();
-	    } else {
-		MemoEntry newProgress = processTerminal(node,
-			(Terminal) construction,
-			position + progress.getDeltaPosition(),
-			line + progress.getDeltaLine());
-		if (newProgress.getAnswer() instanceof ParseTreeNode) {
-		    progress.add(newProgress);
-		} else {
-		    return MemoEntry.failed();
-		}
+		return new ApplyRuleFrame(construction.getName(), position
+			+ progress.getDeltaPosition(), line
+			+ progress.getDeltaLine());
+	    }
+	    MemoEntry terminalProgress = processTerminal(
+		    (Terminal) construction,
+		    position + progress.getDeltaPosition(),
+		    line + progress.getDeltaLine());
+	    if (!(terminalProgress.getAnswer() instanceof Match)) {
+		return failProduction(frame);
 	    }
-	    processIgnoredTrailingTokens(node, position, line, progress);
+	    matchStack.add((Match) terminalProgress.getAnswer());
+	    progress.add(terminalProgress);
+	    processIgnoredTrailingTokens(position, line, progress);
+	    checkCut(frame);
 	}
-	indentLine();
+	int mark = frame.getMark();
+	List<Match> childMatches = matchStack.subList(mark, matchStack.size());
+	Match match = Match.production(frame.getProduction(),
+		progress.getDeltaPosition(), progress.getDeltaLine(),
+		childMatches.toArray(new Match[childMatches.size()]));
+	childMatches.clear();
+	progress.setAnswer(match);
 	if (logger.isTraceEnabled()) {
-	    logger.trace("Parsed: " + production);
+	    logger.trace("Parsed: " + frame.getProduction());
 	}
-	return progress;
+	frame.setResult(progress);
+	return null;
+    }
+
+    /**
+     * This method checks whether the production has a cut and the first
+     * construction was just parsed. In this case, the cut is performed.
+     * 
+     * @param frame
+     *            is the frame of the production.
+     */
+    private void checkCut(ProductionFrame frame) {
+	if (frame.getProduction().isCut() && frame.isAfterFirstConstruction()) {
+	    cut(frame, frame.getPosition()
+		    + frame.getProgress().getDeltaPosition());
+	}
+    }
+
+    /**
+     * This method finishes a failed production. All matches of the production
+     * are removed from the match stack.
+     * 
+     * @param frame
+     *            is the frame of the failed production.
+     * @return null is returned to signal the end of the frame.
+     */
+    private Frame failProduction(ProductionFrame frame) {
+	if (profile != null) {
+	    profile.get(frame.getProduction().getName())
+		    .addFailedAlternative();
+	}
+	if (metrics != null) {
+	    metrics.increment(Counter.BACKTRACKS);
+	}
+	resetMatchStack(frame.getMark());
+	frame.setResult(MemoEntry.failed());
+	return null;
+    }
+
+    /**
+     * This method removes all matches from the match stack which were added
+     * after the given mark.
+     * 
+     * @param mark
+     *            is the size of the match stack to be restored.
+     */
+    private void resetMatchStack(int mark) {
+	matchStack.subList(mark, matchStack.size()).clear();
     }
 
     /**
      * This method processes leading tokens which are either hidden or ignored.
      * The processing only happens if the configuration allows it.
      * 
-     * @param node
      * @param position
-     * @param id
      * @param line
      * @param progress
-     * @throws TreeException
      * @throws ParserException
      */
-    private void processIgnoredLeadingTokens(ParseTreeNode node, int position,
-	    int line, MemoEntry progress) throws TreeException, ParserException {
+    private void processIgnoredLeadingTokens(int position, int line,
+	    MemoEntry progress) throws ParserException {
 	if (ignoredLeading) {
-	    processIgnoredTokens(node, position, line, progress);
+	    processIgnoredTokens(position, line, progress);
 	}
     }
 
@@ -613,48 +1323,39 @@ public class PackratParser implements Serializable {
      * This method processes trailing tokens which are either hidden or ignored.
      * The processing only happens if the configuration allows it.
      * 
-     * @param node
      * @param position
-     * @param id
      * @param line
      * @param progress
-     * @throws TreeException
      * @throws ParserException
      */
-    private void processIgnoredTrailingTokens(ParseTreeNode node, int position,
-	    int line, MemoEntry progress) throws TreeException, ParserException {
+    private void processIgnoredTrailingTokens(int position, int line,
+	    MemoEntry progress) throws ParserException {
 	if (!ignoredLeading) {
-	    processIgnoredTokens(node, position, line, progress);
+	    processIgnoredTokens(position, line, progress);
 	}
     }
 
     /**
      * <p>
      * This method reads all hidden and ignored tokens from the text and puts
-     * them into the node as children.
+     * their matches onto the match stack.
      * </p>
      * <p>
      * This is the non-recursive part of the procedure to be called by the
      * packrat parser. The procedure itself is implemented recursively in
-     * {@link #processIgnoredTrailingTokens(ParseTreeNode, int, int, MemoEntry)}.
-     * </p>
-     * <p>
-     * Attention: This method is package private for testing purposes!
+     * {@link #processIgnoredTokens(int, int, List)}.
      * </p>
      * 
-     * @param node
-     *            is the current node in the {@link ParseTreeNode}
      * @param position
      *            is the current parsing position.
-     * @throws TreeException
      * @throws ParserException
      */
-    private void processIgnoredTokens(ParseTreeNode node, int position, int line,
-	    MemoEntry progress) throws TreeException, ParserException {
-	MemoEntry newProgress = processIgnoredTokens(node,
+    private void processIgnoredTokens(int position, int line,
+	    MemoEntry progress) throws ParserException {
+	MemoEntry newProgress = processIgnoredTokens(
 		position + progress.getDeltaPosition(),
-		line + progress.getDeltaLine());
-	if ((!newProgress.getAnswer().equals(Status.FAILED)))
+		line + progress.getDeltaLine(), matchStack);
+	if (!Status.FAILED.equals(newProgress.getAnswer()))
 	    progress.add(newProgress);
     }
 
@@ -663,33 +1364,35 @@ public class PackratParser implements Serializable {
      * processTokenDefinition to do this. The information to be put into that
      * method is extracted and prepared here.
      * 
-     * @param node
      * @param terminal
      * @param position
      * @return
-     * @throws TreeException
      */
-    private MemoEntry processTerminal(ParseTreeNode node, Terminal terminal,
-	    int position, int line) throws TreeException {
-	printMessage("applyTerminal: " + terminal, position, line);
+    private MemoEntry processTerminal(Terminal terminal, int position,
+	    int line) {
+	if (logger.isTraceEnabled()) {
+	    printMessage("applyTerminal: " + terminal, position, line);
+	}
 	TokenDefinitionSet tokenDefinitions = grammar.getTokenDefinitions();
 	TokenDefinition tokenDefinition = tokenDefinitions
 		.getDefinition(terminal.getName());
-	MemoEntry result = processTokenDefinition(node, tokenDefinition,
-		position, line);
+	MemoEntry result = processTokenDefinition(tokenDefinition, position,
+		line);
 	if (result == null) {
 	    throw new RuntimeException("There should be a result not null!");
 	}
-	printMessage(
-		"applied Terminal '" + terminal + "' (" + result.getAnswer()
-			+ ").", position, line);
+	if (logger.isTraceEnabled()) {
+	    printMessage(
+		    "applied Terminal '" + terminal + "' (" + result.getAnswer()
+			    + ").", position, line);
+	}
 	return result;
     }
 
     /**
      * <p>
      * This class reads all hidden and ignored tokens from the text and puts
-     * them into the node as children.
+     * their matches into the given list.
      * </p>
      * <p>
      * This is the recursive part of the procedure.
@@ -699,22 +1402,24 @@ public class PackratParser implements Serializable {
      * </p>
      * <p>
      * 
-     * @param node
      * @param position
+     * @param line
+     * @param matches
+     *            is the list the found matches are added to.
      * @return
-     * @throws TreeException
      * @throws ParserException
      */
-    MemoEntry processIgnoredTokens(ParseTreeNode node, int position, int line)
-	    throws TreeException, ParserException {
-	MemoEntry progress = MemoEntry.success(0, 0, node);
+    MemoEntry processIgnoredTokens(int position, int line, List<Match> matches)
+	    throws ParserException {
+	MemoEntry progress = MemoEntry.success(0, 0, null);
 	MemoEntry newProgress = MemoEntry.success(0, 0, null);
 	do {
 	    for (TokenDefinition tokenDefinition : hiddenAndIgnoredTokens) {
-		newProgress = processTokenDefinition(node, tokenDefinition,
-			position + progress.getDeltaPosition(),
+		newProgress = processTokenDefinition(tokenDefinition, position
+			+ progress.getDeltaPosition(),
 			line + progress.getDeltaLine());
 		if (!newProgress.getAnswer().equals(Status.FAILED)) {
+		    matches.add((Match) newProgress.getAnswer());
 		    progress.add(newProgress);
 		    break;
 		}
@@ -725,88 +1430,172 @@ public class PackratParser implements Serializable {
 
     /**
      * This method tries to process a single token definition. If this can be
-     * done, true is returned, a new parser tree child is added and all internal
-     * states are updated like position, id and line.
+     * done, a new token match is returned. The token itself is created later
+     * on in {@link #createToken(Match, int, int)} if the match is part of the
+     * final parser tree.
      * 
-     * @param parserTree
      * @param tokenDefinition
+     * @param position
+     * @param line
      * @return
-     * @throws TreeException
      */
-    private MemoEntry processTokenDefinition(ParseTreeNode node,
-	    TokenDefinition tokenDefinition, int position, int line)
-	    throws TreeException {
-	Matcher matcher = tokenDefinition.getPattern().matcher(
-		text.substring(position));
-	if (!matcher.find()) {
+    private MemoEntry processTokenDefinition(TokenDefinition tokenDefinition,
+	    int position, int line) {
+	int length = matchTokenDefinition(tokenDefinition, position);
+	if (length < 0) {
 	    return MemoEntry.failed();
 	}
-	String match = matcher.group();
-	int lineBreakNum = StringUtils.countLineBreaks(match);
-	SourceCodeLocation source = sourceCode.getLines().get(line - 1)
-		.getSource();
+	int lineBreakNum = StringUtils.countLineBreaks(text.substring(position,
+		position + length));
+	if (maxPosition < position + length) {
+	    maxPosition = position + length;
+	}
+	return MemoEntry.success(length, lineBreakNum,
+		Match.token(tokenDefinition, length, lineBreakNum));
+    }
+
+    /**
+     * This method creates the token for a token match.
+     * 
+     * <p>
+     * Attention: This method is package private for testing purposes!
+     * </p>
+     * 
+     * @param match
+     *            is the token match.
+     * @param position
+     *            is the position of the token within the text.
+     * @param line
+     *            is the line the token starts in.
+     * @return A newly created {@link Token} is returned.
+     */
+    Token createToken(Match match, int position, int line) {
+	String tokenText = text.substring(position,
+		position + match.getLength());
+	int lineBreakNum = StringUtils.countLineBreaks(tokenText);
+	SourceCodeLocation source = sourceCode.getSource(line - 1);
 	int lineNumber = textWithSource.getLineNumber(position);
 	TokenMetaData metaData = new TokenMetaData(source, lineNumber,
 		lineBreakNum + 1, textWithSource.getColumn(position));
-	Token token = new Token(tokenDefinition.getName(), match,
+	TokenDefinition tokenDefinition = match.getTokenDefinition();
+	return new Token(tokenDefinition.getName(), tokenText,
 		tokenDefinition.getVisibility(), metaData);
-	ParseTreeNode myTree = new ParseTreeNode(token);
-	node.addChild(myTree);
-	if (maxPosition < position + match.length()) {
-	    maxPosition = position + match.length();
-	}
-	return MemoEntry.success(match.length(), lineBreakNum, myTree);
     }
 
     /**
      * <p>
-     * This method walks the whole tree and normalizes all children to point to
-     * their new parents. This is needed due to continuous changes of subtrees
-     * during packrat parsing. The answers from the memoization are added
-     * several times to different nodes. So the parent gets set to the latest
-     * parent, but this is not necessarily the right.
+     * This method creates the final parser tree out of the match of the root
+     * production. Only the successful derivation is converted and all nodes
+     * get their correct parents during construction.
+     * </p>
+     * <p>
+     * A match from the memo may be used several times within the final
+     * derivation. Each occurrence gets its own nodes, so the parents are
+     * always correct and no normalization is needed afterwards.
      * </p>
      * <p>
-     * For the parsing process itself it is not a big deal due to it is always
-     * looked from the parent to the child, but not upward. For later tree
-     * processing we need this normalization.
+     * The rules for non-node and non-stacking productions are applied here.
+     * The matches are walked with an explicit stack, so deeply nested trees
+     * do not exhaust the Java call stack.
      * </p>
      * 
-     * @param tree
-     *            is the tree to be normalized.
-     * @throws ParserException
+     * @param match
+     *            is the match of the root production.
+     * @return The root {@link ParseTreeNode} is returned.
+     * @throws TreeException
      */
-    private void normalizeParents(ParseTreeNode tree) throws ParserException {
-	try {
-	    final Field parentField = ParseTreeNode.class
-		    .getDeclaredField("parent");
-	    parentField.setAccessible(true);
-	    TreeVisitor<ParseTreeNode> visitor = new TreeVisitor<ParseTreeNode>() {
-
-		@Override
-		public WalkingAction visit(ParseTreeNode tree) {
-		    try {
-			for (ParseTreeNode child : tree.getChildren()) {
-			    parentField.set(child, tree);
-			}
-			return WalkingAction.PROCEED;
-		    } catch (IllegalArgumentException e) {
-			throw new IllegalStateException(
-				"Could not set new parent!", e);
-		    } catch (IllegalAccessException e) {
-			throw new IllegalStateException(
-				"Could not set new parent!", e);
-		    }
+    private ParseTreeNode createParseTree(Match match) throws TreeException {
+	ParseTreeNode root = new ParseTreeNode(match.getProduction());
+	List<PendingMatch> pending = new ArrayList<PendingMatch>();
+	pending.add(new PendingMatch(root, true, match, 0, 1));
+	while (!pending.isEmpty()) {
+	    PendingMatch top = pending.get(pending.size() - 1);
+	    Match[] children = top.match.getChildren();
+	    if (top.index >= children.length) {
+		pending.remove(pending.size() - 1);
+		if (top.nodeOwner) {
+		    setTextRange(top.node, top.startPosition, top.position,
+			    top.startLine, top.line);
 		}
-	    };
-	    new TreeWalker<ParseTreeNode>(tree).walk(visitor);
-	    parentField.setAccessible(false);
-	} catch (SecurityException e) {
-	    throw new ParserException("Could not normalize the parser tree.", e);
-	} catch (NoSuchFieldException e) {
-	    throw new ParserException("Could not normalize the parser tree.", e);
-	} catch (IllegalStateException e) {
-	    throw new ParserException("Could not normalize the parser tree.", e);
+		continue;
+	    }
+	    Match child = children[top.index];
+	    int position = top.position;
+	    int line = top.line;
+	    top.index++;
+	    top.position += child.getLength();
+	    top.line += child.getLineBreaks();
+	    ParseTreeNode node = top.node;
+	    if (child.isToken()) {
+		ParseTreeNode tokenNode = new ParseTreeNode(createToken(child,
+			position, line));
+		node.addChild(tokenNode);
+		setTextRange(tokenNode, position, top.position, line, top.line);
+		continue;
+	    }
+	    /*
+	     * A non-stacking production is only merged into its direct parent
+	     * production of the same name, even if the parent is not a node
+	     * itself.
+	     */
+	    Production childProduction = child.getProduction();
+	    boolean nodeOwner = false;
+	    if (childProduction.isNode()
+		    && (childProduction.isStackingAllowed() || !top.match
+			    .getProduction().getAlternativeName()
+			    .equals(childProduction.getAlternativeName()))) {
+		ParseTreeNode childNode = new ParseTreeNode(childProduction);
+		node.addChild(childNode);
+		node = childNode;
+		nodeOwner = true;
+	    }
+	    pending.add(new PendingMatch(node, nodeOwner, child, position, line));
+	}
+	return root;
+    }
+
+    /**
+     * This method sets the text range and the line span of a node. The
+     * children of a node need to be added before, because adding children
+     * removes the text range again.
+     */
+    private void setTextRange(ParseTreeNode node, int startPosition,
+	    int endPosition, int startLine, int endLine) {
+	node.setTextRange(text, startPosition, endPosition);
+	int lineCount = sourceCode.getLineCount();
+	SourceCodeLocation source = lineCount == 0 ? new UnspecifiedSourceCodeLocation()
+		: sourceCode.getSource(Math.min(startLine, lineCount) - 1);
+	node.setMetaData(new ParserTreeMetaData(source, startLine, endLine
+		- startLine + 1));
+    }
+
+    /**
+     * This class keeps a match during the parse tree construction together
+     * with the node its children are added to, the index of the next child
+     * and its position. The pending match which created the node sets its
+     * text range after all children were added.
+     */
+    private static class PendingMatch {
+
+	private final ParseTreeNode node;
+	private final boolean nodeOwner;
+	private final Match match;
+	private final int startPosition;
+	private final int startLine;
+	private int index = 0;
+	private int position;
+	private int line;
+
+	private PendingMatch(ParseTreeNode node, boolean nodeOwner,
+		Match match, int position, int line) {
+	    super();
+	    this.node = node;
+	    this.nodeOwner = nodeOwner;
+	    this.match = match;
+	    this.startPosition = position;
+	    this.startLine = line;
+	    this.position = position;
+	    this.line = line;
 	}
     }
 }
@@ -0,0 +1,88 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is the profiling report of a {@link PackratParser} run. It
+ * contains a {@link RuleProfile} for each rule applied during parsing. The
+ * profiling is switched on with {@link PackratParser#setProfiling(boolean)}.
+ * 
+ * <b>This class is not thread-safe!</b>
+ */
+public class PackratProfile implements Serializable {
+
+    private static final long serialVersionUID = 6339180931652000846L;
+
+    private final Map<String, RuleProfile> rules = new HashMap<String, RuleProfile>();
+
+    PackratProfile() {
+	super();
+    }
+
+    /**
+     * This method returns the profile of the given rule. If the rule was not
+     * profiled so far, a new profile is created.
+     * 
+     * @param rule
+     *            is the name of the rule.
+     * @return A {@link RuleProfile} is returned.
+     */
+    RuleProfile get(String rule) {
+	RuleProfile profile = rules.get(rule);
+	if (profile == null) {
+	    profile = new RuleProfile(rule);
+	    rules.put(rule, profile);
+	}
+	return profile;
+    }
+
+    /**
+     * This method returns the profile of the given rule.
+     * 
+     * @param rule
+     *            is the name of the rule.
+     * @return A {@link RuleProfile} is returned or null if the rule was never
+     *         applied.
+     */
+    public RuleProfile getRuleProfile(String rule) {
+	return rules.get(rule);
+    }
+
+    /**
+     * This method returns the profiles of all rules sorted by the time spent,
+     * the most expensive rule first.
+     * 
+     * @return A {@link List} of {@link RuleProfile} is returned.
+     */
+    public List<RuleProfile> getRuleProfiles() {
+	List<RuleProfile> profiles = new ArrayList<RuleProfile>(rules.values());
+	Collections.sort(profiles, new Comparator<RuleProfile>() {
+	    @Override
+	    public int compare(RuleProfile o1, RuleProfile o2) {
+		if (o1.getTime() > o2.getTime()) {
+		    return -1;
+		} else if (o1.getTime() < o2.getTime()) {
+		    return 1;
+		}
+		return o1.getRule().compareTo(o2.getRule());
+	    }
+	});
+	return profiles;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder builder = new StringBuilder();
+	for (RuleProfile profile : getRuleProfiles()) {
+	    builder.append(profile);
+	    builder.append('\n');
+	}
+	return builder.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.util.List;
+
+import com.puresoltechnologies.parsers.grammar.production.Construction;
+import com.puresoltechnologies.parsers.grammar.production.Production;
+
+/**
+ * This frame keeps the state of parsing a single production. It contains the
+ * index of the next construction to be processed, the progress so far and the
+ * size of the match stack at the start of the production.
+ * 
+ * <b>This class is not thread-safe!</b>
+ */
+class ProductionFrame extends Frame {
+
+    private static final long serialVersionUID = 3264722938213436787L;
+
+    private final Production production;
+    private final List<Construction> constructions;
+    private final int mark;
+    private final MemoEntry progress = MemoEntry.success(0, 0, null);
+    private int index = 0;
+
+    ProductionFrame(Production production, int position, int line, int mark) {
+	super(position, line);
+	this.production = production;
+	this.constructions = production.getConstructions();
+	this.mark = mark;
+    }
+
+    Production getProduction() {
+	return production;
+    }
+
+    /**
+     * @return The size of the match stack at the start of the production is
+     *         returned.
+     */
+    int getMark() {
+	return mark;
+    }
+
+    MemoEntry getProgress() {
+	return progress;
+    }
+
+    boolean hasNextConstruction() {
+	return index < constructions.size();
+    }
+
+    Construction nextConstruction() {
+	Construction construction = constructions.get(index);
+	index++;
+	return construction;
+    }
+
+    /**
+     * @return true is returned if exactly the first construction was
+     *         processed.
+     */
+    boolean isAfterFirstConstruction() {
+	return index == 1;
+    }
+
+    @Override
+    public String toString() {
+	return "parse " + production + " at " + getPosition();
+    }
+}
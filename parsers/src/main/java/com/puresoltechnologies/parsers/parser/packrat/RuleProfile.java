@@ -0,0 +1,116 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.io.Serializable;
+
+/**
+ * This class keeps the profiling data of a single rule (production name) of a
+ * {@link PackratParser} run. See {@link PackratProfile}.
+ * 
+ * <b>This class is not thread-safe!</b>
+ */
+public class RuleProfile implements Serializable {
+
+    private static final long serialVersionUID = -1180405233958839624L;
+
+    private final String rule;
+    private long invocations = 0;
+    private long memoHits = 0;
+    private long memoMisses = 0;
+    private long failedAlternatives = 0;
+    private long growIterations = 0;
+    private long time = 0;
+
+    RuleProfile(String rule) {
+	super();
+	this.rule = rule;
+    }
+
+    /**
+     * @return The name of the rule is returned.
+     */
+    public String getRule() {
+	return rule;
+    }
+
+    /**
+     * @return The number of applications of the rule is returned.
+     */
+    public long getInvocations() {
+	return invocations;
+    }
+
+    /**
+     * @return The number of applications answered by the memo is returned.
+     */
+    public long getMemoHits() {
+	return memoHits;
+    }
+
+    /**
+     * @return The number of applications which needed an evaluation of the
+     *         rule is returned. Evaluations during seed growing are counted
+     *         in {@link #getGrowIterations()}.
+     */
+    public long getMemoMisses() {
+	return memoMisses;
+    }
+
+    /**
+     * @return The number of alternatives of the rule which were tried and
+     *         failed is returned.
+     */
+    public long getFailedAlternatives() {
+	return failedAlternatives;
+    }
+
+    /**
+     * @return The number of seed growing iterations for left recursions with
+     *         this rule as head is returned.
+     */
+    public long getGrowIterations() {
+	return growIterations;
+    }
+
+    /**
+     * @return The time spent in applications of this rule in nanoseconds is
+     *         returned. The time includes the applications of all other rules
+     *         called. Nested applications of the same rule are counted for
+     *         each application.
+     */
+    public long getTime() {
+	return time;
+    }
+
+    void addInvocation() {
+	invocations++;
+    }
+
+    void addMemoHit() {
+	memoHits++;
+    }
+
+    void addMemoMiss() {
+	memoMisses++;
+    }
+
+    void addFailedAlternative() {
+	failedAlternatives++;
+    }
+
+    void addGrowIteration() {
+	growIterations++;
+    }
+
+    void addTime(long time) {
+	this.time += time;
+    }
+
+    @Override
+    public String toString() {
+	return rule + ": invocations=" + invocations + "; memo hits="
+		+ memoHits + "; memo misses=" + memoMisses
+		+ "; failed alternatives=" + failedAlternatives
+		+ "; grow iterations=" + growIterations + "; time="
+		+ (time / 1000000.0) + "ms";
+    }
+}
@@ -0,0 +1,102 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import java.io.Serializable;
+
+/**
+ * This class represents a single edit of a text. At a given offset a number
+ * of characters is removed and a new text is inserted. It is used for
+ * incremental parsing with {@link PackratParser}.
+ */
+public class TextEdit implements Serializable {
+
+    private static final long serialVersionUID = 4893311874263734916L;
+
+    private final int offset;
+    private final int removedLength;
+    private final String insertedText;
+
+    /**
+     * This is the initial value constructor.
+     * 
+     * @param offset
+     *            is the position of the edit within the text.
+     * @param removedLength
+     *            is the number of characters removed at offset.
+     * @param insertedText
+     *            is the text inserted at offset.
+     */
+    public TextEdit(int offset, int removedLength, String insertedText) {
+	super();
+	if ((offset < 0) || (removedLength < 0)) {
+	    throw new IllegalArgumentException(
+		    "Offset and removed length must not be negative.");
+	}
+	if (insertedText == null) {
+	    throw new IllegalArgumentException(
+		    "Inserted text must not be null.");
+	}
+	this.offset = offset;
+	this.removedLength = removedLength;
+	this.insertedText = insertedText;
+    }
+
+    public int getOffset() {
+	return offset;
+    }
+
+    public int getRemovedLength() {
+	return removedLength;
+    }
+
+    public String getInsertedText() {
+	return insertedText;
+    }
+
+    /**
+     * This method applies the edit to the given text.
+     * 
+     * @param text
+     *            is the text to be changed.
+     */
+    void apply(StringBuilder text) {
+	if (offset + removedLength > text.length()) {
+	    throw new IllegalArgumentException("Edit '" + this
+		    + "' is out of the text range.");
+	}
+	text.replace(offset, offset + removedLength, insertedText);
+    }
+
+    @Override
+    public int hashCode() {
+	final int prime = 31;
+	int result = 1;
+	result = prime * result + offset;
+	result = prime * result + removedLength;
+	result = prime * result + insertedText.hashCode();
+	return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (this == obj)
+	    return true;
+	if (obj == null)
+	    return false;
+	if (getClass() != obj.getClass())
+	    return false;
+	TextEdit other = (TextEdit) obj;
+	if (offset != other.offset)
+	    return false;
+	if (removedLength != other.removedLength)
+	    return false;
+	if (!insertedText.equals(other.insertedText))
+	    return false;
+	return true;
+    }
+
+    @Override
+    public String toString() {
+	return "offset: " + offset + "; removed: " + removedLength
+		+ "; inserted: '" + insertedText + "'";
+    }
+}
@@ -0,0 +1,109 @@
+package com.puresoltechnologies.parsers.parser.query;
+
+import java.util.Arrays;
+
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParseTreeNodeTypes;
+
+/**
+ * This class is a single compiled step of a {@link TreeQuery}. The names of
+ * the step are resolved into type ids, so matching a node only compares ints.
+ * The names are only looked up and not registered in
+ * {@link ParseTreeNodeTypes}, so queries do not grow the registry. A name
+ * without a node, yet, gets {@link #NO_MATCH} and is looked up again by
+ * {@link #resolve()} before the next execution.
+ */
+class QueryStep {
+
+    /**
+     * This is the type id for the wildcard '*' which matches all nodes.
+     */
+    static final int ANY_TYPE = -1;
+
+    /**
+     * This is the type id for names which no node was created for, yet. No
+     * node matches this type id.
+     */
+    static final int NO_MATCH = -2;
+
+    private final boolean descendant;
+    private final String name;
+    private final String[] predicateNames;
+    private volatile int typeId;
+    private final int[] predicateTypeIds;
+
+    /**
+     * @param descendant
+     *            specifies whether nodes at any depth are matched.
+     * @param name
+     *            is the name to be matched or null for any name.
+     * @param predicateNames
+     *            are the names of the required children.
+     */
+    QueryStep(boolean descendant, String name, String[] predicateNames) {
+	super();
+	this.descendant = descendant;
+	this.name = name;
+	this.predicateNames = predicateNames;
+	this.typeId = name == null ? ANY_TYPE : NO_MATCH;
+	this.predicateTypeIds = new int[predicateNames.length];
+	Arrays.fill(predicateTypeIds, NO_MATCH);
+	resolve();
+    }
+
+    /**
+     * This method looks up the type ids of the names which were not known at
+     * the last lookup. Type ids never change once they were assigned, so
+     * known ids are not looked up again.
+     */
+    void resolve() {
+	if (typeId == NO_MATCH) {
+	    typeId = findTypeId(name);
+	}
+	for (int i = 0; i < predicateTypeIds.length; i++) {
+	    if (predicateTypeIds[i] == NO_MATCH) {
+		predicateTypeIds[i] = findTypeId(predicateNames[i]);
+	    }
+	}
+    }
+
+    private static int findTypeId(String name) {
+	int id = ParseTreeNodeTypes.findTypeId(name);
+	return id < 0 ? NO_MATCH : id;
+    }
+
+    /**
+     * @return true is returned if this step matches nodes at any depth below
+     *         the previous step ('//'). false is returned if only direct
+     *         children are matched ('/').
+     */
+    boolean isDescendant() {
+	return descendant;
+    }
+
+    int getTypeId() {
+	return typeId;
+    }
+
+    boolean matches(ParseTreeNode node) {
+	if ((typeId != ANY_TYPE) && (node.getTypeId() != typeId)) {
+	    return false;
+	}
+	for (int predicateTypeId : predicateTypeIds) {
+	    if (!node.hasChild(predicateTypeId)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder builder = new StringBuilder(descendant ? "//" : "/");
+	builder.append(name == null ? "*" : name);
+	for (String predicateName : predicateNames) {
+	    builder.append('[').append(predicateName).append(']');
+	}
+	return builder.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package com.puresoltechnologies.parsers.parser.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+
+/**
+ * <p>
+ * This class is a compiled path query over {@link ParseTreeNode} trees. A
+ * query consists of steps which are matched from the root of the tree
+ * downwards:
+ * </p>
+ *
+ * <pre>
+ * query     := step+
+ * step      := ('/' | '//') nameTest predicate*
+ * nameTest  := name | '*'
+ * predicate := '[' name ']'
+ * </pre>
+ * <p>
+ * A step with '/' matches the direct children of the node matched by the
+ * previous step (or the root itself for the first step), a step with '//'
+ * matches all nodes below (or the root and all nodes for the first step). The
+ * wildcard '*' matches all names and a predicate requires a child with the
+ * given name. For example, <code>//Method[Modifier]//Call</code> finds all
+ * <code>Call</code> nodes within <code>Method</code> nodes which have a
+ * <code>Modifier</code> child.
+ * </p>
+ * <p>
+ * Queries are compiled once and can be executed on many trees. To run many
+ * queries in a single traversal, use a {@link TreeQuerySet}.
+ * </p>
+ */
+public class TreeQuery {
+
+    /**
+     * This method compiles a query string into a {@link TreeQuery}.
+     *
+     * @param query
+     *            is the query string to be compiled.
+     * @return A {@link TreeQuery} is returned.
+     * @throws TreeQueryException
+     *             is thrown in case the query string is invalid.
+     */
+    public static TreeQuery compile(String query) throws TreeQueryException {
+	List<QueryStep> steps = new ArrayList<QueryStep>();
+	int position = 0;
+	while (position < query.length()) {
+	    if (query.charAt(position) != '/') {
+		throw new TreeQueryException(createMessage(query, position,
+			"'/' expected"));
+	    }
+	    position++;
+	    boolean descendant = false;
+	    if ((position < query.length()) && (query.charAt(position) == '/')) {
+		descendant = true;
+		position++;
+	    }
+	    int end = findNameEnd(query, position);
+	    if (end == position) {
+		throw new TreeQueryException(createMessage(query, position,
+			"name or '*' expected"));
+	    }
+	    String name = query.substring(position, end);
+	    position = end;
+	    List<String> predicates = new ArrayList<String>();
+	    while ((position < query.length())
+		    && (query.charAt(position) == '[')) {
+		position++;
+		end = findNameEnd(query, position);
+		if ((end == position) || (end >= query.length())
+			|| (query.charAt(end) != ']')) {
+		    throw new TreeQueryException(createMessage(query, position,
+			    "name followed by ']' expected"));
+		}
+		predicates.add(query.substring(position, end));
+		position = end + 1;
+	    }
+	    steps.add(new QueryStep(descendant, "*".equals(name) ? null : name,
+		    predicates.toArray(new String[predicates.size()])));
+	}
+	if (steps.isEmpty()) {
+	    throw new TreeQueryException("Tree query is empty.");
+	}
+	return new TreeQuery(query, steps.toArray(new QueryStep[steps.size()]));
+    }
+
+    private static int findNameEnd(String query, int position) {
+	int end = position;
+	while (end < query.length()) {
+	    char c = query.charAt(end);
+	    if ((c == '/') || (c == '[') || (c == ']')
+		    || Character.isWhitespace(c)) {
+		break;
+	    }
+	    end++;
+	}
+	return end;
+    }
+
+    private static String createMessage(String query, int position,
+	    String message) {
+	return "Invalid tree query '" + query + "' at position " + position
+		+ ": " + message + ".";
+    }
+
+    private final String query;
+    private final QueryStep[] steps;
+
+    private TreeQuery(String query, QueryStep[] steps) {
+	super();
+	this.query = query;
+	this.steps = steps;
+    }
+
+    /**
+     * @return The query string is returned.
+     */
+    public String getQuery() {
+	return query;
+    }
+
+    QueryStep[] getSteps() {
+	return steps;
+    }
+
+    /**
+     * This method runs this single query on the tree of the given root.
+     *
+     * @param root
+     *            is the root of the tree to be searched.
+     * @return A {@link List} of matching nodes in pre-order is returned.
+     */
+    public List<ParseTreeNode> execute(ParseTreeNode root) {
+	return new TreeQuerySet(this).execute(root).get(this);
+    }
+
+    @Override
+    public String toString() {
+	return query;
+    }
+}
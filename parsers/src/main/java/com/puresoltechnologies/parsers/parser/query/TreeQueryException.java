@@ -0,0 +1,18 @@
+package com.puresoltechnologies.parsers.parser.query;
+
+/**
+ * This exception is thrown if a tree query cannot be compiled.
+ */
+public class TreeQueryException extends Exception {
+
+    private static final long serialVersionUID = -4081396581257370317L;
+
+    public TreeQueryException(String message) {
+	super(message);
+    }
+
+    public TreeQueryException(String message, Throwable cause) {
+	super(message, cause);
+    }
+
+}
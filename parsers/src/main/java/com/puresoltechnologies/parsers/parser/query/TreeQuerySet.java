@@ -0,0 +1,181 @@
+package com.puresoltechnologies.parsers.parser.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+
+/**
+ * <p>
+ * This class combines several {@link TreeQuery}s into one automaton, which is
+ * executed in a single traversal of the tree for all queries.
+ * </p>
+ * <p>
+ * The steps of all queries are numbered as states of the automaton. During
+ * the traversal, each node gets the set of states which are active at its
+ * level. A matching state activates its successor for the children and
+ * states of '//' steps stay active for all descendants. Sub trees are skipped
+ * if none of the queries with active states can find its last node there,
+ * which is checked with the type index of the tree (see
+ * {@link ParseTreeNode#containsType(int)}).
+ * </p>
+ */
+public class TreeQuerySet {
+
+    private final List<TreeQuery> queries;
+    private final QueryStep[] states;
+    private final int[] stateQueries;
+    private final boolean[] finalStates;
+    private final int[] startStates;
+    private final QueryStep[] lastSteps;
+
+    public TreeQuerySet(TreeQuery... queries) {
+	this(Arrays.asList(queries));
+    }
+
+    public TreeQuerySet(Collection<TreeQuery> queries) {
+	super();
+	this.queries = new ArrayList<TreeQuery>(queries);
+	int stateNum = 0;
+	for (TreeQuery query : this.queries) {
+	    stateNum += query.getSteps().length;
+	}
+	states = new QueryStep[stateNum];
+	stateQueries = new int[stateNum];
+	finalStates = new boolean[stateNum];
+	startStates = new int[this.queries.size()];
+	lastSteps = new QueryStep[this.queries.size()];
+	int state = 0;
+	for (int queryId = 0; queryId < this.queries.size(); queryId++) {
+	    QueryStep[] steps = this.queries.get(queryId).getSteps();
+	    startStates[queryId] = state;
+	    lastSteps[queryId] = steps[steps.length - 1];
+	    for (QueryStep step : steps) {
+		states[state] = step;
+		stateQueries[state] = queryId;
+		state++;
+	    }
+	    finalStates[state - 1] = true;
+	}
+    }
+
+    /**
+     * @return The queries of this set are returned.
+     */
+    public List<TreeQuery> getQueries() {
+	return queries;
+    }
+
+    /**
+     * This method runs all queries on the tree of the given root in a single
+     * traversal.
+     *
+     * @param root
+     *            is the root of the tree to be searched.
+     * @return A {@link Map} is returned containing the matching nodes in
+     *         pre-order for each query.
+     */
+    public Map<TreeQuery, List<ParseTreeNode>> execute(ParseTreeNode root) {
+	for (QueryStep step : states) {
+	    step.resolve();
+	}
+	List<List<ParseTreeNode>> results = new ArrayList<List<ParseTreeNode>>();
+	for (int queryId = 0; queryId < queries.size(); queryId++) {
+	    results.add(new ArrayList<ParseTreeNode>());
+	}
+	/*
+	 * The active states are kept per depth. The set of a depth is written
+	 * by the parent and it is read by all its children. Due to the
+	 * pre-order traversal, it is not changed before the last child was
+	 * processed.
+	 */
+	List<BitSet> activeStates = new ArrayList<BitSet>();
+	BitSet start = getStateSet(activeStates, 0);
+	for (int startState : startStates) {
+	    start.set(startState);
+	}
+	ParseTreeNode[] lastMatches = new ParseTreeNode[queries.size()];
+	Deque<ParseTreeNode> nodes = new ArrayDeque<ParseTreeNode>();
+	Deque<Integer> depths = new ArrayDeque<Integer>();
+	nodes.push(root);
+	depths.push(0);
+	while (!nodes.isEmpty()) {
+	    ParseTreeNode node = nodes.pop();
+	    int depth = depths.pop();
+	    BitSet active = activeStates.get(depth);
+	    BitSet next = getStateSet(activeStates, depth + 1);
+	    for (int state = active.nextSetBit(0); state >= 0; state = active
+		    .nextSetBit(state + 1)) {
+		QueryStep step = states[state];
+		if (step.isDescendant()) {
+		    next.set(state);
+		}
+		if (step.matches(node)) {
+		    if (finalStates[state]) {
+			int queryId = stateQueries[state];
+			if (lastMatches[queryId] != node) {
+			    lastMatches[queryId] = node;
+			    results.get(queryId).add(node);
+			}
+		    } else {
+			next.set(state + 1);
+		    }
+		}
+	    }
+	    if (next.isEmpty() || !node.hasChildren() || !canMatchBelow(node, next)) {
+		continue;
+	    }
+	    List<ParseTreeNode> children = node.getChildren();
+	    for (int i = children.size() - 1; i >= 0; i--) {
+		nodes.push(children.get(i));
+		depths.push(depth + 1);
+	    }
+	}
+	Map<TreeQuery, List<ParseTreeNode>> resultMap = new LinkedHashMap<TreeQuery, List<ParseTreeNode>>();
+	for (int queryId = 0; queryId < queries.size(); queryId++) {
+	    resultMap.put(queries.get(queryId), results.get(queryId));
+	}
+	return resultMap;
+    }
+
+    /**
+     * This method returns the cleared state set for the given depth.
+     */
+    private BitSet getStateSet(List<BitSet> activeStates, int depth) {
+	while (activeStates.size() <= depth) {
+	    activeStates.add(new BitSet(states.length));
+	}
+	BitSet stateSet = activeStates.get(depth);
+	stateSet.clear();
+	return stateSet;
+    }
+
+    /**
+     * This method checks whether one of the queries with active states can
+     * find its last node within the sub tree of the given node.
+     */
+    private boolean canMatchBelow(ParseTreeNode node, BitSet states) {
+	int checkedQuery = -1;
+	for (int state = states.nextSetBit(0); state >= 0; state = states
+		.nextSetBit(state + 1)) {
+	    int queryId = stateQueries[state];
+	    if (queryId == checkedQuery) {
+		continue;
+	    }
+	    checkedQuery = queryId;
+	    int lastTypeId = lastSteps[queryId].getTypeId();
+	    if ((lastTypeId == QueryStep.ANY_TYPE)
+		    || node.containsType(lastTypeId)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+}
@@ -0,0 +1,222 @@
+package com.puresoltechnologies.parsers.source;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * <p>
+ * This class is a fast, non-cryptographic 128 bit fingerprint of a text. It is
+ * meant as key for caches where the strength of the SHA-256
+ * {@link SourceCode#getHashId()} is not needed.
+ * </p>
+ * <p>
+ * The fingerprint is the MurmurHash3 (x64, 128 bit) of the UTF-16 code units
+ * of the text in little endian order with seed 0. It does not depend on a
+ * charset and it is the same whether the text is hashed at once or in chunks
+ * with a {@link Hasher}.
+ * </p>
+ */
+public final class Fingerprint implements Serializable {
+
+    private static final long serialVersionUID = 2386514530126553318L;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * This method calculates the fingerprint of the given text.
+     *
+     * @param text
+     *            is the text to be hashed.
+     * @return The {@link Fingerprint} is returned.
+     */
+    public static Fingerprint of(CharSequence text) {
+	return new Hasher().update(text, 0, text.length()).finish();
+    }
+
+    private final long high;
+    private final long low;
+
+    public Fingerprint(@JsonProperty("high") long high,
+	    @JsonProperty("low") long low) {
+	super();
+	this.high = high;
+	this.low = low;
+    }
+
+    public long getHigh() {
+	return high;
+    }
+
+    public long getLow() {
+	return low;
+    }
+
+    /**
+     * @return The fingerprint is returned as 32 digit hex string.
+     */
+    @JsonIgnore
+    public String toHexString() {
+	return String.format("%016x%016x", high, low);
+    }
+
+    @Override
+    public int hashCode() {
+	return (int) (low ^ (low >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (this == obj)
+	    return true;
+	if (obj == null)
+	    return false;
+	if (getClass() != obj.getClass())
+	    return false;
+	Fingerprint other = (Fingerprint) obj;
+	return (high == other.high) && (low == other.low);
+    }
+
+    @Override
+    public String toString() {
+	return toHexString();
+    }
+
+    /**
+     * This class calculates a {@link Fingerprint} incrementally out of text
+     * chunks. A hasher can only be used for a single fingerprint.
+     */
+    public static final class Hasher {
+
+	/**
+	 * These are the characters of an incomplete block of 16 bytes.
+	 */
+	private final char[] pending = new char[8];
+	private int pendingLength = 0;
+	private long length = 0;
+	private long h1 = 0;
+	private long h2 = 0;
+
+	public Hasher update(char[] chars, int offset, int count) {
+	    int end = offset + count;
+	    int position = offset;
+	    while ((pendingLength > 0) && (position < end)) {
+		pending[pendingLength++] = chars[position++];
+		if (pendingLength == 8) {
+		    mixBlock(pending[0], pending[1], pending[2], pending[3],
+			    pending[4], pending[5], pending[6], pending[7]);
+		    pendingLength = 0;
+		}
+	    }
+	    while (position + 8 <= end) {
+		mixBlock(chars[position], chars[position + 1],
+			chars[position + 2], chars[position + 3],
+			chars[position + 4], chars[position + 5],
+			chars[position + 6], chars[position + 7]);
+		position += 8;
+	    }
+	    while (position < end) {
+		pending[pendingLength++] = chars[position++];
+	    }
+	    length += count;
+	    return this;
+	}
+
+	public Hasher update(CharSequence text, int start, int end) {
+	    int position = start;
+	    while ((pendingLength > 0) && (position < end)) {
+		pending[pendingLength++] = text.charAt(position++);
+		if (pendingLength == 8) {
+		    mixBlock(pending[0], pending[1], pending[2], pending[3],
+			    pending[4], pending[5], pending[6], pending[7]);
+		    pendingLength = 0;
+		}
+	    }
+	    while (position + 8 <= end) {
+		mixBlock(text.charAt(position), text.charAt(position + 1),
+			text.charAt(position + 2), text.charAt(position + 3),
+			text.charAt(position + 4), text.charAt(position + 5),
+			text.charAt(position + 6), text.charAt(position + 7));
+		position += 8;
+	    }
+	    while (position < end) {
+		pending[pendingLength++] = text.charAt(position++);
+	    }
+	    length += end - start;
+	    return this;
+	}
+
+	private void mixBlock(char c0, char c1, char c2, char c3, char c4,
+		char c5, char c6, char c7) {
+	    long k1 = c0 | ((long) c1 << 16) | ((long) c2 << 32)
+		    | ((long) c3 << 48);
+	    long k2 = c4 | ((long) c5 << 16) | ((long) c6 << 32)
+		    | ((long) c7 << 48);
+	    h1 ^= mixK1(k1);
+	    h1 = Long.rotateLeft(h1, 27);
+	    h1 += h2;
+	    h1 = h1 * 5 + 0x52dce729;
+	    h2 ^= mixK2(k2);
+	    h2 = Long.rotateLeft(h2, 31);
+	    h2 += h1;
+	    h2 = h2 * 5 + 0x38495ab5;
+	}
+
+	private static long mixK1(long k1) {
+	    k1 *= C1;
+	    k1 = Long.rotateLeft(k1, 31);
+	    k1 *= C2;
+	    return k1;
+	}
+
+	private static long mixK2(long k2) {
+	    k2 *= C2;
+	    k2 = Long.rotateLeft(k2, 33);
+	    k2 *= C1;
+	    return k2;
+	}
+
+	private static long fmix(long k) {
+	    k ^= k >>> 33;
+	    k *= 0xff51afd7ed558ccdL;
+	    k ^= k >>> 33;
+	    k *= 0xc4ceb9fe1a85ec53L;
+	    k ^= k >>> 33;
+	    return k;
+	}
+
+	/**
+	 * This method finishes the calculation.
+	 *
+	 * @return The {@link Fingerprint} of all chunks is returned.
+	 */
+	public Fingerprint finish() {
+	    long k1 = 0;
+	    long k2 = 0;
+	    for (int i = pendingLength - 1; i >= 4; i--) {
+		k2 |= (long) pending[i] << (16 * (i - 4));
+	    }
+	    for (int i = Math.min(pendingLength, 4) - 1; i >= 0; i--) {
+		k1 |= (long) pending[i] << (16 * i);
+	    }
+	    if (pendingLength > 4) {
+		h2 ^= mixK2(k2);
+	    }
+	    if (pendingLength > 0) {
+		h1 ^= mixK1(k1);
+	    }
+	    long bytes = length * 2;
+	    long r1 = h1 ^ bytes;
+	    long r2 = h2 ^ bytes;
+	    r1 += r2;
+	    r2 += r1;
+	    r1 = fmix(r1);
+	    r2 = fmix(r2);
+	    r1 += r2;
+	    r2 += r1;
+	    return new Fingerprint(r1, r2);
+	}
+    }
+}
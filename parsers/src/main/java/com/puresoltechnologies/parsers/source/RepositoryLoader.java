@@ -0,0 +1,339 @@
+package com.puresoltechnologies.parsers.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.puresoltechnologies.commons.misc.io.FileSearchConfiguration;
+import com.puresoltechnologies.parsers.concurrent.ResultChannel;
+
+/**
+ * <p>
+ * This class reads the source codes of many {@link SourceCodeLocation}s
+ * concurrently. Reading a repository file by file is bound by the latency of
+ * the file system, especially on network file systems, so a fixed number of
+ * readers is run on an {@link ExecutorService}.
+ * </p>
+ * <p>
+ * The locations are read largest first, so that a large file read at the end
+ * does not keep a single reader busy while all others are idle. The size is
+ * only known for {@link SourceFileLocation}s, all other locations are read
+ * afterwards in their original order. The sizes are looked up by the readers
+ * concurrently, too, because a lookup costs a round trip on a network file
+ * system.
+ * </p>
+ * <p>
+ * The read {@link SourceCode}s are handed to a {@link Handler} in the calling
+ * thread in the order of their completion. At most the given capacity of
+ * source codes is buffered, the readers wait if the handler does not keep up.
+ * So the memory needed does not depend on the size of the repository.
+ * </p>
+ */
+public class RepositoryLoader {
+
+    /**
+     * This interface is implemented to process the loaded source codes.
+     */
+    public interface Handler {
+
+	/**
+	 * This method is called for each loaded source code. It is only called
+	 * by the thread which called the loader.
+	 *
+	 * @param location
+	 *            is the {@link SourceCodeLocation} the source code was read
+	 *            from.
+	 * @param sourceCode
+	 *            is the read {@link SourceCode}.
+	 * @throws IOException
+	 *             is thrown to abort the loading.
+	 */
+	public void handle(SourceCodeLocation location, SourceCode sourceCode)
+		throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final int readers;
+    private final int capacity;
+
+    /**
+     * @param executor
+     *            is the {@link ExecutorService} to run the readers on. It needs
+     *            to provide at least the given number of threads to read with
+     *            full parallelism.
+     * @param readers
+     *            is the number of locations read concurrently.
+     * @param capacity
+     *            is the maximum number of read source codes which are not
+     *            handled, yet.
+     */
+    public RepositoryLoader(ExecutorService executor, int readers, int capacity) {
+	super();
+	if (readers < 1) {
+	    throw new IllegalArgumentException(
+		    "Number of readers must be positive, but is " + readers
+			    + ".");
+	}
+	if (capacity < 1) {
+	    throw new IllegalArgumentException(
+		    "Capacity must be positive, but is " + capacity + ".");
+	}
+	this.executor = executor;
+	this.readers = readers;
+	this.capacity = capacity;
+    }
+
+    public int getReaders() {
+	return readers;
+    }
+
+    public int getCapacity() {
+	return capacity;
+    }
+
+    /**
+     * This method loads all source codes of a repository.
+     *
+     * @param repository
+     *            is the {@link RepositoryLocation} to be loaded.
+     * @param fileSearchConfiguration
+     *            is the {@link FileSearchConfiguration} object specifying what
+     *            files to take into account.
+     * @param handler
+     *            is the {@link Handler} for the loaded source codes.
+     * @throws IOException
+     *             is thrown if a source code cannot be read or the handler
+     *             failed.
+     * @throws InterruptedException
+     *             is thrown if the calling thread was interrupted.
+     */
+    public void load(RepositoryLocation repository,
+	    FileSearchConfiguration fileSearchConfiguration, Handler handler)
+	    throws IOException, InterruptedException {
+	load(repository.getSourceCodes(fileSearchConfiguration), handler);
+    }
+
+    /**
+     * This method loads the source codes of the given locations. If a location
+     * cannot be read or the handler fails, the readers are stopped and the
+     * first failure is thrown after all readers are finished. This includes
+     * {@link Error}s thrown while reading, like an {@link OutOfMemoryError}
+     * for a huge file.
+     *
+     * @param locations
+     *            is a {@link Collection} of {@link SourceCodeLocation}s to be
+     *            read.
+     * @param handler
+     *            is the {@link Handler} for the loaded source codes.
+     * @throws IOException
+     *             is thrown if a source code cannot be read or the handler
+     *             failed.
+     * @throws InterruptedException
+     *             is thrown if the calling thread was interrupted.
+     */
+    public void load(Collection<SourceCodeLocation> locations, Handler handler)
+	    throws IOException, InterruptedException {
+	List<SourceCodeLocation> locationList = new ArrayList<SourceCodeLocation>(
+		locations);
+	long[] sizes = getSizes(locationList);
+	List<SizedLocation> sizedLocations = new ArrayList<SizedLocation>(
+		locationList.size());
+	for (int i = 0; i < sizes.length; i++) {
+	    sizedLocations.add(new SizedLocation(locationList.get(i), sizes[i]));
+	}
+	// The sort is stable, so locations without size keep their order.
+	sizedLocations.sort(new Comparator<SizedLocation>() {
+	    @Override
+	    public int compare(SizedLocation o1, SizedLocation o2) {
+		return Long.compare(o2.size, o1.size);
+	    }
+	});
+	if (sizedLocations.isEmpty()) {
+	    return;
+	}
+	int readerCount = Math.min(readers, sizedLocations.size());
+	LoadRun run = new LoadRun(sizedLocations, readerCount);
+	try {
+	    for (int i = 0; i < readerCount; i++) {
+		executor.execute(run);
+	    }
+	} catch (RejectedExecutionException e) {
+	    // The readers already started must not wait for the handler.
+	    run.results.abandon();
+	    throw e;
+	}
+	run.handle(handler);
+    }
+
+    /**
+     * This method looks up the sizes of all locations with the given number
+     * of readers.
+     *
+     * @return An array with the size of each location is returned in the
+     *         order of the locations.
+     */
+    private long[] getSizes(final List<SourceCodeLocation> locations)
+	    throws InterruptedException {
+	final long[] sizes = new long[locations.size()];
+	final AtomicInteger next = new AtomicInteger();
+	int lookups = Math.min(readers, sizes.length);
+	final CountDownLatch finished = new CountDownLatch(lookups);
+	Runnable lookup = new Runnable() {
+	    @Override
+	    public void run() {
+		try {
+		    int index;
+		    while ((index = next.getAndIncrement()) < sizes.length) {
+			sizes[index] = getSize(locations.get(index));
+		    }
+		} finally {
+		    finished.countDown();
+		}
+	    }
+	};
+	try {
+	    for (int i = 0; i < lookups; i++) {
+		executor.execute(lookup);
+	    }
+	    finished.await();
+	} finally {
+	    if (finished.getCount() > 0) {
+		// The lookups already started end after their current location.
+		next.set(sizes.length);
+	    }
+	}
+	return sizes;
+    }
+
+    /**
+     * @return The size of the location in bytes is returned or -1 if the size
+     *         is unknown.
+     */
+    private static long getSize(SourceCodeLocation location) {
+	if (location instanceof SourceFileLocation) {
+	    SourceFileLocation fileLocation = (SourceFileLocation) location;
+	    return new File(fileLocation.getRepositoryDirectory(),
+		    fileLocation.getInternalLocation()).length();
+	}
+	return -1;
+    }
+
+    private static class SizedLocation {
+
+	private final SourceCodeLocation location;
+	private final long size;
+
+	private SizedLocation(SourceCodeLocation location, long size) {
+	    super();
+	    this.location = location;
+	    this.size = size;
+	}
+    }
+
+    /**
+     * This is the result of a reader.
+     */
+    private static class Result {
+
+	private final SourceCodeLocation location;
+	private final SourceCode sourceCode;
+	private final Throwable failure;
+
+	private Result(SourceCodeLocation location, SourceCode sourceCode,
+		Throwable failure) {
+	    super();
+	    this.location = location;
+	    this.sourceCode = sourceCode;
+	    this.failure = failure;
+	}
+    }
+
+    /**
+     * This is a single run of {@link RepositoryLoader#load(Collection, Handler)}
+     * . Each reader takes the next location out of the sorted list until all
+     * are read or the run is stopped.
+     */
+    private class LoadRun implements Runnable {
+
+	private final List<SizedLocation> locations;
+	private final AtomicInteger next = new AtomicInteger();
+	private final ResultChannel<Result> results;
+
+	private LoadRun(List<SizedLocation> locations, int readerCount) {
+	    super();
+	    this.locations = locations;
+	    this.results = new ResultChannel<Result>(capacity, readerCount);
+	}
+
+	@Override
+	public void run() {
+	    try {
+		int index;
+		while (!results.isStopped()
+			&& ((index = next.getAndIncrement()) < locations.size())) {
+		    SourceCodeLocation location = locations.get(index).location;
+		    Result result;
+		    try {
+			result = new Result(location, location.getSourceCode(),
+				null);
+		    } catch (Throwable e) {
+			/*
+			 * Errors like an OutOfMemoryError for a huge file are
+			 * handed to the handling thread, too.
+			 */
+			result = new Result(location, null, e);
+		    }
+		    results.put(result);
+		}
+	    } finally {
+		results.close();
+	    }
+	}
+
+	private void handle(Handler handler) throws IOException,
+		InterruptedException {
+	    Throwable failure = null;
+	    boolean finished = false;
+	    try {
+		Result result;
+		while ((result = results.take()) != null) {
+		    if (failure != null) {
+			// The run is stopped, the remaining results are dropped.
+		    } else if (result.failure != null) {
+			failure = result.failure;
+			results.stop();
+		    } else {
+			try {
+			    handler.handle(result.location, result.sourceCode);
+			} catch (IOException | RuntimeException e) {
+			    failure = e;
+			    results.stop();
+			}
+		    }
+		}
+		finished = true;
+	    } finally {
+		if (!finished) {
+		    // Nobody takes the results anymore.
+		    results.abandon();
+		}
+	    }
+	    if (failure instanceof IOException) {
+		throw (IOException) failure;
+	    } else if (failure instanceof RuntimeException) {
+		throw (RuntimeException) failure;
+	    } else if (failure instanceof Error) {
+		throw (Error) failure;
+	    } else if (failure != null) {
+		throw new IOException("Could not load source code.", failure);
+	    }
+	}
+    }
+}
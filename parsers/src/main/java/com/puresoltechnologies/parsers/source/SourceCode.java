@@ -5,10 +5,17 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.nio.charset.CodingErrorAction;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.puresoltechnologies.commons.misc.hash.HashAlgorithm;
 import com.puresoltechnologies.commons.misc.hash.HashCodeGenerator;
@@ -16,15 +23,23 @@ import com.puresoltechnologies.commons.misc.hash.HashId;
 import com.puresoltechnologies.commons.misc.io.LineTerminator;
 
 /**
+ * <p>
  * This class represents a whole source code from a file and additional later
  * changes through a preprocessor.
+ * </p>
+ * <p>
+ * The text of all lines is kept in a single buffer together with an index of
+ * the start offset, the line number and the source of each line. The
+ * {@link SourceCodeLine}s are only created on access, so the text can be
+ * lexed directly out of the buffer with {@link #getText()}.
+ * </p>
  * 
  * @author Rick-Rainer Ludwig
  * 
  */
 public class SourceCode implements Serializable, Cloneable {
 
-    private static final long serialVersionUID = -4132802914950017966L;
+    private static final long serialVersionUID = 6453180539436851021L;
 
     public static SourceCode fromStringArray(String... lines) {
 	try {
@@ -48,126 +63,434 @@ public class SourceCode implements Serializable, Cloneable {
 
     public static SourceCode read(Reader reader, SourceCodeLocation source)
 	    throws IOException {
-	char[] buffer = new char[4096];
 	SourceCode code = new SourceCode();
+	Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+	char[] buffer = new char[8192];
 	int length;
-	StringBuffer stringBuffer = new StringBuffer();
-	do {
-	    length = reader.read(buffer);
-	    if (length > 0) {
-		stringBuffer.append(buffer, 0, length);
-	    }
-	} while (length == buffer.length);
-	int lineNumber = 0;
-	while (true) {
-	    lineNumber++;
-	    String br = findNextLineBreak(stringBuffer);
-	    if (br.isEmpty()) {
-		String line = stringBuffer.toString();
-		code.addSourceCodeLine(new SourceCodeLine(source, lineNumber,
-			line));
+	while ((length = reader.read(buffer)) >= 0) {
+	    code.text.append(buffer, 0, length);
+	    hasher.update(buffer, 0, length);
+	}
+	code.indexLines(source, 0);
+	code.fingerprint = hasher.finish();
+	return code;
+    }
+
+    /**
+     * This method reads the complete reader and splits the text into lines in
+     * a single pass. Each line keeps its line terminator, which is "\r\n",
+     * "\n" or "\r". A terminator at the end of the text does not start
+     * another line. An empty text results in a single empty line.
+     * 
+     * @param reader
+     *            is the {@link Reader} to read from. It is not closed.
+     * @param source
+     *            is the source location to be put into the lines.
+     * @param consumer
+     *            is called for each line as soon as it is complete, so the
+     *            text does not need to be kept completely.
+     * @throws IOException
+     *             is thrown if the reader cannot be read.
+     */
+    public static void read(Reader reader, SourceCodeLocation source,
+	    Consumer<SourceCodeLine> consumer) throws IOException {
+	char[] buffer = new char[8192];
+	LineSplitter splitter = new LineSplitter(source, consumer);
+	int length;
+	while ((length = reader.read(buffer)) >= 0) {
+	    splitter.add(buffer, 0, length);
+	}
+	splitter.finish();
+    }
+
+    /**
+     * This method decodes the given bytes with the given charset in a single
+     * pass and splits the text into lines like
+     * {@link #read(Reader, SourceCodeLocation, Consumer)}. Malformed input is
+     * replaced like it is done by {@link InputStreamReader}. For charsets which
+     * are compatible to ASCII, the leading ASCII bytes are converted directly
+     * and only the bytes from the first non-ASCII byte on are decoded.
+     * 
+     * @param bytes
+     *            is the buffer with the encoded text between its position and
+     *            its limit. The position is moved to the limit.
+     * @param charset
+     *            is the {@link Charset} of the text.
+     * @param source
+     *            is the source location to be put into the lines.
+     * @return A new {@link SourceCode} is returned.
+     * @throws IOException
+     *             is thrown if the bytes cannot be decoded.
+     */
+    public static SourceCode read(ByteBuffer bytes, Charset charset,
+	    SourceCodeLocation source) throws IOException {
+	SourceCode code = new SourceCode();
+	Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+	if (isAsciiCompatible(charset)) {
+	    appendAscii(bytes, code.text);
+	}
+	if (bytes.hasRemaining()) {
+	    code.text.append(charset.newDecoder()
+		    .onMalformedInput(CodingErrorAction.REPLACE)
+		    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+		    .decode(bytes));
+	}
+	hasher.update(code.text, 0, code.text.length());
+	code.indexLines(source, 0);
+	code.fingerprint = hasher.finish();
+	return code;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+	String name = charset.name();
+	return "UTF-8".equals(name) || "US-ASCII".equals(name)
+		|| "ISO-8859-1".equals(name);
+    }
+
+    /**
+     * This method appends the leading ASCII bytes directly as chars to the
+     * text. It stops at the first non-ASCII byte, so only the rest of the
+     * buffer needs to be decoded with a decoder.
+     * 
+     * @param bytes
+     *            is the buffer with the encoded text. The position is moved
+     *            behind the appended bytes.
+     * @param text
+     *            is the text to append the chars to.
+     */
+    private static void appendAscii(ByteBuffer bytes, StringBuilder text) {
+	int position = bytes.position();
+	int limit = bytes.limit();
+	text.ensureCapacity(text.length() + limit - position);
+	while (position < limit) {
+	    byte b = bytes.get(position);
+	    if (b < 0) {
 		break;
-	    } else {
-		int pos = stringBuffer.indexOf(br);
-		String line = stringBuffer.substring(0, pos + br.length());
-		code.addSourceCodeLine(new SourceCodeLine(source, lineNumber,
-			line));
-		stringBuffer.delete(0, pos + br.length());
 	    }
+	    text.append((char) b);
+	    position++;
 	}
-	return code;
+	bytes.position(position);
     }
 
-    private static String findNextLineBreak(StringBuffer stringBuffer) {
-	String retVal = "";
-	int pos = stringBuffer.length() - 1;
-	int currPos = stringBuffer.indexOf("\r\n");
-	if ((currPos < pos) && (currPos >= 0)) {
-	    pos = currPos;
-	    retVal = "\r\n";
+    /**
+     * This class splits text which is provided in chunks into lines in a
+     * single pass. Each line keeps its line terminator, which is "\r\n",
+     * "\n" or "\r".
+     */
+    private static class LineSplitter {
+
+	private final SourceCodeLocation source;
+	private final Consumer<SourceCodeLine> consumer;
+	private final StringBuilder line = new StringBuilder();
+	private int lineNumber = 0;
+	/*
+	 * A '\r' at the end of a chunk can only be completed after the next
+	 * chunk was read, because it may be followed by '\n'.
+	 */
+	private boolean pendingCarriageReturn = false;
+
+	private LineSplitter(SourceCodeLocation source,
+		Consumer<SourceCodeLine> consumer) {
+	    super();
+	    this.source = source;
+	    this.consumer = consumer;
+	}
+
+	private void add(char[] buffer, int offset, int length) {
+	    int end = offset + length;
+	    int start = offset;
+	    int position = offset;
+	    if (pendingCarriageReturn && (length > 0)) {
+		pendingCarriageReturn = false;
+		if (buffer[offset] == '\n') {
+		    line.append('\n');
+		    start++;
+		    position++;
+		}
+		emit(line.toString());
+	    }
+	    while (position < end) {
+		char c = buffer[position];
+		position++;
+		if (c == '\r') {
+		    if (position == end) {
+			line.append(buffer, start, position - start);
+			pendingCarriageReturn = true;
+			return;
+		    }
+		    if (buffer[position] == '\n') {
+			position++;
+		    }
+		} else if (c != '\n') {
+		    continue;
+		}
+		if (line.length() == 0) {
+		    emit(new String(buffer, start, position - start));
+		} else {
+		    line.append(buffer, start, position - start);
+		    emit(line.toString());
+		}
+		start = position;
+	    }
+	    line.append(buffer, start, end - start);
 	}
-	currPos = stringBuffer.indexOf("\n");
-	if ((currPos < pos) && (currPos >= 0)) {
-	    pos = currPos;
-	    retVal = "\n";
+
+	private void emit(String text) {
+	    lineNumber++;
+	    consumer.accept(new SourceCodeLine(source, lineNumber, text));
+	    line.setLength(0);
 	}
-	currPos = stringBuffer.indexOf("\r");
-	if ((currPos < pos) && (currPos >= 0)) {
-	    pos = currPos;
-	    retVal = "\r";
+
+	/**
+	 * This method provides the last line. A terminator at the end of the
+	 * text does not start another line, but an empty text results in a
+	 * single empty line.
+	 */
+	private void finish() {
+	    if (pendingCarriageReturn || (line.length() > 0)
+		    || (lineNumber == 0)) {
+		emit(line.toString());
+	    }
+	    pendingCarriageReturn = false;
 	}
-	return retVal;
     }
 
-    private final List<SourceCodeLine> lines = new ArrayList<SourceCodeLine>();
-    private HashId hashId = null;
+    private final StringBuilder text = new StringBuilder();
+    private int lineCount = 0;
+    private int[] lineStarts = new int[16];
+    private int[] lineNumbers = new int[16];
+    private SourceCodeLocation[] sources = new SourceCodeLocation[16];
+    private volatile HashId hashId = null;
+    /**
+     * The fingerprint is calculated while the source code is read or on
+     * demand after changes.
+     */
+    private transient volatile Fingerprint fingerprint = null;
+    /**
+     * This is the text as {@link String} which is created on demand and
+     * dropped again on each change.
+     */
+    private transient String textString = null;
 
     public SourceCode() {
     }
 
     public SourceCode(@JsonProperty("lines") List<SourceCodeLine> lines,
 	    @JsonProperty("hashId") HashId hashId) {
+	for (SourceCodeLine line : lines) {
+	    addSourceCodeLine(line);
+	}
 	this.hashId = hashId;
-	this.lines.addAll(lines);
     }
 
+    /**
+     * @return An unmodifiable view of the lines is returned. The
+     *         {@link SourceCodeLine} objects are created on each access.
+     */
     public List<SourceCodeLine> getLines() {
-	return lines;
+	return new LineList();
+    }
+
+    /**
+     * @return The number of lines is returned.
+     */
+    @JsonIgnore
+    public int getLineCount() {
+	return lineCount;
+    }
+
+    /**
+     * @param index
+     *            is the index of the line starting with 0. This is not the
+     *            line number.
+     * @return A new {@link SourceCodeLine} for the line is returned.
+     */
+    public SourceCodeLine getLine(int index) {
+	checkLineIndex(index);
+	return new SourceCodeLine(sources[index], lineNumbers[index],
+		text.substring(lineStarts[index], getLineEnd(index)));
+    }
+
+    /**
+     * @return The source of the line with the given index is returned without
+     *         creating the line.
+     */
+    public SourceCodeLocation getSource(int index) {
+	checkLineIndex(index);
+	return sources[index];
+    }
+
+    /**
+     * @return The line number of the line with the given index is returned
+     *         without creating the line.
+     */
+    public int getLineNumber(int index) {
+	checkLineIndex(index);
+	return lineNumbers[index];
+    }
+
+    /**
+     * @return The offset of the first character of the line with the given
+     *         index within {@link #getText()} is returned.
+     */
+    public int getLineStart(int index) {
+	checkLineIndex(index);
+	return lineStarts[index];
+    }
+
+    /**
+     * @return The offset behind the last character of the line with the given
+     *         index within {@link #getText()} is returned.
+     */
+    public int getLineEnd(int index) {
+	checkLineIndex(index);
+	return index + 1 < lineCount ? lineStarts[index + 1] : text.length();
+    }
+
+    private void checkLineIndex(int index) {
+	if ((index < 0) || (index >= lineCount)) {
+	    throw new IndexOutOfBoundsException("Line index " + index
+		    + " is out of range [0, " + lineCount + ").");
+	}
+    }
+
+    /**
+     * @return The text of all lines is returned as a single {@link String}.
+     */
+    @JsonIgnore
+    public String getText() {
+	String string = textString;
+	if (string == null) {
+	    string = text.toString();
+	    textString = string;
+	}
+	return string;
     }
 
     public void addSourceCodeLine(SourceCodeLine line) {
-	lines.add(line);
-	hashId = null;
+	addLine(text.length(), line.getLineNumber(), line.getSource());
+	text.append(line.getLine());
+	changed();
     }
 
     public void addSourceCode(SourceCode newCode) {
-	for (SourceCodeLine line : newCode.getLines()) {
-	    addSourceCodeLine(line);
+	int offset = text.length();
+	for (int index = 0; index < newCode.lineCount; index++) {
+	    addLine(offset + newCode.lineStarts[index],
+		    newCode.lineNumbers[index], newCode.sources[index]);
 	}
+	text.append(newCode.text);
+	changed();
+    }
+
+    private void addLine(int start, int lineNumber, SourceCodeLocation source) {
+	if (lineCount == lineStarts.length) {
+	    int capacity = lineCount * 2;
+	    lineStarts = Arrays.copyOf(lineStarts, capacity);
+	    lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+	    sources = Arrays.copyOf(sources, capacity);
+	}
+	lineStarts[lineCount] = start;
+	lineNumbers[lineCount] = lineNumber;
+	sources[lineCount] = source;
+	lineCount++;
     }
 
     /**
-     * Generated a hash id for the sourceCode provided. This hash code may be
-     * used as key to find the source code, an analysis or something else
-     * related to the source code later on in a file store.
-     * 
-     * @param sourceCode
-     * @return
-     */
-    private synchronized void generateHashId() {
-	if (hashId == null) {
-	    StringBuffer buffer = new StringBuffer();
-	    for (SourceCodeLine line : getLines()) {
-		buffer.append(line.getLine());
+     * This method adds the lines of the text in the buffer behind the given
+     * offset to the index. The lines are split like in
+     * {@link #read(Reader, SourceCodeLocation, Consumer)}.
+     */
+    private void indexLines(SourceCodeLocation source, int offset) {
+	int length = text.length();
+	int start = offset;
+	int position = offset;
+	int lineNumber = 0;
+	while (position < length) {
+	    char c = text.charAt(position);
+	    position++;
+	    if (c == '\r') {
+		if ((position < length) && (text.charAt(position) == '\n')) {
+		    position++;
+		}
+	    } else if (c != '\n') {
+		continue;
 	    }
-	    hashId = new HashId(HashAlgorithm.SHA256, HashCodeGenerator.get(
-		    HashAlgorithm.SHA256, buffer.toString()));
+	    lineNumber++;
+	    addLine(start, lineNumber, source);
+	    start = position;
+	}
+	if ((start < length) || (lineNumber == 0)) {
+	    lineNumber++;
+	    addLine(start, lineNumber, source);
 	}
+	changed();
+    }
+
+    private void changed() {
+	hashId = null;
+	fingerprint = null;
+	textString = null;
     }
 
+    /**
+     * This method returns the SHA-256 hash id of the text. This hash code may
+     * be used as key to find the source code, an analysis or something else
+     * related to the source code later on in a file store. The hash is
+     * calculated once out of the text buffer without joining the lines. Two
+     * threads may calculate it concurrently, but both get the same result.
+     * 
+     * In contrast to the {@link #getFingerprint()}, the hash id is not
+     * calculated while the source code is read: The ids are stored outside,
+     * so they have to stay exactly as {@link HashCodeGenerator} creates them,
+     * including the encoding of the text into bytes. It is only calculated on
+     * demand, so reading source codes without using their ids costs nothing.
+     * 
+     * @return The {@link HashId} is returned.
+     */
     public HashId getHashId() {
-	if (hashId == null) {
-	    generateHashId();
+	HashId id = hashId;
+	if (id == null) {
+	    id = new HashId(HashAlgorithm.SHA256, HashCodeGenerator.get(
+		    HashAlgorithm.SHA256, getText()));
+	    hashId = id;
 	}
-	return hashId;
+	return id;
+    }
+
+    /**
+     * This method returns a fast, non-cryptographic 128 bit fingerprint of the
+     * text. It is meant as cache key where {@link #getHashId()} is too
+     * expensive. Source code which was read with one of the read methods gets
+     * its fingerprint while it is read.
+     * 
+     * @return The {@link Fingerprint} is returned.
+     */
+    @JsonIgnore
+    public Fingerprint getFingerprint() {
+	Fingerprint print = fingerprint;
+	if (print == null) {
+	    print = new Fingerprint.Hasher().update(text, 0, text.length())
+		    .finish();
+	    fingerprint = print;
+	}
+	return print;
     }
 
     public boolean removeLineTerminatorAtLastLine() {
-	if (lines.size() == 0) {
+	if (lineCount == 0) {
 	    throw new IllegalStateException(
 		    "The source code must have at least on line of code!");
 	}
-	SourceCodeLine lastLine = lines.get(lines.size() - 1);
-	String text = lastLine.getLine();
+	int lastLineStart = lineStarts[lineCount - 1];
 	for (LineTerminator terminator : LineTerminator.values()) {
-	    if (text.endsWith(terminator.getCRString())) {
-		lines.remove(lastLine);
-		lastLine = new SourceCodeLine(lastLine.getSource(),
-			lastLine.getLineNumber(), text.substring(0,
-				text.length()
-					- terminator.getCRString().length()));
-		lines.add(lastLine);
-		hashId = null;
+	    String crString = terminator.getCRString();
+	    int terminatorStart = text.length() - crString.length();
+	    if ((terminatorStart >= lastLineStart)
+		    && text.substring(terminatorStart).equals(crString)) {
+		text.setLength(terminatorStart);
+		changed();
 		return true;
 	    }
 	}
@@ -178,7 +501,8 @@ public class SourceCode implements Serializable, Cloneable {
     public int hashCode() {
 	final int prime = 31;
 	int result = 1;
-	result = prime * result + ((lines == null) ? 0 : lines.hashCode());
+	result = prime * result + lineCount;
+	result = prime * result + getText().hashCode();
 	return result;
     }
 
@@ -191,29 +515,32 @@ public class SourceCode implements Serializable, Cloneable {
 	if (getClass() != obj.getClass())
 	    return false;
 	SourceCode other = (SourceCode) obj;
-	if (lines == null) {
-	    if (other.lines != null)
-		return false;
-	} else if (!lines.equals(other.lines))
+	if (lineCount != other.lineCount)
 	    return false;
-	return true;
+	for (int index = 0; index < lineCount; index++) {
+	    if (lineStarts[index] != other.lineStarts[index])
+		return false;
+	    if (lineNumbers[index] != other.lineNumbers[index])
+		return false;
+	    if (!Objects.equals(sources[index], other.sources[index]))
+		return false;
+	}
+	return getText().equals(other.getText());
     }
 
     @Override
     public SourceCode clone() {
-	try {
-	    SourceCode cloned = (SourceCode) super.clone();
-	    cloned.lines.addAll(cloned.lines);
-	    return cloned;
-	} catch (CloneNotSupportedException e) {
-	    throw new RuntimeException(e);
-	}
+	SourceCode cloned = new SourceCode();
+	cloned.addSourceCode(this);
+	cloned.hashId = hashId;
+	cloned.fingerprint = fingerprint;
+	return cloned;
     }
 
     @Override
     public String toString() {
 	StringBuffer buffer = new StringBuffer();
-	for (SourceCodeLine line : lines) {
+	for (SourceCodeLine line : getLines()) {
 	    buffer.append(line.getSource());
 	    buffer.append(":");
 	    buffer.append(line.getLineNumber());
@@ -225,7 +552,26 @@ public class SourceCode implements Serializable, Cloneable {
     }
 
     public void clear() {
-	hashId = null;
-	lines.clear();
+	text.setLength(0);
+	lineCount = 0;
+	Arrays.fill(sources, null);
+	changed();
+    }
+
+    /**
+     * This is the view of the lines returned by {@link #getLines()}.
+     */
+    private class LineList extends AbstractList<SourceCodeLine> implements
+	    RandomAccess {
+
+	@Override
+	public SourceCodeLine get(int index) {
+	    return getLine(index);
+	}
+
+	@Override
+	public int size() {
+	    return lineCount;
+	}
     }
 }
@@ -20,7 +20,11 @@ public class SourceCodeLine implements Serializable, Cloneable {
     private final SourceCodeLocation source;
     private final int lineNumber;
     private final String line;
-    private final int hashCode;
+    /**
+     * The hash code is calculated on first use, because lines are created on
+     * demand by {@link SourceCode} and are mostly not put into hash maps.
+     */
+    private transient int hashCode = 0;
 
     public SourceCodeLine(@JsonProperty("source") SourceCodeLocation source,
 	    @JsonProperty("lineNumber") int lineNumber,
@@ -29,7 +33,6 @@ public class SourceCodeLine implements Serializable, Cloneable {
 	this.source = source;
 	this.lineNumber = lineNumber;
 	this.line = line;
-	hashCode = Objects.hash(source, lineNumber, line);
     }
 
     public SourceCodeLocation getSource() {
@@ -46,7 +49,12 @@ public class SourceCodeLine implements Serializable, Cloneable {
 
     @Override
     public int hashCode() {
-	return hashCode;
+	int hash = hashCode;
+	if (hash == 0) {
+	    hash = Objects.hash(source, lineNumber, line);
+	    hashCode = hash;
+	}
+	return hash;
     }
 
     @Override
@@ -58,7 +66,7 @@ public class SourceCodeLine implements Serializable, Cloneable {
 	if (getClass() != obj.getClass())
 	    return false;
 	SourceCodeLine other = (SourceCodeLine) obj;
-	if (hashCode != other.hashCode) {
+	if (hashCode() != other.hashCode()) {
 	    return false;
 	}
 	if (source == null) {
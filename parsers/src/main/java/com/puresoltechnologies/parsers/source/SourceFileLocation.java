@@ -4,6 +4,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.Properties;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -16,6 +21,11 @@ public class SourceFileLocation extends AbstractSourceCodeLocation {
     private static final String SOURCE_CODE_LOCATION_REPOSITORY_DIRECTORY = "source.code.location.repository.directory";
     private static final String SOURCE_CODE_LOCATION_INTERNAL_PATH = "source.code.location.internal.path";
 
+    /**
+     * This is the minimum file size in bytes for files to be memory mapped.
+     */
+    private static final long MAPPING_THRESHOLD = 64 * 1024;
+
     private final File repositoryDirectory;
     private final String internalLocation;
     private final File file;
@@ -55,11 +65,51 @@ public class SourceFileLocation extends AbstractSourceCodeLocation {
 	return new FileInputStream(file);
     }
 
+    /**
+     * Reads the file with the platform's default charset like
+     * {@link SourceCode#read(InputStream, SourceCodeLocation)}. See
+     * {@link #getSourceCode(Charset)}.
+     */
     @Override
     @JsonIgnore
     public SourceCode getSourceCode() throws IOException {
-	try (FileInputStream stream = new FileInputStream(file)) {
-	    return SourceCode.read(stream, this);
+	return getSourceCode(Charset.defaultCharset());
+    }
+
+    /**
+     * This method reads the file with the given charset. Larger files are
+     * memory mapped and decoded directly out of the mapping, smaller files
+     * are read into a single buffer, because mapping them costs more than
+     * copying.
+     * 
+     * @param charset
+     *            is the {@link Charset} of the file.
+     * @return The {@link SourceCode} of the file is returned.
+     * @throws IOException
+     *             is thrown if the file cannot be read.
+     */
+    @JsonIgnore
+    public SourceCode getSourceCode(Charset charset) throws IOException {
+	try (FileChannel channel = FileChannel.open(file.toPath(),
+		StandardOpenOption.READ)) {
+	    long size = channel.size();
+	    if (size > Integer.MAX_VALUE) {
+		throw new IOException("File '" + file + "' with " + size
+			+ " bytes is too large to be read.");
+	    }
+	    ByteBuffer bytes;
+	    if (size >= MAPPING_THRESHOLD) {
+		bytes = channel.map(MapMode.READ_ONLY, 0, size);
+	    } else {
+		bytes = ByteBuffer.allocate((int) size);
+		while (bytes.hasRemaining()) {
+		    if (channel.read(bytes) < 0) {
+			break;
+		    }
+		}
+		bytes.flip();
+	    }
+	    return SourceCode.read(bytes, charset, this);
 	}
     }
 
@@ -1,35 +1,43 @@
 package com.puresoltechnologies.parsers.source;
 
+/**
+ * This class provides the text of a {@link SourceCode} as a single string and
+ * maps positions within the text back to the source lines. Only the start
+ * offset of each line is kept, so the overhead is proportional to the number
+ * of lines and not to the number of characters. Positions are looked up by
+ * binary search. As positions are mostly requested in ascending order, the
+ * last line found is checked first.
+ */
 public class StringWithLocation {
 
+	private final SourceCode sourceCode;
 	private final String text;
-	private final SourceCodeLine[] sourceLineReferences;
-	private final int[] columns;
+	private final int[] lineStarts;
+	/**
+	 * The {@link SourceCodeLine}s are only created on demand, because they
+	 * copy the text of the line.
+	 */
+	private final SourceCodeLine[] lines;
+	/**
+	 * This is the index of the line found by the last look up. It is not
+	 * synchronized, because any stale value is still a valid line index.
+	 */
+	private int lastLine = 0;
 
+	/**
+	 * The text is taken directly from the buffer of the source code, which
+	 * must not be changed afterwards.
+	 */
 	public StringWithLocation(SourceCode sourceCode) {
 		super();
-		StringBuffer buffer = new StringBuffer();
-		for (SourceCodeLine line : sourceCode.getLines()) {
-			buffer.append(line.getLine());
-		}
-		this.text = buffer.toString();
-
-		sourceLineReferences = new SourceCodeLine[text.length()];
-		int position = 0;
-		for (SourceCodeLine line : sourceCode.getLines()) {
-			for (int i = 0; i < line.getLine().length(); i++) {
-				sourceLineReferences[position] = line;
-				position++;
-			}
-		}
-		columns = new int[text.length()];
-		position = 0;
-		for (SourceCodeLine line : sourceCode.getLines()) {
-			for (int column = 0; column < line.getLine().length(); column++) {
-				columns[position] = column;
-				position++;
-			}
+		this.sourceCode = sourceCode;
+		this.text = sourceCode.getText();
+		int lineCount = sourceCode.getLineCount();
+		lineStarts = new int[lineCount];
+		for (int i = 0; i < lineCount; i++) {
+			lineStarts[i] = sourceCode.getLineStart(i);
 		}
+		lines = new SourceCodeLine[lineCount];
 	}
 
 	public String getText() {
@@ -37,15 +45,59 @@ public class StringWithLocation {
 	}
 
 	public SourceCodeLine getSource(int position) {
-		return sourceLineReferences[position];
+		int line = findLine(position);
+		SourceCodeLine sourceCodeLine = lines[line];
+		if (sourceCodeLine == null) {
+			sourceCodeLine = sourceCode.getLine(line);
+			lines[line] = sourceCodeLine;
+		}
+		return sourceCodeLine;
 	}
 
 	public int getLineNumber(int position) {
-		return sourceLineReferences[position].getLineNumber();
+		return sourceCode.getLineNumber(findLine(position));
 	}
 
 	public int getColumn(int position) {
-		return columns[position];
+		return position - lineStarts[findLine(position)];
+	}
+
+	/**
+	 * This method looks up the index of the line which contains the character
+	 * at the given position. Empty lines do not contain any character, so for
+	 * equal start offsets the last line is the right one.
+	 */
+	private int findLine(int position) {
+		if ((position < 0) || (position >= text.length())) {
+			throw new IndexOutOfBoundsException("Position " + position
+					+ " is out of range [0, " + text.length() + ").");
+		}
+		int line = lastLine;
+		if (containsPosition(line, position)) {
+			return line;
+		}
+		if ((line + 1 < lines.length) && containsPosition(line + 1, position)) {
+			lastLine = line + 1;
+			return line + 1;
+		}
+		int low = 0;
+		int high = lineStarts.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (lineStarts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		lastLine = low;
+		return low;
+	}
+
+	private boolean containsPosition(int line, int position) {
+		return (lineStarts[line] <= position)
+				&& ((line + 1 == lineStarts.length)
+						|| (position < lineStarts[line + 1]));
 	}
 
 }
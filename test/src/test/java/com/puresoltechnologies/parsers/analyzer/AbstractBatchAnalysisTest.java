@@ -0,0 +1,186 @@
+package com.puresoltechnologies.parsers.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarException;
+import com.puresoltechnologies.parsers.grammar.TestGrammars;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParserException;
+import com.puresoltechnologies.parsers.parser.lr.SLR1Parser;
+import com.puresoltechnologies.parsers.source.FixedCodeLocation;
+import com.puresoltechnologies.parsers.source.SourceCode;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+/**
+ * This is the common base of the tests for {@link BatchAnalyzer} and
+ * {@link AnalyzerPipeline}, which analyze the same batches of source codes.
+ */
+public abstract class AbstractBatchAnalysisTest {
+
+    protected static Grammar grammar;
+
+    /**
+     * This parser counts its instances, which are not created by a clone.
+     */
+    public static class CountingParser extends SLR1Parser {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final AtomicInteger created = new AtomicInteger();
+
+	public CountingParser(Grammar grammar) throws GrammarException {
+	    super(grammar);
+	    created.incrementAndGet();
+	}
+    }
+
+    /**
+     * This handler collects the results and checks that it is called in the
+     * thread which created it.
+     */
+    protected static class CollectingHandler implements BatchAnalyzer.Handler {
+
+	private final Thread caller = Thread.currentThread();
+	protected final Map<SourceCodeLocation, ParseTreeNode> trees = new HashMap<SourceCodeLocation, ParseTreeNode>();
+	protected final Map<SourceCodeLocation, Throwable> failures = new HashMap<SourceCodeLocation, Throwable>();
+
+	@Override
+	public void analyzed(SourceCodeLocation location,
+		ParseTreeNode parseTree) {
+	    assertEquals(caller, Thread.currentThread());
+	    trees.put(location, parseTree);
+	}
+
+	@Override
+	public void failed(SourceCodeLocation location, Throwable failure) {
+	    assertEquals(caller, Thread.currentThread());
+	    failures.put(location, failure);
+	}
+
+	protected void clear() {
+	    trees.clear();
+	    failures.clear();
+	}
+    }
+
+    @BeforeClass
+    public static void initialize() {
+	grammar = TestGrammars.getSLR1TestGrammarFromDragonBook();
+	assertNotNull(grammar);
+    }
+
+    /**
+     * @return A {@link List} of locations is returned. Every tenth source
+     *         code cannot be parsed.
+     */
+    protected static List<SourceCodeLocation> createLocations(int count) {
+	List<SourceCodeLocation> locations = new ArrayList<SourceCodeLocation>();
+	for (int i = 0; i < count; i++) {
+	    if (i % 10 == 5) {
+		locations.add(new FixedCodeLocation("1+"));
+	    } else {
+		locations.add(new FixedCodeLocation("(" + (i + 1) + "+2)*3",
+			"+4*5"));
+	    }
+	}
+	return locations;
+    }
+
+    /**
+     * @return An {@link Iterable} of locations is returned, whose iterator
+     *         throws an {@link IllegalStateException} with the message
+     *         "Iterator failed." for the location with the given number.
+     */
+    protected static Iterable<SourceCodeLocation> createFailingLocations(
+	    int count, final int failure) {
+	final List<SourceCodeLocation> locations = createLocations(count);
+	return new Iterable<SourceCodeLocation>() {
+	    @Override
+	    public Iterator<SourceCodeLocation> iterator() {
+		final Iterator<SourceCodeLocation> iterator = locations
+			.iterator();
+		return new Iterator<SourceCodeLocation>() {
+		    private int number = 0;
+
+		    @Override
+		    public boolean hasNext() {
+			return iterator.hasNext();
+		    }
+
+		    @Override
+		    public SourceCodeLocation next() {
+			if (++number == failure) {
+			    throw new IllegalStateException("Iterator failed.");
+			}
+			return iterator.next();
+		    }
+
+		    @Override
+		    public void remove() {
+			throw new UnsupportedOperationException();
+		    }
+		};
+	    }
+	};
+    }
+
+    /**
+     * @return A location is returned, which fails with a
+     *         {@link StackOverflowError} like a too deeply nested source code.
+     */
+    protected static SourceCodeLocation createNestedLocation() {
+	return new FixedCodeLocation("1") {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public SourceCode getSourceCode() throws IOException {
+		throw new StackOverflowError("Too deeply nested.");
+	    }
+	};
+    }
+
+    /**
+     * @return A copy of the test grammar is returned, which uses the parser
+     *         with the given class name.
+     */
+    protected static Grammar createGrammar(String parserClassName)
+	    throws GrammarException {
+	Properties options = new Properties();
+	options.putAll(grammar.getOptions());
+	options.setProperty("parser", parserClassName);
+	return new Grammar(options, grammar.getTokenDefinitions(),
+		grammar.getProductions());
+    }
+
+    /**
+     * This method checks the collected results against the results of a
+     * single {@link Analyzer}.
+     */
+    protected void assertResults(List<SourceCodeLocation> locations,
+	    CollectingHandler handler) throws Throwable {
+	Analyzer analyzer = new Analyzer(grammar, getClass().getClassLoader());
+	for (SourceCodeLocation location : locations) {
+	    if (handler.failures.containsKey(location)) {
+		assertTrue(handler.failures.get(location) instanceof ParserException);
+	    } else {
+		assertEquals(analyzer.analyze(location.getSourceCode())
+			.toTreeString(), handler.trees.get(location)
+			.toTreeString());
+	    }
+	}
+    }
+}
@@ -0,0 +1,270 @@
+package com.puresoltechnologies.parsers.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.GrammarException;
+import com.puresoltechnologies.parsers.metrics.MetricsListener;
+import com.puresoltechnologies.parsers.metrics.Phase;
+import com.puresoltechnologies.parsers.metrics.PhaseMetrics;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+import com.puresoltechnologies.parsers.source.SourceFileLocation;
+
+public class AnalyzerPipelineTest extends AbstractBatchAnalysisTest {
+
+    @Test
+    public void testAnalyzeAll() throws Throwable {
+	List<SourceCodeLocation> locations = createLocations(200);
+	CollectingHandler handler = new CollectingHandler();
+	AnalyzerPipeline pipeline = AnalyzerFactory.createFactory(grammar,
+		getClass().getClassLoader()).createPipeline(1, 2, 3, 4);
+	assertEquals(6, pipeline.getWorkers());
+	pipeline.analyzeAll(locations, handler);
+	assertEquals(180, handler.trees.size());
+	assertEquals(20, handler.failures.size());
+	assertResults(locations, handler);
+
+	List<AnalyzerPipeline.StageStatistics> statistics = pipeline
+		.getStatistics();
+	assertEquals(3, statistics.size());
+	assertEquals("preprocess", statistics.get(0).getName());
+	assertEquals(200, statistics.get(0).getProcessed());
+	assertEquals(0, statistics.get(0).getQueueCapacity());
+	assertEquals("lex", statistics.get(1).getName());
+	assertEquals(2, statistics.get(1).getWorkers());
+	assertEquals(200, statistics.get(1).getProcessed());
+	assertEquals("parse", statistics.get(2).getName());
+	assertEquals(180, statistics.get(2).getProcessed());
+	assertEquals(20, statistics.get(2).getFailed());
+	assertTrue(statistics.get(2).getBusyTime() > 0);
+	assertTrue(statistics.get(2).getThroughput() > 0.0);
+
+	// The engines are reused and the statistics are accumulated.
+	handler.clear();
+	pipeline.analyzeAll(createLocations(20), handler);
+	assertEquals(18, handler.trees.size());
+	assertEquals(2, handler.failures.size());
+	assertEquals(220, pipeline.getStatistics().get(1).getProcessed());
+    }
+
+    @Test
+    public void testErrorIsReported() throws Throwable {
+	List<SourceCodeLocation> locations = createLocations(20);
+	SourceCodeLocation nested = createNestedLocation();
+	locations.add(7, nested);
+	CollectingHandler handler = new CollectingHandler();
+	AnalyzerPipeline pipeline = new AnalyzerPipeline(grammar, getClass()
+		.getClassLoader(), null, 1, 1, 1, 2);
+	pipeline.analyzeAll(locations, handler);
+	assertEquals(18, handler.trees.size());
+	assertEquals(3, handler.failures.size());
+	assertTrue(handler.failures.get(nested) instanceof StackOverflowError);
+	assertEquals(1, pipeline.getStatistics().get(0).getFailed());
+    }
+
+    @Test
+    public void testCacheAndMetrics() throws Throwable {
+	File directory = File.createTempFile("AnalyzerPipelineTest", "");
+	assertTrue(directory.delete());
+	File cacheDirectory = File.createTempFile("AnalyzerPipelineTest", "");
+	assertTrue(cacheDirectory.delete());
+	try {
+	    // The cache needs locations which can be serialized.
+	    assertTrue(directory.mkdir());
+	    List<SourceCodeLocation> locations = new ArrayList<SourceCodeLocation>();
+	    for (int i = 0; i < 20; i++) {
+		String name = "source" + i + ".txt";
+		OutputStream out = new FileOutputStream(new File(directory,
+			name));
+		try {
+		    out.write((i % 10 == 5 ? "1+" : "(" + (i + 1) + "+2)*3+4*5")
+			    .getBytes("UTF-8"));
+		} finally {
+		    out.close();
+		}
+		locations.add(new SourceFileLocation(directory, name));
+	    }
+	    ParseTreeCache cache = new ParseTreeCache(cacheDirectory,
+		    1024 * 1024);
+	    final List<PhaseMetrics> metrics = Collections
+		    .synchronizedList(new ArrayList<PhaseMetrics>());
+	    AnalyzerPipeline pipeline = new AnalyzerPipeline(grammar,
+		    getClass().getClassLoader(), cache, 1, 1, 1, 2);
+	    pipeline.setMetricsListener(new MetricsListener() {
+		@Override
+		public void phaseFinished(PhaseMetrics phaseMetrics) {
+		    metrics.add(phaseMetrics);
+		}
+	    });
+	    CollectingHandler handler = new CollectingHandler();
+	    pipeline.analyzeAll(locations, handler);
+	    assertEquals(18, handler.trees.size());
+	    assertTrue(cache.getSize() > 0);
+	    assertEquals(20, count(metrics, Phase.ANALYSIS));
+	    assertEquals(20, count(metrics, Phase.LEXING));
+	    assertEquals(20, count(metrics, Phase.PARSING));
+	    Map<SourceCodeLocation, String> treeStrings = new HashMap<SourceCodeLocation, String>();
+	    for (SourceCodeLocation location : handler.trees.keySet()) {
+		treeStrings.put(location, handler.trees.get(location)
+			.toTreeString());
+	    }
+
+	    // The parsed source codes are taken out of the cache now.
+	    handler.clear();
+	    metrics.clear();
+	    pipeline.analyzeAll(locations, handler);
+	    assertEquals(18, handler.trees.size());
+	    for (SourceCodeLocation location : handler.trees.keySet()) {
+		assertEquals(treeStrings.get(location),
+			handler.trees.get(location).toTreeString());
+	    }
+	    assertEquals(20, count(metrics, Phase.ANALYSIS));
+	    assertEquals(2, count(metrics, Phase.LEXING));
+	    assertEquals(2, count(metrics, Phase.PARSING));
+	    assertEquals(18, pipeline.getStatistics().get(2).getProcessed());
+	    assertEquals(4, pipeline.getStatistics().get(2).getFailed());
+	} finally {
+	    delete(directory);
+	    delete(cacheDirectory);
+	}
+    }
+
+    private static void delete(File directory) {
+	File[] files = directory.listFiles();
+	if (files != null) {
+	    for (File file : files) {
+		file.delete();
+	    }
+	}
+	directory.delete();
+    }
+
+    private static int count(List<PhaseMetrics> metrics, Phase phase) {
+	int count = 0;
+	synchronized (metrics) {
+	    for (PhaseMetrics phaseMetrics : metrics) {
+		if (phaseMetrics.getPhase() == phase) {
+		    count++;
+		}
+	    }
+	}
+	return count;
+    }
+
+    @Test
+    public void testParserTableIsCalculatedOnce() throws Throwable {
+	CountingParser.created.set(0);
+	CollectingHandler handler = new CollectingHandler();
+	new AnalyzerPipeline(createGrammar(CountingParser.class.getName()),
+		getClass().getClassLoader(), null, 1, 2, 4, 2).analyzeAll(
+		createLocations(100), handler);
+	assertEquals(90, handler.trees.size());
+	// The parsers of the workers are clones of a single prototype.
+	assertEquals(1, CountingParser.created.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testThreadsAreStartedForAllWorkers() throws Throwable {
+	final AtomicInteger threads = new AtomicInteger();
+	ThreadFactory threadFactory = new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable runnable) {
+		threads.incrementAndGet();
+		return new Thread(runnable);
+	    }
+	};
+	CollectingHandler handler = new CollectingHandler();
+	AnalyzerPipeline pipeline = new AnalyzerPipeline(grammar, getClass()
+		.getClassLoader(), null, threadFactory, 2, 3, 4, 1);
+	pipeline.analyzeAll(createLocations(50), handler);
+	assertEquals(45, handler.trees.size());
+	assertEquals(pipeline.getWorkers(), threads.get());
+	handler.clear();
+	pipeline.analyzeAll(createLocations(10), handler);
+	assertEquals(9, handler.trees.size());
+	assertEquals(2 * pipeline.getWorkers(), threads.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testMissingThread() throws Throwable {
+	final AtomicInteger threads = new AtomicInteger();
+	ThreadFactory threadFactory = new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable runnable) {
+		// Only the preprocessor gets a thread.
+		return threads.incrementAndGet() == 1 ? new Thread(runnable)
+			: null;
+	    }
+	};
+	try {
+	    new AnalyzerPipeline(grammar, getClass().getClassLoader(), null,
+		    threadFactory, 1, 1, 1, 1).analyzeAll(createLocations(10),
+		    new CollectingHandler());
+	    fail("IllegalStateException expected.");
+	} catch (IllegalStateException e) {
+	    assertTrue(e.getMessage().contains("lex"));
+	}
+    }
+
+    @Test(timeout = 10000)
+    public void testIteratorFailure() throws Throwable {
+	try {
+	    new AnalyzerPipeline(grammar, getClass().getClassLoader(), null, 2,
+		    2, 2, 1).analyzeAll(createFailingLocations(50, 20),
+		    new CollectingHandler());
+	    fail("IllegalStateException expected.");
+	} catch (IllegalStateException e) {
+	    // The failure is not taken for a failed engine creation.
+	    assertEquals("Iterator failed.", e.getMessage());
+	}
+    }
+
+    @Test
+    public void testEmpty() throws Throwable {
+	CollectingHandler handler = new CollectingHandler();
+	new AnalyzerPipeline(grammar, getClass().getClassLoader(), null, 2, 2,
+		2, 1).analyzeAll(new ArrayList<SourceCodeLocation>(), handler);
+	assertTrue(handler.trees.isEmpty());
+	assertTrue(handler.failures.isEmpty());
+    }
+
+    @Test
+    public void testHandlerFailure() throws Throwable {
+	AnalyzerPipeline pipeline = new AnalyzerPipeline(grammar, getClass()
+		.getClassLoader(), null, 1, 1, 1, 1);
+	try {
+	    pipeline.analyzeAll(createLocations(100), new CollectingHandler() {
+		@Override
+		public void analyzed(SourceCodeLocation location,
+			ParseTreeNode parseTree) {
+		    throw new IllegalStateException("Handler failed.");
+		}
+	    });
+	    fail("IllegalStateException expected.");
+	} catch (IllegalStateException e) {
+	    assertEquals("Handler failed.", e.getMessage());
+	}
+    }
+
+    @Test(expected = GrammarException.class)
+    public void testInvalidGrammar() throws Throwable {
+	new AnalyzerPipeline(createGrammar("unknown.Parser"), getClass()
+		.getClassLoader(), null, 1, 1, 1, 1).analyzeAll(
+		createLocations(10), new CollectingHandler());
+    }
+}
@@ -0,0 +1,117 @@
+package com.puresoltechnologies.parsers.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.GrammarException;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.source.SourceCodeLocation;
+
+public class BatchAnalyzerTest extends AbstractBatchAnalysisTest {
+
+    @Test
+    public void testAnalyzeAll() throws Throwable {
+	List<SourceCodeLocation> locations = createLocations(100);
+	CollectingHandler handler = new CollectingHandler();
+	BatchAnalyzer batchAnalyzer = AnalyzerFactory.createFactory(grammar,
+		getClass().getClassLoader()).createBatchAnalyzer(4);
+	batchAnalyzer.analyzeAll(locations, handler);
+	assertEquals(90, handler.trees.size());
+	assertEquals(10, handler.failures.size());
+	assertResults(locations, handler);
+
+	// The analyzers are reused by the next batch.
+	handler.clear();
+	batchAnalyzer.analyzeAll(createLocations(20), handler);
+	assertEquals(18, handler.trees.size());
+	assertEquals(2, handler.failures.size());
+    }
+
+    @Test
+    public void testParserTableIsCalculatedOnce() throws Throwable {
+	CountingParser.created.set(0);
+	CollectingHandler handler = new CollectingHandler();
+	new BatchAnalyzer(createGrammar(CountingParser.class.getName()),
+		getClass().getClassLoader(), null, 4).analyzeAll(
+		createLocations(100), handler);
+	assertEquals(90, handler.trees.size());
+	// The parsers of the workers are clones of a single prototype.
+	assertEquals(1, CountingParser.created.get());
+    }
+
+    @Test
+    public void testErrorIsReported() throws Throwable {
+	List<SourceCodeLocation> locations = createLocations(20);
+	SourceCodeLocation nested = createNestedLocation();
+	locations.add(7, nested);
+	CollectingHandler handler = new CollectingHandler();
+	new BatchAnalyzer(grammar, getClass().getClassLoader(), null, 2).analyzeAll(locations, handler);
+	assertEquals(18, handler.trees.size());
+	assertEquals(3, handler.failures.size());
+	assertTrue(handler.failures.get(nested) instanceof StackOverflowError);
+    }
+
+    @Test
+    public void testHandlerFailure() throws Throwable {
+	BatchAnalyzer batchAnalyzer = new BatchAnalyzer(grammar, getClass()
+		.getClassLoader(), null, 2);
+	try {
+	    batchAnalyzer.analyzeAll(createLocations(50),
+		    new CollectingHandler() {
+			@Override
+			public void analyzed(SourceCodeLocation location,
+				ParseTreeNode parseTree) {
+			    throw new IllegalStateException("Handler failed.");
+			}
+		    });
+	    fail("IllegalStateException expected.");
+	} catch (IllegalStateException e) {
+	    assertEquals("Handler failed.", e.getMessage());
+	}
+    }
+
+    @Test(timeout = 10000)
+    public void testThreadsAreStartedForAllWorkers() throws Throwable {
+	final AtomicInteger threads = new AtomicInteger();
+	ThreadFactory threadFactory = new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable runnable) {
+		threads.incrementAndGet();
+		return new Thread(runnable);
+	    }
+	};
+	CollectingHandler handler = new CollectingHandler();
+	BatchAnalyzer batchAnalyzer = new BatchAnalyzer(grammar, getClass()
+		.getClassLoader(), null, threadFactory, 3);
+	batchAnalyzer.analyzeAll(createLocations(50), handler);
+	assertEquals(45, handler.trees.size());
+	assertEquals(3, threads.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testIteratorFailure() throws Throwable {
+	try {
+	    new BatchAnalyzer(grammar, getClass().getClassLoader(), null, 2)
+		    .analyzeAll(createFailingLocations(50, 20),
+			    new CollectingHandler());
+	    fail("IllegalStateException expected.");
+	} catch (IllegalStateException e) {
+	    // The failure is not taken for a failed analyzer creation.
+	    assertEquals("Iterator failed.", e.getMessage());
+	}
+    }
+
+    @Test(expected = GrammarException.class)
+    public void testInvalidGrammar() throws Throwable {
+	new BatchAnalyzer(createGrammar("unknown.Parser"), getClass()
+		.getClassLoader(), null, 2).analyzeAll(
+		createLocations(10), new CollectingHandler());
+    }
+}
@@ -0,0 +1,223 @@
+package com.puresoltechnologies.parsers.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarConverter;
+import com.puresoltechnologies.parsers.grammar.GrammarFile;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.packrat.PackratParser;
+import com.puresoltechnologies.parsers.source.SourceCode;
+import com.puresoltechnologies.parsers.source.SourceCodeLine;
+import com.puresoltechnologies.parsers.source.SourceFileLocation;
+
+public class ParseTreeCacheTest {
+
+    private File directory;
+    private Grammar grammar;
+
+    private static Grammar readGrammar(String name) throws Throwable {
+	InputStream inStream = ParseTreeCacheTest.class
+		.getResourceAsStream("/com/puresoltechnologies/parsers/grammar/"
+			+ name);
+	assertNotNull(inStream);
+	try {
+	    GrammarFile file = new GrammarFile(inStream);
+	    try {
+		return new GrammarConverter(file.getParserTree()).getGrammar();
+	    } finally {
+		file.close();
+	    }
+	} finally {
+	    inStream.close();
+	}
+    }
+
+    @Before
+    public void setup() throws Throwable {
+	directory = File.createTempFile("ParseTreeCacheTest", "");
+	assertTrue(directory.delete());
+	grammar = readGrammar("CutTestGrammar.g");
+    }
+
+    @After
+    public void tearDown() {
+	File[] files = directory.listFiles();
+	if (files != null) {
+	    for (File file : files) {
+		file.delete();
+	    }
+	}
+	directory.delete();
+    }
+
+    private SourceCode createSourceCode(String name, int statements)
+	    throws IOException {
+	OutputStream out = new FileOutputStream(new File(directory, name));
+	try {
+	    for (int i = 0; i < statements; i++) {
+		out.write(("let a = " + i + ";\nprint a;\n").getBytes("UTF-8"));
+	    }
+	} finally {
+	    out.close();
+	}
+	return new SourceFileLocation(directory, name).getSourceCode();
+    }
+
+    @Test
+    public void testGrammarFingerprint() throws Throwable {
+	assertEquals(grammar.getFingerprint(),
+		readGrammar("CutTestGrammar.g").getFingerprint());
+	assertFalse(grammar.getFingerprint().equals(
+		readGrammar("TestGrammar.g").getFingerprint()));
+    }
+
+    @Test
+    public void testPutAndGet() throws Throwable {
+	ParseTreeCache cache = new ParseTreeCache(directory, 1024 * 1024);
+	SourceCode sourceCode = createSourceCode("a.txt", 10);
+	assertNull(cache.get(grammar, sourceCode));
+	ParseTreeNode tree = new PackratParser(grammar).parse(sourceCode);
+	cache.put(grammar, sourceCode, tree);
+	assertTrue(cache.getSize() > 0);
+
+	// A second instance, like in another run, finds the entry, too.
+	ParseTreeCache cache2 = new ParseTreeCache(directory, 1024 * 1024);
+	assertEquals(cache.getSize(), cache2.getSize());
+	ParseTreeNode cachedTree = cache2.get(grammar,
+		createSourceCode("a.txt", 10));
+	assertNotNull(cachedTree);
+	assertEquals(tree.toTreeString(), cachedTree.toTreeString());
+
+	// Changed content or another location is a miss.
+	assertNull(cache2.get(grammar, createSourceCode("a.txt", 11)));
+	assertNull(cache2.get(grammar, createSourceCode("b.txt", 10)));
+
+	cache2.clear();
+	assertEquals(0, cache2.getSize());
+	assertNull(cache.get(grammar, sourceCode));
+    }
+
+    @Test
+    public void testReplacedEntryIsNotCountedTwice() throws Throwable {
+	ParseTreeCache cache = new ParseTreeCache(directory, 1024 * 1024);
+	SourceCode sourceCode = createSourceCode("a.txt", 10);
+	ParseTreeNode tree = new PackratParser(grammar).parse(sourceCode);
+	cache.put(grammar, sourceCode, tree);
+	long size = cache.getSize();
+	cache.put(grammar, sourceCode, tree);
+	cache.put(grammar, sourceCode, tree);
+	assertEquals(size, cache.getSize());
+	assertEquals(size,
+		new ParseTreeCache(directory, 1024 * 1024).getSize());
+    }
+
+    @Test
+    public void testLineNumbersArePartOfTheKey() throws Throwable {
+	ParseTreeCache cache = new ParseTreeCache(directory, 1024 * 1024);
+	SourceFileLocation location = new SourceFileLocation(directory,
+		"a.txt");
+	// Like a preprocessor which removes the second line or not.
+	SourceCode sourceCode = new SourceCode();
+	sourceCode.addSourceCodeLine(new SourceCodeLine(location, 1,
+		"let a = 1;\n"));
+	sourceCode.addSourceCodeLine(new SourceCodeLine(location, 2,
+		"print a;\n"));
+	SourceCode movedSourceCode = new SourceCode();
+	movedSourceCode.addSourceCodeLine(new SourceCodeLine(location, 1,
+		"let a = 1;\n"));
+	movedSourceCode.addSourceCodeLine(new SourceCodeLine(location, 3,
+		"print a;\n"));
+	assertEquals(sourceCode.getText(), movedSourceCode.getText());
+	cache.put(grammar, sourceCode,
+		new PackratParser(grammar).parse(sourceCode));
+	assertNotNull(cache.get(grammar, sourceCode));
+	assertNull(cache.get(grammar, movedSourceCode));
+    }
+
+    @Test
+    public void testEviction() throws Throwable {
+	ParseTreeCache cache = new ParseTreeCache(directory, Long.MAX_VALUE);
+	SourceCode first = createSourceCode("first.txt", 20);
+	cache.put(grammar, first, new PackratParser(grammar).parse(first));
+	long entrySize = cache.getSize();
+	cache = new ParseTreeCache(directory, 2 * entrySize + entrySize / 2);
+	SourceCode second = createSourceCode("second.txt", 20);
+	cache.put(grammar, second, new PackratParser(grammar).parse(second));
+	File[] entries = directory.listFiles();
+	assertNotNull(entries);
+	for (File entry : entries) {
+	    entry.setLastModified(System.currentTimeMillis() - 60000);
+	}
+	// The first entry is used again and becomes the most recent one.
+	assertNotNull(cache.get(grammar, first));
+	SourceCode third = createSourceCode("third.txt", 20);
+	cache.put(grammar, third, new PackratParser(grammar).parse(third));
+	assertTrue(cache.getSize() <= cache.getMaxSize());
+	assertNotNull(cache.get(grammar, first));
+	assertNull(cache.get(grammar, second));
+	assertNotNull(cache.get(grammar, third));
+    }
+
+    @Test
+    public void testDamagedEntry() throws Throwable {
+	ParseTreeCache cache = new ParseTreeCache(directory, 1024 * 1024);
+	SourceCode sourceCode = createSourceCode("a.txt", 3);
+	cache.put(grammar, sourceCode,
+		new PackratParser(grammar).parse(sourceCode));
+	for (File file : directory.listFiles()) {
+	    if (file.getName().endsWith(".tree")) {
+		OutputStream out = new FileOutputStream(file);
+		try {
+		    out.write(new byte[] { 1, 2, 3 });
+		} finally {
+		    out.close();
+		}
+	    }
+	}
+	assertNull(cache.get(grammar, sourceCode));
+    }
+
+    @Test
+    public void testCorruptedEntries() throws Throwable {
+	ParseTreeCache cache = new ParseTreeCache(directory, 1024 * 1024);
+	SourceCode sourceCode = createSourceCode("a.txt", 3);
+	ParseTreeNode tree = new PackratParser(grammar).parse(sourceCode);
+	cache.put(grammar, sourceCode, tree);
+	File entry = null;
+	for (File file : directory.listFiles()) {
+	    if (file.getName().endsWith(".tree")) {
+		entry = file;
+	    }
+	}
+	assertNotNull(entry);
+	byte[] bytes = Files.readAllBytes(entry.toPath());
+	/*
+	 * Every single damaged byte either leads to another tree or to a
+	 * missing entry, but never to an exception.
+	 */
+	for (int i = 0; i < bytes.length; i++) {
+	    byte[] damaged = bytes.clone();
+	    damaged[i] = (byte) ~damaged[i];
+	    Files.write(entry.toPath(), damaged);
+	    if (cache.get(grammar, sourceCode) == null) {
+		assertFalse(entry.exists());
+	    }
+	}
+    }
+}
@@ -0,0 +1,98 @@
+package com.puresoltechnologies.parsers.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultChannelTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+	executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+	executor.shutdownNow();
+    }
+
+    private void startProducers(final ResultChannel<Integer> channel,
+	    int producers, final int results) {
+	for (int i = 0; i < producers; i++) {
+	    final int producer = i;
+	    executor.execute(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			for (int j = 0; (j < results) && !channel.isStopped(); j++) {
+			    channel.put(producer * results + j);
+			}
+		    } finally {
+			channel.close();
+		    }
+		}
+	    });
+	}
+    }
+
+    @Test(timeout = 10000)
+    public void testAllResultsAreTaken() throws Exception {
+	ResultChannel<Integer> channel = new ResultChannel<Integer>(2, 4);
+	startProducers(channel, 4, 100);
+	Set<Integer> results = new HashSet<Integer>();
+	Integer result;
+	while ((result = channel.take()) != null) {
+	    assertTrue(results.add(result));
+	    assertTrue(channel.size() <= channel.getCapacity());
+	}
+	assertEquals(400, results.size());
+	// The end is seen by further consumers, too.
+	assertNull(channel.take());
+	assertEquals(0, channel.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testStop() throws Exception {
+	ResultChannel<Integer> channel = new ResultChannel<Integer>(1, 2);
+	startProducers(channel, 2, 1000);
+	assertFalse(channel.take() == null);
+	channel.stop();
+	int remaining = 0;
+	while (channel.take() != null) {
+	    remaining++;
+	}
+	// Only the results of work in progress are put after the stop.
+	assertTrue(remaining <= 3);
+    }
+
+    @Test(timeout = 10000)
+    public void testAbandon() throws Exception {
+	ResultChannel<Integer> channel = new ResultChannel<Integer>(1, 2);
+	startProducers(channel, 2, 1000);
+	assertFalse(channel.take() == null);
+	channel.abandon();
+	assertTrue(channel.isStopped());
+	assertNull(channel.take());
+	// The producers waiting for space end.
+	executor.shutdown();
+	assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+	new ResultChannel<Integer>(0, 1);
+    }
+}
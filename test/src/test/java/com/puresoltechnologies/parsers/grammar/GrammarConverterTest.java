@@ -0,0 +1,230 @@
+package com.puresoltechnologies.parsers.grammar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.production.Production;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.packrat.PackratParser;
+import com.puresoltechnologies.parsers.source.FixedCodeLocation;
+
+/**
+ * These tests check that the options of productions are converted and lock
+ * the shapes of the parse trees of productions with node and stack options.
+ */
+public class GrammarConverterTest {
+
+	private static Grammar readGrammar(String name) throws Throwable {
+		InputStream inStream = GrammarConverterTest.class
+				.getResourceAsStream("/com/puresoltechnologies/parsers/grammar/"
+						+ name);
+		assertNotNull(inStream);
+		try {
+			GrammarFile file = new GrammarFile(inStream);
+			try {
+				return new GrammarConverter(file.getParserTree()).getGrammar();
+			} finally {
+				file.close();
+			}
+		} finally {
+			inStream.close();
+		}
+	}
+
+	private static ParseTreeNode parse(Grammar grammar, String text)
+			throws Throwable {
+		return new PackratParser(grammar).parse(new FixedCodeLocation(text)
+				.getSourceCode());
+	}
+
+	private static void assertTree(ParseTreeNode tree, String... lines) {
+		StringBuilder expected = new StringBuilder();
+		for (String line : lines) {
+			expected.append(line).append('\n');
+		}
+		assertEquals(expected.toString().trim(), tree.toTreeString().trim());
+	}
+
+	private static Production getProduction(Grammar grammar, String name,
+			int alternative) {
+		List<Production> productions = grammar.getProductions().get(name);
+		return productions.get(alternative);
+	}
+
+	@Test
+	public void testNodeOptions() throws Throwable {
+		Grammar grammar = readGrammar("TestGrammar.g");
+		assertTrue(getProduction(grammar, "Expression", 0).isNode());
+		assertTrue(getProduction(grammar, "Expression", 1).isNode());
+		assertFalse(getProduction(grammar, "Expression", 2).isNode());
+		assertTrue(getProduction(grammar, "Term", 0).isNode());
+		assertFalse(getProduction(grammar, "Term", 2).isNode());
+		assertTrue(getProduction(grammar, "Factor", 0).isNode());
+		assertFalse(getProduction(grammar, "Factor", 1).isNode());
+		for (Production production : grammar.getProductions().getList()) {
+			assertTrue(production.isStackingAllowed());
+		}
+
+		// The non-node alternatives do not show up in the tree.
+		assertTree(parse(grammar, "(1+2)*3+4"), //
+				"_START_: \"(1+2)*3+4\"", //
+				"  add: \"(1+2)*3+4\"", //
+				"    mult: \"(1+2)*3\"", //
+				"      paren: \"(1+2)\"", //
+				"        LPAREN: \"(\"", //
+				"        add: \"1+2\"", //
+				"          INTEGER_LITERAL: \"1\"", //
+				"          PLUS: \"+\"", //
+				"          INTEGER_LITERAL: \"2\"", //
+				"        RPAREN: \")\"", //
+				"      STAR: \"*\"", //
+				"      INTEGER_LITERAL: \"3\"", //
+				"    PLUS: \"+\"", //
+				"    INTEGER_LITERAL: \"4\"");
+	}
+
+	@Test
+	public void testNodeOptionOfAutoGeneratedProductions() throws Throwable {
+		Grammar grammar = readGrammar("TestGrammarForAutoGeneration.g");
+		assertTrue(getProduction(grammar, "Factor", 0).isNode());
+		assertFalse(getProduction(grammar, "Factor", 1).isNode());
+		assertTrue(getProduction(grammar, "Factor", 1).isStackingAllowed());
+
+		assertTree(parse(grammar, "-1"), //
+				"_START_: \"-1\"", //
+				"  Expressions: \"-1\"", //
+				"    Expression: \"-1\"", //
+				"      Term: \"-1\"", //
+				"        SIGN: \"-\"", //
+				"          MINUS: \"-\"", //
+				"        INTEGER_LITERAL: \"1\"");
+		assertTree(parse(grammar, "(1)"), //
+				"_START_: \"(1)\"", //
+				"  Expressions: \"(1)\"", //
+				"    Expression: \"(1)\"", //
+				"      Term: \"(1)\"", //
+				"        Factor: \"(1)\"", //
+				"          LPAREN: \"(\"", //
+				"          Expression: \"1\"", //
+				"            Term: \"1\"", //
+				"              INTEGER_LITERAL: \"1\"", //
+				"          RPAREN: \")\"");
+	}
+
+	@Test
+	public void testStackOption() throws Throwable {
+		Grammar grammar = readGrammar("OptionsTestGrammar.g");
+		assertFalse(getProduction(grammar, "Items", 0).isStackingAllowed());
+		assertFalse(getProduction(grammar, "Items", 1).isStackingAllowed());
+		assertTrue(getProduction(grammar, "Items", 0).isNode());
+		assertFalse(getProduction(grammar, "Item", 0).isNode());
+		assertTrue(getProduction(grammar, "Item", 1).isNode());
+
+		// The items of a list are not stacked, but nested lists are kept.
+		assertTree(parse(grammar, "(1,2,(3),(4,5))"), //
+				"_START_: \"(1,2,(3),(4,5))\"", //
+				"  List: \"(1,2,(3),(4,5))\"", //
+				"    LPAREN: \"(\"", //
+				"    Items: \"1,2,(3),(4,5)\"", //
+				"      INTEGER_LITERAL: \"1\"", //
+				"      COMMA: \",\"", //
+				"      INTEGER_LITERAL: \"2\"", //
+				"      COMMA: \",\"", //
+				"      Item: \"(3)\"", //
+				"        List: \"(3)\"", //
+				"          LPAREN: \"(\"", //
+				"          Items: \"3\"", //
+				"            INTEGER_LITERAL: \"3\"", //
+				"          RPAREN: \")\"", //
+				"      COMMA: \",\"", //
+				"      Item: \"(4,5)\"", //
+				"        List: \"(4,5)\"", //
+				"          LPAREN: \"(\"", //
+				"          Items: \"4,5\"", //
+				"            INTEGER_LITERAL: \"4\"", //
+				"            COMMA: \",\"", //
+				"            INTEGER_LITERAL: \"5\"", //
+				"          RPAREN: \")\"", //
+				"    RPAREN: \")\"");
+	}
+
+	@Test
+	public void testStackOptionWithNonNodeInBetween() throws Throwable {
+		Grammar grammar = readGrammar("OptionsTestGrammar.g");
+		assertFalse(getProduction(grammar, "MoreElements", 0).isNode());
+
+		/*
+		 * Only elements directly within elements are merged. The elements
+		 * within the non-node production are kept like in the former
+		 * recursive construction of the tree.
+		 */
+		assertTree(parse(grammar, "([1,2,[3]],[4])"), //
+				"_START_: \"([1,2,[3]],[4])\"", //
+				"  List: \"([1,2,[3]],[4])\"", //
+				"    LPAREN: \"(\"", //
+				"    Items: \"[1,2,[3]],[4]\"", //
+				"      Item: \"[1,2,[3]]\"", //
+				"        Tuple: \"[1,2,[3]]\"", //
+				"          LBRACKET: \"[\"", //
+				"          Elements: \"1,2,[3]\"", //
+				"            INTEGER_LITERAL: \"1\"", //
+				"            COMMA: \",\"", //
+				"            Elements: \"2,[3]\"", //
+				"              INTEGER_LITERAL: \"2\"", //
+				"              COMMA: \",\"", //
+				"              Elements: \"[3]\"", //
+				"                Item: \"[3]\"", //
+				"                  Tuple: \"[3]\"", //
+				"                    LBRACKET: \"[\"", //
+				"                    Elements: \"3\"", //
+				"                      INTEGER_LITERAL: \"3\"", //
+				"                    RBRACKET: \"]\"", //
+				"          RBRACKET: \"]\"", //
+				"      COMMA: \",\"", //
+				"      Item: \"[4]\"", //
+				"        Tuple: \"[4]\"", //
+				"          LBRACKET: \"[\"", //
+				"          Elements: \"4\"", //
+				"            INTEGER_LITERAL: \"4\"", //
+				"          RBRACKET: \"]\"", //
+				"    RPAREN: \")\"");
+	}
+
+	@Test
+	public void testCutIsReserved() throws Throwable {
+		String grammarText = "OPTIONS\n" //
+				+ "\tlexer.case_sensitive=true;\n" //
+				+ "HELPER\n" //
+				+ "TOKENS\n" //
+				+ "\tA: \"a\";\n" //
+				+ "PRODUCTIONS\n" //
+				+ "\t_START_ : cut ;\n" //
+				+ "\tcut : A ;\n";
+		GrammarFile file = new GrammarFile(new StringReader(grammarText));
+		try {
+			file.getParserTree();
+			fail("The keyword 'cut' is not allowed as production name.");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			file.close();
+		}
+		file = new GrammarFile(new StringReader(grammarText.replace("cut",
+				"cutting")));
+		try {
+			assertNotNull(file.getParserTree());
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package com.puresoltechnologies.parsers.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.analyzer.Analyzer;
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarConverter;
+import com.puresoltechnologies.parsers.grammar.GrammarFile;
+import com.puresoltechnologies.parsers.grammar.TestGrammars;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParserException;
+import com.puresoltechnologies.parsers.parser.packrat.PackratParser;
+import com.puresoltechnologies.parsers.source.FixedCodeLocation;
+
+public class MetricsListenerTest {
+
+    private static Grammar grammar;
+    private static Grammar cutGrammar;
+
+    private static class CollectingListener implements MetricsListener {
+
+	private final List<PhaseMetrics> metrics = new ArrayList<PhaseMetrics>();
+
+	@Override
+	public void phaseFinished(PhaseMetrics metrics) {
+	    this.metrics.add(metrics);
+	}
+    }
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	grammar = TestGrammars.getSLR1TestGrammarFromDragonBook();
+	assertNotNull(grammar);
+	InputStream inStream = MetricsListenerTest.class
+		.getResourceAsStream("/com/puresoltechnologies/parsers/grammar/CutTestGrammar.g");
+	assertNotNull(inStream);
+	try {
+	    GrammarFile file = new GrammarFile(inStream);
+	    try {
+		cutGrammar = new GrammarConverter(file.getParserTree())
+			.getGrammar();
+	    } finally {
+		file.close();
+	    }
+	} finally {
+	    inStream.close();
+	}
+    }
+
+    @Test
+    public void testAnalyzer() throws Throwable {
+	Analyzer analyzer = new Analyzer(grammar, getClass().getClassLoader());
+	CollectingListener listener = new CollectingListener();
+	analyzer.setMetricsListener(listener);
+	ParseTreeNode tree = analyzer.analyze(new FixedCodeLocation("(1+2)*3",
+		"+4*5").getSourceCode());
+
+	assertEquals(3, listener.metrics.size());
+	PhaseMetrics lexing = listener.metrics.get(0);
+	assertEquals(Phase.LEXING, lexing.getPhase());
+	assertEquals(grammar.getName(), lexing.getGrammarName());
+	assertTrue(lexing.isSuccessful());
+	assertTrue(lexing.getDuration() >= 0);
+	assertEquals(11, lexing.get(Counter.CHARACTERS));
+	assertEquals(11, lexing.get(Counter.TOKENS));
+
+	PhaseMetrics parsing = listener.metrics.get(1);
+	assertEquals(Phase.PARSING, parsing.getPhase());
+	assertTrue(parsing.isSuccessful());
+	assertEquals(11, parsing.get(Counter.TOKENS));
+	assertEquals(0, parsing.get(Counter.BACKTRACKS));
+	assertTrue(parsing.get(Counter.STEPS) > 11);
+	assertTrue(parsing.get(Counter.MAX_STACK_DEPTH) > 1);
+	assertEquals(tree.getSubTreeSize(), parsing.get(Counter.TREE_NODES));
+	assertFalse(parsing.isCounted(Counter.MEMO_HITS));
+
+	PhaseMetrics analysis = listener.metrics.get(2);
+	assertEquals(Phase.ANALYSIS, analysis.getPhase());
+	assertTrue(analysis.isSuccessful());
+	assertEquals(tree.getSubTreeSize(), analysis.get(Counter.TREE_NODES));
+	assertTrue(analysis.getDuration() >= parsing.getDuration());
+    }
+
+    @Test
+    public void testFailedAnalysis() throws Throwable {
+	Analyzer analyzer = new Analyzer(grammar, getClass().getClassLoader());
+	CollectingListener listener = new CollectingListener();
+	analyzer.setMetricsListener(listener);
+	try {
+	    analyzer.analyze(new FixedCodeLocation("1+").getSourceCode());
+	    fail("ParserException expected.");
+	} catch (ParserException e) {
+	    // expected
+	}
+	assertEquals(3, listener.metrics.size());
+	assertTrue(listener.metrics.get(0).isSuccessful());
+	assertFalse(listener.metrics.get(1).isSuccessful());
+	assertTrue(listener.metrics.get(1).get(Counter.STEPS) > 0);
+	assertFalse(listener.metrics.get(2).isSuccessful());
+	assertFalse(listener.metrics.get(2).isCounted(Counter.TREE_NODES));
+
+	// Without listener nothing is reported anymore.
+	analyzer.setMetricsListener(null);
+	analyzer.analyze(new FixedCodeLocation("1+2").getSourceCode());
+	assertEquals(3, listener.metrics.size());
+    }
+
+    @Test
+    public void testPackratParser() throws Throwable {
+	PackratParser parser = new PackratParser(cutGrammar);
+	CollectingListener listener = new CollectingListener();
+	parser.setMetricsListener(listener);
+	/*
+	 * "pa;" starts like a print statement, so the print alternative fails
+	 * before the call alternative matches.
+	 */
+	ParseTreeNode tree = parser.parse(new FixedCodeLocation("let a = 1;\n",
+		"print a;\n", "pa;\n").getSourceCode());
+
+	assertEquals(1, listener.metrics.size());
+	PhaseMetrics parsing = listener.metrics.get(0);
+	assertEquals(Phase.PARSING, parsing.getPhase());
+	assertTrue(parsing.isSuccessful());
+	assertEquals(24, parsing.get(Counter.CHARACTERS));
+	assertEquals(tree.getSubTreeSize(), parsing.get(Counter.TREE_NODES));
+	assertTrue(parsing.get(Counter.BACKTRACKS) > 0);
+	assertTrue(parsing.get(Counter.MEMO_HITS) >= 0);
+	assertTrue(parsing.get(Counter.MAX_STACK_DEPTH) > 1);
+	assertFalse(parsing.isCounted(Counter.TOKENS));
+    }
+
+    @Test
+    public void testPhaseMetrics() {
+	PhaseMetrics metrics = new PhaseMetrics(Phase.LEXING, "test");
+	assertEquals(-1, metrics.getDuration());
+	assertFalse(metrics.isCounted(Counter.TOKENS));
+	metrics.increment(Counter.TOKENS);
+	metrics.increment(Counter.TOKENS);
+	assertEquals(2, metrics.get(Counter.TOKENS));
+	metrics.max(Counter.MAX_STACK_DEPTH, 3);
+	metrics.max(Counter.MAX_STACK_DEPTH, 2);
+	assertEquals(3, metrics.get(Counter.MAX_STACK_DEPTH));
+	metrics.finish(true);
+	assertTrue(metrics.isSuccessful());
+	assertTrue(metrics.getDuration() >= 0);
+    }
+}
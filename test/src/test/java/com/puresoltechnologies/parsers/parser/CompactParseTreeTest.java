@@ -0,0 +1,146 @@
+package com.puresoltechnologies.parsers.parser;
+
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.readTestGrammarTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.trees.TreeVisitor;
+import com.puresoltechnologies.trees.TreeWalker;
+import com.puresoltechnologies.trees.WalkingAction;
+
+public class CompactParseTreeTest {
+
+    private static ParseTreeNode parseTree;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	parseTree = readTestGrammarTree();
+    }
+
+    private static void assertSameTree(ParseTreeNode expected,
+	    CompactParseTreeNode actual) throws Exception {
+	assertEquals(expected.getName(), actual.getName());
+	assertEquals(expected.getToken(), actual.getToken());
+	assertEquals(expected.isNode(), actual.isNode());
+	assertEquals(expected.isStackingAllowed(), actual.isStackingAllowed());
+	assertEquals(expected.getMetaData(), actual.getMetaData());
+	assertEquals(expected.hasChildren(), actual.hasChildren());
+	List<ParseTreeNode> expectedChildren = expected.getChildren();
+	List<CompactParseTreeNode> actualChildren = actual.getChildren();
+	assertEquals(expectedChildren.size(), actualChildren.size());
+	for (int i = 0; i < expectedChildren.size(); i++) {
+	    assertEquals(actual, actualChildren.get(i).getParent());
+	    assertSameTree(expectedChildren.get(i), actualChildren.get(i));
+	}
+    }
+
+    @Test
+    public void testConversion() throws Exception {
+	CompactParseTree tree = CompactParseTree.create(parseTree);
+	CompactParseTreeNode root = tree.getRoot();
+	assertNull(root.getParent());
+	assertSameTree(parseTree, root);
+	assertEquals(parseTree.getText(), root.getText());
+	assertEquals(parseTree.toString(), root.toString());
+    }
+
+    @Test
+    public void testPreOrderNumbering() {
+	CompactParseTree tree = CompactParseTree.create(parseTree);
+	for (int i = 1; i < tree.size(); i++) {
+	    int parent = tree.getParent(i);
+	    assertTrue(parent < i);
+	    assertTrue(tree.getSubTreeEnd(parent) > i);
+	}
+	assertEquals(tree.size(), tree.getSubTreeEnd(0));
+    }
+
+    @Test
+    public void testTypeInterning() {
+	CompactParseTree tree = CompactParseTree.create(parseTree);
+	assertTrue(tree.getTypeCount() < tree.size());
+	for (int i = 0; i < tree.size(); i++) {
+	    assertEquals(tree.getType(i), tree.getTypeId(tree.getName(i)));
+	}
+	assertEquals(-1, tree.getTypeId("NotExistingNodeName"));
+    }
+
+    @Test
+    public void testChildLookup() throws Exception {
+	CompactParseTreeNode root = CompactParseTree.create(parseTree)
+		.getRoot();
+	for (ParseTreeNode child : parseTree.getChildren()) {
+	    String name = child.getName();
+	    assertTrue(root.hasChild(name));
+	    assertEquals(parseTree.getChildren(name).size(), root
+		    .getChildren(name).size());
+	    assertEquals(parseTree.getChild(name).getText(),
+		    root.getChild(name).getText());
+	}
+	assertFalse(root.hasChild("NotExistingNodeName"));
+	assertNull(root.getChild("NotExistingNodeName"));
+	assertEquals(parseTree.getSubTrees("Production").size(), root
+		.getSubTrees("Production").size());
+    }
+
+    @Test
+    public void testTreeWalker() {
+	CompactParseTreeNode root = CompactParseTree.create(parseTree)
+		.getRoot();
+	final int[] counter = new int[1];
+	new TreeWalker<CompactParseTreeNode>(root)
+		.walk(new TreeVisitor<CompactParseTreeNode>() {
+		    @Override
+		    public WalkingAction visit(CompactParseTreeNode tree) {
+			counter[0]++;
+			return WalkingAction.PROCEED;
+		    }
+		});
+	assertEquals(root.getTree().size(), counter[0]);
+    }
+
+    @Test
+    public void testTokensAndTexts() {
+	CompactParseTree tree = CompactParseTree.create(parseTree);
+	final List<ParseTreeNode> nodes = new ArrayList<ParseTreeNode>();
+	new TreeWalker<ParseTreeNode>(parseTree)
+		.walk(new TreeVisitor<ParseTreeNode>() {
+		    @Override
+		    public WalkingAction visit(ParseTreeNode tree) {
+			nodes.add(tree);
+			return WalkingAction.PROCEED;
+		    }
+		});
+	assertEquals(nodes.size(), tree.size());
+	for (int i = 0; i < tree.size(); i++) {
+	    ParseTreeNode node = nodes.get(i);
+	    assertEquals(node.getName(), tree.getName(i));
+	    // The tokens are created on demand out of the token arrays.
+	    Token token = tree.getToken(i);
+	    assertEquals(node.getToken(), token);
+	    if (token != null) {
+		assertEquals(node.getToken().getMetaData(), token.getMetaData());
+		assertEquals(node.getToken().getVisibility(),
+			token.getVisibility());
+	    }
+	    assertEquals(node.getText(), tree.getText(i));
+	}
+    }
+
+    @Test
+    public void testBackConversion() throws Exception {
+	CompactParseTree tree = CompactParseTree.create(parseTree);
+	ParseTreeNode converted = tree.toParseTreeNode();
+	assertEquals(parseTree.toTreeString(), converted.toTreeString());
+	assertSameTree(converted, tree.getRoot());
+    }
+}
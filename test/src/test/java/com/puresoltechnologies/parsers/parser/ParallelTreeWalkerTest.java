@@ -0,0 +1,114 @@
+package com.puresoltechnologies.parsers.parser;
+
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.readTestGrammarTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+
+public class ParallelTreeWalkerTest {
+
+    private static ParseTreeNode parseTree;
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	pool = new ForkJoinPool(4);
+	parseTree = readTestGrammarTree();
+    }
+
+    @AfterClass
+    public static void destroy() {
+	pool.shutdown();
+    }
+
+    private static List<String> preOrderNames(ParseTreeNode root) {
+	List<String> names = new ArrayList<String>();
+	ParseTreeNodeCursor cursor = root.cursor();
+	TreeCursor.Event event;
+	while ((event = cursor.next()) != TreeCursor.Event.END) {
+	    if (event == TreeCursor.Event.ENTER) {
+		names.add(cursor.getName());
+	    }
+	}
+	return names;
+    }
+
+    private static List<String> collectNames(ParallelTreeWalker walker,
+	    ParseTreeNode root) {
+	return walker.walk(root, node -> Collections.singletonList(node
+		.getName()), (first, second) -> {
+	    List<String> names = new ArrayList<String>(first);
+	    names.addAll(second);
+	    return names;
+	});
+    }
+
+    @Test
+    public void testCount() {
+	for (int threshold : new int[] { 1, 2, 16, 100000 }) {
+	    ParallelTreeWalker walker = new ParallelTreeWalker(pool, threshold);
+	    int count = walker.walk(parseTree, node -> 1, Integer::sum);
+	    assertEquals(parseTree.getSubTreeSize(), count);
+	}
+    }
+
+    @Test
+    public void testPreOrderCombination() {
+	List<String> expected = preOrderNames(parseTree);
+	for (int threshold : new int[] { 1, 3, 16, 100000 }) {
+	    ParallelTreeWalker walker = new ParallelTreeWalker(pool, threshold);
+	    assertEquals(expected, collectNames(walker, parseTree));
+	}
+	ParseTreeNode subTree = parseTree.getChildren().get(
+		parseTree.getChildren().size() - 1);
+	assertEquals(preOrderNames(subTree),
+		collectNames(new ParallelTreeWalker(pool, 2), subTree));
+    }
+
+    @Test
+    public void testTextWithNullResults() {
+	ParallelTreeWalker walker = new ParallelTreeWalker(pool, 4);
+	String text = walker.walk(parseTree, node -> node.getToken() != null ? node
+		.getToken().getText() : null, String::concat);
+	assertEquals(parseTree.getText(), text);
+	assertNull(walker.walk(parseTree, node -> null, String::concat));
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("node");
+	ParseTreeNode node = root;
+	for (int i = 0; i < 100000; i++) {
+	    ParseTreeNode child = new ParseTreeNode("node");
+	    node.addChild(child);
+	    node = child;
+	    node.addChild(new ParseTreeNode(new Token("LEAF", "x",
+		    Visibility.VISIBLE, null)));
+	}
+	ParallelTreeWalker walker = new ParallelTreeWalker(pool, 100);
+	int leaves = walker.walk(root, current -> current.getToken() != null ? 1
+		: 0, Integer::sum);
+	assertEquals(100000, leaves);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testException() {
+	new ParallelTreeWalker(pool, 2).walk(parseTree, node -> {
+	    if (node.getToken() != null) {
+		throw new IllegalStateException("failed");
+	    }
+	    return 1;
+	}, Integer::sum);
+    }
+}
@@ -0,0 +1,66 @@
+package com.puresoltechnologies.parsers.parser;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.puresoltechnologies.parsers.grammar.GrammarFile;
+
+/**
+ * This class contains the parse tree fixture shared by the tests of the parse
+ * tree representations, queries and writers.
+ */
+public class ParseTreeFixture {
+
+    private ParseTreeFixture() {
+    }
+
+    /**
+     * This method reads the parse tree of the grammar file TestGrammar.g.
+     * 
+     * @return The parse tree of the grammar file is returned.
+     * @throws Throwable
+     *             is thrown in case the grammar file could not be read.
+     */
+    public static ParseTreeNode readTestGrammarTree() throws Throwable {
+	InputStream inStream = ParseTreeFixture.class
+		.getResourceAsStream("/com/puresoltechnologies/parsers/grammar/TestGrammar.g");
+	assertNotNull(inStream);
+	try {
+	    GrammarFile file = new GrammarFile(inStream);
+	    try {
+		ParseTreeNode parseTree = file.getParserTree();
+		assertNotNull(parseTree);
+		return parseTree;
+	    } finally {
+		file.close();
+	    }
+	} finally {
+	    inStream.close();
+	}
+    }
+
+    /**
+     * This method collects the nodes of a tree in pre-order without recursion.
+     * 
+     * @param root
+     *            is the root node of the tree.
+     * @return A {@link List} of all nodes in pre-order is returned.
+     */
+    public static List<ParseTreeNode> preOrder(ParseTreeNode root) {
+	List<ParseTreeNode> nodes = new ArrayList<ParseTreeNode>();
+	List<ParseTreeNode> stack = new ArrayList<ParseTreeNode>();
+	stack.add(root);
+	while (!stack.isEmpty()) {
+	    ParseTreeNode node = stack.remove(stack.size() - 1);
+	    nodes.add(node);
+	    List<ParseTreeNode> children = node.getChildren();
+	    for (int i = children.size() - 1; i >= 0; i--) {
+		stack.add(children.get(i));
+	    }
+	}
+	return nodes;
+    }
+}
@@ -0,0 +1,157 @@
+package com.puresoltechnologies.parsers.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.trees.TreeException;
+
+public class ParseTreeNodeTest {
+
+    private static ParseTreeNode token(String name, String text) {
+	return new ParseTreeNode(new Token(name, text, Visibility.VISIBLE, null));
+    }
+
+    private static ParseTreeNode createTree() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("root");
+	ParseTreeNode sum = new ParseTreeNode("sum");
+	sum.addChild(token("NUM", "1"));
+	sum.addChild(token("PLUS", "+"));
+	sum.addChild(token("NUM", "22"));
+	root.addChild(token("LPAREN", "("));
+	root.addChild(sum);
+	root.addChild(token("RPAREN", ")"));
+	return root;
+    }
+
+    @Test
+    public void testTextWithoutRanges() throws Exception {
+	ParseTreeNode root = createTree();
+	assertFalse(root.hasTextRange());
+	assertEquals(-1, root.getStartOffset());
+	assertEquals("(1+22)", root.getText());
+	assertEquals("1+22", root.getChild("sum").getText());
+    }
+
+    @Test
+    public void testCreateTextRanges() throws Exception {
+	ParseTreeNode root = createTree();
+	root.createTextRanges();
+	assertTrue(root.hasTextRange());
+	assertEquals(0, root.getStartOffset());
+	assertEquals(6, root.getEndOffset());
+	ParseTreeNode sum = root.getChild("sum");
+	assertEquals(1, sum.getStartOffset());
+	assertEquals(5, sum.getEndOffset());
+	assertEquals("1+22", sum.getText());
+	assertEquals("1+22", sum.getTextSequence().toString());
+	assertEquals("22", sum.getChildren().get(2).getText());
+	assertEquals("(1+22)", root.getText());
+    }
+
+    @Test
+    public void testAddChildInvalidatesTextRanges() throws Exception {
+	ParseTreeNode root = createTree();
+	root.createTextRanges();
+	ParseTreeNode sum = root.getChild("sum");
+	ParseTreeNode first = sum.getChildren().get(0);
+	sum.addChild(token("PLUS", "+"));
+	sum.addChild(token("NUM", "3"));
+	assertFalse(sum.hasTextRange());
+	assertFalse(root.hasTextRange());
+	assertTrue(first.hasTextRange());
+	assertEquals("1+22+3", sum.getText());
+	assertEquals("(1+22+3)", root.getText());
+    }
+
+    @Test
+    public void testClearTextRanges() throws Exception {
+	ParseTreeNode root = createTree();
+	root.createTextRanges();
+	ParseTreeNode sum = root.getChild("sum");
+	sum.clearTextRanges();
+	assertFalse(sum.hasTextRange());
+	assertNull(sum.getSourceText());
+	for (ParseTreeNode child : sum.getChildren()) {
+	    assertNull(child.getSourceText());
+	}
+	assertEquals("1+22", sum.getText());
+	// The nodes outside of the sub tree keep their ranges.
+	assertTrue(root.hasTextRange());
+	assertEquals("(1+22)", root.getText());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTextRange() {
+	new ParseTreeNode("node").setTextRange("abc", 2, 4);
+    }
+
+    @Test
+    public void testTypeIds() {
+	ParseTreeNode node = new ParseTreeNode("typeIdTestNode");
+	assertEquals(ParseTreeNodeTypes.findTypeId("typeIdTestNode"),
+		node.getTypeId());
+	assertEquals("typeIdTestNode",
+		ParseTreeNodeTypes.getTypeName(node.getTypeId()));
+	assertEquals(-1, ParseTreeNodeTypes.findTypeId("notExistingNodeName"));
+    }
+
+    @Test
+    public void testChildLookupOnWideNode() throws Exception {
+	ParseTreeNode list = new ParseTreeNode("list");
+	for (int i = 0; i < 20; i++) {
+	    list.addChild(token("NUM", String.valueOf(i)));
+	    list.addChild(token("COMMA", ","));
+	}
+	list.addChild(token("END", ";"));
+	assertTrue(list.hasChild("NUM"));
+	assertFalse(list.hasChild("notExistingNodeName"));
+	assertEquals(20, list.getChildren("NUM").size());
+	assertEquals("19", list.getChildren("NUM").get(19).getText());
+	assertEquals(";", list.getChild("END").getText());
+	assertEquals(null, list.getChild("notExistingNodeName"));
+	assertFalse(list.hasChild("LAST"));
+	list.addChild(token("LAST", "."));
+	assertTrue(list.hasChild("LAST"));
+    }
+
+    @Test(expected = TreeException.class)
+    public void testMultiplyDefinedChildOnWideNode() throws Exception {
+	ParseTreeNode list = new ParseTreeNode("list");
+	for (int i = 0; i < 20; i++) {
+	    list.addChild(token("NUM", String.valueOf(i)));
+	}
+	list.getChild("NUM");
+    }
+
+    @Test
+    public void testSubTrees() throws Exception {
+	ParseTreeNode root = createTree();
+	ParseTreeNode sum = root.getChild("sum");
+	assertEquals(2, root.getSubTrees("NUM").size());
+	List<ParseTreeNode> numbers = sum.getSubTrees("NUM");
+	assertEquals(2, numbers.size());
+	assertEquals("1", numbers.get(0).getText());
+	assertEquals("22", numbers.get(1).getText());
+	assertEquals(0, sum.getSubTrees("LPAREN").size());
+	assertEquals(1, sum.getSubTrees("sum").size());
+	assertEquals(0, root.getSubTrees("notExistingNodeName").size());
+
+	ParseTreeNode inner = new ParseTreeNode("sum");
+	inner.addChild(token("NUM", "3"));
+	sum.addChild(inner);
+	assertEquals(3, root.getSubTrees("NUM").size());
+	assertEquals(2, root.getSubTrees("sum").size());
+	assertEquals(1, inner.getSubTrees("NUM").size());
+	inner.addChild(token("NUM", "4"));
+	assertEquals(4, sum.getSubTrees("NUM").size());
+	assertEquals(2, inner.getSubTrees("NUM").size());
+    }
+}
@@ -0,0 +1,159 @@
+package com.puresoltechnologies.parsers.parser;
+
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.preOrder;
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.readTestGrammarTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+
+public class SharedParseTreeTest {
+
+    private static ParseTreeNode parseTree;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	parseTree = readTestGrammarTree();
+    }
+
+    private static ParseTreeNode createExpression(String number)
+	    throws Exception {
+	ParseTreeNode expression = new ParseTreeNode("Expression");
+	expression.addChild(new ParseTreeNode(new Token("NUM", number,
+		Visibility.VISIBLE, null)));
+	expression.addChild(new ParseTreeNode(new Token("PLUS", "+",
+		Visibility.VISIBLE, null)));
+	expression.addChild(new ParseTreeNode(new Token("NUM", "1",
+		Visibility.VISIBLE, null)));
+	return expression;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+	SharedParseTree tree = new ParseTreeInterner().share(parseTree);
+	List<ParseTreeNode> expectedNodes = preOrder(parseTree);
+	assertEquals(expectedNodes.size(), tree.size());
+	assertEquals(expectedNodes.size(), tree.getRoot().getSize());
+	assertEquals(parseTree.getText(), tree.getRoot().getText());
+
+	List<ParseTreeNode> actualNodes = preOrder(tree.toParseTreeNode());
+	assertEquals(expectedNodes.size(), actualNodes.size());
+	for (int i = 0; i < expectedNodes.size(); i++) {
+	    ParseTreeNode expected = expectedNodes.get(i);
+	    ParseTreeNode actual = actualNodes.get(i);
+	    assertEquals(expected.getName(), actual.getName());
+	    assertEquals(expected.getToken(), actual.getToken());
+	    assertEquals(expected.isNode(), actual.isNode());
+	    assertEquals(expected.isStackingAllowed(),
+		    actual.isStackingAllowed());
+	    assertEquals(expected.getMetaData(), actual.getMetaData());
+	    assertEquals(expected.getStartOffset(), actual.getStartOffset());
+	    assertEquals(expected.getEndOffset(), actual.getEndOffset());
+	    assertEquals(expected.getChildren().size(), actual.getChildren()
+		    .size());
+	}
+    }
+
+    @Test
+    public void testOverlay() throws Exception {
+	SharedParseTree tree = new ParseTreeInterner().share(parseTree);
+	List<ParseTreeNode> nodes = preOrder(parseTree);
+	for (int i = 0; i < nodes.size(); i++) {
+	    ParseTreeNode node = nodes.get(i);
+	    SharedParseTreeNode shared = tree.getNode(i);
+	    assertEquals(node.getName(), shared.getName());
+	    assertEquals(node.getText(), shared.getText());
+	    assertEquals(node.getStartOffset(), tree.getStartOffset(i));
+	    assertEquals(node.getEndOffset(), tree.getEndOffset(i));
+	    if (node.getMetaData() != null) {
+		assertEquals(node.getMetaData().getSource(), tree.getSource(i));
+		assertEquals(node.getMetaData().getLine(), tree.getLine(i));
+		assertEquals(node.getMetaData().getLineNum(),
+			tree.getLineNum(i));
+	    }
+	}
+    }
+
+    @Test
+    public void testSharing() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("root");
+	root.addChild(createExpression("1"));
+	root.addChild(createExpression("1"));
+	root.addChild(createExpression("2"));
+	root.createTextRanges();
+
+	ParseTreeInterner interner = new ParseTreeInterner();
+	SharedParseTree tree = interner.share(root);
+	SharedParseTreeNode sharedRoot = tree.getRoot();
+	assertSame(sharedRoot.getChild(0), sharedRoot.getChild(1));
+	assertNotSame(sharedRoot.getChild(0), sharedRoot.getChild(2));
+	assertSame(sharedRoot.getChild(0).getChild(1), sharedRoot.getChild(2)
+		.getChild(1));
+	/*
+	 * root, 2 expressions, NUM "1", NUM "2" and PLUS instead of 13 nodes.
+	 */
+	assertEquals(13, tree.size());
+	assertEquals(6, interner.size());
+
+	/*
+	 * The overlay keeps the positions of each occurrence.
+	 */
+	assertEquals(0, tree.getStartOffset(1));
+	assertEquals(3, tree.getStartOffset(5));
+	assertEquals(6, tree.getStartOffset(9));
+	ParseTreeNode copy = tree.toParseTreeNode();
+	assertEquals("1+11+12+1", copy.getText());
+	assertEquals(3, copy.getChildren().get(1).getStartOffset());
+
+	/*
+	 * Other trees of the same interner share the nodes.
+	 */
+	SharedParseTree other = interner.share(createExpression("2"));
+	assertSame(sharedRoot.getChild(2), other.getRoot());
+	assertEquals(6, interner.size());
+    }
+
+    @Test
+    public void testDifferentTokens() throws Exception {
+	ParseTreeInterner interner = new ParseTreeInterner();
+	ParseTreeNode visible = new ParseTreeNode(new Token("WS", " ",
+		Visibility.VISIBLE, null));
+	ParseTreeNode hidden = new ParseTreeNode(new Token("WS", " ",
+		Visibility.HIDDEN, null));
+	ParseTreeNode renamed = new ParseTreeNode("Space", new Token("WS",
+		" ", Visibility.VISIBLE, null), true, true);
+	SharedParseTreeNode sharedVisible = interner.share(visible).getRoot();
+	assertNotSame(sharedVisible, interner.share(hidden).getRoot());
+	assertNotSame(sharedVisible, interner.share(renamed).getRoot());
+	assertSame(sharedVisible, interner.share(
+		new ParseTreeNode(new Token("WS", " ", Visibility.VISIBLE,
+			null))).getRoot());
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("node");
+	ParseTreeNode node = root;
+	for (int i = 0; i < 100000; i++) {
+	    ParseTreeNode child = new ParseTreeNode("node");
+	    node.addChild(child);
+	    node = child;
+	}
+	node.addChild(new ParseTreeNode(new Token("LEAF", "leaf",
+		Visibility.VISIBLE, null)));
+	SharedParseTree tree = new ParseTreeInterner().share(root);
+	assertEquals(100002, tree.size());
+	assertEquals("leaf", tree.getRoot().getText());
+	assertTrue(tree.getNode(100001).hasToken());
+	ParseTreeNode copy = tree.toParseTreeNode();
+	assertEquals(100002, new ParseTreeInterner().share(copy).size());
+    }
+}
@@ -0,0 +1,168 @@
+package com.puresoltechnologies.parsers.parser;
+
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.preOrder;
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.readTestGrammarTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+
+public class TreeCursorTest {
+
+    private static ParseTreeNode parseTree;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	parseTree = readTestGrammarTree();
+    }
+
+    private static int depthOf(ParseTreeNode node, ParseTreeNode root) {
+	int depth = 0;
+	while (node != root) {
+	    node = node.getParent();
+	    depth++;
+	}
+	return depth;
+    }
+
+    @Test
+    public void testParseTreeNodeWalk() {
+	List<ParseTreeNode> expected = preOrder(parseTree);
+	List<ParseTreeNode> entered = new ArrayList<ParseTreeNode>();
+	List<ParseTreeNode> exited = new ArrayList<ParseTreeNode>();
+	ParseTreeNodeCursor cursor = parseTree.cursor();
+	TreeCursor.Event event;
+	while ((event = cursor.next()) != TreeCursor.Event.END) {
+	    if (event == TreeCursor.Event.ENTER) {
+		entered.add(cursor.getNode());
+		assertEquals(depthOf(cursor.getNode(), parseTree),
+			cursor.getDepth());
+		assertEquals(cursor.getNode().getName(), cursor.getName());
+		assertEquals(cursor.getNode().getTypeId(), cursor.getTypeId());
+		assertSame(cursor.getNode().getToken(), cursor.getToken());
+	    } else {
+		/*
+		 * All children of a node are exited before the node itself.
+		 */
+		for (ParseTreeNode child : cursor.getNode().getChildren()) {
+		    assertTrue(exited.contains(child));
+		}
+		exited.add(cursor.getNode());
+	    }
+	}
+	assertEquals(expected, entered);
+	assertEquals(expected.size(), exited.size());
+	assertSame(parseTree, exited.get(exited.size() - 1));
+	assertSame(parseTree, cursor.getNode());
+	assertEquals(TreeCursor.Event.END, cursor.next());
+
+	cursor.reset();
+	assertEquals(TreeCursor.Event.ENTER, cursor.next());
+	assertSame(parseTree, cursor.getNode());
+    }
+
+    @Test
+    public void testCompactParseTreeWalk() {
+	CompactParseTree tree = CompactParseTree.create(parseTree);
+	List<ParseTreeNode> expected = preOrder(parseTree);
+	CompactParseTreeCursor cursor = tree.cursor();
+	int count = 0;
+	TreeCursor.Event event;
+	while ((event = cursor.next()) != TreeCursor.Event.END) {
+	    if (event == TreeCursor.Event.ENTER) {
+		ParseTreeNode node = expected.get(count);
+		assertEquals(count, cursor.getIndex());
+		assertEquals(node.getName(), cursor.getName());
+		assertEquals(node.getTypeId(), cursor.getTypeId());
+		assertEquals(node.getToken(), cursor.getToken());
+		assertEquals(node.hasChildren(), cursor.hasChildren());
+		assertEquals(depthOf(node, parseTree), cursor.getDepth());
+		count++;
+	    }
+	}
+	assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void testMoves() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("root");
+	ParseTreeNode a = new ParseTreeNode("a");
+	ParseTreeNode b = new ParseTreeNode("b");
+	ParseTreeNode c = new ParseTreeNode(new Token("c", "c",
+		Visibility.VISIBLE, null));
+	root.addChild(a);
+	root.addChild(b);
+	b.addChild(c);
+
+	ParseTreeNodeCursor cursor = root.cursor();
+	assertFalse(cursor.parent());
+	assertFalse(cursor.nextSibling());
+	assertTrue(cursor.firstChild());
+	assertSame(a, cursor.getNode());
+	assertFalse(cursor.firstChild());
+	assertTrue(cursor.nextSibling());
+	assertSame(b, cursor.getNode());
+	assertFalse(cursor.nextSibling());
+	assertTrue(cursor.firstChild());
+	assertSame(c, cursor.getNode());
+	assertEquals(2, cursor.getDepth());
+	assertTrue(cursor.parent());
+	assertTrue(cursor.parent());
+	assertSame(root, cursor.getNode());
+
+	/*
+	 * A cursor for a sub tree does not leave it.
+	 */
+	ParseTreeNodeCursor subTreeCursor = b.cursor();
+	assertFalse(subTreeCursor.nextSibling());
+	assertFalse(subTreeCursor.parent());
+	assertEquals(TreeCursor.Event.ENTER, subTreeCursor.next());
+	assertEquals(TreeCursor.Event.ENTER, subTreeCursor.next());
+	assertSame(c, subTreeCursor.getNode());
+	assertEquals(TreeCursor.Event.EXIT, subTreeCursor.next());
+	assertEquals(TreeCursor.Event.EXIT, subTreeCursor.next());
+	assertEquals(TreeCursor.Event.END, subTreeCursor.next());
+
+	CompactParseTree tree = CompactParseTree.create(root);
+	CompactParseTreeCursor compactCursor = new CompactParseTreeCursor(
+		tree, 2);
+	assertEquals("b", compactCursor.getName());
+	assertFalse(compactCursor.nextSibling());
+	assertFalse(compactCursor.parent());
+	assertTrue(compactCursor.firstChild());
+	assertEquals(c.getToken(), compactCursor.getToken());
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("node");
+	ParseTreeNode node = root;
+	for (int i = 0; i < 100000; i++) {
+	    ParseTreeNode child = new ParseTreeNode("node");
+	    node.addChild(child);
+	    node = child;
+	}
+	int maxDepth = 0;
+	int exits = 0;
+	ParseTreeNodeCursor cursor = root.cursor();
+	TreeCursor.Event event;
+	while ((event = cursor.next()) != TreeCursor.Event.END) {
+	    if (event == TreeCursor.Event.ENTER) {
+		maxDepth = Math.max(maxDepth, cursor.getDepth());
+	    } else {
+		exits++;
+	    }
+	}
+	assertEquals(100000, maxDepth);
+	assertEquals(100001, exits);
+    }
+}
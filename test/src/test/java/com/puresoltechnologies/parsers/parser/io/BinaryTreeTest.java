@@ -0,0 +1,147 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.preOrder;
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.readTestGrammarTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+
+public class BinaryTreeTest {
+
+    private static ParseTreeNode parseTree;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	parseTree = readTestGrammarTree();
+    }
+
+    private static byte[] write(ParseTreeNode tree, boolean indexed)
+	    throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	new BinaryTreeWriter(out, indexed).write(tree);
+	return out.toByteArray();
+    }
+
+    private static ParseTreeNode read(byte[] bytes) throws IOException {
+	return new BinaryTreeReader(new ByteArrayInputStream(bytes)).read();
+    }
+
+    private static void assertEqualTrees(ParseTreeNode expected,
+	    ParseTreeNode actual) {
+	List<ParseTreeNode> expectedNodes = preOrder(expected);
+	List<ParseTreeNode> actualNodes = preOrder(actual);
+	assertEquals(expectedNodes.size(), actualNodes.size());
+	for (int i = 0; i < expectedNodes.size(); i++) {
+	    ParseTreeNode expectedNode = expectedNodes.get(i);
+	    ParseTreeNode actualNode = actualNodes.get(i);
+	    assertEquals(expectedNode.getName(), actualNode.getName());
+	    assertEquals(expectedNode.getToken(), actualNode.getToken());
+	    assertEquals(expectedNode.isNode(), actualNode.isNode());
+	    assertEquals(expectedNode.isStackingAllowed(),
+		    actualNode.isStackingAllowed());
+	    assertEquals(expectedNode.getMetaData(), actualNode.getMetaData());
+	    assertEquals(expectedNode.hasTextRange(), actualNode.hasTextRange());
+	    assertEquals(expectedNode.getText(), actualNode.getText());
+	    assertEquals(expectedNode.getChildren().size(), actualNode
+		    .getChildren().size());
+	}
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+	assertTrue(parseTree.hasTextRange());
+	byte[] bytes = write(parseTree, false);
+	ParseTreeNode tree = read(bytes);
+	assertNull(tree.getParent());
+	assertEqualTrees(parseTree, tree);
+	assertEquals(parseTree.toTreeString(), tree.toTreeString());
+    }
+
+    @Test
+    public void testRoundTripWithoutTextRanges() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("root");
+	ParseTreeNode child = new ParseTreeNode("child", null, false, false);
+	root.addChild(child);
+	child.addChild(new ParseTreeNode(new Token("NUM", "42",
+		Visibility.VISIBLE, null)));
+	child.addChild(new ParseTreeNode("renamed", new Token("WS", " ",
+		Visibility.HIDDEN, null), true, true));
+	assertEqualTrees(root, read(write(root, false)));
+	assertEqualTrees(root, read(write(root, true)));
+    }
+
+    @Test
+    public void testSizeCompared2JavaSerialization() throws Exception {
+	ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+	ObjectOutputStream objectStream = new ObjectOutputStream(serialized);
+	objectStream.writeObject(parseTree);
+	objectStream.close();
+	byte[] bytes = write(parseTree, false);
+	assertTrue(bytes.length * 4 < serialized.size());
+    }
+
+    @Test
+    public void testRandomAccess() throws Exception {
+	byte[] bytes = write(parseTree, true);
+	assertEqualTrees(parseTree, read(bytes));
+	RandomAccessBinaryTree tree = new RandomAccessBinaryTree(
+		ByteBuffer.wrap(bytes));
+	List<ParseTreeNode> nodes = preOrder(parseTree);
+	assertEquals(nodes.size(), tree.getNodeCount());
+	assertEqualTrees(parseTree, tree.readTree());
+	for (int i = 0; i < nodes.size(); i += 7) {
+	    ParseTreeNode subTree = tree.readSubTree(i);
+	    assertNull(subTree.getParent());
+	    assertEqualTrees(nodes.get(i), subTree);
+	}
+    }
+
+    @Test(expected = IOException.class)
+    public void testRandomAccessWithoutIndex() throws Exception {
+	new RandomAccessBinaryTree(ByteBuffer.wrap(write(parseTree, false)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidData() throws Exception {
+	read("no binary tree".getBytes());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedData() throws Exception {
+	byte[] bytes = write(parseTree, false);
+	byte[] truncated = new byte[bytes.length / 2];
+	System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+	read(truncated);
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("node");
+	ParseTreeNode node = root;
+	for (int i = 0; i < 100000; i++) {
+	    ParseTreeNode child = new ParseTreeNode("node");
+	    node.addChild(child);
+	    node = child;
+	}
+	node.addChild(new ParseTreeNode(new Token("LEAF", "leaf",
+		Visibility.VISIBLE, null)));
+	root.createTextRanges();
+	ParseTreeNode tree = read(write(root, false));
+	assertEquals("leaf", tree.getText());
+	assertEquals(preOrder(root).size(), preOrder(tree).size());
+    }
+}
@@ -0,0 +1,137 @@
+package com.puresoltechnologies.parsers.parser.io;
+
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.readTestGrammarTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.puresoltechnologies.parsers.grammar.token.Visibility;
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+
+public class JsonTreeWriterTest {
+
+    private static ParseTreeNode parseTree;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	parseTree = readTestGrammarTree();
+    }
+
+    private static JsonNode write(ParseTreeNode tree, boolean includeMetaData,
+	    boolean includeTrivia) throws Exception {
+	StringWriter writer = new StringWriter();
+	JsonTreeWriter jsonWriter = new JsonTreeWriter(writer);
+	try {
+	    jsonWriter.setIncludeMetaData(includeMetaData);
+	    jsonWriter.setIncludeTrivia(includeTrivia);
+	    jsonWriter.write(tree);
+	} finally {
+	    jsonWriter.close();
+	}
+	return new ObjectMapper().readTree(writer.toString());
+    }
+
+    private static boolean isTrivia(ParseTreeNode node) {
+	Token token = node.getToken();
+	return (token != null) && (token.getVisibility() != Visibility.VISIBLE);
+    }
+
+    private static void assertSameTree(ParseTreeNode expected, JsonNode actual,
+	    boolean includeMetaData, boolean includeTrivia) {
+	assertEquals(expected.getName(), actual.get("name").asText());
+	if (expected.getToken() != null) {
+	    assertEquals(expected.getToken().getText(), actual.get("text")
+		    .asText());
+	} else {
+	    assertFalse(actual.has("text"));
+	}
+	assertEquals(includeMetaData, actual.has("line"));
+	assertEquals(includeMetaData, actual.has("start"));
+	if (includeMetaData) {
+	    assertEquals(expected.getMetaData().getLine(), actual.get("line")
+		    .asInt());
+	    assertEquals(expected.getStartOffset(), actual.get("start")
+		    .asInt());
+	    assertEquals(expected.getEndOffset(), actual.get("end").asInt());
+	}
+	List<ParseTreeNode> children = new ArrayList<ParseTreeNode>();
+	for (ParseTreeNode child : expected.getChildren()) {
+	    if (includeTrivia || !isTrivia(child)) {
+		children.add(child);
+	    }
+	}
+	JsonNode jsonChildren = actual.get("children");
+	if (children.isEmpty()) {
+	    assertFalse(actual.has("children"));
+	    return;
+	}
+	assertEquals(children.size(), jsonChildren.size());
+	for (int i = 0; i < children.size(); i++) {
+	    assertSameTree(children.get(i), jsonChildren.get(i),
+		    includeMetaData, includeTrivia);
+	}
+    }
+
+    @Test
+    public void testDefault() throws Exception {
+	assertSameTree(parseTree, write(parseTree, false, true), false, true);
+    }
+
+    @Test
+    public void testWithMetaData() throws Exception {
+	assertSameTree(parseTree, write(parseTree, true, true), true, true);
+    }
+
+    @Test
+    public void testWithoutTrivia() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("root");
+	root.addChild(new ParseTreeNode(new Token("WS", " ",
+		Visibility.HIDDEN, null)));
+	root.addChild(new ParseTreeNode(new Token("NUM", "1",
+		Visibility.VISIBLE, null)));
+	root.addChild(new ParseTreeNode(new Token("NL", "\n",
+		Visibility.IGNORED, null)));
+	JsonNode json = write(root, false, false);
+	assertEquals(1, json.get("children").size());
+	assertEquals("1", json.get("children").get(0).get("text").asText());
+	json = write(root, false, true);
+	assertEquals(3, json.get("children").size());
+	assertEquals("HIDDEN", json.get("children").get(0).get("visibility")
+		.asText());
+	assertFalse(json.get("children").get(1).has("visibility"));
+
+	ParseTreeNode triviaOnly = new ParseTreeNode("root");
+	triviaOnly.addChild(new ParseTreeNode(new Token("WS", " ",
+		Visibility.HIDDEN, null)));
+	assertFalse(write(triviaOnly, false, false).has("children"));
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+	ParseTreeNode root = new ParseTreeNode("node");
+	ParseTreeNode node = root;
+	for (int i = 0; i < 400; i++) {
+	    ParseTreeNode child = new ParseTreeNode("node");
+	    node.addChild(child);
+	    node = child;
+	}
+	JsonNode json = write(root, false, true);
+	int depth = 0;
+	while (json.has("children")) {
+	    json = json.get("children").get(0);
+	    depth++;
+	}
+	assertEquals(400, depth);
+	assertTrue(json.has("name"));
+    }
+}
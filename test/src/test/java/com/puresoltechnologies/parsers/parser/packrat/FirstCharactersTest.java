@@ -0,0 +1,100 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarConverter;
+import com.puresoltechnologies.parsers.grammar.GrammarFile;
+import com.puresoltechnologies.parsers.grammar.production.Production;
+import com.puresoltechnologies.parsers.grammar.token.TokenDefinition;
+
+public class FirstCharactersTest {
+
+    private static Grammar grammar;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	InputStream inStream = FirstCharactersTest.class
+		.getResourceAsStream("/com/puresoltechnologies/parsers/grammar/TestGrammar.g");
+	assertNotNull(inStream);
+	try {
+	    GrammarFile file = new GrammarFile(inStream);
+	    try {
+		grammar = new GrammarConverter(file.getParserTree())
+			.getGrammar();
+	    } finally {
+		file.close();
+	    }
+	} finally {
+	    inStream.close();
+	}
+    }
+
+    @Test
+    public void testCharacterClassForToken() {
+	CharacterClass characterClass = CharacterClass
+		.of(new TokenDefinition("INTEGER", "[1-9][0-9]*"));
+	assertTrue(characterClass.contains('1'));
+	assertTrue(characterClass.contains('9'));
+	assertFalse(characterClass.contains('0'));
+	assertFalse(characterClass.contains('a'));
+	assertFalse(characterClass.isAll());
+    }
+
+    @Test
+    public void testCharacterClassForMultiCharacterToken() {
+	CharacterClass characterClass = CharacterClass
+		.of(new TokenDefinition("THIS", "this"));
+	assertTrue(characterClass.contains('t'));
+	assertFalse(characterClass.contains('h'));
+    }
+
+    @Test
+    public void testCharacterClassForEmptyToken() {
+	CharacterClass characterClass = CharacterClass
+		.of(new TokenDefinition("EMPTY", "a*"));
+	assertTrue(characterClass.isAll());
+	assertTrue(characterClass.contains('b'));
+    }
+
+    @Test
+    public void testCharacterClassForNonAscii() {
+	CharacterClass characterClass = CharacterClass
+		.of(new TokenDefinition("A", "a"));
+	assertTrue(characterClass.contains('\u00e4'));
+    }
+
+    @Test
+    public void testProductions() {
+	FirstCharacters firstCharacters = new FirstCharacters(grammar);
+	List<Production> factors = grammar.getProductions().get("Factor");
+	assertEquals(2, factors.size());
+	Production paren = factors.get(0);
+	Production literal = factors.get(1);
+	assertTrue(firstCharacters.isPossible(paren, "(1)", 0));
+	assertFalse(firstCharacters.isPossible(paren, "1", 0));
+	assertFalse(firstCharacters.isPossible(literal, "(1)", 0));
+	assertTrue(firstCharacters.isPossible(literal, "1", 0));
+	assertTrue(firstCharacters.isPossible(literal, "-1", 0));
+	assertFalse(firstCharacters.isPossible(literal, "1", 1));
+    }
+
+    @Test
+    public void testLeftRecursiveProductions() {
+	FirstCharacters firstCharacters = new FirstCharacters(grammar);
+	for (Production expression : grammar.getProductions().get("Expression")) {
+	    assertTrue(firstCharacters.isPossible(expression, "(1+2)", 0));
+	    assertTrue(firstCharacters.isPossible(expression, "1+2", 0));
+	    assertFalse(firstCharacters.isPossible(expression, ")", 0));
+	}
+    }
+}
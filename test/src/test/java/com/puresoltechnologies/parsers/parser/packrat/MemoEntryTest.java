@@ -6,7 +6,7 @@ import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
-import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.grammar.production.Production;
 import com.puresoltechnologies.parsers.parser.packrat.MemoEntry;
 import com.puresoltechnologies.parsers.parser.packrat.Status;
 
@@ -20,11 +20,12 @@ public class MemoEntryTest {
 
     @Test
     public void testInitialValuesForSuccess() {
-	ParseTreeNode tree = new ParseTreeNode("TEST");
-	MemoEntry success = MemoEntry.success(1, 2, tree);
+	Match match = Match.production(new Production("TEST"), 1, 2,
+		new Match[0]);
+	MemoEntry success = MemoEntry.success(1, 2, match);
 	assertEquals(1, success.getDeltaPosition());
 	assertEquals(2, success.getDeltaLine());
-	assertSame(tree, success.getAnswer());
+	assertSame(match, success.getAnswer());
     }
 
     @Test
@@ -38,8 +39,10 @@ public class MemoEntryTest {
 
     @Test
     public void testCompareTo() {
-	MemoEntry success = MemoEntry.success(1, 2, new ParseTreeNode("TEST"));
-	MemoEntry success2 = MemoEntry.success(2, 3, new ParseTreeNode("TEST2"));
+	MemoEntry success = MemoEntry.success(1, 2, Match.production(
+		new Production("TEST"), 1, 2, new Match[0]));
+	MemoEntry success2 = MemoEntry.success(2, 3, Match.production(
+		new Production("TEST2"), 2, 3, new Match[0]));
 	MemoEntry failure = MemoEntry.failed();
 
 	assertEquals(1, success2.compareTo(success));
@@ -0,0 +1,108 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarConverter;
+import com.puresoltechnologies.parsers.grammar.GrammarFile;
+import com.puresoltechnologies.parsers.grammar.production.Production;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParserException;
+import com.puresoltechnologies.parsers.source.FixedCodeLocation;
+
+public class PackratParserCutTest {
+
+    private static Grammar grammar;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	InputStream inStream = PackratParserCutTest.class
+		.getResourceAsStream("/com/puresoltechnologies/parsers/grammar/CutTestGrammar.g");
+	assertNotNull(inStream);
+	try {
+	    GrammarFile file = new GrammarFile(inStream);
+	    try {
+		grammar = new GrammarConverter(file.getParserTree())
+			.getGrammar();
+	    } finally {
+		file.close();
+	    }
+	} finally {
+	    inStream.close();
+	}
+    }
+
+    @Test
+    public void testCutOptionIsRead() {
+	for (Production production : grammar.getProductions().get(
+		"Statement")) {
+	    if ("call".equals(production.getAlternativeName())) {
+		assertFalse(production.isCut());
+	    } else {
+		assertTrue(production.isCut());
+	    }
+	}
+    }
+
+    @Test
+    public void testParse() throws Throwable {
+	PackratParser parser = new PackratParser(grammar);
+	ParseTreeNode tree = parser.parse(new FixedCodeLocation(
+		"let a = 1;\n", "print a;\n", "run;\n").getSourceCode());
+	assertEquals(3, tree.getChildren("let").size()
+		+ tree.getChildren("print").size()
+		+ tree.getChildren("call").size());
+    }
+
+    /**
+     * "let;" would be a valid call statement, but after the keyword 'let' the
+     * parser is committed to the let statement.
+     */
+    @Test(expected = ParserException.class)
+    public void testCommit() throws Throwable {
+	PackratParser parser = new PackratParser(grammar);
+	parser.parse(new FixedCodeLocation("let;").getSourceCode());
+    }
+
+    @Test
+    public void testMemoIsReleased() throws Throwable {
+	String[] lines = new String[100];
+	for (int i = 0; i < lines.length; i++) {
+	    lines[i] = "let a = " + (i + 1) + ";\n";
+	}
+	PackratParser parser = new PackratParser(grammar);
+	ParseTreeNode tree = parser.parse(new FixedCodeLocation(lines)
+		.getSourceCode());
+	assertEquals(100, tree.getChildren("let").size());
+	Field memoField = PackratParser.class.getDeclaredField("memo");
+	memoField.setAccessible(true);
+	PackratMemo memo = (PackratMemo) memoField.get(parser);
+	assertTrue(memo.size() < 20);
+    }
+
+    /**
+     * The counters used to decide about the release of the memo are updated
+     * incrementally and need to be back at zero after a run.
+     */
+    @Test
+    public void testBacktrackingCountersAreBalanced() throws Throwable {
+	PackratParser parser = new PackratParser(grammar);
+	parser.parse(new FixedCodeLocation("let a = 1;\n", "pa;\n",
+		"print a;\n").getSourceCode());
+	for (String name : new String[] { "openEvaluations",
+		"pendingLeftRecursions" }) {
+	    Field field = PackratParser.class.getDeclaredField(name);
+	    field.setAccessible(true);
+	    assertEquals(name, 0, field.getInt(parser));
+	}
+    }
+}
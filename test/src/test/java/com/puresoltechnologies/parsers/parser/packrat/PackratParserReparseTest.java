@@ -0,0 +1,167 @@
+package com.puresoltechnologies.parsers.parser.packrat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.grammar.Grammar;
+import com.puresoltechnologies.parsers.grammar.GrammarConverter;
+import com.puresoltechnologies.parsers.grammar.GrammarFile;
+import com.puresoltechnologies.parsers.lexer.Token;
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.source.FixedCodeLocation;
+import com.puresoltechnologies.parsers.source.SourceCode;
+
+public class PackratParserReparseTest {
+
+    private static Grammar grammar;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	InputStream inStream = PackratParserReparseTest.class
+		.getResourceAsStream("/com/puresoltechnologies/parsers/grammar/TestGrammar.g");
+	assertNotNull(inStream);
+	try {
+	    GrammarFile file = new GrammarFile(inStream);
+	    try {
+		grammar = new GrammarConverter(file.getParserTree())
+			.getGrammar();
+	    } finally {
+		file.close();
+	    }
+	} finally {
+	    inStream.close();
+	}
+    }
+
+    private static SourceCode getSourceCode(String text) throws IOException {
+	return new FixedCodeLocation(text.split("(?<=\n)")).getSourceCode();
+    }
+
+    private static String toString(ParseTreeNode node) {
+	StringBuilder builder = new StringBuilder();
+	append(builder, node, 0);
+	return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, ParseTreeNode node,
+	    int depth) {
+	for (int i = 0; i < depth; i++) {
+	    builder.append("  ");
+	}
+	builder.append(node.getName());
+	Token token = node.getToken();
+	if (token != null) {
+	    builder.append(" '").append(token.getText()).append("' ")
+		    .append(token.getMetaData().getLine()).append(":")
+		    .append(token.getMetaData().getColumn());
+	}
+	builder.append("\n");
+	for (ParseTreeNode child : node.getChildren()) {
+	    append(builder, child, depth + 1);
+	}
+    }
+
+    /**
+     * Parses the original text, reparses it with the edits and compares the
+     * result with a parse from scratch.
+     */
+    private static void checkReparse(String original, String changed,
+	    TextEdit... edits) throws Throwable {
+	PackratParser parser = new PackratParser(grammar);
+	parser.parse(getSourceCode(original));
+	List<TextEdit> editList = Arrays.asList(edits);
+	ParseTreeNode reparsed = parser.reparse(getSourceCode(changed),
+		editList);
+	ParseTreeNode parsed = new PackratParser(grammar)
+		.parse(getSourceCode(changed));
+	assertEquals(toString(parsed), toString(reparsed));
+    }
+
+    @Test
+    public void testReplaceLiteral() throws Throwable {
+	checkReparse("1 + 2 * (3 + 4)", "1 + 22 * (3 + 4)", new TextEdit(4, 1,
+		"22"));
+    }
+
+    @Test
+    public void testInsertAtStartAndEnd() throws Throwable {
+	checkReparse("1 + 2", "(1 + 2)", new TextEdit(0, 0, "("), new TextEdit(
+		6, 0, ")"));
+	checkReparse("1 + 2", "1 + 2 * 3", new TextEdit(5, 0, " * 3"));
+    }
+
+    @Test
+    public void testDelete() throws Throwable {
+	checkReparse("1 + 2 * 3 - 4", "1 + 2 - 4", new TextEdit(5, 4, ""));
+    }
+
+    @Test
+    public void testEditChangingLeftRecursion() throws Throwable {
+	checkReparse("1 - 2 - 3", "1 - 2 + 5 - 3", new TextEdit(6, 0, "+ 5 "));
+	checkReparse("1 - 2 - 3 - 4", "1 - 4", new TextEdit(2, 8, ""));
+    }
+
+    @Test
+    public void testMultipleLines() throws Throwable {
+	checkReparse("1 +\n2 *\n3\n- 4", "1 +\n2 *\n\n3 + 5\n- 4",
+		new TextEdit(8, 0, "\n"), new TextEdit(10, 0, " + 5"));
+	checkReparse("1 +\n2 *\n3\n- 4", "1 +\n2 * 3\n- 4", new TextEdit(7, 1,
+		" "));
+    }
+
+    @Test
+    public void testEditsNotMatchingSourceCode() throws Throwable {
+	checkReparse("1 + 2", "3 * 4", new TextEdit(0, 1, "7"));
+	checkReparse("1 + 2", "1 + 2 * 3", new TextEdit(5, 0, " *"));
+	checkReparse("1 + 2", "1 + 2", new TextEdit(4, 2, "2"));
+    }
+
+    @Test
+    public void testMemoIsReused() throws Throwable {
+	StringBuilder text = new StringBuilder("1");
+	for (int i = 0; i < 100; i++) {
+	    text.append(" * (2 + 3)");
+	}
+	String changed = text.toString() + " + 4";
+	PackratParser parser = new PackratParser(grammar);
+	parser.setProfiling(true);
+	parser.parse(getSourceCode(text.toString()));
+	parser.reparse(getSourceCode(changed),
+		Arrays.asList(new TextEdit(text.length(), 0, " + 4")));
+	long reparseMisses = getMemoMisses(parser.getProfile());
+
+	PackratParser freshParser = new PackratParser(grammar);
+	freshParser.setProfiling(true);
+	freshParser.parse(getSourceCode(changed));
+	long parseMisses = getMemoMisses(freshParser.getProfile());
+
+	/*
+	 * An edit at the end must not invalidate the entries at the beginning,
+	 * so only a small part of the rules is evaluated again.
+	 */
+	assertTrue(parseMisses > 100);
+	assertTrue("Reparse had " + reparseMisses + " memo misses, a parse "
+		+ parseMisses + ".", reparseMisses * 10 < parseMisses);
+    }
+
+    /**
+     * @return The number of rule evaluations which were not found in the
+     *         memo is returned.
+     */
+    private static long getMemoMisses(PackratProfile profile) {
+	long misses = 0;
+	for (RuleProfile ruleProfile : profile.getRuleProfiles()) {
+	    misses += ruleProfile.getMemoMisses();
+	}
+	return misses;
+    }
+}
@@ -2,10 +2,13 @@ package com.puresoltechnologies.parsers.parser.packrat;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -161,15 +164,15 @@ public class PackratParserTest {
 	/*
 	 * process some white spaces...
 	 */
-	ParseTreeNode parserTree = new ParseTreeNode("ROOT");
-	MemoEntry memoEntry = parser.processIgnoredTokens(parserTree, 0, 1);
+	List<Match> matches = new ArrayList<Match>();
+	MemoEntry memoEntry = parser.processIgnoredTokens(0, 1, matches);
 
 	assertEquals(3, memoEntry.getDeltaPosition());
 
-	assertEquals(3, parserTree.getChildren().size());
-	Token token0 = parserTree.getChildren().get(0).getToken();
-	Token token1 = parserTree.getChildren().get(1).getToken();
-	Token token2 = parserTree.getChildren().get(2).getToken();
+	assertEquals(3, matches.size());
+	Token token0 = parser.createToken(matches.get(0), 0, 1);
+	Token token1 = parser.createToken(matches.get(1), 1, 1);
+	Token token2 = parser.createToken(matches.get(2), 2, 1);
 
 	assertEquals("Space", token0.getName());
 	assertEquals("Tab", token1.getName());
@@ -244,4 +247,114 @@ public class PackratParserTest {
 	parseText(testGrammar, "1 * 2 + 3 * 4 + 5 * (6 + 7 * 	 (8 + 9))");
 	parseText(testGrammar, "1 - 2 - 3");
     }
+
+    /**
+     * Checks that deeply nested input does not exhaust the Java call stack.
+     * The parser uses an explicit stack for the nesting depth.
+     */
+    @Test
+    public void testDeepNesting() throws Throwable {
+	int depth = 5000;
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < depth; i++) {
+	    text.append('(');
+	}
+	text.append('1');
+	for (int i = 0; i < depth; i++) {
+	    text.append(')');
+	}
+	PackratParser parser = new PackratParser(testGrammar);
+	SourceCode sourceCode = new FixedCodeLocation(text.toString())
+		.getSourceCode();
+	assertNotNull(parser.parse(sourceCode));
+    }
+
+    /**
+     * Checks that the text ranges and line spans of all nodes are set during
+     * tree construction and that the text of each node is the same as the
+     * concatenation of its token texts.
+     */
+    @Test
+    public void testTextRanges() throws Throwable {
+	String text = "1 +\n(2 * 3)\n+ 4";
+	PackratParser parser = new PackratParser(testGrammar);
+	ParseTreeNode parseTree = parser.parse(new FixedCodeLocation(text
+		.split("(?<=\n)")).getSourceCode());
+	assertEquals(0, parseTree.getStartOffset());
+	assertEquals(text.length(), parseTree.getEndOffset());
+	assertEquals(text, parseTree.getText());
+	assertEquals(1, parseTree.getMetaData().getLine());
+	assertEquals(3, parseTree.getMetaData().getLineNum());
+	new TreeWalker<ParseTreeNode>(parseTree)
+		.walk(new TreeVisitor<ParseTreeNode>() {
+		    @Override
+		    public WalkingAction visit(ParseTreeNode tree) {
+			assertTrue(tree.hasTextRange());
+			StringBuilder tokenTexts = new StringBuilder();
+			collectTokenTexts(tree, tokenTexts);
+			assertEquals(tokenTexts.toString(), tree.getText());
+			assertEquals(tree.getText(), tree.getTextSequence()
+				.toString());
+			return WalkingAction.PROCEED;
+		    }
+		});
+	ParseTreeNode paren = parseTree.getSubTrees("paren").get(0);
+	assertEquals("(2 * 3)", paren.getText());
+	assertEquals(4, paren.getStartOffset());
+	assertEquals(2, paren.getMetaData().getLine());
+	assertEquals(1, paren.getMetaData().getLineNum());
+    }
+
+    private static void collectTokenTexts(ParseTreeNode node,
+	    StringBuilder tokenTexts) {
+	if (node.getToken() != null) {
+	    tokenTexts.append(node.getToken().getText());
+	}
+	for (ParseTreeNode child : node.getChildren()) {
+	    collectTokenTexts(child, tokenTexts);
+	}
+    }
+
+    /**
+     * Checks that a long left recursion does not exhaust the Java call stack
+     * during seed growing.
+     */
+    @Test
+    public void testLongLeftRecursion() throws Throwable {
+	StringBuilder text = new StringBuilder("1");
+	for (int i = 0; i < 5000; i++) {
+	    text.append("+1");
+	}
+	PackratParser parser = new PackratParser(testGrammar);
+	SourceCode sourceCode = new FixedCodeLocation(text.toString())
+		.getSourceCode();
+	assertNotNull(parser.parse(sourceCode));
+    }
+
+    @Test
+    public void testProfiling() throws Throwable {
+	PackratParser parser = new PackratParser(testGrammar);
+	SourceCode sourceCode = new FixedCodeLocation("1 + 2 * (3 - 4)")
+		.getSourceCode();
+	parser.parse(sourceCode);
+	assertNull(parser.getProfile());
+
+	parser.setProfiling(true);
+	parser.parse(sourceCode);
+	PackratProfile profile = parser.getProfile();
+	assertNotNull(profile);
+	RuleProfile expression = profile.getRuleProfile("Expression");
+	assertNotNull(expression);
+	assertTrue(expression.getInvocations() > 0);
+	assertTrue(expression.getMemoMisses() > 0);
+	assertTrue(expression.getMemoHits() > 0);
+	assertTrue(expression.getGrowIterations() > 0);
+	assertTrue(expression.getTime() > 0);
+	assertTrue(profile.getRuleProfile("Term").getFailedAlternatives() > 0);
+	List<RuleProfile> ruleProfiles = profile.getRuleProfiles();
+	for (int i = 1; i < ruleProfiles.size(); i++) {
+	    assertTrue(ruleProfiles.get(i - 1).getTime() >= ruleProfiles.get(i)
+		    .getTime());
+	}
+    }
 }
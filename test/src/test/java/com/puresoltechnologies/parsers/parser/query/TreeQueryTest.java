@@ -0,0 +1,155 @@
+package com.puresoltechnologies.parsers.parser.query;
+
+import static com.puresoltechnologies.parsers.parser.ParseTreeFixture.readTestGrammarTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.puresoltechnologies.parsers.parser.ParseTreeNode;
+import com.puresoltechnologies.parsers.parser.ParseTreeNodeTypes;
+
+public class TreeQueryTest {
+
+    private static ParseTreeNode parseTree;
+
+    @BeforeClass
+    public static void initialize() throws Throwable {
+	parseTree = readTestGrammarTree();
+    }
+
+    private static List<ParseTreeNode> query(String query) throws Exception {
+	return TreeQuery.compile(query).execute(parseTree);
+    }
+
+    private static void assertSameNodes(List<ParseTreeNode> expected,
+	    List<ParseTreeNode> actual) {
+	assertEquals(expected.size(), actual.size());
+	for (int i = 0; i < expected.size(); i++) {
+	    assertSame(expected.get(i), actual.get(i));
+	}
+    }
+
+    @Test
+    public void testRootSteps() throws Exception {
+	assertSameNodes(Collections.singletonList(parseTree),
+		query("/GrammarFile"));
+	assertSameNodes(Collections.singletonList(parseTree),
+		query("/*"));
+	assertTrue(query("/Helper").isEmpty());
+	assertSameNodes(parseTree.getChildren("Helper"),
+		query("/GrammarFile/Helper"));
+    }
+
+    @Test
+    public void testDescendantSteps() throws Exception {
+	assertSameNodes(parseTree.getSubTrees("TokenPart"),
+		query("//TokenPart"));
+	assertSameNodes(parseTree.getChild("Helper").getSubTrees("TokenPart"),
+		query("/GrammarFile/Helper//TokenPart"));
+	List<ParseTreeNode> expected = new ArrayList<ParseTreeNode>();
+	for (ParseTreeNode definition : parseTree
+		.getSubTrees("TokenDefinition")) {
+	    expected.addAll(definition.getSubTrees("TokenPart"));
+	}
+	assertSameNodes(expected, query("//TokenDefinition//TokenPart"));
+	assertTrue(query("//TokenPart//TokenDefinition").isEmpty());
+	assertTrue(query("//NotExistingNodeName").isEmpty());
+    }
+
+    @Test
+    public void testWildcard() throws Exception {
+	int count = 0;
+	for (String name : new String[] { "Helper", "Tokens" }) {
+	    count += parseTree.getChild(name).getChildren().size();
+	}
+	assertEquals(count, query("/GrammarFile/Helper/*").size()
+		+ query("/GrammarFile/Tokens/*").size());
+	List<ParseTreeNode> all = query("//*");
+	assertSame(parseTree, all.get(0));
+	List<ParseTreeNode> expected = new ArrayList<ParseTreeNode>();
+	for (ParseTreeNode construction : parseTree
+		.getSubTrees("TokenConstruction")) {
+	    for (ParseTreeNode child : construction.getChildren()) {
+		expected.addAll(child.getChildren("Quantifier"));
+	    }
+	}
+	assertTrue(expected.size() > 0);
+	assertSameNodes(expected, query("//TokenConstruction/*/Quantifier"));
+    }
+
+    @Test
+    public void testPredicates() throws Exception {
+	List<ParseTreeNode> expected = new ArrayList<ParseTreeNode>();
+	for (ParseTreeNode definition : parseTree
+		.getSubTrees("TokenDefinition")) {
+	    if (definition.hasChild("Visibility")
+		    && definition.hasChild("TokenConstructions")) {
+		expected.add(definition.getChild("TokenConstructions"));
+	    }
+	}
+	assertSameNodes(expected,
+		query("//TokenDefinition[Visibility]/TokenConstructions"));
+	assertTrue(query("//TokenDefinition[NotExistingNodeName]").isEmpty());
+	assertSameNodes(parseTree.getSubTrees("GrammarOption"),
+		query("//GrammarOption[PropertyIdentifier][Literal]"));
+    }
+
+    @Test
+    public void testQuerySet() throws Exception {
+	String[] queryStrings = { "//TokenPart", "//TokenDefinition//Quantifier",
+		"/GrammarFile/Helper//TokenPart", "//GrammarOption[Literal]",
+		"//NotExistingNodeName", "//*" };
+	List<TreeQuery> queries = new ArrayList<TreeQuery>();
+	for (String queryString : queryStrings) {
+	    queries.add(TreeQuery.compile(queryString));
+	}
+	Map<TreeQuery, List<ParseTreeNode>> results = new TreeQuerySet(queries)
+		.execute(parseTree);
+	assertEquals(queries.size(), results.size());
+	for (TreeQuery query : queries) {
+	    assertSameNodes(query.execute(parseTree), results.get(query));
+	}
+    }
+
+    @Test
+    public void testUnknownNamesAreNotRegistered() throws Exception {
+	String name = "TreeQueryTestUnknownNode";
+	String predicate = "TreeQueryTestUnknownChild";
+	TreeQuery query = TreeQuery.compile("//" + name + "[" + predicate
+		+ "]");
+	assertEquals(-1, ParseTreeNodeTypes.findTypeId(name));
+	assertEquals(-1, ParseTreeNodeTypes.findTypeId(predicate));
+	assertEquals("//" + name + "[" + predicate + "]", query.getSteps()[0]
+		.toString());
+	assertTrue(query.execute(parseTree).isEmpty());
+
+	// Names of nodes created after the compilation are still found.
+	ParseTreeNode root = new ParseTreeNode("root");
+	ParseTreeNode node = new ParseTreeNode(name);
+	node.addChild(new ParseTreeNode(predicate));
+	root.addChild(node);
+	assertSameNodes(Collections.singletonList(node), query.execute(root));
+    }
+
+    @Test
+    public void testInvalidQueries() {
+	for (String query : new String[] { "", "TokenPart", "//", "/A/",
+		"//A[", "//A[]", "//A[B", "//A]" }) {
+	    try {
+		TreeQuery.compile(query);
+		fail("Query '" + query + "' should not compile.");
+	    } catch (TreeQueryException e) {
+		// expected
+	    }
+	}
+    }
+}
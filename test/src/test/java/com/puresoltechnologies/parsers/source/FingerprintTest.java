@@ -0,0 +1,72 @@
+package com.puresoltechnologies.parsers.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class FingerprintTest {
+
+    @Test
+    public void testKnownValues() {
+	/*
+	 * MurmurHash3 x64 128 of the UTF-16LE bytes of the texts.
+	 */
+	assertEquals("00000000000000000000000000000000", Fingerprint.of("")
+		.toHexString());
+	assertEquals("c0026631b551ae4ce75f3e8442567c1c",
+		Fingerprint.of("The quick brown fox jumps over the lazy dog")
+			.toHexString());
+    }
+
+    @Test
+    public void testChunks() {
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < 100; i++) {
+	    text.append((char) ('a' + i % 26));
+	    Fingerprint expected = Fingerprint.of(text);
+	    for (int chunkSize = 1; chunkSize <= 9; chunkSize++) {
+		Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+		for (int start = 0; start < text.length(); start += chunkSize) {
+		    int end = Math.min(text.length(), start + chunkSize);
+		    if (chunkSize % 2 == 0) {
+			hasher.update(text, start, end);
+		    } else {
+			char[] chars = text.substring(start, end).toCharArray();
+			hasher.update(chars, 0, chars.length);
+		    }
+		}
+		assertEquals(expected, hasher.finish());
+	    }
+	}
+    }
+
+    @Test
+    public void testSourceCodeFingerprint() throws IOException {
+	String text = "line 1\nline 2\r\nline 3";
+	SourceCodeLocation source = new UnspecifiedSourceCodeLocation();
+	SourceCode read = SourceCode.read(new StringReader(text), source);
+	SourceCode decoded = SourceCode.read(
+		ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)),
+		StandardCharsets.UTF_8, source);
+	SourceCode built = new SourceCode();
+	for (SourceCodeLine line : read.getLines()) {
+	    built.addSourceCodeLine(line);
+	}
+	Fingerprint expected = Fingerprint.of(text);
+	assertEquals(expected, read.getFingerprint());
+	assertEquals(expected, decoded.getFingerprint());
+	assertEquals(expected, built.getFingerprint());
+	assertEquals(read.getHashId(), built.getHashId());
+
+	built.addSourceCodeLine(new SourceCodeLine(source, 4, "\n"));
+	assertFalse(expected.equals(built.getFingerprint()));
+	assertEquals(Fingerprint.of(text + "\n"), built.getFingerprint());
+	assertFalse(read.getHashId().equals(built.getHashId()));
+    }
+}
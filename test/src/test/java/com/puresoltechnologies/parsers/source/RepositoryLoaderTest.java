@@ -0,0 +1,220 @@
+package com.puresoltechnologies.parsers.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryLoaderTest {
+
+    private File directory;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() throws IOException {
+	directory = File.createTempFile("RepositoryLoaderTest", "");
+	assertTrue(directory.delete());
+	assertTrue(directory.mkdir());
+	executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+	executor.shutdownNow();
+	File[] files = directory.listFiles();
+	if (files != null) {
+	    for (File file : files) {
+		file.delete();
+	    }
+	}
+	directory.delete();
+    }
+
+    private List<SourceCodeLocation> createFiles(int count) throws IOException {
+	List<SourceCodeLocation> locations = new ArrayList<SourceCodeLocation>();
+	for (int i = 0; i < count; i++) {
+	    String name = "file" + i + ".txt";
+	    OutputStream out = new FileOutputStream(new File(directory, name));
+	    try {
+		for (int line = 0; line < i; line++) {
+		    out.write(("line " + line + "\n").getBytes(Charset
+			    .defaultCharset()));
+		}
+	    } finally {
+		out.close();
+	    }
+	    locations.add(new SourceFileLocation(directory, name));
+	}
+	return locations;
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+	List<SourceCodeLocation> locations = createFiles(50);
+	final Map<SourceCodeLocation, SourceCode> loaded = new HashMap<SourceCodeLocation, SourceCode>();
+	final Thread caller = Thread.currentThread();
+	RepositoryLoader loader = new RepositoryLoader(executor, 4, 2);
+	loader.load(locations, new RepositoryLoader.Handler() {
+	    @Override
+	    public void handle(SourceCodeLocation location,
+		    SourceCode sourceCode) {
+		assertEquals(caller, Thread.currentThread());
+		assertTrue(loaded.put(location, sourceCode) == null);
+	    }
+	});
+	assertEquals(locations.size(), loaded.size());
+	for (SourceCodeLocation location : locations) {
+	    assertEquals(location.getSourceCode(), loaded.get(location));
+	}
+    }
+
+    @Test
+    public void testLargestFirst() throws Exception {
+	List<SourceCodeLocation> locations = createFiles(20);
+	Collections.shuffle(locations);
+	final List<String> names = new ArrayList<String>();
+	RepositoryLoader loader = new RepositoryLoader(executor, 1, 1);
+	loader.load(locations, new RepositoryLoader.Handler() {
+	    @Override
+	    public void handle(SourceCodeLocation location,
+		    SourceCode sourceCode) {
+		names.add(location.getName());
+	    }
+	});
+	assertEquals(20, names.size());
+	for (int i = 0; i < 20; i++) {
+	    assertEquals("file" + (19 - i) + ".txt", names.get(i));
+	}
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+	new RepositoryLoader(executor, 4, 4).load(
+		new ArrayList<SourceCodeLocation>(),
+		new RepositoryLoader.Handler() {
+		    @Override
+		    public void handle(SourceCodeLocation location,
+			    SourceCode sourceCode) {
+			fail("No source code expected.");
+		    }
+		});
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+	List<SourceCodeLocation> locations = createFiles(30);
+	locations.add(10, new SourceFileLocation(directory, "missing.txt"));
+	try {
+	    new RepositoryLoader(executor, 4, 1).load(locations,
+		    new RepositoryLoader.Handler() {
+			@Override
+			public void handle(SourceCodeLocation location,
+				SourceCode sourceCode) {
+			}
+		    });
+	    fail("IOException expected.");
+	} catch (IOException e) {
+	    // expected
+	}
+    }
+
+    @Test
+    public void testHandlerFailure() throws Exception {
+	List<SourceCodeLocation> locations = createFiles(30);
+	final int[] handled = { 0 };
+	try {
+	    new RepositoryLoader(executor, 4, 1).load(locations,
+		    new RepositoryLoader.Handler() {
+			@Override
+			public void handle(SourceCodeLocation location,
+				SourceCode sourceCode) throws IOException {
+			    handled[0]++;
+			    throw new IOException("Handler failed.");
+			}
+		    });
+	    fail("IOException expected.");
+	} catch (IOException e) {
+	    assertEquals("Handler failed.", e.getMessage());
+	}
+	assertEquals(1, handled[0]);
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorWhileReading() throws Exception {
+	List<SourceCodeLocation> locations = createFiles(30);
+	locations.add(10, new FixedCodeLocation("huge") {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public SourceCode getSourceCode() throws IOException {
+		throw new OutOfMemoryError("Too large.");
+	    }
+	});
+	try {
+	    new RepositoryLoader(executor, 4, 1).load(locations,
+		    new RepositoryLoader.Handler() {
+			@Override
+			public void handle(SourceCodeLocation location,
+				SourceCode sourceCode) {
+			}
+		    });
+	    fail("OutOfMemoryError expected.");
+	} catch (OutOfMemoryError e) {
+	    assertEquals("Too large.", e.getMessage());
+	}
+    }
+
+    @Test(timeout = 10000)
+    public void testRejectedReaders() throws Exception {
+	List<SourceCodeLocation> locations = createFiles(30);
+	// The four size lookups and the first reader are started only.
+	ThreadPoolExecutor limited = new ThreadPoolExecutor(4, 4, 0,
+		TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+	    private final AtomicInteger executed = new AtomicInteger();
+
+	    @Override
+	    public void execute(Runnable command) {
+		if (executed.incrementAndGet() > 5) {
+		    throw new RejectedExecutionException("Limit reached.");
+		}
+		super.execute(command);
+	    }
+	};
+	try {
+	    new RepositoryLoader(limited, 4, 1).load(locations,
+		    new RepositoryLoader.Handler() {
+			@Override
+			public void handle(SourceCodeLocation location,
+				SourceCode sourceCode) {
+			}
+		    });
+	    fail("RejectedExecutionException expected.");
+	} catch (RejectedExecutionException e) {
+	    assertEquals("Limit reached.", e.getMessage());
+	}
+	// The reader already started must not wait forever.
+	limited.shutdown();
+	assertTrue(limited.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -1,9 +1,23 @@
 package com.puresoltechnologies.parsers.source;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -25,4 +39,149 @@ public class SourceCodeTest {
 	assertNotNull(deserialized);
     }
 
+    private static List<String> readLines(Reader reader) throws IOException {
+	SourceCode sourceCode = SourceCode.read(reader,
+		new UnspecifiedSourceCodeLocation());
+	List<String> lines = new ArrayList<String>();
+	int lineNumber = 0;
+	for (SourceCodeLine line : sourceCode.getLines()) {
+	    lineNumber++;
+	    assertEquals(lineNumber, line.getLineNumber());
+	    lines.add(line.getLine());
+	}
+	return lines;
+    }
+
+    /**
+     * This reader returns at most the given number of characters per read to
+     * simulate short reads of streams.
+     */
+    private static class ShortReader extends StringReader {
+
+	private final int chunkSize;
+
+	private ShortReader(String text, int chunkSize) {
+	    super(text);
+	    this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length)
+		throws IOException {
+	    return super.read(buffer, offset, Math.min(length, chunkSize));
+	}
+    }
+
+    @Test
+    public void testReadLineTerminators() throws IOException {
+	assertEquals(Arrays.asList(""), readLines(new StringReader("")));
+	assertEquals(Arrays.asList("a\n"), readLines(new StringReader("a\n")));
+	assertEquals(Arrays.asList("a\n", "b"), readLines(new StringReader(
+		"a\nb")));
+	assertEquals(Arrays.asList("a\r\n", "\r", "b\n", "\n", "c\r"),
+		readLines(new StringReader("a\r\n\rb\n\nc\r")));
+	assertEquals(Arrays.asList("\n", "\r", "\r\n"), readLines(new StringReader(
+		"\n\r\r\n")));
+    }
+
+    @Test
+    public void testReadShortChunks() throws IOException {
+	StringBuilder text = new StringBuilder();
+	List<String> expected = new ArrayList<String>();
+	for (int i = 0; i < 2000; i++) {
+	    String terminator = i % 3 == 0 ? "\r\n" : (i % 3 == 1 ? "\n"
+		    : "\r");
+	    String line = "line " + i + terminator;
+	    text.append(line);
+	    expected.add(line);
+	}
+	assertEquals(expected, readLines(new StringReader(text.toString())));
+	for (int chunkSize = 1; chunkSize <= 7; chunkSize++) {
+	    assertEquals(expected, readLines(new ShortReader(text.toString(),
+		    chunkSize)));
+	}
+    }
+
+    @Test
+    public void testReadBytesWithNonAsciiCharacters() throws IOException {
+	SourceCodeLocation source = new UnspecifiedSourceCodeLocation();
+	String text = "ascii\nGr\u00fc\u00dfe\n\u20ac 1\nend";
+	for (Charset charset : Arrays.asList(StandardCharsets.UTF_8,
+		StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16LE)) {
+	    String expected = new String(text.getBytes(charset), charset);
+	    ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(charset));
+	    SourceCode sourceCode = SourceCode.read(bytes, charset, source);
+	    assertFalse(bytes.hasRemaining());
+	    assertEquals(expected, sourceCode.getText());
+	    assertEquals(SourceCode.read(new StringReader(expected), source),
+		    sourceCode);
+	    assertEquals(Fingerprint.of(expected), sourceCode.getFingerprint());
+	}
+	ByteBuffer bytes = ByteBuffer.wrap(new byte[] { 'a', (byte) 0xff, 'b' });
+	assertEquals("a\ufffdb",
+		SourceCode.read(bytes, StandardCharsets.UTF_8, source).getText());
+    }
+
+    @Test
+    public void testTextBuffer() throws IOException {
+	SourceCodeLocation first = new FixedCodeLocation("a\n", "bc");
+	SourceCodeLocation second = new UnspecifiedSourceCodeLocation();
+	SourceCode sourceCode = first.getSourceCode();
+	sourceCode.addSourceCodeLine(new SourceCodeLine(second, 7, "\n"));
+	sourceCode.addSourceCode(SourceCode.read(new StringReader("d\r\ne"),
+		second));
+	assertEquals("a\nbc\nd\r\ne", sourceCode.getText());
+	assertEquals(5, sourceCode.getLineCount());
+	assertEquals(Arrays.asList(new SourceCodeLine(first, 1, "a\n"),
+		new SourceCodeLine(first, 2, "bc"), new SourceCodeLine(second,
+			7, "\n"), new SourceCodeLine(second, 1, "d\r\n"),
+		new SourceCodeLine(second, 2, "e")), sourceCode.getLines());
+	assertEquals(4, sourceCode.getLineStart(2));
+	assertEquals(5, sourceCode.getLineEnd(2));
+	assertEquals(second, sourceCode.getSource(3));
+	assertEquals(2, sourceCode.getLineNumber(4));
+
+	SourceCode cloned = sourceCode.clone();
+	assertEquals(sourceCode, cloned);
+	assertEquals(sourceCode.hashCode(), cloned.hashCode());
+	assertEquals(sourceCode.getHashId(), cloned.getHashId());
+	cloned.addSourceCodeLine(new SourceCodeLine(second, 3, "\r\n"));
+	assertFalse(sourceCode.equals(cloned));
+	assertEquals(5, sourceCode.getLineCount());
+	assertTrue(cloned.removeLineTerminatorAtLastLine());
+	assertEquals(new SourceCodeLine(second, 3, ""), cloned.getLine(5));
+	assertFalse(cloned.removeLineTerminatorAtLastLine());
+	assertEquals(sourceCode.getText(), cloned.getText());
+	assertFalse(sourceCode.equals(cloned));
+
+	cloned.clear();
+	assertEquals(0, cloned.getLineCount());
+	assertEquals("", cloned.getText());
+    }
+
+    @Test
+    public void testJavaSerialization() throws Exception {
+	SourceCode sourceCode = SourceCode.read(new StringReader("Line1\nLine2"),
+		new UnspecifiedSourceCodeLocation());
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	ObjectOutputStream out = new ObjectOutputStream(bytes);
+	out.writeObject(sourceCode);
+	out.close();
+	ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+		bytes.toByteArray()));
+	SourceCode deserialized = (SourceCode) in.readObject();
+	in.close();
+	assertEquals(sourceCode, deserialized);
+	assertEquals("Line1\nLine2", deserialized.getText());
+    }
+
+    @Test
+    public void testJSONRoundTrip() throws IOException {
+	SourceCode sourceCode = SourceCode.read(new StringReader("Line1\nLine2"),
+		new UnspecifiedSourceCodeLocation());
+	SourceCode deserialized = JSONTestSerializer.deserialize(
+		JSONTestSerializer.serialize(sourceCode), SourceCode.class);
+	assertEquals(sourceCode.getLines(), deserialized.getLines());
+	assertEquals(sourceCode.getText(), deserialized.getText());
+    }
 }
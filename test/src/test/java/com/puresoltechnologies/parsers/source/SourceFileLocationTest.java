@@ -0,0 +1,81 @@
+package com.puresoltechnologies.parsers.source;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class SourceFileLocationTest {
+
+    private static String createText(int lines, String extra) {
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < lines; i++) {
+	    text.append("line ").append(i).append(extra)
+		    .append(i % 2 == 0 ? "\n" : "\r\n");
+	}
+	return text.toString();
+    }
+
+    private static void assertReadsLikeReader(byte[] bytes, Charset charset)
+	    throws IOException {
+	File file = File.createTempFile("SourceFileLocationTest", ".txt");
+	file.deleteOnExit();
+	try {
+	    OutputStream out = new FileOutputStream(file);
+	    try {
+		out.write(bytes);
+	    } finally {
+		out.close();
+	    }
+	    SourceFileLocation location = new SourceFileLocation(
+		    file.getParentFile(), file.getName());
+	    SourceCode expected;
+	    Reader reader = new InputStreamReader(new ByteArrayInputStream(
+		    bytes), charset);
+	    try {
+		expected = SourceCode.read(reader, location);
+	    } finally {
+		reader.close();
+	    }
+	    assertEquals(expected, location.getSourceCode(charset));
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testSmallFiles() throws IOException {
+	assertReadsLikeReader(new byte[0], StandardCharsets.UTF_8);
+	assertReadsLikeReader(createText(10, "").getBytes(
+		StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	assertReadsLikeReader(createText(10, " \u00e4\u00f6\u00fc").getBytes(
+		StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	assertReadsLikeReader(createText(10, " \u00e4\u00f6\u00fc").getBytes(
+		StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1);
+	assertReadsLikeReader(createText(10, " \u00e4\u00f6\u00fc").getBytes(
+		StandardCharsets.UTF_16), StandardCharsets.UTF_16);
+    }
+
+    @Test
+    public void testMappedFiles() throws IOException {
+	assertReadsLikeReader(createText(20000, "").getBytes(
+		StandardCharsets.US_ASCII), StandardCharsets.US_ASCII);
+	assertReadsLikeReader(createText(20000, " \u20ac").getBytes(
+		StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMalformedInput() throws IOException {
+	assertReadsLikeReader(new byte[] { 'a', (byte) 0xc3, '\n', 'b' },
+		StandardCharsets.UTF_8);
+    }
+}
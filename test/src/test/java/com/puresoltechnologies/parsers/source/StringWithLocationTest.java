@@ -0,0 +1,67 @@
+package com.puresoltechnologies.parsers.source;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StringWithLocationTest {
+
+    private static SourceCode createSourceCode() {
+	SourceCode sourceCode = new SourceCode();
+	String[] lines = { "first line\n", "", "\n", "x", "", "",
+		"a longer third line\n", "last" };
+	for (int i = 0; i < lines.length; i++) {
+	    sourceCode.addSourceCodeLine(new SourceCodeLine(
+		    new UnspecifiedSourceCodeLocation(), i + 1, lines[i]));
+	}
+	return sourceCode;
+    }
+
+    @Test
+    public void testLocations() {
+	SourceCode sourceCode = createSourceCode();
+	List<SourceCodeLine> expectedLines = new ArrayList<SourceCodeLine>();
+	List<Integer> expectedColumns = new ArrayList<Integer>();
+	StringBuilder expectedText = new StringBuilder();
+	for (SourceCodeLine line : sourceCode.getLines()) {
+	    for (int column = 0; column < line.getLine().length(); column++) {
+		expectedLines.add(line);
+		expectedColumns.add(column);
+	    }
+	    expectedText.append(line.getLine());
+	}
+
+	StringWithLocation text = new StringWithLocation(sourceCode);
+	assertEquals(expectedText.toString(), text.getText());
+	for (int position = 0; position < text.getText().length(); position++) {
+	    assertEquals(expectedLines.get(position), text.getSource(position));
+	    assertEquals(expectedLines.get(position).getLineNumber(),
+		    text.getLineNumber(position));
+	    assertEquals((int) expectedColumns.get(position),
+		    text.getColumn(position));
+	}
+
+	Random random = new Random(42);
+	for (int i = 0; i < 1000; i++) {
+	    int position = random.nextInt(text.getText().length());
+	    assertEquals(expectedLines.get(position), text.getSource(position));
+	    assertEquals((int) expectedColumns.get(position),
+		    text.getColumn(position));
+	}
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testPositionBehindText() {
+	StringWithLocation text = new StringWithLocation(createSourceCode());
+	text.getSource(text.getText().length());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testEmptySourceCode() {
+	new StringWithLocation(new SourceCode()).getLineNumber(0);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ This grammar is used to test cuts within the packrat parser. Each statement
+ commits after its keyword and the statement list commits after each
+ statement.
+ */
+OPTIONS
+
+	// lexer is the class to be used for lexing
+	lexer="com.puresoltechnologies.parsers.impl.lexer.RegExpLexer";
+	
+	// this options tells the lexer to be case insensitve
+	lexer.case_sensitive=true;
+	
+	// parser is the class to be used for parsing
+	parser="com.puresoltechnologies.parsers.parser.packrat.PackratParser";
+
+HELPER
+
+TOKENS
+
+	NEWLINE:			"(\r\n|\n|\r)" [ignore];
+	WHITESPACE:			"[ \t]" [hide];
+	SEMICOLON:			";";
+	EQUALS:				"=";
+	LET:				"let";
+	PRINT:				"print";
+	IDENTIFIER:			"[a-z]+";
+	INTEGER_LITERAL:	"[0-9]+";
+
+PRODUCTIONS
+
+	_START_ : Statements ;
+
+	Statements:
+					Statement Statements [node=false, cut=true]
+		|
+	;
+
+	Statement:
+		{let}		LET IDENTIFIER EQUALS INTEGER_LITERAL SEMICOLON [cut=true]
+		|	{print}	PRINT IDENTIFIER SEMICOLON [cut=true]
+		|	{call}	IDENTIFIER SEMICOLON
+	;
@@ -0,0 +1,59 @@
+/*
+ This grammar is used to test the node and stack options of productions. The
+ items of a list are not stacked and numbers get no item node. The elements
+ of a tuple are not stacked either, but a non-node production is in between.
+ */
+OPTIONS
+
+	// lexer is the class to be used for lexing
+	lexer="com.puresoltechnologies.parsers.impl.lexer.RegExpLexer";
+	
+	// this options tells the lexer to be case insensitve
+	lexer.case_sensitive=true;
+	
+	// parser is the class to be used for parsing
+	parser="com.puresoltechnologies.parsers.parser.packrat.PackratParser";
+
+HELPER
+
+TOKENS
+
+	WHITESPACE:			"[ \t]" [hide];
+	COMMA:				",";
+	LPAREN:				"\\(";
+	RPAREN:				"\\)";
+	LBRACKET:			"\\[";
+	RBRACKET:			"\\]";
+	INTEGER_LITERAL:	"[0-9]+";
+
+PRODUCTIONS
+
+	_START_ : List ;
+
+	List:
+			LPAREN Items RPAREN
+	;
+
+	Items:
+			Items COMMA Item [stack=false]
+		|	Item [stack=false]
+	;
+
+	Item:
+			INTEGER_LITERAL [node=false]
+		|	List
+		|	Tuple
+	;
+
+	Tuple:
+			LBRACKET Elements RBRACKET
+	;
+
+	Elements:
+			Item MoreElements [stack=false]
+		|	Item [stack=false]
+	;
+
+	MoreElements:
+			COMMA Elements [node=false]
+	;